@@ -245,7 +245,7 @@ public class BaseWifiService extends IWifiManager.Stub {
     }
 
     @Override
-    public List<ScanResult> getScanResults(String callingPackage, String callingFeatureId) {
+    public ParceledListSlice getScanResults(String callingPackage, String callingFeatureId) {
         throw new UnsupportedOperationException();
     }
 
@@ -811,6 +811,12 @@ public class BaseWifiService extends IWifiManager.Stub {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void registerScanResultsChangedCallback(IScanResultsCallback callback,
+            String packageName, String featureId) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void unregisterScanResultsCallback(IScanResultsCallback callback) {
         throw new UnsupportedOperationException();
@@ -4445,8 +4445,13 @@ public class WifiManager {
     @RequiresPermission(allOf = {ACCESS_WIFI_STATE, ACCESS_FINE_LOCATION})
     public List<ScanResult> getScanResults() {
         try {
-            return mService.getScanResults(mContext.getOpPackageName(),
-                    mContext.getAttributionTag());
+            ParceledListSlice<ScanResult> parceledList =
+                    mService.getScanResults(mContext.getOpPackageName(),
+                            mContext.getAttributionTag());
+            if (parceledList == null) {
+                return Collections.emptyList();
+            }
+            return parceledList.getList();
         } catch (RemoteException e) {
             throw e.rethrowFromSystemServer();
         }
@@ -9437,6 +9442,30 @@ public class WifiManager {
          */
         public abstract void onScanResultsAvailable();
 
+        /**
+         * Called when new scan results are available, for callbacks registered with
+         * {@link WifiManager#registerScanResultsChangedCallback(Executor, ScanResultsCallback)}.
+         * Provides the scan results which changed since the previous call, so that clients
+         * tracking the nearby access points don't need to get all the scan results again.
+         * <p>
+         * A BSS is reported as changed when it is new, or when its SSID, signal level, frequency,
+         * channel width or capabilities changed. A full update is sent on the first call, and
+         * whenever a previous change could not be delivered to this callback.
+         * <p>
+         * The default implementation calls {@link #onScanResultsAvailable()}.
+         *
+         * @param changedResults scan results of the BSSes which were added or changed, or all the
+         *                       scan results if {@code isFullUpdate} is true.
+         * @param removedBssids BSSIDs which are no longer in the scan results.
+         * @param isFullUpdate true if {@code changedResults} contains all the scan results, and
+         *                     any BSS not in it should be discarded.
+         */
+        @FlaggedApi("com.android.wifi.flags.scan_results_changed_callback")
+        public void onScanResultsChanged(@NonNull List<ScanResult> changedResults,
+                @NonNull List<String> removedBssids, boolean isFullUpdate) {
+            onScanResultsAvailable();
+        }
+
         /*package*/ @NonNull ScanResultsCallbackProxy getProxy() {
             return mScanResultsCallbackProxy;
         }
@@ -9480,6 +9509,27 @@ public class WifiManager {
                 Binder.clearCallingIdentity();
                 executor.execute(callback::onScanResultsAvailable);
             }
+
+            @Override
+            public void onScanResultsChanged(ParceledListSlice changedResults,
+                    List<String> removedBssids, boolean isFullUpdate) {
+                ScanResultsCallback callback;
+                Executor executor;
+                synchronized (mLock) {
+                    executor = mExecutor;
+                    callback = mCallback;
+                }
+                if (callback == null || executor == null) {
+                    return;
+                }
+                List<ScanResult> changedResultsList = changedResults == null
+                        ? Collections.emptyList() : changedResults.getList();
+                List<String> removedBssidsList = removedBssids == null
+                        ? Collections.emptyList() : removedBssids;
+                Binder.clearCallingIdentity();
+                executor.execute(() -> callback.onScanResultsChanged(changedResultsList,
+                        removedBssidsList, isFullUpdate));
+            }
         }
     }
 
@@ -9518,6 +9568,40 @@ public class WifiManager {
         }
     }
 
+    /**
+     * Register a callback for Scan Results, which is sent the scan results that changed on each
+     * scan. See {@link ScanResultsCallback#onScanResultsChanged(List, List, boolean)}.
+     * Caller can remove a previously registered callback using
+     * {@link WifiManager#unregisterScanResultsCallback(ScanResultsCallback)}.
+     * <p>
+     * Applications must have the {@link android.Manifest.permission#ACCESS_WIFI_STATE} and
+     * {@link android.Manifest.permission#ACCESS_FINE_LOCATION} permissions. Callers without the
+     * permissions will trigger a {@link java.lang.SecurityException}. Changes are not sent while
+     * the caller is not allowed to access scan results.
+     * <p>
+     *
+     * @param executor The executor to execute the callback of the {@code callback} object.
+     * @param callback callback for Scan Results events
+     */
+    @FlaggedApi("com.android.wifi.flags.scan_results_changed_callback")
+    @RequiresPermission(allOf = {ACCESS_FINE_LOCATION, ACCESS_WIFI_STATE})
+    public void registerScanResultsChangedCallback(@NonNull @CallbackExecutor Executor executor,
+            @NonNull ScanResultsCallback callback) {
+        if (executor == null) throw new IllegalArgumentException("executor cannot be null");
+        if (callback == null) throw new IllegalArgumentException("callback cannot be null");
+
+        Log.v(TAG, "registerScanResultsChangedCallback: callback=" + callback
+                + ", executor=" + executor);
+        ScanResultsCallback.ScanResultsCallbackProxy proxy = callback.getProxy();
+        proxy.initProxy(executor, callback);
+        try {
+            mService.registerScanResultsChangedCallback(proxy, mContext.getOpPackageName(),
+                    mContext.getAttributionTag());
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+    }
+
     /**
      * Allow callers to unregister a previously registered callback. After calling this method,
      * applications will no longer receive Scan Results events.
@@ -124,6 +124,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.connectivity.WifiActivityEnergyInfo;
 import android.os.test.TestLooper;
@@ -133,6 +134,7 @@ import android.util.SparseArray;
 import androidx.test.filters.SmallTest;
 
 import com.android.modules.utils.HandlerExecutor;
+import com.android.modules.utils.ParceledListSlice;
 import com.android.modules.utils.build.SdkLevel;
 
 import org.junit.Before;
@@ -2420,6 +2422,51 @@ public class WifiManagerTest {
         verify(mWifiService).getFactoryMacAddresses();
     }
 
+    /**
+     * Verify that a large list of scan results, including their information elements, is
+     * returned intact after being parceled.
+     */
+    @Test
+    public void testGetScanResultsLargeList() throws Exception {
+        final int numScanResults = 2000;
+        List<ScanResult> scanResults = new ArrayList<>();
+        for (int i = 0; i < numScanResults; i++) {
+            ScanResult scanResult = new ScanResult();
+            scanResult.BSSID = String.format("02:00:00:00:%02x:%02x", i / 256, i % 256);
+            scanResult.SSID = "ssid" + i;
+            scanResult.frequency = 5180;
+            scanResult.informationElements = new ScanResult.InformationElement[] {
+                    new ScanResult.InformationElement(ScanResult.InformationElement.EID_SSID,
+                            0, scanResult.SSID.getBytes()),
+                    new ScanResult.InformationElement(
+                            ScanResult.InformationElement.EID_VSA, 0, new byte[200])};
+            scanResults.add(scanResult);
+        }
+        Parcel parcel = Parcel.obtain();
+        new ParceledListSlice<>(scanResults).writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        ParceledListSlice<ScanResult> parceledList =
+                ParceledListSlice.CREATOR.createFromParcel(parcel, getClass().getClassLoader());
+        parcel.recycle();
+        when(mWifiService.getScanResults(any(), any())).thenReturn(parceledList);
+
+        List<ScanResult> retrievedScanResults = mWifiManager.getScanResults();
+        assertEquals(numScanResults, retrievedScanResults.size());
+        for (int i = 0; i < numScanResults; i++) {
+            assertEquals(scanResults.get(i).BSSID, retrievedScanResults.get(i).BSSID);
+            assertEquals(2, retrievedScanResults.get(i).getInformationElements().size());
+        }
+    }
+
+    /**
+     * Verify that getScanResults returns an empty list if the service returns null.
+     */
+    @Test
+    public void testGetScanResultsNullFromService() throws Exception {
+        when(mWifiService.getScanResults(any(), any())).thenReturn(null);
+        assertTrue(mWifiManager.getScanResults().isEmpty());
+    }
+
     /**
      * Verify the call to getCallerConfiguredNetworks goes to WifiServiceImpl.
      */
@@ -3059,6 +3106,36 @@ public class WifiManagerTest {
         verify(mRunnable).run();
     }
 
+    /**
+     * Verify the scan result changes are delivered to a callback registered for them, and
+     * the default implementation falls back to onScanResultsAvailable().
+     */
+    @Test
+    public void testRegisterScanResultsChangedCallbackAndReceiveEvent() throws Exception {
+        ArgumentCaptor<IScanResultsCallback.Stub> callbackCaptor =
+                ArgumentCaptor.forClass(IScanResultsCallback.Stub.class);
+        ScanResultsCallback changedCallback = mock(ScanResultsCallback.class);
+        mWifiManager.registerScanResultsChangedCallback(new SynchronousExecutor(),
+                changedCallback);
+        verify(mWifiService).registerScanResultsChangedCallback(callbackCaptor.capture(),
+                eq(TEST_PACKAGE_NAME), any());
+
+        ScanResult scanResult = new ScanResult();
+        scanResult.BSSID = "12:34:56:78:9a:bc";
+        List<String> removedBssids = List.of("aa:bb:cc:dd:ee:ff");
+        callbackCaptor.getValue().onScanResultsChanged(
+                new ParceledListSlice<>(List.of(scanResult)), removedBssids, false);
+        verify(changedCallback).onScanResultsChanged(List.of(scanResult), removedBssids, false);
+
+        mWifiManager.registerScanResultsChangedCallback(new SynchronousExecutor(),
+                mScanResultsCallback);
+        verify(mWifiService, times(2)).registerScanResultsChangedCallback(
+                callbackCaptor.capture(), eq(TEST_PACKAGE_NAME), any());
+        callbackCaptor.getValue().onScanResultsChanged(
+                new ParceledListSlice<>(Collections.emptyList()), Collections.emptyList(), true);
+        verify(mRunnable).run();
+    }
+
     /**
      * Verify client provided callback is being called to the right executor.
      */
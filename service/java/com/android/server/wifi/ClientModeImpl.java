@@ -241,6 +241,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     private final PasspointManager mPasspointManager;
     private final WifiDataStall mWifiDataStall;
     private final RssiMonitor mRssiMonitor;
+    private final SignalPoller mSignalPoller;
     private final LinkProbeManager mLinkProbeManager;
     private final MboOceController mMboOceController;
     private final McastLockManagerFilterController mMcastLockManagerFilterController;
@@ -305,6 +306,11 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
 
     private boolean mEnableRssiPolling = false;
     private int mRssiPollToken = 0;
+    // Shortens the adaptive RSSI polling interval as soon as traffic begins, rather than at the
+    // next poll, which may be far away while the link is idle.
+    private final ConnectivityManager.OnNetworkActiveListener mNetworkActiveListener =
+            () -> sendMessage(CMD_DATA_ACTIVITY);
+    private boolean mIsNetworkActiveListenerRegistered = false;
 
     private PowerManager.WakeLock mSuspendWakeLock;
 
@@ -451,10 +457,14 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     static final int CMD_RSSI_POLL                                      = BASE + 83;
     /** Runs RSSI poll once */
     static final int CMD_ONESHOT_RSSI_POLL                              = BASE + 84;
+    /* Link layer stats and signal poll results fetched for CMD_RSSI_POLL */
+    static final int CMD_SIGNAL_POLL_RESULT                             = BASE + 85;
     /* Enable suspend mode optimizations in the driver */
     static final int CMD_SET_SUSPEND_OPT_ENABLED                        = BASE + 86;
     /* L3 provisioning timed out*/
     static final int CMD_IP_PROVISIONING_TIMEOUT                        = BASE + 87;
+    /* Data activity began on the default network */
+    static final int CMD_DATA_ACTIVITY                                  = BASE + 88;
 
 
     /**
@@ -822,6 +832,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
         mCmiMonitor = cmiMonitor;
         mTelephonyManager = telephonyManager;
         mSettingsConfigStore = settingsConfigStore;
+        mWifiNetworkSelector = wifiNetworkSelector;
         updateInterfaceCapabilities();
         mWifiDeviceStateChangeManager = wifiInjector.getWifiDeviceStateChangeManager();
 
@@ -837,18 +848,18 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
         mWifiCarrierInfoManager.addOnCarrierOffloadDisabledListener(
                 mOnCarrierOffloadDisabledListener);
 
-        mWifiNetworkSelector = wifiNetworkSelector;
         mWifiInjector = wifiInjector;
         mQosPolicyRequestHandler = new QosPolicyRequestHandler(mInterfaceName, mWifiNative, this,
                 mWifiInjector.getWifiHandlerThread());
 
+        mSignalPoller = mWifiInjector.getSignalPoller();
         mRssiMonitor = new RssiMonitor(mWifiGlobals, mWifiThreadRunner, mWifiInfo, mWifiNative,
                 mInterfaceName,
                 () -> {
                     updateCapabilities();
                     updateCurrentConnectionInfo();
                 },
-                mDeviceConfigFacade);
+                mDeviceConfigFacade, mClock);
 
         enableVerboseLogging(verboseLoggingEnabled);
 
@@ -1380,7 +1391,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
         WifiConfiguration config = mWifiConfigManager.getConfiguredNetwork(networkIdForConnection);
         if (null == config) return false;
 
-        List<ScanResult> scanResults = mScanRequestProxy.getScanResults().stream()
+        List<ScanResult> scanResults = mScanRequestProxy.getScanResultsSnapshot().stream()
                 .filter(r -> TextUtils.equals(config.SSID, r.getWifiSsid().toString()))
                 .collect(Collectors.toList());
         if (0 == scanResults.size()) return false;
@@ -1586,17 +1597,62 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             loge("getWifiLinkLayerStats called without an interface");
             return null;
         }
-        mLastLinkLayerStatsUpdate = mClock.getWallClockMillis();
+        long timestampMillis = mClock.getWallClockMillis();
         WifiLinkLayerStats stats = null;
-        if (isLinkLayerStatsSupported()) {
-            if (isPrimary()) {
-                stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
-            } else {
-                if (mVerboseLoggingEnabled) {
-                    Log.w(getTag(), "Can't getWifiLinkLayerStats on secondary iface");
-                }
+        if (shouldFetchLinkLayerStats()) {
+            stats = mWifiNative.getWifiLinkLayerStats(mInterfaceName);
+        }
+        long txPackets = 0;
+        long rxPackets = 0;
+        if (stats == null) {
+            txPackets = mFacade.getTxPackets(mInterfaceName);
+            rxPackets = mFacade.getRxPackets(mInterfaceName);
+        }
+        return updateLinkLayerStats(stats, timestampMillis, txPackets, rxPackets);
+    }
+
+    private boolean shouldFetchLinkLayerStats() {
+        if (!isLinkLayerStatsSupported()) {
+            return false;
+        }
+        if (!isPrimary()) {
+            if (mVerboseLoggingEnabled) {
+                Log.w(getTag(), "Can't getWifiLinkLayerStats on secondary iface");
             }
+            return false;
         }
+        return true;
+    }
+
+    private void registerNetworkActiveListener() {
+        if (mIsNetworkActiveListenerRegistered) {
+            return;
+        }
+        ConnectivityManager connectivityManager =
+                mContext.getSystemService(ConnectivityManager.class);
+        if (connectivityManager == null) {
+            return;
+        }
+        connectivityManager.addDefaultNetworkActiveListener(mNetworkActiveListener);
+        mIsNetworkActiveListenerRegistered = true;
+    }
+
+    private void unregisterNetworkActiveListener() {
+        if (!mIsNetworkActiveListenerRegistered) {
+            return;
+        }
+        mContext.getSystemService(ConnectivityManager.class)
+                .removeDefaultNetworkActiveListener(mNetworkActiveListener);
+        mIsNetworkActiveListenerRegistered = false;
+    }
+
+    /*
+     * Update the packet rates and link layer stats metrics with the stats fetched at
+     * |timestampMillis|, or with the packet counters if there are no stats.
+     */
+    private WifiLinkLayerStats updateLinkLayerStats(@Nullable WifiLinkLayerStats stats,
+            long timestampMillis, long txPackets, long rxPackets) {
+        mLastLinkLayerStatsUpdate = timestampMillis;
         if (stats != null) {
             mOnTime = stats.on_time;
             mTxTime = stats.tx_time;
@@ -1604,9 +1660,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             mRunningBeaconCount = stats.beacon_rx;
             mWifiInfo.updatePacketRates(stats, mLastLinkLayerStatsUpdate);
         } else {
-            long mTxPkts = mFacade.getTxPackets(mInterfaceName);
-            long mRxPkts = mFacade.getRxPackets(mInterfaceName);
-            mWifiInfo.updatePacketRates(mTxPkts, mRxPkts, mLastLinkLayerStatsUpdate);
+            mWifiInfo.updatePacketRates(txPackets, rxPackets, mLastLinkLayerStatsUpdate);
         }
         mWifiMetrics.incrementWifiLinkLayerUsageStats(mInterfaceName, stats);
         updateCurrentConnectionInfo();
@@ -1634,6 +1688,9 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             }
 
             mWifiNative.setDeviceWiphyCapabilities(mInterfaceName, cap);
+            // The capabilities were changed in place, so predictions made with the same instance
+            // are stale.
+            mWifiNetworkSelector.clearThroughputPredictions();
         }
     }
 
@@ -2093,6 +2150,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     protected boolean recordLogRec(Message msg) {
         switch (msg.what) {
             case CMD_RSSI_POLL:
+            case CMD_SIGNAL_POLL_RESULT:
                 return mVerboseLoggingEnabled;
             default:
                 return true;
@@ -2207,6 +2265,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 }
                 break;
             case CMD_RSSI_POLL:
+            case CMD_SIGNAL_POLL_RESULT:
             case CMD_ONESHOT_RSSI_POLL:
             case CMD_UNWANTED_NETWORK:
                 sb.append(" ");
@@ -2455,6 +2514,10 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 return "CMD_RSSI_POLL";
             case CMD_SAVE_NETWORK:
                 return "CMD_SAVE_NETWORK";
+            case CMD_SIGNAL_POLL_RESULT:
+                return "CMD_SIGNAL_POLL_RESULT";
+            case CMD_DATA_ACTIVITY:
+                return "CMD_DATA_ACTIVITY";
             case CMD_SCREEN_STATE_CHANGED:
                 return "CMD_SCREEN_STATE_CHANGED";
             case CMD_SET_FALLBACK_PACKET_FILTERING:
@@ -2679,7 +2742,17 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
     private WifiLinkLayerStats updateLinkLayerStatsRssiSpeedFrequencyCapabilities(long txBytes,
             long rxBytes) {
         WifiLinkLayerStats stats = getWifiLinkLayerStats();
-        WifiSignalPollResults pollResults = mWifiNative.signalPoll(mInterfaceName);
+        return updateRssiSpeedFrequencyCapabilities(stats, mWifiNative.signalPoll(mInterfaceName),
+                txBytes, rxBytes);
+    }
+
+    /*
+     * Update RSSI, linkspeed, and frequency on current connection with the given signal poll
+     * results, and update Network capabilities
+     */
+    private WifiLinkLayerStats updateRssiSpeedFrequencyCapabilities(
+            @Nullable WifiLinkLayerStats stats, @Nullable WifiSignalPollResults pollResults,
+            long txBytes, long rxBytes) {
         if (pollResults == null) {
             return stats;
         }
@@ -4984,7 +5057,9 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 case WifiMonitor.AUTHENTICATION_FAILURE_EVENT:
                 case WifiMonitor.ASSOCIATION_REJECTION_EVENT:
                 case CMD_RSSI_POLL:
+                case CMD_SIGNAL_POLL_RESULT:
                 case CMD_ONESHOT_RSSI_POLL:
+                case CMD_DATA_ACTIVITY:
                 case CMD_PRE_DHCP_ACTION:
                 case CMD_PRE_DHCP_ACTION_COMPLETE:
                 case CMD_POST_DHCP_ACTION:
@@ -6351,6 +6426,9 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                 }
                 sendMessage(CMD_RSSI_POLL, mRssiPollToken, 0);
             }
+            if (isPrimary() && mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled()) {
+                registerNetworkActiveListener();
+            }
             sendNetworkChangeBroadcast(DetailedState.CONNECTING);
             // If this network was explicitly selected by the user, evaluate whether to inform
             // ConnectivityService of that fact so the system can treat it appropriately.
@@ -6403,6 +6481,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             // Inform WifiLockManager
             mWifiLockManager.updateWifiClientConnected(mClientModeManager, false);
             mLastConnectionCapabilities = null;
+            unregisterNetworkActiveListener();
         }
 
         @Override
@@ -6582,7 +6661,30 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                         break;
                     }
                     if (message.arg1 == mRssiPollToken) {
-                        updateLinkLayerStatsRssiDataStallScoreReport();
+                        // Fetch the stats off the wifi thread, the results are handled on
+                        // CMD_SIGNAL_POLL_RESULT.
+                        final int token = mRssiPollToken;
+                        mSignalPoller.poll(mInterfaceName, shouldFetchLinkLayerStats(),
+                                sample -> sendMessage(CMD_SIGNAL_POLL_RESULT, token, 0, sample));
+                    } else {
+                        // Polling has completed
+                    }
+                    break;
+                }
+                case CMD_DATA_ACTIVITY: {
+                    if (mEnableRssiPolling && isPrimary() && mRssiMonitor.onDataActivity()) {
+                        // Poll now rather than after the long interval the pending poll was
+                        // scheduled with, which is dropped.
+                        mRssiPollToken++;
+                        sendMessage(CMD_RSSI_POLL, mRssiPollToken, 0);
+                    }
+                    break;
+                }
+                case CMD_SIGNAL_POLL_RESULT: {
+                    SignalPoller.Sample sample = (SignalPoller.Sample) message.obj;
+                    if (message.arg1 == mRssiPollToken
+                            && TextUtils.equals(sample.ifaceName, mInterfaceName)) {
+                        updateLinkLayerStatsRssiDataStallScoreReport(sample);
                         mWifiScoreCard.noteSignalPoll(mWifiInfo);
                         if (isPrimary()) {
                             mLinkProbeManager.updateConnectionStats(mWifiInfo, mInterfaceName);
@@ -6601,7 +6703,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
                                     mWifiInfo.txSuccess, mWifiInfo.rxSuccess);
                         }
                     } else {
-                        // Polling has completed
+                        // Polling was stopped or restarted while the sample was fetched
                     }
                     break;
                 }
@@ -6782,17 +6884,31 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
          */
         private WifiLinkLayerStats updateLinkLayerStatsRssiDataStallScoreReport() {
             // Get Info and continue polling
-            long txBytes;
-            long rxBytes;
-            if (SdkLevel.isAtLeastS()) {
-                txBytes = mFacade.getTxBytes(mInterfaceName);
-                rxBytes = mFacade.getRxBytes(mInterfaceName);
-            } else {
-                txBytes = mFacade.getTotalTxBytes() - mFacade.getMobileTxBytes();
-                rxBytes = mFacade.getTotalRxBytes() - mFacade.getMobileRxBytes();
-            }
+            long txBytes = mSignalPoller.getTxBytes(mInterfaceName);
+            long rxBytes = mSignalPoller.getRxBytes(mInterfaceName);
             WifiLinkLayerStats stats = updateLinkLayerStatsRssiSpeedFrequencyCapabilities(txBytes,
                     rxBytes);
+            updateDataStallScoreReport(stats, txBytes, rxBytes);
+            return stats;
+        }
+
+        /**
+         * Same as {@link #updateLinkLayerStatsRssiDataStallScoreReport()}, with the stats fetched
+         * by the {@link SignalPoller}.
+         */
+        private void updateLinkLayerStatsRssiDataStallScoreReport(SignalPoller.Sample sample) {
+            WifiLinkLayerStats stats = updateLinkLayerStats(sample.linkLayerStats,
+                    sample.timestampMillis, sample.txPackets, sample.rxPackets);
+            updateRssiSpeedFrequencyCapabilities(stats,
+                    mSignalPoller.getSignalPollResults(sample), sample.txBytes, sample.rxBytes);
+            updateDataStallScoreReport(stats, sample.txBytes, sample.rxBytes);
+        }
+
+        /**
+         * Updates Wifi Data Stall, usability stats and Score Report with the latest stats.
+         */
+        private void updateDataStallScoreReport(WifiLinkLayerStats stats, long txBytes,
+                long rxBytes) {
             mWifiMetrics.updateWifiUsabilityStatsEntries(mInterfaceName, mWifiInfo, stats);
             // checkDataStallAndThroughputSufficiency() should be called before
             // mWifiScoreReport.calculateAndReportScore() which needs the latest throughput
@@ -6827,7 +6943,6 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
             }
 
             mLastLinkLayerStats = stats;
-            return stats;
         }
     }
 
@@ -8028,7 +8143,7 @@ public class ClientModeImpl extends StateMachine implements ClientMode {
 
         // Go through the matching scan results and update wifi config.
         ScanResultMatchInfo key1 = ScanResultMatchInfo.fromWifiConfiguration(config);
-        List<ScanResult> scanResults = mScanRequestProxy.getScanResults();
+        List<ScanResult> scanResults = mScanRequestProxy.getScanResultsSnapshot();
         for (ScanResult scanResult : scanResults) {
             if (!config.SSID.equals(ScanResultUtil.createQuotedSsid(scanResult.SSID))) {
                 continue;
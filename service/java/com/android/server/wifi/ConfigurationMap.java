@@ -19,7 +19,6 @@ package com.android.server.wifi;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiConfiguration;
 import android.os.UserHandle;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 
@@ -28,8 +27,8 @@ import com.android.server.wifi.util.WifiPermissionsUtil;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 public class ConfigurationMap {
@@ -38,6 +37,17 @@ public class ConfigurationMap {
     private final Map<Integer, WifiConfiguration> mPerIDForCurrentUser = new HashMap<>();
     private final Map<ScanResultMatchInfo, WifiConfiguration>
             mScanResultMatchInfoMapForCurrentUser = new HashMap<>();
+    // Reverse lookup of |mScanResultMatchInfoMapForCurrentUser| keys, to avoid walking the map on
+    // removal.
+    private final Map<Integer, ScanResultMatchInfo> mScanResultMatchInfoPerIDForCurrentUser =
+            new HashMap<>();
+    // Profile key index of |mPerIDForCurrentUser|. Keys are computed when the network is put, so
+    // a network whose profile key is modified in place must be put again.
+    private final Map<String, WifiConfiguration> mPerProfileKeyForCurrentUser = new HashMap<>();
+    private final Map<Integer, String> mProfileKeyPerIDForCurrentUser = new HashMap<>();
+    // Creator UID index of |mPerID|.
+    private final Map<Integer, Map<Integer, WifiConfiguration>> mPerCreatorUid = new HashMap<>();
+    private final Map<Integer, Integer> mCreatorUidPerID = new HashMap<>();
 
     @NonNull private final WifiPermissionsUtil mWifiPermissionsUtil;
 
@@ -53,21 +63,36 @@ public class ConfigurationMap {
         pw.println("mPerIDForCurrentUser=" + mPerIDForCurrentUser);
         pw.println("mScanResultMatchInfoMapForCurrentUser="
                 + mScanResultMatchInfoMapForCurrentUser);
+        pw.println("mPerProfileKeyForCurrentUser=" + mPerProfileKeyForCurrentUser.keySet());
         pw.println("mCurrentUserId=" + mCurrentUserId);
     }
 
     // RW methods:
+    /**
+     * Adds or replaces the network with the same network ID. Also needs to be called again after
+     * modifying the profile key of a network in place, to re-index it.
+     */
     public WifiConfiguration put(WifiConfiguration config) {
         final WifiConfiguration current = mPerID.put(config.networkId, config);
+        if (current != null) {
+            removeFromIndexes(current);
+        }
+        mPerCreatorUid.computeIfAbsent(config.creatorUid, k -> new HashMap<>())
+                .put(config.networkId, config);
+        mCreatorUidPerID.put(config.networkId, config.creatorUid);
         if (config.shared || mWifiPermissionsUtil
                 .doesUidBelongToCurrentUserOrDeviceOwner(config.creatorUid)) {
             mPerIDForCurrentUser.put(config.networkId, config);
+            String profileKey = config.getProfileKey();
+            mPerProfileKeyForCurrentUser.put(profileKey, config);
+            mProfileKeyPerIDForCurrentUser.put(config.networkId, profileKey);
             // TODO (b/142035508): Add a more generic fix. This cache should only hold saved
             // networks.
             if (!config.fromWifiNetworkSpecifier && !config.fromWifiNetworkSuggestion
                     && !config.isPasspoint()) {
-                mScanResultMatchInfoMapForCurrentUser.put(
-                        ScanResultMatchInfo.fromWifiConfiguration(config), config);
+                ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromWifiConfiguration(config);
+                mScanResultMatchInfoMapForCurrentUser.put(matchInfo, config);
+                mScanResultMatchInfoPerIDForCurrentUser.put(config.networkId, matchInfo);
             }
         }
         return current;
@@ -78,24 +103,63 @@ public class ConfigurationMap {
         if (config == null) {
             return null;
         }
+        removeFromIndexes(config);
+        return config;
+    }
+
+    private void removeFromIndexes(WifiConfiguration config) {
+        int netID = config.networkId;
+        Integer creatorUid = mCreatorUidPerID.remove(netID);
+        if (creatorUid != null) {
+            Map<Integer, WifiConfiguration> sameCreator = mPerCreatorUid.get(creatorUid);
+            sameCreator.remove(netID);
+            if (sameCreator.isEmpty()) {
+                mPerCreatorUid.remove(creatorUid);
+            }
+        }
 
         mPerIDForCurrentUser.remove(netID);
 
-        Iterator<Map.Entry<ScanResultMatchInfo, WifiConfiguration>> scanResultMatchInfoEntries =
-                mScanResultMatchInfoMapForCurrentUser.entrySet().iterator();
-        while (scanResultMatchInfoEntries.hasNext()) {
-            if (scanResultMatchInfoEntries.next().getValue().networkId == netID) {
-                scanResultMatchInfoEntries.remove();
-                break;
+        String profileKey = mProfileKeyPerIDForCurrentUser.remove(netID);
+        if (profileKey != null) {
+            WifiConfiguration indexed = mPerProfileKeyForCurrentUser.get(profileKey);
+            if (indexed != null && indexed.networkId == netID) {
+                mPerProfileKeyForCurrentUser.remove(profileKey);
+                // If some networks share a key, fall back to another one added with this key.
+                if (mPerProfileKeyForCurrentUser.size() < mProfileKeyPerIDForCurrentUser.size()) {
+                    reindexProfileKey(profileKey);
+                }
+            }
+        }
+
+        ScanResultMatchInfo matchInfo = mScanResultMatchInfoPerIDForCurrentUser.remove(netID);
+        if (matchInfo != null) {
+            WifiConfiguration indexed = mScanResultMatchInfoMapForCurrentUser.get(matchInfo);
+            if (indexed != null && indexed.networkId == netID) {
+                mScanResultMatchInfoMapForCurrentUser.remove(matchInfo);
+            }
+        }
+    }
+
+    private void reindexProfileKey(String profileKey) {
+        for (Map.Entry<Integer, String> entry : mProfileKeyPerIDForCurrentUser.entrySet()) {
+            if (profileKey.equals(entry.getValue())) {
+                mPerProfileKeyForCurrentUser.put(
+                        profileKey, mPerIDForCurrentUser.get(entry.getKey()));
+                return;
             }
         }
-        return config;
     }
 
     public void clear() {
         mPerID.clear();
         mPerIDForCurrentUser.clear();
         mScanResultMatchInfoMapForCurrentUser.clear();
+        mScanResultMatchInfoPerIDForCurrentUser.clear();
+        mPerProfileKeyForCurrentUser.clear();
+        mProfileKeyPerIDForCurrentUser.clear();
+        mPerCreatorUid.clear();
+        mCreatorUidPerID.clear();
     }
 
     /**
@@ -128,12 +192,18 @@ public class ConfigurationMap {
         if (key == null) {
             return null;
         }
-        for (WifiConfiguration config : mPerIDForCurrentUser.values()) {
-            if (TextUtils.equals(config.getProfileKey(), key)) {
-                return config;
-            }
+        return mPerProfileKeyForCurrentUser.get(key);
+    }
+
+    /**
+     * Retrieves all the networks created by the provided UID, across all users.
+     */
+    public Collection<WifiConfiguration> getByCreatorUidForAllUsers(int creatorUid) {
+        Map<Integer, WifiConfiguration> configs = mPerCreatorUid.get(creatorUid);
+        if (configs == null) {
+            return Collections.emptyList();
         }
-        return null;
+        return Collections.unmodifiableCollection(configs.values());
     }
 
     /**
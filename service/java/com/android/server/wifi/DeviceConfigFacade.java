@@ -152,6 +152,12 @@ public class DeviceConfigFacade {
     // Maximum traffic stats threshold for link bandwidth estimator
     static final int DEFAULT_TRAFFIC_STATS_THRESHOLD_MAX_KB = 8000;
     static final int DEFAULT_BANDWIDTH_ESTIMATOR_TIME_CONSTANT_LARGE_SEC = 6;
+    // Default shortest and longest link layer stats and RSSI polling intervals of the adaptive
+    // polling mode
+    static final int DEFAULT_ADAPTIVE_POLL_RSSI_MIN_INTERVAL_MS = 3_000;
+    static final int DEFAULT_ADAPTIVE_POLL_RSSI_MAX_INTERVAL_MS = 30_000;
+    // Default maximum number of ANQP requests waiting for a response at the same time
+    static final int DEFAULT_ANQP_REQUEST_MAX_IN_FLIGHT = 3;
     // Cached values of fields updated via updateDeviceConfigFlags()
     private boolean mIsAbnormalConnectionBugreportEnabled;
     private int mAbnormalConnectionDurationMs;
@@ -217,9 +223,14 @@ public class DeviceConfigFacade {
     private Consumer<Boolean> mOobPseudonymFeatureFlagChangedListener = null;
     private boolean mApplicationQosPolicyApiEnabled;
     private boolean mAdjustPollRssiIntervalEnabled;
+    private boolean mAdaptivePollRssiIntervalEnabled;
+    private int mAdaptivePollRssiMinIntervalMs;
+    private int mAdaptivePollRssiMaxIntervalMs;
     private boolean mSoftwarePnoEnabled;
     private boolean mIncludePasspointSsidsInPnoScans;
     private boolean mHandleRssiOrganicKernelFailuresEnabled;
+    private boolean mPersistAnqpCacheEnabled;
+    private int mAnqpRequestMaxInFlight;
 
     private final Handler mWifiHandler;
 
@@ -415,12 +426,22 @@ public class DeviceConfigFacade {
                 "application_qos_policy_api_enabled", true);
         mAdjustPollRssiIntervalEnabled =
                 DeviceConfig.getBoolean(NAMESPACE, "adjust_poll_rssi_interval_enabled", false);
+        mAdaptivePollRssiIntervalEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "adaptive_poll_rssi_interval_enabled", false);
+        mAdaptivePollRssiMinIntervalMs = DeviceConfig.getInt(NAMESPACE,
+                "adaptive_poll_rssi_min_interval_ms", DEFAULT_ADAPTIVE_POLL_RSSI_MIN_INTERVAL_MS);
+        mAdaptivePollRssiMaxIntervalMs = DeviceConfig.getInt(NAMESPACE,
+                "adaptive_poll_rssi_max_interval_ms", DEFAULT_ADAPTIVE_POLL_RSSI_MAX_INTERVAL_MS);
         mSoftwarePnoEnabled = DeviceConfig.getBoolean(NAMESPACE,
                 "software_pno_enabled", false);
         mIncludePasspointSsidsInPnoScans = DeviceConfig.getBoolean(NAMESPACE,
                 "include_passpoint_ssids_in_pno_scans", true);
         mHandleRssiOrganicKernelFailuresEnabled = DeviceConfig.getBoolean(NAMESPACE,
                 "handle_rssi_organic_kernel_failures_enabled", true);
+        mPersistAnqpCacheEnabled = DeviceConfig.getBoolean(NAMESPACE,
+                "persist_anqp_cache_enabled", false);
+        mAnqpRequestMaxInFlight = DeviceConfig.getInt(NAMESPACE,
+                "anqp_request_max_in_flight", DEFAULT_ANQP_REQUEST_MAX_IN_FLIGHT);
     }
 
     private Set<String> getUnmodifiableSetQuoted(String key) {
@@ -887,6 +908,28 @@ public class DeviceConfigFacade {
         return mAdjustPollRssiIntervalEnabled;
     }
 
+    /**
+     * Gets the feature flag for adapting the link layer stats and RSSI polling interval to the
+     * link stability
+     */
+    public boolean isAdaptivePollRssiIntervalEnabled() {
+        return mAdaptivePollRssiIntervalEnabled;
+    }
+
+    /**
+     * Gets the shortest link layer stats and RSSI polling interval of the adaptive polling mode
+     */
+    public int getAdaptivePollRssiMinIntervalMs() {
+        return mAdaptivePollRssiMinIntervalMs;
+    }
+
+    /**
+     * Gets the longest link layer stats and RSSI polling interval of the adaptive polling mode
+     */
+    public int getAdaptivePollRssiMaxIntervalMs() {
+        return mAdaptivePollRssiMaxIntervalMs;
+    }
+
     /**
      * Gets the feature flag for Software PNO
      */
@@ -909,6 +952,20 @@ public class DeviceConfigFacade {
         return mHandleRssiOrganicKernelFailuresEnabled;
     }
 
+    /**
+     * Gets the feature flag for persisting the Passpoint ANQP cache across reboots
+     */
+    public boolean isPersistAnqpCacheEnabled() {
+        return mPersistAnqpCacheEnabled;
+    }
+
+    /**
+     * Gets the maximum number of ANQP requests waiting for a response at the same time
+     */
+    public int getAnqpRequestMaxInFlight() {
+        return mAnqpRequestMaxInFlight;
+    }
+
     /*
      * Sets the listener to be notified when the OOB Pseudonym feature is enabled;
      * Only 1 listener is accepted.
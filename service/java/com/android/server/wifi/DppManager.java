@@ -939,7 +939,7 @@ public class DppManager {
         /* Check the scan cache for the network enrollee tried to find */
         boolean isNetworkInScanCache = false;
         boolean channelMatch = false;
-        for (ScanResult scanResult : mScanRequestProxy.getScanResults()) {
+        for (ScanResult scanResult : mScanRequestProxy.getScanResultsSnapshot()) {
             if (!TextUtils.equals(ssid, scanResult.SSID)) {
                 continue;
             }
@@ -22,15 +22,30 @@ import android.net.wifi.WifiManager;
 import android.net.wifi.WifiManager.DeviceMobilityState;
 import android.util.Log;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import java.util.Arrays;
 
 /**
  * Class for App and client mode RSSI monitoring. It processes the RSSI thresholds for these
  * monitors and enables/disables the monitoring accordingly. It also changes the RSSI polling
- * interval dynamically based on the client mode RSSI monitoring and device mobility state.
+ * interval dynamically based on the client mode RSSI monitoring and device mobility state, or
+ * on the link stability in the adaptive polling mode.
  */
 public class RssiMonitor {
     private static final String TAG = "RssiMonitor";
+    // In the adaptive polling mode, the link is stable while the RSSI is within this margin of
+    // the predicted RSSI, and its estimated rate of change stays below this rate.
+    @VisibleForTesting
+    static final double ADAPTIVE_POLL_MAX_RSSI_PREDICTION_ERROR_DB = 3.0;
+    @VisibleForTesting
+    static final double ADAPTIVE_POLL_MAX_RSSI_RATE_OF_CHANGE_DB_PER_SEC = 0.5;
+    // The link is also unstable if the link speed changes by more than this percentage, or if
+    // there is more traffic than this.
+    @VisibleForTesting
+    static final int ADAPTIVE_POLL_MAX_LINK_SPEED_CHANGE_PERCENT = 20;
+    @VisibleForTesting
+    static final double ADAPTIVE_POLL_MAX_IDLE_PACKETS_PER_SECOND = 1.0;
     private boolean mVerboseLoggingEnabled = false;
 
     private final WifiGlobals mWifiGlobals;
@@ -40,15 +55,23 @@ public class RssiMonitor {
     private final String mInterfaceName;
     private final Runnable mUpdateCapabilityRunnable;
     private final DeviceConfigFacade mDeviceConfigFacade;
+    private final Clock mClock;
+    // Predicts the RSSI of the next poll in the adaptive polling mode, with the same model as
+    // the connected score.
+    private final VelocityBasedConnectedScore mRssiPredictor;
 
     private boolean mEnableClientRssiMonitor = false;
     private boolean mIsPollRssiIntervalOverridden = false;
     private int[] mAppThresholds = {};
     private byte[] mRssiRanges = {};
+    private long mLastAdaptivePollMillis = 0;
+    private int mLastTxLinkSpeedMbps = -1;
+    private int mLastRxLinkSpeedMbps = -1;
 
     public RssiMonitor(WifiGlobals wifiGlobals, WifiThreadRunner wifiThreadRunner,
             WifiInfo wifiInfo, WifiNative wifiNative, String interfaceName,
-            Runnable updateCapabilityRunnable, DeviceConfigFacade deviceConfigFacade) {
+            Runnable updateCapabilityRunnable, DeviceConfigFacade deviceConfigFacade,
+            Clock clock) {
         mWifiGlobals = wifiGlobals;
         mWifiThreadRunner = wifiThreadRunner;
         mWifiInfo = wifiInfo;
@@ -56,6 +79,8 @@ public class RssiMonitor {
         mInterfaceName = interfaceName;
         mUpdateCapabilityRunnable = updateCapabilityRunnable;
         mDeviceConfigFacade = deviceConfigFacade;
+        mClock = clock;
+        mRssiPredictor = new VelocityBasedConnectedScore(new ScoringParams(), clock);
     }
 
     private void logd(String string) {
@@ -136,6 +161,7 @@ public class RssiMonitor {
         mEnableClientRssiMonitor = false;
         mAppThresholds = new int[] {};
         mRssiRanges = new byte[] {};
+        resetAdaptivePollState();
         if (!mIsPollRssiIntervalOverridden) {
             int shortInterval = mWifiGlobals.getPollRssiShortIntervalMillis();
             mWifiGlobals.setPollRssiIntervalMillis(shortInterval);
@@ -155,12 +181,19 @@ public class RssiMonitor {
      * Update the RSSI polling interval based on the current device mobility state and RSSI.
      * If the device is stationary and RSSI is high, change to the long interval. Otherwise,
      * change to the short interval.
+     * In the adaptive polling mode, the interval is instead based on the link stability, see
+     * {@link #updateAdaptivePollRssiInterval()}.
      * @param state the current device mobility state
      */
     public void updatePollRssiInterval(@DeviceMobilityState int state) {
-        if (!mWifiGlobals.isAdjustPollRssiIntervalEnabled()
-                || !mDeviceConfigFacade.isAdjustPollRssiIntervalEnabled()
-                || mIsPollRssiIntervalOverridden) {
+        if (!mWifiGlobals.isAdjustPollRssiIntervalEnabled() || mIsPollRssiIntervalOverridden) {
+            return;
+        }
+        if (mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled()) {
+            updateAdaptivePollRssiInterval();
+            return;
+        }
+        if (!mDeviceConfigFacade.isAdjustPollRssiIntervalEnabled()) {
             return;
         }
         int curRssi = mWifiInfo.getRssi();
@@ -175,6 +208,110 @@ public class RssiMonitor {
         }
     }
 
+    /**
+     * Doubles the polling interval, up to the configured maximum, while the link is stable, and
+     * goes back to the configured minimum as soon as it isn't. The client mode RSSI monitor is
+     * enabled while polling less often than the regular interval, so that a drop of RSSI is
+     * still caught by the firmware.
+     */
+    private void updateAdaptivePollRssiInterval() {
+        int minInterval = mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs();
+        int maxInterval = Math.max(minInterval,
+                mDeviceConfigFacade.getAdaptivePollRssiMaxIntervalMs());
+        int curInterval = mWifiGlobals.getPollRssiIntervalMillis();
+        int newInterval = isLinkStable()
+                ? Math.min(Math.max(curInterval, minInterval) * 2, maxInterval) : minInterval;
+        if (newInterval == curInterval) {
+            return;
+        }
+        setAdaptivePollRssiInterval(newInterval);
+    }
+
+    /**
+     * Called when data activity begins on the network. In the adaptive polling mode, goes back
+     * to the minimum polling interval, since the link isn't idle anymore.
+     * @return true if the polling interval was shortened, in which case the caller should poll
+     * right away rather than wait for the previous interval to elapse.
+     */
+    public boolean onDataActivity() {
+        if (!mWifiGlobals.isAdjustPollRssiIntervalEnabled() || mIsPollRssiIntervalOverridden
+                || !mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled()) {
+            return false;
+        }
+        int minInterval = mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs();
+        if (mWifiGlobals.getPollRssiIntervalMillis() <= minInterval) {
+            return false;
+        }
+        setAdaptivePollRssiInterval(minInterval);
+        return true;
+    }
+
+    private void setAdaptivePollRssiInterval(int newInterval) {
+        logd("Adaptive RSSI polling interval changed to " + newInterval + " ms");
+        mWifiGlobals.setPollRssiIntervalMillis(newInterval);
+        boolean enableClientRssiMonitor =
+                newInterval > mWifiGlobals.getPollRssiShortIntervalMillis();
+        if (enableClientRssiMonitor && !mEnableClientRssiMonitor) {
+            enableClientRssiMonitorAndUpdateThresholds(mWifiInfo.getRssi());
+        } else if (!enableClientRssiMonitor && mEnableClientRssiMonitor) {
+            disableClientRssiMonitorAndUpdateThresholds(mWifiInfo.getRssi());
+        }
+    }
+
+    /**
+     * Feeds the latest poll results to the RSSI predictor, and returns whether the link is
+     * stable: the RSSI is high, was predicted and is steady, the link speed didn't change much
+     * and there is no traffic.
+     */
+    private boolean isLinkStable() {
+        int rssi = mWifiInfo.getRssi();
+        long nowMillis = mClock.getElapsedSinceBootMillis();
+        int txLinkSpeedMbps = mWifiInfo.getTxLinkSpeedMbps();
+        int rxLinkSpeedMbps = mWifiInfo.getRxLinkSpeedMbps();
+        if (rssi == WifiInfo.INVALID_RSSI) {
+            resetAdaptivePollState();
+            return false;
+        }
+        boolean hasPrediction = mLastAdaptivePollMillis > 0 && nowMillis > mLastAdaptivePollMillis;
+        double predictedRssi = hasPrediction
+                ? mRssiPredictor.getFilteredRssi() + mRssiPredictor.getEstimatedRateOfRssiChange()
+                        * (nowMillis - mLastAdaptivePollMillis) * 0.001
+                : rssi;
+        mRssiPredictor.updateUsingRssi(rssi, nowMillis);
+
+        boolean isStable = hasPrediction
+                && Math.abs(rssi - predictedRssi) <= ADAPTIVE_POLL_MAX_RSSI_PREDICTION_ERROR_DB
+                && Math.abs(mRssiPredictor.getEstimatedRateOfRssiChange())
+                        <= ADAPTIVE_POLL_MAX_RSSI_RATE_OF_CHANGE_DB_PER_SEC
+                && rssi >= mWifiGlobals.getClientRssiMonitorThresholdDbm()
+                        + mWifiGlobals.getClientRssiMonitorHysteresisDb()
+                && !hasLinkSpeedChanged(mLastTxLinkSpeedMbps, txLinkSpeedMbps)
+                && !hasLinkSpeedChanged(mLastRxLinkSpeedMbps, rxLinkSpeedMbps)
+                && mWifiInfo.getSuccessfulTxPacketsPerSecond()
+                        + mWifiInfo.getSuccessfulRxPacketsPerSecond()
+                        <= ADAPTIVE_POLL_MAX_IDLE_PACKETS_PER_SECOND;
+        mLastAdaptivePollMillis = nowMillis;
+        mLastTxLinkSpeedMbps = txLinkSpeedMbps;
+        mLastRxLinkSpeedMbps = rxLinkSpeedMbps;
+        return isStable;
+    }
+
+    private static boolean hasLinkSpeedChanged(int lastLinkSpeedMbps, int linkSpeedMbps) {
+        if (lastLinkSpeedMbps <= 0 || linkSpeedMbps <= 0) {
+            // Not reported by the driver
+            return lastLinkSpeedMbps != linkSpeedMbps;
+        }
+        return Math.abs(linkSpeedMbps - lastLinkSpeedMbps) * 100
+                > ADAPTIVE_POLL_MAX_LINK_SPEED_CHANGE_PERCENT * lastLinkSpeedMbps;
+    }
+
+    private void resetAdaptivePollState() {
+        mRssiPredictor.reset();
+        mLastAdaptivePollMillis = 0;
+        mLastTxLinkSpeedMbps = -1;
+        mLastRxLinkSpeedMbps = -1;
+    }
+
     private void setLongPollRssiInterval() {
         int longInterval = mWifiGlobals.getPollRssiLongIntervalMillis();
         if (mWifiGlobals.getPollRssiIntervalMillis() == longInterval) {
@@ -26,18 +26,28 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
 import android.os.Trace;
+import android.util.ArrayMap;
 import android.util.LocalLog;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.modules.utils.HandlerExecutor;
 import com.android.server.wifi.proto.WifiStatsLog;
+import com.android.server.wifi.util.IntHistogram;
 
+import java.io.PrintWriter;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * RunnerHandler tracks all the Runnable jobs posted to the handler for the running time and
  * monitor if the running time exceeds the expected threshold.
  *
+ * Jobs are attributed to a cheap signature derived from the callback class (or the message what)
+ * when they run. The stack of the caller is only captured for a sample of the posted jobs, and
+ * for jobs whose signature is known to have overrun the threshold.
  */
 public class RunnerHandler extends Handler {
     private static final String TAG = "WifiThreadRunner";
@@ -45,10 +55,30 @@ public class RunnerHandler extends Handler {
     private static final String KEY_SIGNATURE = "KEY_RUNNER_HANDLER_SIGNATURE";
     private static final String KEY_WHEN = "KEY_RUNNER_HANDLER_WHEN";
     private static final int METRICS_THRESHOLD_MILLIS = 100;
+    private static final String UNKNOWN_SIGNATURE = "<UNKNOWN>";
+    // Capture the caller stack for one in this many posted jobs.
+    @VisibleForTesting
+    static final int CALLER_SAMPLING_INTERVAL = 64;
+    // Maximum number of job signatures whose caller is captured after an overrun.
+    @VisibleForTesting
+    static final int MAX_OVERRUN_SIGNATURES = 32;
+    // Number of posts of a job whose caller is captured after the job overran.
+    @VisibleForTesting
+    static final int CALLER_CAPTURES_AFTER_OVERRUN = 4;
+    private static final int[] LATENCY_HISTOGRAM_BUCKETS_MILLIS =
+            {1, 5, 10, 20, 50, 100, 200, 500, 1000, 2000};
 
     private final int mRunningTimeThresholdInMilliseconds;
     private Set<String> mIgnoredClasses = new HashSet<>();
     private Set<String> mIgnoredMethods = new HashSet<>();
+    // Jobs are posted from any thread, so the tables below are concurrent.
+    private final Map<Class<?>, String> mCallbackSignatures = new ConcurrentHashMap<>();
+    private final Map<Integer, String> mWhatSignatures = new ConcurrentHashMap<>();
+    // Job signature to the number of posts left whose caller is captured after an overrun.
+    private final Map<String, Integer> mOverrunCapturesLeft = new ConcurrentHashMap<>();
+    private final AtomicInteger mNumPostedJobs = new AtomicInteger();
+    // Updated on the handler thread, read by dump(). Guarded by itself.
+    private final ArrayMap<String, TaskStats> mTaskStats = new ArrayMap<>();
 
     // TODO: b/246623192 Add Wifi metric for Runner state overruns.
     private final LocalLog mLocalLog;
@@ -96,47 +126,102 @@ public class RunnerHandler extends Handler {
                 break;
             }
         }
-        return sb.length() == 0 ? "<UNKNOWN>" : sb.toString();
+        return sb.length() == 0 ? UNKNOWN_SIGNATURE : sb.toString();
+    }
+
+    /**
+     * Get the signature of the job from the callback class, or from the message what if there is
+     * no callback. The signatures are memoized, so this does not allocate for known jobs.
+     */
+    private String getJobSignature(Message msg) {
+        Runnable callback = msg.getCallback();
+        if (callback == null) {
+            String signature = mWhatSignatures.get(msg.what);
+            if (signature == null) {
+                signature = mWhatSignatures.computeIfAbsent(msg.what, what -> "what=" + what);
+            }
+            return signature;
+        }
+        // Attribute the jobs wrapped by WifiThreadRunner to the wrapped task.
+        Class<?> callbackClass = callback instanceof WrappedRunnable
+                ? ((WrappedRunnable) callback).getWrappedClass() : callback.getClass();
+        String signature = mCallbackSignatures.get(callbackClass);
+        if (signature == null) {
+            signature = mCallbackSignatures.computeIfAbsent(callbackClass, c -> {
+                String name = c.getName();
+                return name.substring(name.lastIndexOf('.') + 1).intern();
+            });
+        }
+        return signature;
+    }
+
+    private boolean shouldCaptureCaller(Message msg) {
+        if (mNumPostedJobs.incrementAndGet() % CALLER_SAMPLING_INTERVAL == 0) {
+            return true;
+        }
+        if (mOverrunCapturesLeft.isEmpty()) {
+            return false;
+        }
+        String jobSignature = getJobSignature(msg);
+        Integer capturesLeft = mOverrunCapturesLeft.get(jobSignature);
+        if (capturesLeft == null) {
+            return false;
+        }
+        if (capturesLeft > 1) {
+            mOverrunCapturesLeft.replace(jobSignature, capturesLeft, capturesLeft - 1);
+        } else {
+            mOverrunCapturesLeft.remove(jobSignature, capturesLeft);
+        }
+        return true;
     }
 
     @Override
     public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
-        String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
-                msg.getCallback());
-        Bundle bundle = msg.getData();
-        bundle.putString(KEY_SIGNATURE, signature);
+        if (shouldCaptureCaller(msg)) {
+            String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
+                    msg.getCallback());
+            msg.getData().putString(KEY_SIGNATURE, signature);
+        }
         return super.sendMessageAtTime(msg, uptimeMillis);
     }
 
     @Override
     public void dispatchMessage(@NonNull Message msg) {
-        final Bundle bundle = msg.getData();
-        final String signature = bundle.getString(KEY_SIGNATURE);
-        if (signature != null) {
-            Trace.traceBegin(Trace.TRACE_TAG_NETWORK, signature);
-        }
-        // The message sent to front of the queue has when=0, get from the bundle in that case.
-        final long when = msg.getWhen() != 0 ? msg.getWhen() : bundle.getLong(KEY_WHEN);
+        // Don't use getData(), which creates an empty Bundle for messages without a signature.
+        final Bundle bundle = msg.peekData();
+        final String callerSignature = bundle != null ? bundle.getString(KEY_SIGNATURE) : null;
+        final String jobSignature = getJobSignature(msg);
+        final String signature = callerSignature != null ? callerSignature : jobSignature;
+        Trace.traceBegin(Trace.TRACE_TAG_NETWORK, signature);
         final long start = SystemClock.uptimeMillis();
+        // The message sent to front of the queue has when=0, get from the bundle in that case.
+        final long when = msg.getWhen() != 0 ? msg.getWhen()
+                : bundle != null ? bundle.getLong(KEY_WHEN, start) : start;
         final long scheduleLatency = start - when;
         super.dispatchMessage(msg);
-        if (signature != null) {
-            Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
-        }
+        Trace.traceEnd(Trace.TRACE_TAG_NETWORK);
         final long runTime = SystemClock.uptimeMillis() - start;
-        final String signatureToLog = signature != null ? signature : "unknown";
+        updateTaskStats(jobSignature, runTime, scheduleLatency);
+        if (runTime > mRunningTimeThresholdInMilliseconds || runTime > METRICS_THRESHOLD_MILLIS) {
+            // Capture the caller of the next few posts of this job to attribute the overrun.
+            // Only this thread adds signatures, so the size check doesn't race.
+            if (mOverrunCapturesLeft.size() < MAX_OVERRUN_SIGNATURES
+                    || mOverrunCapturesLeft.containsKey(jobSignature)) {
+                mOverrunCapturesLeft.put(jobSignature, CALLER_CAPTURES_AFTER_OVERRUN);
+            }
+        }
         if (runTime > mRunningTimeThresholdInMilliseconds) {
-            mLocalLog.log(signatureToLog + " was running for " + runTime);
+            mLocalLog.log(signature + " was running for " + runTime);
         }
         if (scheduleLatency > WifiThreadRunner.getScissorsTimeoutThreshold()) {
-            mLocalLog.log(signatureToLog + " schedule latency " + scheduleLatency + " ms");
+            mLocalLog.log(signature + " schedule latency " + scheduleLatency + " ms");
         }
         if (runTime > METRICS_THRESHOLD_MILLIS || scheduleLatency > METRICS_THRESHOLD_MILLIS) {
             WifiStatsLog.write(
                     WIFI_THREAD_TASK_EXECUTED,
                     (int) runTime,
                     (int) scheduleLatency,
-                    signatureToLog);
+                    signature);
         }
     }
 
@@ -149,11 +234,63 @@ public class RunnerHandler extends Handler {
      */
     public final boolean postToFront(@NonNull Runnable r) {
         Message msg = Message.obtain(this, r);
-        String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
-                msg.getCallback());
         Bundle bundle = msg.getData();
-        bundle.putString(KEY_SIGNATURE, signature);
+        if (shouldCaptureCaller(msg)) {
+            String signature = getSignature(new Throwable("RunnerHandler:").getStackTrace(),
+                    msg.getCallback());
+            bundle.putString(KEY_SIGNATURE, signature);
+        }
         bundle.putLong(KEY_WHEN, SystemClock.uptimeMillis());
         return sendMessageAtFrontOfQueue(msg);
     }
+
+    private void updateTaskStats(String jobSignature, long runTime, long scheduleLatency) {
+        synchronized (mTaskStats) {
+            TaskStats stats = mTaskStats.get(jobSignature);
+            if (stats == null) {
+                stats = new TaskStats();
+                mTaskStats.put(jobSignature, stats);
+            }
+            stats.count++;
+            stats.runTimeMillis.increment((int) Math.min(runTime, Integer.MAX_VALUE));
+            stats.scheduleLatencyMillis.increment(
+                    (int) Math.min(scheduleLatency, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Dump the per job run time and schedule latency histograms.
+     */
+    public void dump(@NonNull PrintWriter pw) {
+        pw.println("Dump of RunnerHandler");
+        synchronized (mTaskStats) {
+            for (int i = 0; i < mTaskStats.size(); i++) {
+                TaskStats stats = mTaskStats.valueAt(i);
+                pw.println(mTaskStats.keyAt(i) + ": count=" + stats.count
+                        + " runTimeMillis=" + stats.runTimeMillis
+                        + " scheduleLatencyMillis=" + stats.scheduleLatencyMillis);
+            }
+        }
+        pw.println("Jobs with caller capture after overrun: " + mOverrunCapturesLeft);
+    }
+
+    /**
+     * A Runnable which wraps another task, e.g. to wait for its completion. The jobs are
+     * attributed to the class of the wrapped task rather than to the wrapper.
+     */
+    interface WrappedRunnable extends Runnable {
+        /** Returns the class of the wrapped task. */
+        @NonNull Class<?> getWrappedClass();
+    }
+
+    /**
+     * Run time and schedule latency of the jobs with the same signature.
+     */
+    private static class TaskStats {
+        public int count;
+        public final IntHistogram runTimeMillis =
+                new IntHistogram(LATENCY_HISTOGRAM_BUCKETS_MILLIS);
+        public final IntHistogram scheduleLatencyMillis =
+                new IntHistogram(LATENCY_HISTOGRAM_BUCKETS_MILLIS);
+    }
 }
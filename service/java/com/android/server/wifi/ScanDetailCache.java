@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * Maps BSSIDs to their individual ScanDetails for a given WifiConfiguration.
@@ -36,17 +37,63 @@ public class ScanDetailCache {
     private static final String TAG = "ScanDetailCache";
     private static final boolean DBG = false;
 
+    /**
+     * Oldest first, by the time the ScanDetail was last seen. Used to pick the entries to trim.
+     */
+    private static final Comparator<IndexKey> OLDEST_FIRST = (a, b) -> {
+        if (a.detailSeen != b.detailSeen) {
+            return a.detailSeen > b.detailSeen ? 1 : -1;
+        }
+        return a.bssid.compareTo(b.bssid);
+    };
+
+    /**
+     * Most recent first, by the time the ScanResult was last seen, followed by descending RSSI.
+     */
+    private static final Comparator<IndexKey> MOST_RECENT_FIRST = (a, b) -> {
+        if (a.resultSeen != b.resultSeen) {
+            return a.resultSeen > b.resultSeen ? -1 : 1;
+        }
+        if (a.level != b.level) {
+            return a.level > b.level ? -1 : 1;
+        }
+        return a.bssid.compareTo(b.bssid);
+    };
+
     private final WifiConfiguration mConfig;
     private final int mMaxSize;
     private final int mTrimSize;
     private final HashMap<String, ScanDetail> mMap;
+    // Ordering fields captured when each ScanDetail was inserted, keyed by BSSID. The ordered
+    // indexes below must be updated through these keys since ScanDetail is mutable.
+    private final HashMap<String, IndexKey> mIndexKeys;
+    private final TreeSet<IndexKey> mOldestFirst;
+    private final TreeSet<IndexKey> mMostRecentFirst;
+
+    /**
+     * Snapshot of the fields of a ScanDetail used to order the cache.
+     */
+    private static final class IndexKey {
+        public final String bssid;
+        public final long detailSeen;
+        public final long resultSeen;
+        public final int level;
+
+        IndexKey(ScanDetail scanDetail) {
+            ScanResult result = scanDetail.getScanResult();
+            bssid = scanDetail.getBSSIDString();
+            detailSeen = scanDetail.getSeen();
+            resultSeen = result.seen;
+            level = result.level;
+        }
+    }
 
     /**
      * Scan Detail cache associated with each configured network.
      *
      * The cache size is trimmed down to |trimSize| once it crosses the provided |maxSize|.
-     * Since this operation is relatively expensive, ensure that |maxSize| and |trimSize| are not
-     * too close to each other. |trimSize| should always be <= |maxSize|.
+     * Entries are kept ordered by the time they were last seen, so trimming only touches the
+     * entries being removed. |trimSize| should always be <= |maxSize|.
      *
      * @param config   WifiConfiguration object corresponding to the network.
      * @param maxSize  Max size desired for the cache.
@@ -57,6 +104,9 @@ public class ScanDetailCache {
         mMaxSize = maxSize;
         mTrimSize = trimSize;
         mMap = new HashMap(16, 0.75f);
+        mIndexKeys = new HashMap<>(16, 0.75f);
+        mOldestFirst = new TreeSet<>(OLDEST_FIRST);
+        mMostRecentFirst = new TreeSet<>(MOST_RECENT_FIRST);
     }
 
     void put(ScanDetail scanDetail) {
@@ -65,7 +115,22 @@ public class ScanDetailCache {
             trim();
         }
 
-        mMap.put(scanDetail.getBSSIDString(), scanDetail);
+        String bssid = scanDetail.getBSSIDString();
+        mMap.put(bssid, scanDetail);
+        reindex(bssid, scanDetail);
+    }
+
+    /**
+     * Re-order the entry for the provided BSSID after its seen time or RSSI have been updated
+     * in place.
+     *
+     * @param bssid provided BSSID
+     */
+    void onScanDetailUpdated(@NonNull String bssid) {
+        ScanDetail scanDetail = mMap.get(bssid);
+        if (scanDetail != null) {
+            reindex(bssid, scanDetail);
+        }
     }
 
     /**
@@ -91,6 +156,7 @@ public class ScanDetailCache {
 
     void remove(@NonNull String bssid) {
         mMap.remove(bssid);
+        removeFromIndex(bssid);
     }
 
     int size() {
@@ -102,43 +168,44 @@ public class ScanDetailCache {
     }
 
     Collection<String> keySet() {
-        return mMap.keySet();
+        return Collections.unmodifiableSet(mMap.keySet());
     }
 
     Collection<ScanDetail> values() {
-        return mMap.values();
+        return Collections.unmodifiableCollection(mMap.values());
+    }
+
+    private void reindex(String bssid, ScanDetail scanDetail) {
+        removeFromIndex(bssid);
+        IndexKey key = new IndexKey(scanDetail);
+        mIndexKeys.put(bssid, key);
+        mOldestFirst.add(key);
+        mMostRecentFirst.add(key);
+    }
+
+    private void removeFromIndex(String bssid) {
+        IndexKey key = mIndexKeys.remove(bssid);
+        if (key != null) {
+            mOldestFirst.remove(key);
+            mMostRecentFirst.remove(key);
+        }
     }
 
     /**
      * Method to reduce the cache to |mTrimSize| size by removing the oldest entries.
-     * TODO: Investigate if this method can be further optimized.
      */
     private void trim() {
         int currentSize = mMap.size();
         if (currentSize < mTrimSize) {
             return; // Nothing to trim
         }
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            // Sort by ascending timestamp (oldest scan results first)
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanDetail a = (ScanDetail) o1;
-                    ScanDetail b = (ScanDetail) o2;
-                    if (a.getSeen() > b.getSeen()) {
-                        return 1;
-                    }
-                    if (a.getSeen() < b.getSeen()) {
-                        return -1;
-                    }
-                    return a.getBSSIDString().compareTo(b.getBSSIDString());
-                }
-            });
-        }
         for (int i = 0; i < currentSize - mTrimSize; i++) {
             // Remove oldest results from scan cache
-            ScanDetail result = list.get(i);
-            mMap.remove(result.getBSSIDString());
+            IndexKey oldest = mOldestFirst.pollFirst();
+            if (oldest == null) break;
+            mIndexKeys.remove(oldest.bssid);
+            mMostRecentFirst.remove(oldest);
+            mMap.remove(oldest.bssid);
         }
     }
 
@@ -146,11 +213,10 @@ public class ScanDetailCache {
      * Return the most recent ScanResult for this network, or null if non exists.
      */
     public ScanResult getMostRecentScanResult() {
-        ArrayList<ScanDetail> list = sort();
-        if (list.size() == 0) {
+        if (mMostRecentFirst.isEmpty()) {
             return null;
         }
-        return list.get(0).getScanResult();
+        return mMap.get(mMostRecentFirst.first().bssid).getScanResult();
     }
 
     /**
@@ -159,27 +225,9 @@ public class ScanDetailCache {
      * @hide
      **/
     private ArrayList<ScanDetail> sort() {
-        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMap.values());
-        if (list.size() != 0) {
-            Collections.sort(list, new Comparator() {
-                public int compare(Object o1, Object o2) {
-                    ScanResult a = ((ScanDetail) o1).getScanResult();
-                    ScanResult b = ((ScanDetail) o2).getScanResult();
-                    if (a.seen > b.seen) {
-                        return -1;
-                    }
-                    if (a.seen < b.seen) {
-                        return 1;
-                    }
-                    if (a.level > b.level) {
-                        return -1;
-                    }
-                    if (a.level < b.level) {
-                        return 1;
-                    }
-                    return a.BSSID.compareTo(b.BSSID);
-                }
-            });
+        ArrayList<ScanDetail> list = new ArrayList<ScanDetail>(mMostRecentFirst.size());
+        for (IndexKey key : mMostRecentFirst) {
+            list.add(mMap.get(key.bssid));
         }
         return list;
     }
@@ -44,17 +44,20 @@ import android.util.Pair;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.modules.utils.ParceledListSlice;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.server.wifi.scanner.WifiScannerInternal;
 import com.android.server.wifi.util.WifiPermissionsUtil;
 import com.android.wifi.resources.R;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -120,15 +123,19 @@ public class ScanRequestProxy {
     // Values in the map = List of the last few scan request timestamps from the app.
     private final ArrayMap<Pair<Integer, String>, LinkedList<Long>> mLastScanTimestampsForFgApps =
             new ArrayMap();
-    // Full scan results cached from the last full single scan request.
-    // Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult lookup
-    // for bssid more efficiently.
-    private final Map<String, ScanResult> mFullScanCache = new HashMap<>();
-    // Partial scan results cached since the last full single scan request.
-    private final LruCache<String, ScanResult> mPartialScanCache =
-            new LruCache<>(PARTIAL_SCAN_CACHE_SIZE);
+    // Scan results cached from the last full single scan request and the partial scans since.
+    private final ScanResultStore mScanResultStore = new ScanResultStore();
+    // Results of |mScanResultStore| published after each change, so that they can be read from
+    // binder threads without waiting for the wifi thread.
+    private volatile List<ScanResult> mPublishedScanResults = Collections.emptyList();
     // external ScanResultCallback tracker
+    // Callbacks registered for scan result changes have a ScanResultsChangedSubscriber cookie.
     private final RemoteCallbackList<IScanResultsCallback> mRegisteredScanResultsCallbacks;
+    // Number of times the callbacks were notified of new scan results.
+    private long mScanResultsSequence = 0;
+    // Scan results per BSSID at the last notification, null if they were not kept because no
+    // callback was registered for scan result changes.
+    @Nullable private Map<String, ScanResult> mLastNotifiedScanResults;
     private class GlobalScanListener implements WifiScanner.ScanListener {
         @Override
         public void onSuccess() {
@@ -161,30 +168,12 @@ public class ScanRequestProxy {
                     scanData.getScannedBandsInternal(), false);
             if (isFullBandScan) {
                 // If is full scan, clear the cache so only the latest data is available
-                mFullScanCache.clear();
-                mPartialScanCache.evictAll();
+                mScanResultStore.clear();
             }
             for (ScanResult s : scanResults) {
-                ScanResult scanResult = mFullScanCache.get(s.BSSID);
-                if (isFullBandScan && scanResult == null) {
-                    mFullScanCache.put(s.BSSID, s);
-                    continue;
-                }
-                // If a hidden network is configured, wificond may report two scan results for
-                // the same BSS, ie. One with the SSID and another one without SSID. So avoid
-                // overwriting the scan result of the same BSS with Hidden SSID scan result
-                if (scanResult != null) {
-                    if (TextUtils.isEmpty(scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
-                        mFullScanCache.put(s.BSSID, s);
-                    }
-                    continue;
-                }
-                scanResult = mPartialScanCache.get(s.BSSID);
-                if (scanResult == null
-                        || TextUtils.isEmpty(scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
-                    mPartialScanCache.put(s.BSSID, s);
-                }
+                mScanResultStore.update(s, isFullBandScan);
             }
+            publishScanResults();
             if (isFullBandScan) {
                 // Only trigger broadcasts for full scans
                 sendScanResultBroadcast(true);
@@ -566,11 +555,29 @@ public class ScanRequestProxy {
     /**
      * Return the results of the most recent access point scan, in the form of
      * a list of {@link ScanResult} objects.
+     *
+     * This can be called from any thread, it returns the results published after the last change
+     * of the cached scan results.
      * @return the list of results
      */
     public List<ScanResult> getScanResults() {
         // return a copy to prevent external modification
-        return new ArrayList<>(combineScanResultsCache().values());
+        return new ArrayList<>(mPublishedScanResults);
+    }
+
+    private void publishScanResults() {
+        mPublishedScanResults = mScanResultStore.getSnapshot();
+    }
+
+    /**
+     * Return the results of the most recent access point scan as an unmodifiable list.
+     *
+     * The returned list is shared between callers until the next scan results arrive, so it
+     * must only be used by internal callers on the Wifi thread which do not need their own copy.
+     * @return the unmodifiable list of results
+     */
+    public @NonNull List<ScanResult> getScanResultsSnapshot() {
+        return mScanResultStore.getSnapshot();
     }
 
     /**
@@ -580,11 +587,8 @@ public class ScanRequestProxy {
      * @return ScanResult for the corresponding bssid if found, null otherwise.
      */
     public @Nullable ScanResult getScanResult(@NonNull String bssid) {
-        ScanResult scanResult = mFullScanCache.get(bssid);
-        if (scanResult == null) {
-            scanResult = mPartialScanCache.get(bssid);
-            if (scanResult == null) return null;
-        }
+        ScanResult scanResult = mScanResultStore.get(bssid);
+        if (scanResult == null) return null;
         // return a copy to prevent external modification
         return new ScanResult(scanResult);
     }
@@ -595,8 +599,8 @@ public class ScanRequestProxy {
      */
     private void clearScanResults() {
         synchronized (mThrottleEnabledLock) {
-            mFullScanCache.clear();
-            mPartialScanCache.evictAll();
+            mScanResultStore.clear();
+            publishScanResults();
             mLastScanTimestampForBgApps = 0;
             mLastScanTimestampsForFgApps.clear();
         }
@@ -620,22 +624,102 @@ public class ScanRequestProxy {
 
     private void sendScanResultsAvailableToCallbacks() {
         int itemCount = mRegisteredScanResultsCallbacks.beginBroadcast();
+        boolean hasChangedSubscribers = false;
         for (int i = 0; i < itemCount; i++) {
+            if (mRegisteredScanResultsCallbacks.getBroadcastCookie(i)
+                    instanceof ScanResultsChangedSubscriber) {
+                hasChangedSubscribers = true;
+                break;
+            }
+        }
+        List<ScanResult> currentResults = mScanResultStore.getSnapshot();
+        Map<String, ScanResult> previousResults = mLastNotifiedScanResults;
+        mScanResultsSequence++;
+        mLastNotifiedScanResults = null;
+        List<ScanResult> changedResults = null;
+        List<String> removedBssids = null;
+        if (hasChangedSubscribers) {
+            mLastNotifiedScanResults = new HashMap<>();
+            for (ScanResult result : currentResults) {
+                mLastNotifiedScanResults.put(result.BSSID, result);
+            }
+            if (previousResults != null) {
+                changedResults = new ArrayList<>();
+                removedBssids = new ArrayList<>();
+                for (ScanResult result : currentResults) {
+                    if (isScanResultChanged(previousResults.get(result.BSSID), result)) {
+                        changedResults.add(result);
+                    }
+                }
+                for (String bssid : previousResults.keySet()) {
+                    if (!mLastNotifiedScanResults.containsKey(bssid)) {
+                        removedBssids.add(bssid);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < itemCount; i++) {
+            IScanResultsCallback callback = mRegisteredScanResultsCallbacks.getBroadcastItem(i);
+            Object cookie = mRegisteredScanResultsCallbacks.getBroadcastCookie(i);
             try {
-                mRegisteredScanResultsCallbacks.getBroadcastItem(i).onScanResultsAvailable();
+                if (cookie instanceof ScanResultsChangedSubscriber) {
+                    ScanResultsChangedSubscriber subscriber =
+                            (ScanResultsChangedSubscriber) cookie;
+                    if (!canAccessScanResults(subscriber)) {
+                        // Send all the results next time, since this subscriber misses a change.
+                        subscriber.lastSequence = -1;
+                        continue;
+                    }
+                    boolean isFullUpdate = changedResults == null
+                            || subscriber.lastSequence != mScanResultsSequence - 1;
+                    subscriber.lastSequence = mScanResultsSequence;
+                    if (isFullUpdate) {
+                        callback.onScanResultsChanged(new ParceledListSlice<>(currentResults),
+                                Collections.emptyList(), true);
+                    } else {
+                        callback.onScanResultsChanged(new ParceledListSlice<>(changedResults),
+                                removedBssids, false);
+                    }
+                } else {
+                    callback.onScanResultsAvailable();
+                }
             } catch (RemoteException e) {
                 Log.e(TAG, "onScanResultsAvailable: remote exception -- " + e);
+                if (cookie instanceof ScanResultsChangedSubscriber) {
+                    // The change may not have been received, send all the results next time.
+                    ((ScanResultsChangedSubscriber) cookie).lastSequence = -1;
+                }
             }
         }
         mRegisteredScanResultsCallbacks.finishBroadcast();
     }
 
-    /** Combine the full and partial scan results */
-    private Map<String, ScanResult> combineScanResultsCache() {
-        Map<String, ScanResult> combinedCache = new HashMap<>();
-        combinedCache.putAll(mFullScanCache);
-        combinedCache.putAll(mPartialScanCache.snapshot());
-        return combinedCache;
+    private boolean canAccessScanResults(ScanResultsChangedSubscriber subscriber) {
+        try {
+            mWifiPermissionsUtil.enforceCanAccessScanResults(subscriber.packageName,
+                    subscriber.featureId, subscriber.uid, null);
+            return true;
+        } catch (SecurityException e) {
+            if (mVerboseLoggingEnabled) {
+                Log.v(TAG, "Not sending scan result changes to uid=" + subscriber.uid
+                        + ", packageName=" + subscriber.packageName + ", reason=" + e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Whether the scan result of a BSS changed enough to be sent to the callbacks registered for
+     * scan result changes. Changes of the timestamp alone are not sent.
+     */
+    private static boolean isScanResultChanged(@Nullable ScanResult previous,
+            @NonNull ScanResult current) {
+        return previous == null
+                || previous.level != current.level
+                || previous.frequency != current.frequency
+                || previous.channelWidth != current.channelWidth
+                || !Objects.equals(previous.SSID, current.SSID)
+                || !Objects.equals(previous.capabilities, current.capabilities);
     }
 
     /**
@@ -647,6 +731,39 @@ public class ScanRequestProxy {
         return mRegisteredScanResultsCallbacks.register(callback);
     }
 
+    /**
+     * Register a callback to be sent the scan results which changed on each scan event, instead of
+     * only being notified that new results are available.
+     * @param callback IScanResultListener instance to add.
+     * @param uid Uid of the app, used to check the app can still access scan results.
+     * @param packageName Name of the package.
+     * @param featureId Feature in the package.
+     * @return true if succeed otherwise false.
+     */
+    public boolean registerScanResultsChangedCallback(@NonNull IScanResultsCallback callback,
+            int uid, @NonNull String packageName, @Nullable String featureId) {
+        return mRegisteredScanResultsCallbacks.register(callback,
+                new ScanResultsChangedSubscriber(uid, packageName, featureId));
+    }
+
+    /**
+     * App registered for scan result changes, and the sequence of the last scan results it was
+     * sent.
+     */
+    private static class ScanResultsChangedSubscriber {
+        public final int uid;
+        public final String packageName;
+        public final String featureId;
+        // -1 if the next notification must contain all the scan results.
+        public long lastSequence = -1;
+
+        ScanResultsChangedSubscriber(int uid, String packageName, String featureId) {
+            this.uid = uid;
+            this.packageName = packageName;
+            this.featureId = featureId;
+        }
+    }
+
     /**
      * Unregister a callback on scan event
      * @param callback IScanResultListener instance to add.
@@ -683,50 +800,225 @@ public class ScanRequestProxy {
 
     /** Indicate whether there are WPA2 personal only networks. */
     public boolean isWpa2PersonalOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForPskOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_PSK_ONLY);
     }
 
     /** Indicate whether there are WPA3 only networks. */
     public boolean isWpa3PersonalOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForSaeOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_SAE_ONLY);
     }
 
     /** Indicate whether there are WPA2/WPA3 transition mode networks. */
     public boolean isWpa2Wpa3PersonalTransitionNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, ScanResultUtil.createQuotedSsid(r.SSID))
-                        && ScanResultUtil.isScanResultForPskSaeTransitionNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_PSK_SAE_TRANSITION);
     }
 
     /** Indicate whether there are OPEN only networks. */
     public boolean isOpenOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForOpenOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_OPEN_ONLY);
     }
 
     /** Indicate whether there are OWE only networks. */
     public boolean isOweOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForOweOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_OWE_ONLY);
     }
 
     /** Indicate whether there are WPA2 Enterprise only networks. */
     public boolean isWpa2EnterpriseOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForWpa2EnterpriseOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_WPA2_ENT_ONLY);
     }
 
     /** Indicate whether there are WPA3 Enterprise only networks. */
     public boolean isWpa3EnterpriseOnlyNetworkInRange(String ssid) {
-        return combineScanResultsCache().values().stream().anyMatch(r ->
-                TextUtils.equals(ssid, r.getWifiSsid().toString())
-                        && ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r));
+        return mScanResultStore.hasSecurityType(ssid, ScanResultStore.SECURITY_WPA3_ENT_ONLY);
+    }
+
+    /**
+     * Holds the full scan results from the last full band scan and the partial scan results
+     * received since, keyed by BSSID.
+     *
+     * A secondary index of per-SSID security type counts is maintained incrementally as results
+     * are added, replaced or evicted, so the "network in range" queries do not need to walk all
+     * the cached BSSes. The combined list of results is built lazily and cached until the next
+     * change.
+     */
+    private static class ScanResultStore {
+        static final int SECURITY_PSK_ONLY = 0;
+        static final int SECURITY_SAE_ONLY = 1;
+        static final int SECURITY_PSK_SAE_TRANSITION = 2;
+        static final int SECURITY_OPEN_ONLY = 3;
+        static final int SECURITY_OWE_ONLY = 4;
+        static final int SECURITY_WPA2_ENT_ONLY = 5;
+        static final int SECURITY_WPA3_ENT_ONLY = 6;
+        private static final int NUM_SECURITY_TYPES = 7;
+
+        // Full scan results cached from the last full single scan request.
+        // Stored as a map of bssid -> ScanResult to allow other clients to perform ScanResult
+        // lookup for bssid more efficiently.
+        private final Map<String, Entry> mFullScanCache = new HashMap<>();
+        // Partial scan results cached since the last full single scan request.
+        private final LruCache<String, Entry> mPartialScanCache =
+                new LruCache<String, Entry>(PARTIAL_SCAN_CACHE_SIZE) {
+                    @Override
+                    protected void entryRemoved(boolean evicted, String key, Entry oldValue,
+                            Entry newValue) {
+                        removeFromIndex(oldValue);
+                    }
+                };
+        // Quoted SSID -> number of cached BSSes for each security type.
+        private final Map<String, int[]> mSecurityTypeCountsBySsid = new HashMap<>();
+        // Combined full and partial results, null when it needs to be rebuilt.
+        private List<ScanResult> mSnapshot;
+
+        private static class Entry {
+            public final ScanResult scanResult;
+            // Key used for all security types except PSK/SAE transition, which historically
+            // matches against the quoted SSID string of the scan result instead.
+            public final String ssidKey;
+            public final String quotedSsidKey;
+            public final int securityTypes;
+
+            Entry(ScanResult scanResult) {
+                this.scanResult = scanResult;
+                this.ssidKey = scanResult.getWifiSsid() == null
+                        ? null : scanResult.getWifiSsid().toString();
+                this.quotedSsidKey = ScanResultUtil.createQuotedSsid(scanResult.SSID);
+                this.securityTypes = getSecurityTypes(scanResult);
+            }
+
+            private static int getSecurityTypes(ScanResult r) {
+                int types = 0;
+                if (ScanResultUtil.isScanResultForPskOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_PSK_ONLY;
+                }
+                if (ScanResultUtil.isScanResultForSaeOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_SAE_ONLY;
+                }
+                if (ScanResultUtil.isScanResultForPskSaeTransitionNetwork(r)) {
+                    types |= 1 << SECURITY_PSK_SAE_TRANSITION;
+                }
+                if (ScanResultUtil.isScanResultForOpenOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_OPEN_ONLY;
+                }
+                if (ScanResultUtil.isScanResultForOweOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_OWE_ONLY;
+                }
+                if (ScanResultUtil.isScanResultForWpa2EnterpriseOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_WPA2_ENT_ONLY;
+                }
+                if (ScanResultUtil.isScanResultForWpa3EnterpriseOnlyNetwork(r)) {
+                    types |= 1 << SECURITY_WPA3_ENT_ONLY;
+                }
+                return types;
+            }
+
+            String getKey(int securityType) {
+                return securityType == SECURITY_PSK_SAE_TRANSITION ? quotedSsidKey : ssidKey;
+            }
+        }
+
+        /** Add or replace the cached result for the BSS of the provided scan result. */
+        void update(ScanResult s, boolean isFullBandScan) {
+            Entry entry = mFullScanCache.get(s.BSSID);
+            if (isFullBandScan && entry == null) {
+                putFull(s);
+                return;
+            }
+            // If a hidden network is configured, wificond may report two scan results for
+            // the same BSS, ie. One with the SSID and another one without SSID. So avoid
+            // overwriting the scan result of the same BSS with Hidden SSID scan result
+            if (entry != null) {
+                if (TextUtils.isEmpty(entry.scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
+                    putFull(s);
+                }
+                return;
+            }
+            entry = mPartialScanCache.get(s.BSSID);
+            if (entry == null
+                    || TextUtils.isEmpty(entry.scanResult.SSID) || !TextUtils.isEmpty(s.SSID)) {
+                Entry newEntry = new Entry(s);
+                addToIndex(newEntry);
+                // Replaced or evicted entries are removed from the index by entryRemoved().
+                mPartialScanCache.put(s.BSSID, newEntry);
+                mSnapshot = null;
+            }
+        }
+
+        private void putFull(ScanResult s) {
+            Entry newEntry = new Entry(s);
+            addToIndex(newEntry);
+            removeFromIndex(mFullScanCache.put(s.BSSID, newEntry));
+            mSnapshot = null;
+        }
+
+        @Nullable ScanResult get(String bssid) {
+            Entry entry = mFullScanCache.get(bssid);
+            if (entry == null) {
+                entry = mPartialScanCache.get(bssid);
+            }
+            return entry == null ? null : entry.scanResult;
+        }
+
+        void clear() {
+            mFullScanCache.clear();
+            mPartialScanCache.evictAll();
+            mSecurityTypeCountsBySsid.clear();
+            mSnapshot = null;
+        }
+
+        boolean hasSecurityType(String ssid, int securityType) {
+            int[] counts = mSecurityTypeCountsBySsid.get(ssid);
+            return counts != null && counts[securityType] > 0;
+        }
+
+        @NonNull List<ScanResult> getSnapshot() {
+            if (mSnapshot == null) {
+                List<ScanResult> results = new ArrayList<>(
+                        mFullScanCache.size() + mPartialScanCache.size());
+                for (Entry entry : mFullScanCache.values()) {
+                    results.add(entry.scanResult);
+                }
+                for (Entry entry : mPartialScanCache.snapshot().values()) {
+                    results.add(entry.scanResult);
+                }
+                mSnapshot = Collections.unmodifiableList(results);
+            }
+            return mSnapshot;
+        }
+
+        private void addToIndex(Entry entry) {
+            updateIndex(entry, 1);
+        }
+
+        private void removeFromIndex(@Nullable Entry entry) {
+            if (entry == null) return;
+            updateIndex(entry, -1);
+            mSnapshot = null;
+        }
+
+        private void updateIndex(Entry entry, int delta) {
+            for (int type = 0; type < NUM_SECURITY_TYPES; type++) {
+                if ((entry.securityTypes & (1 << type)) == 0) continue;
+                String key = entry.getKey(type);
+                if (key == null) continue;
+                int[] counts = mSecurityTypeCountsBySsid.get(key);
+                if (counts == null) {
+                    if (delta < 0) continue;
+                    counts = new int[NUM_SECURITY_TYPES];
+                    mSecurityTypeCountsBySsid.put(key, counts);
+                }
+                counts[type] += delta;
+                if (delta < 0 && isEmpty(counts)) {
+                    mSecurityTypeCountsBySsid.remove(key);
+                }
+            }
+        }
+
+        private static boolean isEmpty(int[] counts) {
+            for (int count : counts) {
+                if (count > 0) return false;
+            }
+            return true;
+        }
     }
 }
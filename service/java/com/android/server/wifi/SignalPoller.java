@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Handler;
+
+import com.android.modules.utils.build.SdkLevel;
+import com.android.server.wifi.util.IntHistogram;
+
+import java.io.PrintWriter;
+import java.util.function.Consumer;
+
+/**
+ * Fetches the link layer stats, signal poll results and traffic counters of a connected iface
+ * on a background thread, so that slow vendor HAL or supplicant calls don't block the wifi thread.
+ * The results of each poll are handed back as a single immutable {@link Sample}.
+ *
+ * Only supplicant is queried for the signal poll on the background thread. The mock wificond and
+ * the wificond fallback use state owned by the wifi thread, so they are queried from
+ * {@link #getSignalPollResults(Sample)} on the wifi thread when needed.
+ */
+public class SignalPoller {
+    private static final int[] LATENCY_HISTOGRAM_BUCKETS_MILLIS =
+            {1, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final WifiNative mWifiNative;
+    private final FrameworkFacade mFacade;
+    private final Clock mClock;
+    private final Handler mHandler;
+
+    // Updated on the poll thread, read by dump(). Guarded by this.
+    private int mNumPolls;
+    private final IntHistogram mLinkLayerStatsLatencyMillis =
+            new IntHistogram(LATENCY_HISTOGRAM_BUCKETS_MILLIS);
+    private final IntHistogram mSignalPollLatencyMillis =
+            new IntHistogram(LATENCY_HISTOGRAM_BUCKETS_MILLIS);
+
+    /**
+     * Results of one poll of an iface.
+     */
+    public static class Sample {
+        /** Name of the polled iface. */
+        public final String ifaceName;
+        /** Wall clock time at which the poll started. */
+        public final long timestampMillis;
+        /** Link layer stats, null if not fetched or not available. */
+        @Nullable public final WifiLinkLayerStats linkLayerStats;
+        /**
+         * Signal poll results from supplicant, null if supplicant was not polled or the poll
+         * failed. See {@link SignalPoller#getSignalPollResults(Sample)}.
+         */
+        @Nullable public final WifiSignalPollResults signalPollResults;
+        /** Whether supplicant was polled, false when the signal poll is mocked. */
+        public final boolean isSupplicantPolled;
+        /** Packets counted by the kernel, only set when there are no link layer stats. */
+        public final long txPackets;
+        public final long rxPackets;
+        /** Bytes counted by the kernel. */
+        public final long txBytes;
+        public final long rxBytes;
+
+        Sample(String ifaceName, long timestampMillis,
+                @Nullable WifiLinkLayerStats linkLayerStats,
+                @Nullable WifiSignalPollResults signalPollResults, boolean isSupplicantPolled,
+                long txPackets, long rxPackets, long txBytes, long rxBytes) {
+            this.ifaceName = ifaceName;
+            this.timestampMillis = timestampMillis;
+            this.linkLayerStats = linkLayerStats;
+            this.signalPollResults = signalPollResults;
+            this.isSupplicantPolled = isSupplicantPolled;
+            this.txPackets = txPackets;
+            this.rxPackets = rxPackets;
+            this.txBytes = txBytes;
+            this.rxBytes = rxBytes;
+        }
+    }
+
+    /**
+     * @param handler Handler of the background thread running the polls.
+     */
+    public SignalPoller(@NonNull WifiNative wifiNative, @NonNull FrameworkFacade facade,
+            @NonNull Clock clock, @NonNull Handler handler) {
+        mWifiNative = wifiNative;
+        mFacade = facade;
+        mClock = clock;
+        mHandler = handler;
+    }
+
+    /**
+     * Poll the given iface on the background thread. Must be called on the wifi thread.
+     *
+     * @param ifaceName Name of the iface to poll.
+     * @param fetchLinkLayerStats Whether to fetch the link layer stats from the vendor HAL.
+     * @param callback Called on the background thread with the results of the poll, it should
+     *                 post them to the thread which consumes them.
+     */
+    public void poll(@NonNull String ifaceName, boolean fetchLinkLayerStats,
+            @NonNull Consumer<Sample> callback) {
+        // The mock wificond is set up on the wifi thread, check it here.
+        boolean pollSupplicant = !mWifiNative.isSignalPollMocked();
+        mHandler.post(() -> callback.accept(
+                fetchSample(ifaceName, fetchLinkLayerStats, pollSupplicant)));
+    }
+
+    /**
+     * Returns the signal poll results of a sample. If supplicant was not polled or returned no
+     * results, the signal poll is completed with the mock wificond or wificond. Must be called on
+     * the wifi thread.
+     */
+    @Nullable
+    public WifiSignalPollResults getSignalPollResults(@NonNull Sample sample) {
+        if (sample.signalPollResults != null) {
+            return sample.signalPollResults;
+        }
+        if (!sample.isSupplicantPolled) {
+            return mWifiNative.signalPoll(sample.ifaceName);
+        }
+        return mWifiNative.getWificondSignalPollResults(sample.ifaceName);
+    }
+
+    private Sample fetchSample(String ifaceName, boolean fetchLinkLayerStats,
+            boolean pollSupplicant) {
+        long timestampMillis = mClock.getWallClockMillis();
+        long startMillis = mClock.getElapsedSinceBootMillis();
+        WifiLinkLayerStats linkLayerStats = fetchLinkLayerStats
+                ? mWifiNative.getWifiLinkLayerStats(ifaceName) : null;
+        long linkLayerStatsDoneMillis = mClock.getElapsedSinceBootMillis();
+        // The signal poll goes to supplicant and the link layer stats to the vendor HAL, so they
+        // can't be fetched in a single call.
+        WifiSignalPollResults signalPollResults = pollSupplicant
+                ? mWifiNative.getSupplicantSignalPollResults(ifaceName) : null;
+        long signalPollDoneMillis = mClock.getElapsedSinceBootMillis();
+        synchronized (this) {
+            mNumPolls++;
+            if (fetchLinkLayerStats) {
+                mLinkLayerStatsLatencyMillis.increment(
+                        (int) (linkLayerStatsDoneMillis - startMillis));
+            }
+            mSignalPollLatencyMillis.increment(
+                    (int) (signalPollDoneMillis - linkLayerStatsDoneMillis));
+        }
+
+        long txPackets = 0;
+        long rxPackets = 0;
+        if (linkLayerStats == null) {
+            txPackets = mFacade.getTxPackets(ifaceName);
+            rxPackets = mFacade.getRxPackets(ifaceName);
+        }
+        return new Sample(ifaceName, timestampMillis, linkLayerStats, signalPollResults,
+                pollSupplicant, txPackets, rxPackets, getTxBytes(ifaceName), getRxBytes(ifaceName));
+    }
+
+    /**
+     * Returns the number of bytes sent on the given iface, or on all the non-mobile ifaces before
+     * Android S.
+     */
+    public long getTxBytes(@NonNull String ifaceName) {
+        if (SdkLevel.isAtLeastS()) {
+            return mFacade.getTxBytes(ifaceName);
+        }
+        return mFacade.getTotalTxBytes() - mFacade.getMobileTxBytes();
+    }
+
+    /**
+     * Returns the number of bytes received on the given iface, or on all the non-mobile ifaces
+     * before Android S.
+     */
+    public long getRxBytes(@NonNull String ifaceName) {
+        if (SdkLevel.isAtLeastS()) {
+            return mFacade.getRxBytes(ifaceName);
+        }
+        return mFacade.getTotalRxBytes() - mFacade.getMobileRxBytes();
+    }
+
+    /**
+     * Dump the number of polls and the latency of the HAL calls.
+     */
+    public void dump(@NonNull PrintWriter pw) {
+        pw.println("Dump of SignalPoller");
+        synchronized (this) {
+            pw.println("numPolls=" + mNumPolls);
+            pw.println("linkLayerStatsLatencyMillis=" + mLinkLayerStatsLatencyMillis);
+            pw.println("signalPollLatencyMillis=" + mSignalPollLatencyMillis);
+        }
+    }
+}
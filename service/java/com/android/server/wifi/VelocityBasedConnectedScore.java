@@ -20,8 +20,7 @@ import android.net.wifi.ScanResult;
 import android.net.wifi.WifiInfo;
 import android.util.Log;
 
-import com.android.server.wifi.util.KalmanFilter;
-import com.android.server.wifi.util.Matrix;
+import com.android.server.wifi.util.RssiKalmanFilter;
 
 /**
  * Class used to calculate scores for connected wifi networks and report it to the associated
@@ -34,30 +33,15 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
 
     private int mFrequency = ScanResult.BAND_5_GHZ_START_FREQ_MHZ;
     private double mThresholdAdjustment;
-    private final KalmanFilter mFilter;
+    // Updated on every RSSI poll, so this uses the allocation-free 2x2 filter
+    private final RssiKalmanFilter mFilter;
     private long mLastMillis;
 
     public VelocityBasedConnectedScore(ScoringParams scoringParams, Clock clock) {
         super(clock);
         mScoringParams = scoringParams;
-        mFilter = new KalmanFilter();
-        mFilter.mH = new Matrix(2, new double[]{1.0, 0.0});
-        mFilter.mR = new Matrix(1, new double[]{1.0});
-    }
-
-    /**
-     * Set the Kalman filter's state transition matrix F and process noise covariance Q given
-     * a time step.
-     *
-     * @param dt delta time, in seconds
-     */
-    private void setDeltaTimeSeconds(double dt) {
-        mFilter.mF = new Matrix(2, new double[]{1.0, dt, 0.0, 1.0});
-        Matrix tG = new Matrix(1, new double[]{0.5 * dt * dt, dt});
         double stda = 0.02; // standard deviation of modelled acceleration
-        mFilter.mQ = tG.dotTranspose(tG).dot(new Matrix(2, new double[]{
-                stda * stda, 0.0,
-                0.0, stda * stda}));
+        mFilter = new RssiKalmanFilter(stda);
     }
     /**
      * Reset the filter state.
@@ -66,7 +50,7 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public void reset() {
         mLastMillis = 0;
         mThresholdAdjustment = 0;
-        mFilter.mx = null;
+        mFilter.clear();
     }
 
     /**
@@ -83,20 +67,17 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public void updateUsingRssi(int rssi, long millis, double standardDeviation) {
         if (millis <= 0) return;
         try {
-            if (mLastMillis <= 0 || millis < mLastMillis || mFilter.mx == null) {
+            if (mLastMillis <= 0 || millis < mLastMillis || !mFilter.isInitialized()) {
                 double initialVariance = 9.0 * standardDeviation * standardDeviation;
-                mFilter.mx = new Matrix(1, new double[]{rssi, 0.0});
-                mFilter.mP = new Matrix(2, new double[]{initialVariance, 0.0, 0.0, 0.0});
+                mFilter.initialize(rssi, initialVariance);
             } else {
                 double dt = (millis - mLastMillis) * 0.001;
-                mFilter.mR.put(0, 0, standardDeviation * standardDeviation);
-                setDeltaTimeSeconds(dt);
-                mFilter.predict();
-                mFilter.update(new Matrix(1, new double[]{rssi}));
+                mFilter.predict(dt);
+                mFilter.update(rssi, standardDeviation * standardDeviation);
             }
             mLastMillis = millis;
-            mFilteredRssi = mFilter.mx.get(0, 0);
-            mEstimatedRateOfRssiChange = mFilter.mx.get(1, 0);
+            mFilteredRssi = mFilter.getValue();
+            mEstimatedRateOfRssiChange = mFilter.getRate();
         } catch (RuntimeException e) {
             Log.wtf(TAG, e);
             reset();
@@ -178,14 +159,11 @@ public class VelocityBasedConnectedScore extends ConnectedScore {
     public int generateScore() {
         final int transitionScore = isPrimary() ? WIFI_TRANSITION_SCORE
                 : WIFI_SECONDARY_TRANSITION_SCORE;
-        if (mFilter.mx == null) return transitionScore + 1;
+        if (!mFilter.isInitialized()) return transitionScore + 1;
         double badRssi = getAdjustedRssiThreshold();
         double horizonSeconds = mScoringParams.getHorizonSeconds();
-        Matrix x = new Matrix(mFilter.mx);
-        double filteredRssi = x.get(0, 0);
-        setDeltaTimeSeconds(horizonSeconds);
-        x = mFilter.mF.dot(x);
-        double forecastRssi = x.get(0, 0);
+        double filteredRssi = mFilter.getValue();
+        double forecastRssi = mFilter.forecast(horizonSeconds);
         if (forecastRssi > filteredRssi) {
             forecastRssi = filteredRssi; // Be pessimistic about predicting an actual increase
         }
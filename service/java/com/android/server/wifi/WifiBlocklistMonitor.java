@@ -50,10 +50,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * This class manages the addition and removal of BSSIDs to the BSSID blocklist, which is used
@@ -138,6 +137,15 @@ public class WifiBlocklistMonitor {
 
     // Map of bssid to BssidStatus
     private Map<String, BssidStatus> mBssidStatusMap = new ArrayMap<>();
+    // Blocked BSSIDs ordered by blocklist end time, so expired BSSIDs can be found without
+    // walking |mBssidStatusMap|. Entries are left in place when a BSSID is unblocked early or
+    // blocked again, and are checked against |mBssidStatusMap| when they are polled.
+    private final PriorityQueue<BlocklistExpiry> mBlocklistExpiryQueue =
+            new PriorityQueue<>((a, b) -> Long.compare(a.endTimeMs, b.endTimeMs));
+    // Map of SSID to the BssidStatus of its BSSIDs currently in the blocklist.
+    private final Map<String, Set<BssidStatus>> mBlockedBssidsPerSsid = new ArrayMap<>();
+    // Cached set of all the BSSIDs in the blocklist, null when it needs to be rebuilt.
+    private Set<String> mBssidBlocklistSnapshot;
     private Set<String> mDisabledSsids = new ArraySet<>();
 
     // Internal logger to make sure imporatant logs do not get lost.
@@ -304,6 +312,10 @@ public class WifiBlocklistMonitor {
     private void addToBlocklist(@NonNull BssidStatus entry, long durationMs,
             @FailureReason int reason, int rssi) {
         entry.setAsBlocked(durationMs, reason, rssi);
+        mBlockedBssidsPerSsid.computeIfAbsent(entry.ssid, k -> new ArraySet<>()).add(entry);
+        mBlocklistExpiryQueue.add(new BlocklistExpiry(entry));
+        mBssidBlocklistSnapshot = null;
+        compactBlocklistExpiryQueueIfNeeded();
         localLog(TAG + " addToBlocklist: bssid=" + entry.bssid + ", ssid=" + entry.ssid
                 + ", durationMs=" + durationMs + ", reason=" + getFailureReasonString(reason)
                 + ", rssi=" + rssi);
@@ -332,12 +344,47 @@ public class WifiBlocklistMonitor {
                 localLog("getOrCreateBssidStatus: BSSID=" + bssid + ", SSID changed from "
                         + status.ssid + " to " + ssid);
             }
+            BssidStatus previousStatus = mBssidStatusMap.get(bssid);
+            if (previousStatus != null) {
+                onBssidStatusRemoved(previousStatus);
+            }
             status = new BssidStatus(bssid, ssid);
             mBssidStatusMap.put(bssid, status);
         }
         return status;
     }
 
+    /**
+     * Remove the BssidStatus from the blocklist indexes. Must be called whenever a BssidStatus is
+     * removed from |mBssidStatusMap|.
+     */
+    private void onBssidStatusRemoved(@NonNull BssidStatus status) {
+        if (!status.isInBlocklist) {
+            return;
+        }
+        Set<BssidStatus> blockedForSsid = mBlockedBssidsPerSsid.get(status.ssid);
+        if (blockedForSsid != null && blockedForSsid.remove(status) && blockedForSsid.isEmpty()) {
+            mBlockedBssidsPerSsid.remove(status.ssid);
+        }
+        mBssidBlocklistSnapshot = null;
+    }
+
+    /**
+     * Rebuild the expiry queue from the BSSIDs in the blocklist if it accumulated too many
+     * entries which are no longer valid.
+     */
+    private void compactBlocklistExpiryQueueIfNeeded() {
+        if (mBlocklistExpiryQueue.size() <= 2 * mBssidStatusMap.size() + 16) {
+            return;
+        }
+        mBlocklistExpiryQueue.clear();
+        for (Set<BssidStatus> blockedForSsid : mBlockedBssidsPerSsid.values()) {
+            for (BssidStatus status : blockedForSsid) {
+                mBlocklistExpiryQueue.add(new BlocklistExpiry(status));
+            }
+        }
+    }
+
     /**
      * Set a list of SSIDs that will always be enabled for network selection.
      */
@@ -687,6 +734,7 @@ public class WifiBlocklistMonitor {
         if (status.isInBlocklist) {
             mBssidBlocklistMonitorLogger.logBssidUnblocked(status, reasonString);
             mBssidStatusMap.remove(bssid);
+            onBssidStatusRemoved(status);
         }
     }
 
@@ -736,6 +784,7 @@ public class WifiBlocklistMonitor {
             if (status.ssid.equals(ssid)) {
                 mBssidBlocklistMonitorLogger.logBssidUnblocked(
                         status, "clearBssidBlocklistForSsid");
+                onBssidStatusRemoved(status);
                 return true;
             }
             return false;
@@ -757,6 +806,9 @@ public class WifiBlocklistMonitor {
                 mBssidBlocklistMonitorLogger.logBssidUnblocked(status, "clearBssidBlocklist");
             }
             mBssidStatusMap.clear();
+            mBlockedBssidsPerSsid.clear();
+            mBlocklistExpiryQueue.clear();
+            mBssidBlocklistSnapshot = null;
             localLog(TAG + " clearBssidBlocklist: num BSSIDs cleared="
                     + (prevSize - mBssidStatusMap.size()));
         }
@@ -768,17 +820,20 @@ public class WifiBlocklistMonitor {
      * @return the number of BSSIDs currently in the blocklist for the |ssid|.
      */
     public int updateAndGetNumBlockedBssidsForSsid(@NonNull String ssid) {
-        return (int) updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssid.equals(entry.ssid)).count();
+        removeExpiredBssidsFromBlocklist();
+        Set<BssidStatus> blockedForSsid = mBlockedBssidsPerSsid.get(ssid);
+        return blockedForSsid == null ? 0 : blockedForSsid.size();
     }
 
     private int getNumBlockedBssidsForSsids(@NonNull Set<String> ssids) {
-        if (ssids.isEmpty()) {
-            return 0;
+        int count = 0;
+        for (String ssid : ssids) {
+            Set<BssidStatus> blockedForSsid = mBlockedBssidsPerSsid.get(ssid);
+            if (blockedForSsid != null) {
+                count += blockedForSsid.size();
+            }
         }
-        return (int) mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssids.contains(entry.ssid))
-                .count();
+        return count;
     }
 
     /**
@@ -802,9 +857,17 @@ public class WifiBlocklistMonitor {
      * @return Set of BSSIDs currently in the blocklist
      */
     public Set<String> updateAndGetBssidBlocklist() {
-        return updateAndGetBssidBlocklistInternal()
-                .map(entry -> entry.bssid)
-                .collect(Collectors.toSet());
+        removeExpiredBssidsFromBlocklist();
+        if (mBssidBlocklistSnapshot == null) {
+            Set<String> blocklist = new ArraySet<>();
+            for (Set<BssidStatus> blockedForSsid : mBlockedBssidsPerSsid.values()) {
+                for (BssidStatus status : blockedForSsid) {
+                    blocklist.add(status.bssid);
+                }
+            }
+            mBssidBlocklistSnapshot = Collections.unmodifiableSet(blocklist);
+        }
+        return mBssidBlocklistSnapshot;
     }
 
     /**
@@ -815,10 +878,14 @@ public class WifiBlocklistMonitor {
         if (ssid == null) {
             return Collections.emptySet();
         }
-        return mBssidStatusMap.values().stream()
-                .filter(entry -> entry.isInBlocklist && ssid.equals(entry.ssid))
-                .map(entry -> entry.blockReason)
-                .collect(Collectors.toSet());
+        Set<Integer> reasons = new ArraySet<>();
+        Set<BssidStatus> blockedForSsid = mBlockedBssidsPerSsid.get(ssid);
+        if (blockedForSsid != null) {
+            for (BssidStatus status : blockedForSsid) {
+                reasons.add(status.blockReason);
+            }
+        }
+        return reasons;
     }
 
     /**
@@ -865,25 +932,22 @@ public class WifiBlocklistMonitor {
     }
 
     /**
-     * Removes expired BssidStatus entries and then return remaining entries in the blocklist.
-     * @return Stream of BssidStatus for BSSIDs that are in the blocklist.
+     * Removes expired BssidStatus entries from the blocklist.
      */
-    private Stream<BssidStatus> updateAndGetBssidBlocklistInternal() {
-        Stream.Builder<BssidStatus> builder = Stream.builder();
+    private void removeExpiredBssidsFromBlocklist() {
         long curTime = mClock.getWallClockMillis();
-        mBssidStatusMap.entrySet().removeIf(e -> {
-            BssidStatus status = e.getValue();
-            if (status.isInBlocklist) {
-                if (status.blocklistEndTimeMs < curTime) {
-                    mBssidBlocklistMonitorLogger.logBssidUnblocked(
-                            status, "updateAndGetBssidBlocklistInternal");
-                    return true;
-                }
-                builder.accept(status);
+        BlocklistExpiry expiry;
+        while ((expiry = mBlocklistExpiryQueue.peek()) != null && expiry.endTimeMs < curTime) {
+            mBlocklistExpiryQueue.poll();
+            BssidStatus status = expiry.status;
+            if (!expiry.isValid()) {
+                continue;
             }
-            return false;
-        });
-        return builder.build();
+            mBssidBlocklistMonitorLogger.logBssidUnblocked(
+                    status, "removeExpiredBssidsFromBlocklist");
+            mBssidStatusMap.remove(status.bssid);
+            onBssidStatusRemoved(status);
+        }
     }
 
     /**
@@ -895,11 +959,19 @@ public class WifiBlocklistMonitor {
         if (!mConnectivityHelper.isFirmwareRoamingSupported()) {
             return;
         }
-        ArrayList<String> bssidBlocklist = updateAndGetBssidBlocklistInternal()
-                .filter(entry -> ssids.contains(entry.ssid))
-                .sorted((o1, o2) -> (int) (o2.blocklistEndTimeMs - o1.blocklistEndTimeMs))
-                .map(entry -> entry.bssid)
-                .collect(Collectors.toCollection(ArrayList::new));
+        removeExpiredBssidsFromBlocklist();
+        List<BssidStatus> blockedStatuses = new ArrayList<>();
+        for (String ssid : ssids) {
+            Set<BssidStatus> blockedForSsid = mBlockedBssidsPerSsid.get(ssid);
+            if (blockedForSsid != null) {
+                blockedStatuses.addAll(blockedForSsid);
+            }
+        }
+        blockedStatuses.sort((o1, o2) -> (int) (o2.blocklistEndTimeMs - o1.blocklistEndTimeMs));
+        ArrayList<String> bssidBlocklist = new ArrayList<>(blockedStatuses.size());
+        for (BssidStatus status : blockedStatuses) {
+            bssidBlocklist.add(status.bssid);
+        }
         int fwMaxBlocklistSize = mConnectivityHelper.getMaxNumBlocklistBssid();
         if (fwMaxBlocklistSize <= 0) {
             Log.e(TAG, "Invalid max BSSID blocklist size:  " + fwMaxBlocklistSize);
@@ -1017,6 +1089,28 @@ public class WifiBlocklistMonitor {
         }
     }
 
+    /**
+     * Entry of the blocklist expiry queue, capturing the blocklist end time of a BSSID when it
+     * was blocked.
+     */
+    private class BlocklistExpiry {
+        public final BssidStatus status;
+        public final long endTimeMs;
+
+        BlocklistExpiry(BssidStatus status) {
+            this.status = status;
+            this.endTimeMs = status.blocklistEndTimeMs;
+        }
+
+        /**
+         * @return true if the BSSID is still blocked until the time captured by this entry.
+         */
+        public boolean isValid() {
+            return status.isInBlocklist && status.blocklistEndTimeMs == endTimeMs
+                    && mBssidStatusMap.get(status.bssid) == status;
+        }
+    }
+
     /**
      * Helper class that counts the number of failures per BSSID.
      */
@@ -787,6 +787,21 @@ public class WifiConfigManager {
         return getConfiguredNetworks(false, true, Process.WIFI_UID);
     }
 
+    /**
+     * Retrieves the list of all configured networks without creating a copy of each network.
+     *
+     * WARNING: The returned objects are the internal configurations maintained by
+     * WifiConfigManager, with passwords in plaintext. This is meant for wifi stack components
+     * which read the networks on every scan (for ex: network selection), they must not modify
+     * the returned objects, hold onto them, or send them to the external world. Use
+     * {@link #getConfiguredNetworks()} for any of those.
+     *
+     * @return Unmodifiable snapshot of the list of internal WifiConfiguration objects.
+     */
+    public @NonNull List<WifiConfiguration> getConfiguredNetworksReadOnly() {
+        return Collections.unmodifiableList(new ArrayList<>(getInternalConfiguredNetworks()));
+    }
+
     /**
      * Retrieves the list of all configured networks with the passwords in plaintext.
      *
@@ -1982,11 +1997,10 @@ public class WifiConfigManager {
         }
         Log.d(TAG, "Remove all networks for app " + app);
         Set<Integer> removedNetworks = new ArraySet<>();
-        WifiConfiguration[] copiedConfigs =
-                mConfiguredNetworks.valuesForAllUsers().toArray(new WifiConfiguration[0]);
+        WifiConfiguration[] copiedConfigs = mConfiguredNetworks
+                .getByCreatorUidForAllUsers(app.uid).toArray(new WifiConfiguration[0]);
         for (WifiConfiguration config : copiedConfigs) {
-            if (app.uid != config.creatorUid
-                    || !app.packageName.equals(getCreatorPackageName(config))) {
+            if (!app.packageName.equals(getCreatorPackageName(config))) {
                 continue;
             }
             localLog("Removing network " + config.SSID
@@ -2885,6 +2899,7 @@ public class WifiConfigManager {
                     result.level = (int) ((double) result.level * (1 - alpha)
                                         + (double) previousRssi * alpha);
                 }
+                scanDetailCache.onScanDetailUpdated(info.getBSSID());
                 if (mVerboseLoggingEnabled) {
                     Log.v(TAG, "Updating scan detail cache freq=" + result.frequency
                             + " BSSID=" + result.BSSID
@@ -3526,6 +3541,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from shared store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // Re-index the merged network, its profile key may have changed.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
@@ -3565,6 +3582,8 @@ public class WifiConfigManager {
                 Log.d(TAG, "Merging network from user store "
                         + configuration.getProfileKey());
                 mergeWithInternalWifiConfiguration(existingConfiguration, configuration);
+                // Re-index the merged network, its profile key may have changed.
+                mConfiguredNetworks.put(existingConfiguration);
                 continue;
             }
 
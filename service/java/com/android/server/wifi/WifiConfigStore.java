@@ -56,11 +56,15 @@ import java.io.PrintWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -219,12 +223,19 @@ public class WifiConfigStore {
                 public void onAlarm() {
                     try {
                         writeBufferedData();
-                    } catch (IOException e) {
+                    } catch (XmlPullParserException | IOException e) {
                         Log.wtf(TAG, "Buffered write failed", e);
                     }
                 }
             };
 
+    /**
+     * Store files which have new data that has not been serialized yet. When writes are
+     * buffered, serialization is deferred to the time of the actual write so that multiple
+     * |write(false)| calls within the buffer interval are coalesced into a single serialization.
+     */
+    private final Set<StoreFile> mStoreFilesPendingSerialization = new HashSet<>();
+
     /**
      * List of data containers.
      */
@@ -404,20 +415,19 @@ public class WifiConfigStore {
     public void write(boolean forceSync)
             throws XmlPullParserException, IOException {
         boolean hasAnyNewData = false;
-        // Serialize the provided data and send it to the respective stores. The actual write will
-        // be performed later depending on the |forceSync| flag .
+        // Mark the stores with new data. The data is serialized and sent to the respective stores
+        // when the actual write is performed, either now or later depending on the |forceSync|
+        // flag.
         for (StoreFile sharedStoreFile : mSharedStores) {
             if (hasNewDataToSerialize(sharedStoreFile)) {
-                byte[] sharedDataBytes = serializeData(sharedStoreFile);
-                sharedStoreFile.storeRawDataToWrite(sharedDataBytes);
+                mStoreFilesPendingSerialization.add(sharedStoreFile);
                 hasAnyNewData = true;
             }
         }
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
                 if (hasNewDataToSerialize(userStoreFile)) {
-                    byte[] userDataBytes = serializeData(userStoreFile);
-                    userStoreFile.storeRawDataToWrite(userDataBytes);
+                    mStoreFilesPendingSerialization.add(userStoreFile);
                     hasAnyNewData = true;
                 }
             }
@@ -438,6 +448,16 @@ public class WifiConfigStore {
         }
     }
 
+    /**
+     * Serialize the data for the provided {@link StoreFile} if it was marked as having new data
+     * since the last write and send it to the store file.
+     */
+    private void serializePendingData(@NonNull StoreFile storeFile)
+            throws XmlPullParserException, IOException {
+        if (!mStoreFilesPendingSerialization.remove(storeFile)) return;
+        storeFile.storeRawDataToWrite(serializeData(storeFile));
+    }
+
     /**
      * Serialize all the data from all the {@link StoreData} clients registered for the provided
      * {@link StoreFile}.
@@ -455,7 +475,10 @@ public class WifiConfigStore {
         List<StoreData> storeDataList = retrieveStoreDataListForStoreFile(storeFile);
 
         final XmlSerializer out = new FastXmlSerializer();
-        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // Size the buffer based on the previous snapshot to avoid repeatedly growing and copying
+        // it for large stores.
+        final ByteArrayOutputStream outputStream =
+                new ByteArrayOutputStream(storeFile.getSerializedSizeHint());
         out.setOutput(outputStream, StandardCharsets.UTF_8.name());
 
         // First XML header.
@@ -469,6 +492,7 @@ public class WifiConfigStore {
             XmlUtil.writeNextSectionEnd(out, tag);
         }
         XmlUtil.writeDocumentEnd(out, XML_TAG_DOCUMENT_HEADER);
+        storeFile.setSerializedSizeHint(outputStream.size());
         return outputStream.toByteArray();
     }
 
@@ -498,18 +522,22 @@ public class WifiConfigStore {
      * Helper method to actually perform the writes to the file. This flushes out any write data
      * being buffered in the respective stores and cancels any pending buffer write alarms.
      */
-    private void writeBufferedData() throws IOException {
+    private void writeBufferedData() throws XmlPullParserException, IOException {
         stopBufferedWriteAlarm();
 
         long writeStartTime = mClock.getElapsedSinceBootMillis();
         for (StoreFile sharedStoreFile : mSharedStores) {
+            serializePendingData(sharedStoreFile);
             sharedStoreFile.writeBufferedRawData();
         }
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
+                serializePendingData(userStoreFile);
                 userStoreFile.writeBufferedRawData();
             }
         }
+        // Any remaining entries belong to stores which are no longer active (user switch).
+        mStoreFilesPendingSerialization.clear();
         long writeTime = mClock.getElapsedSinceBootMillis() - writeStartTime;
         try {
             mWifiMetrics.noteWifiConfigStoreWriteDuration(toIntExact(writeTime));
@@ -684,6 +712,7 @@ public class WifiConfigStore {
         if (mUserStores != null) {
             for (StoreFile userStoreFile : mUserStores) {
                 resetStoreData(userStoreFile);
+                mStoreFilesPendingSerialization.remove(userStoreFile);
             }
         }
 
@@ -753,15 +782,20 @@ public class WifiConfigStore {
             parseAndDiscardIntegrityDataFromXml(in, rootTagDepth);
         }
 
+        // Build the section name to store data lookup once instead of scanning all the registered
+        // store data for every section in the file.
+        Map<String, StoreData> sectionToStoreData = new HashMap<>();
+        for (StoreData storeData : storeDataList) {
+            for (String section : storeData.getSectionsToParse()) {
+                sectionToStoreData.putIfAbsent(section, storeData);
+            }
+        }
         String[] headerName = new String[1];
         Set<StoreData> storeDatasInvoked = new HashSet<>();
         while (XmlUtil.gotoNextSectionOrEnd(in, headerName, rootTagDepth)) {
             // There can only be 1 store data matching the tag, O indicates a previous StoreData
             // module that no longer exists (ignore this XML section).
-            StoreData storeData = storeDataList.stream()
-                    .filter(s -> s.getSectionsToParse().contains(headerName[0]))
-                    .findAny()
-                    .orElse(null);
+            StoreData storeData = sectionToStoreData.get(headerName[0]);
             if (storeData == null) {
                 Log.e(TAG, "Unknown store data: " + headerName[0] + ". List of store data: "
                         + storeDataList);
@@ -847,6 +881,10 @@ public class WifiConfigStore {
          * File permissions to lock down the file.
          */
         private static final int FILE_MODE = 0600;
+        /**
+         * Initial serialization buffer size used before anything was read or written.
+         */
+        private static final int DEFAULT_SERIALIZED_SIZE_HINT = 4096;
         /**
          * The store file to be written to.
          */
@@ -855,6 +893,15 @@ public class WifiConfigStore {
          * This is an intermediate buffer to store the data to be written.
          */
         private byte[] mWriteData;
+        /**
+         * Digest of the data last read from or written to the store file. Used to skip rewriting
+         * the file when the serialized data has not changed.
+         */
+        private byte[] mLastDataDigest;
+        /**
+         * Size of the last data read from or serialized for the store file.
+         */
+        private int mSerializedSizeHint = DEFAULT_SERIALIZED_SIZE_HINT;
         /**
          * Store the file name for setting the file permissions/logging purposes.
          */
@@ -910,11 +957,29 @@ public class WifiConfigStore {
             try {
                 bytes = mAtomicFile.readFully();
             } catch (FileNotFoundException e) {
+                mLastDataDigest = null;
                 return null;
             }
+            mLastDataDigest = computeDigest(bytes);
+            setSerializedSizeHint(bytes.length);
             return bytes;
         }
 
+        /**
+         * @return Expected size of the serialized data for this store file.
+         */
+        public int getSerializedSizeHint() {
+            return mSerializedSizeHint;
+        }
+
+        /**
+         * Record the size of the serialized data for this store file, used to size the buffer
+         * for the next serialization.
+         */
+        public void setSerializedSizeHint(int size) {
+            mSerializedSizeHint = Math.max(size, DEFAULT_SERIALIZED_SIZE_HINT);
+        }
+
         /**
          * Store the provided byte array to be written when {@link #writeBufferedRawData()} method
          * is invoked.
@@ -934,6 +999,13 @@ public class WifiConfigStore {
          */
         public void writeBufferedRawData() throws IOException {
             if (mWriteData == null) return; // No data to write for this file.
+            byte[] digest = computeDigest(mWriteData);
+            if (digest != null && Arrays.equals(digest, mLastDataDigest)
+                    && mAtomicFile.getBaseFile().exists()) {
+                // Contents of the file are already up to date, avoid rewriting the whole file.
+                mWriteData = null;
+                return;
+            }
             // Write the data to the atomic file.
             FileOutputStream out = null;
             try {
@@ -948,10 +1020,21 @@ public class WifiConfigStore {
                 throw e;
             } catch (NullPointerException e) {
                 Log.wtf(TAG, "Possible concurrent modify on mWriteData", e);
+                digest = null;
             }
+            mLastDataDigest = digest;
             // Reset the pending write data after write.
             mWriteData = null;
         }
+
+        private static @Nullable byte[] computeDigest(@NonNull byte[] data) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(data);
+            } catch (NoSuchAlgorithmException e) {
+                Log.e(TAG, "Failed to compute store file digest", e);
+                return null;
+            }
+        }
     }
 
     /**
@@ -34,6 +34,7 @@ import android.net.IpConfiguration;
 import android.net.MacAddress;
 import android.net.wifi.IPnoScanResultsCallback;
 import android.net.wifi.ScanResult;
+import android.net.wifi.SecurityParams;
 import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiContext;
 import android.net.wifi.WifiInfo;
@@ -256,6 +257,15 @@ public class WifiConnectivityManager {
     private boolean mPnoScanEnabledByFramework = true;
     private boolean mEnablePnoScanAfterWifiToggle = true;
     private Set<String> mPnoScanPasspointSsids;
+    // Networks from the suggestions used in the PNO and hidden network lists, reused until the
+    // suggestions generation changes. The scan optimization networks also reflect the state of
+    // the configured networks, so they are dropped as well after network updates, network
+    // selection and connection state changes.
+    private long mHiddenSuggestionNetworksGeneration = -1;
+    private List<ScanSettings.HiddenNetwork> mHiddenSuggestionNetworks = null;
+    private long mScanOptimizationSuggestionsGeneration = -1;
+    private List<WifiConfiguration> mScanOptimizationSuggestionNetworks = null;
+    private List<WifiConfiguration> mPasspointScanOptimizationSuggestionNetworks = null;
 
     private int mCurrentSingleScanScheduleIndex;
     // Cached WifiCandidates used in high mobility state to avoid connecting to APs that are
@@ -639,6 +649,8 @@ public class WifiConnectivityManager {
                 scanDetails, bssidBlocklist, cmmStates, mUntrustedConnectionAllowed,
                 mOemPaidConnectionAllowed, mOemPrivateConnectionAllowed,
                 mRestrictedConnectionAllowedUids, isMultiInternetConnectionRequested());
+        // Network selection updates the selection status of the networks it evaluated.
+        invalidateScanOptimizationSuggestionNetworks();
         mLatestCandidates = candidates;
         mLatestCandidatesTimestampMs = mClock.getElapsedSinceBootMillis();
 
@@ -1227,26 +1239,42 @@ public class WifiConnectivityManager {
             WifiConfigManager.OnNetworkUpdateListener {
         @Override
         public void onNetworkAdded(WifiConfiguration config) {
+            invalidateScanOptimizationSuggestionNetworks();
             triggerScanOnNetworkChanges();
         }
         @Override
         public void onNetworkEnabled(WifiConfiguration config) {
+            invalidateScanOptimizationSuggestionNetworks();
             triggerScanOnNetworkChanges();
         }
         @Override
         public void onNetworkRemoved(WifiConfiguration config) {
+            invalidateScanOptimizationSuggestionNetworks();
             triggerScanOnNetworkChanges();
         }
         @Override
         public void onNetworkUpdated(WifiConfiguration newConfig, WifiConfiguration oldConfig,
                 boolean hasCredentialChanged) {
+            invalidateScanOptimizationSuggestionNetworks();
             triggerScanOnNetworkChanges();
         }
 
         @Override
         public void onNetworkPermanentlyDisabled(WifiConfiguration config, int disableReason) {
+            invalidateScanOptimizationSuggestionNetworks();
             triggerScanOnNetworkChanges();
         }
+
+        @Override
+        public void onNetworkTemporarilyDisabled(WifiConfiguration config, int disableReason) {
+            invalidateScanOptimizationSuggestionNetworks();
+        }
+
+        @Override
+        public void onSecurityParamsUpdate(WifiConfiguration oldConfig,
+                List<SecurityParams> securityParams) {
+            invalidateScanOptimizationSuggestionNetworks();
+        }
     }
 
     private class OnSuggestionUpdateListener implements
@@ -2310,8 +2338,7 @@ public class WifiConnectivityManager {
         // retrieve the list of hidden network SSIDs from saved network to scan for
         settings.hiddenNetworks.addAll(mConfigManager.retrieveHiddenNetworkList(true));
         // retrieve the list of hidden network SSIDs from Network suggestion to scan for
-        settings.hiddenNetworks.addAll(
-                mWifiNetworkSuggestionsManager.retrieveHiddenNetworkList(true));
+        settings.hiddenNetworks.addAll(getHiddenSuggestionNetworks());
 
         SingleScanListener singleScanListener =
                 new SingleScanListener(isFullBandScan);
@@ -2514,7 +2541,12 @@ public class WifiConnectivityManager {
 
     private @NonNull List<WifiConfiguration> getAllScanOptimizationNetworks() {
         List<WifiConfiguration> networks = mConfigManager.getSavedNetworks(-1);
-        networks.addAll(mWifiNetworkSuggestionsManager.getAllScanOptimizationSuggestionNetworks());
+        checkScanOptimizationSuggestionsGeneration();
+        if (mScanOptimizationSuggestionNetworks == null) {
+            mScanOptimizationSuggestionNetworks =
+                    mWifiNetworkSuggestionsManager.getAllScanOptimizationSuggestionNetworks();
+        }
+        networks.addAll(mScanOptimizationSuggestionNetworks);
         // remove all saved but never connected, auto-join disabled, or network selection disabled
         // networks.
         networks.removeIf(config -> !config.allowAutojoin
@@ -2530,6 +2562,37 @@ public class WifiConnectivityManager {
         return networks;
     }
 
+    /**
+     * Drop the scan optimization networks of the suggestions if the suggestions changed since
+     * they were retrieved.
+     */
+    private void checkScanOptimizationSuggestionsGeneration() {
+        long generation = mWifiNetworkSuggestionsManager.getSuggestionsGeneration();
+        if (generation != mScanOptimizationSuggestionsGeneration) {
+            mScanOptimizationSuggestionsGeneration = generation;
+            invalidateScanOptimizationSuggestionNetworks();
+        }
+    }
+
+    private void invalidateScanOptimizationSuggestionNetworks() {
+        mScanOptimizationSuggestionNetworks = null;
+        mPasspointScanOptimizationSuggestionNetworks = null;
+    }
+
+    /**
+     * Retrieve the hidden networks from the suggestions, reused until the suggestions change.
+     */
+    private @NonNull List<ScanSettings.HiddenNetwork> getHiddenSuggestionNetworks() {
+        long generation = mWifiNetworkSuggestionsManager.getSuggestionsGeneration();
+        if (mHiddenSuggestionNetworks == null
+                || generation != mHiddenSuggestionNetworksGeneration) {
+            mHiddenSuggestionNetworks =
+                    mWifiNetworkSuggestionsManager.retrieveHiddenNetworkList(true);
+            mHiddenSuggestionNetworksGeneration = generation;
+        }
+        return mHiddenSuggestionNetworks;
+    }
+
     /**
      * Merge Passpoint PNO scan candidates into an existing network list.
      */
@@ -2537,9 +2600,12 @@ public class WifiConnectivityManager {
             List<WifiConfiguration> networks) {
         List<WifiConfiguration> passpointNetworks =
                 mPasspointManager.getWifiConfigsForPasspointProfiles(true);
-        passpointNetworks.addAll(
-                mWifiNetworkSuggestionsManager.getAllPasspointScanOptimizationSuggestionNetworks(
-                        true));
+        checkScanOptimizationSuggestionsGeneration();
+        if (mPasspointScanOptimizationSuggestionNetworks == null) {
+            mPasspointScanOptimizationSuggestionNetworks = mWifiNetworkSuggestionsManager
+                    .getAllPasspointScanOptimizationSuggestionNetworks(true);
+        }
+        passpointNetworks.addAll(mPasspointScanOptimizationSuggestionNetworks);
         if (passpointNetworks.isEmpty()) return networks;
 
         // Add up to MAX_PRIORITIZED_PASSPOINT_SSIDS_PER_PNO_SCAN Passpoint networks to
@@ -3078,6 +3144,8 @@ public class WifiConnectivityManager {
         }
         localLog("handleConnectionStateChanged: state=" + stateToString(state));
         loadScanSchedulesAndScanTypesIfNeeded();
+        // The connection updates the state of the network, and the SSID of Passpoint networks.
+        invalidateScanOptimizationSuggestionNetworks();
 
         mWifiState = state;
 
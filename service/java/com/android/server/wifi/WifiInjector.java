@@ -158,6 +158,7 @@ public class WifiInjector {
     private final HandlerThread mWifiP2pServiceHandlerThread;
     private final HandlerThread mPasspointProvisionerHandlerThread;
     private final HandlerThread mWifiDiagnosticsHandlerThread;
+    private final HandlerThread mSignalPollHandlerThread;
     private final WifiTrafficPoller mWifiTrafficPoller;
     private final WifiCountryCode mCountryCode;
     private final BackupManagerProxy mBackupManagerProxy = new BackupManagerProxy();
@@ -193,6 +194,7 @@ public class WifiInjector {
     private final WifiConnectivityHelper mWifiConnectivityHelper;
     private final LocalLog mConnectivityLocalLog;
     private final LocalLog mWifiHandlerLocalLog;
+    private final RunnerHandler mWifiHandler;
     private final ThroughputScorer mThroughputScorer;
     private final WifiNetworkSelector mWifiNetworkSelector;
     private final SavedNetworkNominator mSavedNetworkNominator;
@@ -219,6 +221,7 @@ public class WifiInjector {
     private final DppManager mDppManager;
     private final WifiPulledAtomLogger mWifiPulledAtomLogger;
     private final LinkProbeManager mLinkProbeManager;
+    private final SignalPoller mSignalPoller;
     private IpMemoryStore mIpMemoryStore;
     private final WifiThreadRunner mWifiThreadRunner;
     private final WifiBlocklistMonitor mWifiBlocklistMonitor;
@@ -297,6 +300,7 @@ public class WifiInjector {
         RunnerHandler wifiHandler = new RunnerHandler(wifiLooper, context.getResources().getInteger(
                 R.integer.config_wifiConfigurationWifiRunnerThresholdInMs),
                 mWifiHandlerLocalLog);
+        mWifiHandler = wifiHandler;
         mWifiDeviceStateChangeManager = new WifiDeviceStateChangeManager(context, wifiHandler);
         mWifiMetrics = new WifiMetrics(mContext, mFrameworkFacade, mClock, wifiLooper,
                 awareMetrics, rttMetrics, new WifiPowerMetrics(mBatteryStats), mWifiP2pMetrics,
@@ -493,6 +497,10 @@ public class WifiInjector {
         mWifiMetrics.setWifiChannelUtilization(wifiChannelUtilizationConnected);
         mLinkProbeManager = new LinkProbeManager(mClock, mWifiNative, mWifiMetrics,
                 mFrameworkFacade, wifiHandler, mContext);
+        mSignalPollHandlerThread = new HandlerThread("WifiSignalPoll");
+        mSignalPollHandlerThread.start();
+        mSignalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                new Handler(mSignalPollHandlerThread.getLooper()));
         mDefaultClientModeManager = new DefaultClientModeManager();
         mExternalScoreUpdateObserverProxy =
                 new ExternalScoreUpdateObserverProxy(mWifiThreadRunner);
@@ -1245,6 +1253,10 @@ public class WifiInjector {
         return mLinkProbeManager;
     }
 
+    public SignalPoller getSignalPoller() {
+        return mSignalPoller;
+    }
+
     public MultiInternetManager getMultiInternetManager() {
         return mMultiInternetManager;
     }
@@ -1282,6 +1294,11 @@ public class WifiInjector {
         return mWifiHandlerLocalLog;
     }
 
+    @NonNull
+    public RunnerHandler getWifiHandler() {
+        return mWifiHandler;
+    }
+
     @NonNull
     public WifiKeyStore getWifiKeyStore() {
         return mWifiKeyStore;
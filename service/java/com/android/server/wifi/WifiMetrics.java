@@ -130,6 +130,7 @@ import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiUsabilityStats;
 import com.android.server.wifi.proto.nano.WifiMetricsProto.WifiUsabilityStatsEntry;
 import com.android.server.wifi.rtt.RttMetrics;
 import com.android.server.wifi.scanner.KnownBandsChannelHelper;
+import com.android.server.wifi.util.ConcurrentIntCounter;
 import com.android.server.wifi.util.InformationElementUtil;
 import com.android.server.wifi.util.InformationElementUtil.ApType6GHz;
 import com.android.server.wifi.util.InformationElementUtil.WifiMode;
@@ -160,6 +161,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides storage for wireless connectivity metrics, as they are generated.
@@ -323,17 +325,25 @@ public class WifiMetrics {
      * The latest started (but un-ended) connection attempt per interface.
      */
     private final Map<String, ConnectionEvent> mCurrentConnectionEventPerIface = new ArrayMap<>();
+    /*
+     * The scan and RSSI poll counters below are recorded on every scan and RSSI poll, so they
+     * are updated without holding mLock. They are drained into the proto by consolidateProto().
+     */
     /**
      * Count of number of times each scan return code, indexed by WifiLog.ScanReturnCode
      */
-    private final SparseIntArray mScanReturnEntries = new SparseIntArray();
+    private final ConcurrentIntCounter mScanReturnEntries = new ConcurrentIntCounter(
+            WifiMetricsProto.WifiLog.SCAN_UNKNOWN, WifiMetricsProto.WifiLog.FAILURE_WIFI_DISABLED);
     /**
      * Mapping of system state to the counts of scans requested in that wifi state * screenOn
      * combination. Indexed by WifiLog.WifiState * (1 + screenOn)
      */
-    private final SparseIntArray mWifiSystemStateEntries = new SparseIntArray();
+    private final ConcurrentIntCounter mWifiSystemStateEntries = new ConcurrentIntCounter(
+            WifiMetricsProto.WifiLog.WIFI_UNKNOWN * 2 + SCREEN_OFF,
+            WifiMetricsProto.WifiLog.WIFI_ASSOCIATED * 2 + SCREEN_ON);
     /** Mapping of channel frequency to its RSSI distribution histogram **/
-    private final Map<Integer, SparseIntArray> mRssiPollCountsMap = new HashMap<>();
+    private final Map<Integer, ConcurrentIntCounter> mRssiPollCountsMap =
+            new ConcurrentHashMap<>();
     /** Mapping of RSSI scan-poll delta values to counts. */
     private final SparseIntArray mRssiDeltaCounts = new SparseIntArray();
     /** Mapping of link speed values to LinkSpeedCount objects. */
@@ -361,7 +371,7 @@ public class WifiMetrics {
     private int mScanResultRssi = 0;
     /** Boot-relative timestamp when the last candidate scanresult was received, used to calculate
         RSSI deltas. -1 designates no candidate scanResult being tracked */
-    private long mScanResultRssiTimestampMillis = -1;
+    private volatile long mScanResultRssiTimestampMillis = -1;
     /** Mapping of alert reason to the respective alert count. */
     private final SparseIntArray mWifiAlertReasonCounts = new SparseIntArray();
     /**
@@ -556,12 +566,33 @@ public class WifiMetrics {
      */
     private final SparseIntArray mNetworkIdToNominatorId = new SparseIntArray();
 
+    private static final int[] NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS =
+            {100, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 500000};
+    // Time spent in each stage of network selection, in microseconds.
+    private final IntHistogram mNetworkSelectionUpdateLatencyUsHistogram =
+            new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+    private final IntHistogram mNetworkSelectionFilterLatencyUsHistogram =
+            new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+    private final IntHistogram mNetworkSelectionNominateLatencyUsHistogram =
+            new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+    private final IntHistogram mNetworkSelectionTotalLatencyUsHistogram =
+            new IntHistogram(NETWORK_SELECTION_LATENCY_US_HISTOGRAM_BUCKETS);
+
     /** passpoint provision success count */
     private int mNumProvisionSuccess = 0;
 
     /** Mapping of failure code to the respective passpoint provision failure count. */
     private final IntCounter mPasspointProvisionFailureCounts = new IntCounter();
 
+    private static final int[] ANQP_REQUEST_TIME_MS_HISTOGRAM_BUCKETS =
+            {50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000};
+    /** Time ANQP requests spent queued before being sent */
+    private final IntHistogram mAnqpRequestQueueWaitMsHistogram =
+            new IntHistogram(ANQP_REQUEST_TIME_MS_HISTOGRAM_BUCKETS);
+    /** Time between sending an ANQP request and its completion */
+    private final IntHistogram mAnqpRequestLatencyMsHistogram =
+            new IntHistogram(ANQP_REQUEST_TIME_MS_HISTOGRAM_BUCKETS);
+
     // Connection duration stats collected while link layer stats reports are on
     private final ConnectionDurationStats mConnectionDurationStats = new ConnectionDurationStats();
 
@@ -3070,21 +3101,15 @@ public class WifiMetrics {
      * @param scanReturnCode Return code from scan attempt WifiMetricsProto.WifiLog.SCAN_X
      */
     public void incrementScanReturnEntry(int scanReturnCode, int countToAdd) {
-        synchronized (mLock) {
-            if (DBG) Log.v(TAG, "incrementScanReturnEntry " + returnCodeToString(scanReturnCode));
-            int entry = mScanReturnEntries.get(scanReturnCode);
-            entry += countToAdd;
-            mScanReturnEntries.put(scanReturnCode, entry);
-        }
+        if (DBG) Log.v(TAG, "incrementScanReturnEntry " + returnCodeToString(scanReturnCode));
+        mScanReturnEntries.add(scanReturnCode, countToAdd);
     }
     /**
      * Get the count of this scanReturnCode
      * @param scanReturnCode that we are getting the count for
      */
     public int getScanReturnEntry(int scanReturnCode) {
-        synchronized (mLock) {
-            return mScanReturnEntries.get(scanReturnCode);
-        }
+        return mScanReturnEntries.get(scanReturnCode);
     }
 
     private String wifiSystemStateToString(int state) {
@@ -3109,26 +3134,20 @@ public class WifiMetrics {
      * @param screenOn Is the screen on
      */
     public void incrementWifiSystemScanStateCount(int state, boolean screenOn) {
-        synchronized (mLock) {
-            if (DBG) {
-                Log.v(TAG, "incrementWifiSystemScanStateCount " + wifiSystemStateToString(state)
-                        + " " + screenOn);
-            }
-            int index = (state * 2) + (screenOn ? SCREEN_ON : SCREEN_OFF);
-            int entry = mWifiSystemStateEntries.get(index);
-            entry++;
-            mWifiSystemStateEntries.put(index, entry);
+        if (DBG) {
+            Log.v(TAG, "incrementWifiSystemScanStateCount " + wifiSystemStateToString(state)
+                    + " " + screenOn);
         }
+        int index = (state * 2) + (screenOn ? SCREEN_ON : SCREEN_OFF);
+        mWifiSystemStateEntries.increment(index);
     }
 
     /**
      * Get the count of this system State Entry
      */
     public int getSystemStateCount(int state, boolean screenOn) {
-        synchronized (mLock) {
-            int index = state * 2 + (screenOn ? SCREEN_ON : SCREEN_OFF);
-            return mWifiSystemStateEntries.get(index);
-        }
+        int index = state * 2 + (screenOn ? SCREEN_ON : SCREEN_OFF);
+        return mWifiSystemStateEntries.get(index);
     }
 
     /**
@@ -3274,14 +3293,17 @@ public class WifiMetrics {
         if (!(rssi >= MIN_RSSI_POLL && rssi <= MAX_RSSI_POLL)) {
             return;
         }
-        synchronized (mLock) {
-            if (!mRssiPollCountsMap.containsKey(frequency)) {
-                mRssiPollCountsMap.put(frequency, new SparseIntArray());
+        ConcurrentIntCounter rssiCounts = mRssiPollCountsMap.get(frequency);
+        if (rssiCounts == null) {
+            rssiCounts = mRssiPollCountsMap.computeIfAbsent(frequency,
+                    k -> new ConcurrentIntCounter(MIN_RSSI_POLL, MAX_RSSI_POLL));
+        }
+        rssiCounts.increment(rssi);
+        // Only the first poll after a candidate scan result needs mLock, to log the RSSI delta.
+        if (mScanResultRssiTimestampMillis >= 0) {
+            synchronized (mLock) {
+                maybeIncrementRssiDeltaCount(rssi - mScanResultRssi);
             }
-            SparseIntArray sparseIntArray = mRssiPollCountsMap.get(frequency);
-            int count = sparseIntArray.get(rssi);
-            sparseIntArray.put(rssi, count + 1);
-            maybeIncrementRssiDeltaCount(rssi - mScanResultRssi);
         }
     }
 
@@ -4479,9 +4501,10 @@ public class WifiMetrics {
 
                 try {
                     JSONObject rssiMap = new JSONObject();
-                    for (Map.Entry<Integer, SparseIntArray> entry : mRssiPollCountsMap.entrySet()) {
+                    for (Map.Entry<Integer, ConcurrentIntCounter> entry
+                            : mRssiPollCountsMap.entrySet()) {
                         int frequency = entry.getKey();
-                        final SparseIntArray histogram = entry.getValue();
+                        final ConcurrentIntCounter histogram = entry.getValue();
                         JSONArray histogramElements = new JSONArray();
                         for (int i = MIN_RSSI_POLL; i <= MAX_RSSI_POLL; i++) {
                             int count = histogram.get(i);
@@ -4492,6 +4515,10 @@ public class WifiMetrics {
                             histogramElement.put(Integer.toString(i), count);
                             histogramElements.put(histogramElement);
                         }
+                        if (histogramElements.length() == 0) {
+                            // Frequency drained by the last proto dump.
+                            continue;
+                        }
                         rssiMap.put(Integer.toString(frequency), histogramElements);
                     }
                     pw.println("mWifiLogProto.rssiPollCount: " + rssiMap.toString());
@@ -4672,6 +4699,16 @@ public class WifiMetrics {
                         + mPasspointProvisionFailureCounts);
                 pw.println("mWifiLogProto.totalNumberOfPasspointConnectionsWithVenueUrl="
                         + mWifiLogProto.totalNumberOfPasspointConnectionsWithVenueUrl);
+                pw.println("mWifiLogProto.numAnqpCacheHits=" + mWifiLogProto.numAnqpCacheHits);
+                pw.println("mWifiLogProto.numAnqpCacheMisses="
+                        + mWifiLogProto.numAnqpCacheMisses);
+                pw.println("mWifiLogProto.numAnqpCacheEvictions="
+                        + mWifiLogProto.numAnqpCacheEvictions);
+                pw.println("mAnqpRequestQueueWaitMsHistogram:"
+                        + mAnqpRequestQueueWaitMsHistogram);
+                pw.println("mAnqpRequestLatencyMsHistogram:" + mAnqpRequestLatencyMsHistogram);
+                pw.println("mWifiLogProto.numAnqpRequestTimeouts="
+                        + mWifiLogProto.numAnqpRequestTimeouts);
                 pw.println(
                         "mWifiLogProto.totalNumberOfPasspointConnectionsWithTermsAndConditionsUrl="
                                 + mWifiLogProto
@@ -4962,6 +4999,14 @@ public class WifiMetrics {
                 printUserApprovalSuggestionAppReaction(pw);
                 printUserApprovalCarrierReaction(pw);
                 pw.println("mNetworkIdToNominatorId:\n" + mNetworkIdToNominatorId);
+                pw.println("mNetworkSelectionUpdateLatencyUsHistogram:\n"
+                        + mNetworkSelectionUpdateLatencyUsHistogram);
+                pw.println("mNetworkSelectionFilterLatencyUsHistogram:\n"
+                        + mNetworkSelectionFilterLatencyUsHistogram);
+                pw.println("mNetworkSelectionNominateLatencyUsHistogram:\n"
+                        + mNetworkSelectionNominateLatencyUsHistogram);
+                pw.println("mNetworkSelectionTotalLatencyUsHistogram:\n"
+                        + mNetworkSelectionTotalLatencyUsHistogram);
                 pw.println("mWifiLockStats:\n" + mWifiLockStats);
                 pw.println("mWifiLockHighPerfAcqDurationSecHistogram:\n"
                         + mWifiLockHighPerfAcqDurationSecHistogram);
@@ -5305,13 +5350,18 @@ public class WifiMetrics {
                     .map(connectionEvent -> connectionEvent.mConnectionEvent)
                     .toArray(WifiMetricsProto.ConnectionEvent[]::new);
 
+            // Drain the lock-free counters, clear() is always called right after this, so any
+            // count recorded after the drain is kept for the next report instead of being lost.
+            IntCounter scanReturnEntries = mScanReturnEntries.drain();
+            IntCounter wifiSystemStateEntries = mWifiSystemStateEntries.drain();
+
             //Convert the SparseIntArray of scanReturnEntry integers into ScanReturnEntry proto list
             mWifiLogProto.scanReturnEntries =
-                    new WifiMetricsProto.WifiLog.ScanReturnEntry[mScanReturnEntries.size()];
-            for (int i = 0; i < mScanReturnEntries.size(); i++) {
+                    new WifiMetricsProto.WifiLog.ScanReturnEntry[scanReturnEntries.size()];
+            for (int i = 0; i < scanReturnEntries.size(); i++) {
                 mWifiLogProto.scanReturnEntries[i] = new WifiMetricsProto.WifiLog.ScanReturnEntry();
-                mWifiLogProto.scanReturnEntries[i].scanReturnCode = mScanReturnEntries.keyAt(i);
-                mWifiLogProto.scanReturnEntries[i].scanResultsCount = mScanReturnEntries.valueAt(i);
+                mWifiLogProto.scanReturnEntries[i].scanReturnCode = scanReturnEntries.keyAt(i);
+                mWifiLogProto.scanReturnEntries[i].scanResultsCount = scanReturnEntries.valueAt(i);
             }
 
             // Convert the SparseIntArray of systemStateEntry into WifiSystemStateEntry proto list
@@ -5319,16 +5369,16 @@ public class WifiMetrics {
             //     key: wifiState * 2 + isScreenOn, value: wifiStateCount
             mWifiLogProto.wifiSystemStateEntries =
                     new WifiMetricsProto.WifiLog
-                    .WifiSystemStateEntry[mWifiSystemStateEntries.size()];
-            for (int i = 0; i < mWifiSystemStateEntries.size(); i++) {
+                    .WifiSystemStateEntry[wifiSystemStateEntries.size()];
+            for (int i = 0; i < wifiSystemStateEntries.size(); i++) {
                 mWifiLogProto.wifiSystemStateEntries[i] =
                         new WifiMetricsProto.WifiLog.WifiSystemStateEntry();
                 mWifiLogProto.wifiSystemStateEntries[i].wifiState =
-                        mWifiSystemStateEntries.keyAt(i) / 2;
+                        wifiSystemStateEntries.keyAt(i) / 2;
                 mWifiLogProto.wifiSystemStateEntries[i].wifiStateCount =
-                        mWifiSystemStateEntries.valueAt(i);
+                        wifiSystemStateEntries.valueAt(i);
                 mWifiLogProto.wifiSystemStateEntries[i].isScreenOn =
-                        (mWifiSystemStateEntries.keyAt(i) % 2) > 0;
+                        (wifiSystemStateEntries.keyAt(i) % 2) > 0;
             }
             mWifiLogProto.recordDurationSec = (int) ((mClock.getElapsedSinceBootMillis() / 1000)
                     - mRecordStartTimeSec);
@@ -5337,9 +5387,9 @@ public class WifiMetrics {
              * Convert the SparseIntArrays of RSSI poll rssi, counts, and frequency to the
              * proto's repeated IntKeyVal array.
              */
-            for (Map.Entry<Integer, SparseIntArray> entry : mRssiPollCountsMap.entrySet()) {
+            for (Map.Entry<Integer, ConcurrentIntCounter> entry : mRssiPollCountsMap.entrySet()) {
                 int frequency = entry.getKey();
-                SparseIntArray histogram = entry.getValue();
+                IntCounter histogram = entry.getValue().drain();
                 for (int i = 0; i < histogram.size(); i++) {
                     WifiMetricsProto.RssiPollCount keyVal = new WifiMetricsProto.RssiPollCount();
                     keyVal.rssi = histogram.keyAt(i);
@@ -5436,6 +5486,10 @@ public class WifiMetrics {
             for (int i = 0; i < mUserActionEventList.size(); i++) {
                 mWifiLogProto.userActionEvents[i] = mUserActionEventList.get(i).toProto();
             }
+            mWifiLogProto.anqpRequestQueueWaitMsHistogram =
+                    mAnqpRequestQueueWaitMsHistogram.toProto();
+            mWifiLogProto.anqpRequestLatencyMsHistogram =
+                    mAnqpRequestLatencyMsHistogram.toProto();
             mWifiLogProto.totalSsidsInScanHistogram =
                     makeNumConnectableNetworksBucketArray(mTotalSsidsInScanHistogram);
             mWifiLogProto.totalBssidsInScanHistogram =
@@ -5870,10 +5924,9 @@ public class WifiMetrics {
             // Add in-progress events back
             mConnectionEventList.addAll(mCurrentConnectionEventPerIface.values());
 
-            mScanReturnEntries.clear();
-            mWifiSystemStateEntries.clear();
+            // mScanReturnEntries, mWifiSystemStateEntries and mRssiPollCountsMap are drained by
+            // consolidateProto().
             mRecordStartTimeSec = mClock.getElapsedSinceBootMillis() / 1000;
-            mRssiPollCountsMap.clear();
             mRssiDeltaCounts.clear();
             mLinkSpeedCounts.clear();
             mTxLinkSpeedCount2g.clear();
@@ -5977,6 +6030,10 @@ public class WifiMetrics {
             mWifiNetworkSuggestionApiAppTypeCounter.clear();
             mUserApprovalSuggestionAppUiReactionList.clear();
             mUserApprovalCarrierUiReactionList.clear();
+            mNetworkSelectionUpdateLatencyUsHistogram.clear();
+            mNetworkSelectionFilterLatencyUsHistogram.clear();
+            mNetworkSelectionNominateLatencyUsHistogram.clear();
+            mNetworkSelectionTotalLatencyUsHistogram.clear();
             mWifiLockHighPerfAcqDurationSecHistogram.clear();
             mWifiLockLowLatencyAcqDurationSecHistogram.clear();
             mWifiLockHighPerfActiveSessionDurationSecHistogram.clear();
@@ -5990,6 +6047,8 @@ public class WifiMetrics {
             mTxThroughputMbpsHistogramAbove2G.clear();
             mRxThroughputMbpsHistogramAbove2G.clear();
             mPasspointProvisionFailureCounts.clear();
+            mAnqpRequestQueueWaitMsHistogram.clear();
+            mAnqpRequestLatencyMsHistogram.clear();
             mNumProvisionSuccess = 0;
             mBssidBlocklistStats = new BssidBlocklistStats();
             mConnectionDurationStats.clear();
@@ -6257,7 +6316,7 @@ public class WifiMetrics {
 
     public void registerForWifiMonitorEvents(String ifaceName) {
         for (int event : WIFI_MONITOR_EVENTS) {
-            mWifiMonitor.registerHandler(ifaceName, event, mHandler);
+            mWifiMonitor.registerHandlerWithIfaceName(ifaceName, event, mHandler);
         }
     }
 
@@ -8446,6 +8505,28 @@ public class WifiMetrics {
         mBssidBlocklistStats.networkSelectionFilteredBssidCount.increment(numBssid);
     }
 
+    /**
+     * Record the time spent in each stage of a network selection pass which produced candidates.
+     *
+     * @param updateUs time spent updating the scan detail caches and nominators.
+     * @param filterUs time spent filtering the scan results.
+     * @param nominateUs time spent nominating and collecting the candidates.
+     * @param totalUs total time of the network selection pass.
+     */
+    public void noteNetworkSelectionLatency(long updateUs, long filterUs, long nominateUs,
+            long totalUs) {
+        synchronized (mLock) {
+            mNetworkSelectionUpdateLatencyUsHistogram.increment(clampToInt(updateUs));
+            mNetworkSelectionFilterLatencyUsHistogram.increment(clampToInt(filterUs));
+            mNetworkSelectionNominateLatencyUsHistogram.increment(clampToInt(nominateUs));
+            mNetworkSelectionTotalLatencyUsHistogram.increment(clampToInt(totalUs));
+        }
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
     /**
      * Increment the number of network connections skipped due to the high movement feature.
      */
@@ -9241,6 +9322,64 @@ public class WifiMetrics {
         }
     }
 
+    /**
+     * Increment number of lookups of the ANQP cache which found an unexpired entry
+     */
+    public void incrementAnqpCacheHits() {
+        synchronized (mLock) {
+            mWifiLogProto.numAnqpCacheHits++;
+        }
+    }
+
+    /**
+     * Increment number of lookups of the ANQP cache which found no entry or an expired one
+     */
+    public void incrementAnqpCacheMisses() {
+        synchronized (mLock) {
+            mWifiLogProto.numAnqpCacheMisses++;
+        }
+    }
+
+    /**
+     * Increment number of unexpired ANQP cache entries evicted to bound the size of the cache
+     */
+    public void incrementAnqpCacheEvictions() {
+        synchronized (mLock) {
+            mWifiLogProto.numAnqpCacheEvictions++;
+        }
+    }
+
+    /**
+     * Log the time an ANQP request spent queued before being sent.
+     *
+     * @param waitMs time in the queue, in milliseconds
+     */
+    public void logAnqpRequestQueueWait(int waitMs) {
+        synchronized (mLock) {
+            mAnqpRequestQueueWaitMsHistogram.increment(waitMs);
+        }
+    }
+
+    /**
+     * Log the time between sending an ANQP request and its completion.
+     *
+     * @param latencyMs time to complete the request, in milliseconds
+     */
+    public void logAnqpRequestLatency(int latencyMs) {
+        synchronized (mLock) {
+            mAnqpRequestLatencyMsHistogram.increment(latencyMs);
+        }
+    }
+
+    /**
+     * Increment number of ANQP requests which timed out before completing
+     */
+    public void incrementAnqpRequestTimeouts() {
+        synchronized (mLock) {
+            mWifiLogProto.numAnqpRequestTimeouts++;
+        }
+    }
+
     /**
      * Increment number of number of Passpoint connections with a T&C URL
      */
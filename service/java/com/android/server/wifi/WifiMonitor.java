@@ -24,7 +24,7 @@ import android.net.wifi.WifiManager;
 import android.net.wifi.WifiSsid;
 import android.os.Handler;
 import android.os.Message;
-import android.util.ArraySet;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -38,14 +38,18 @@ import com.android.server.wifi.hotspot2.AnqpEvent;
 import com.android.server.wifi.hotspot2.IconEvent;
 import com.android.server.wifi.hotspot2.WnmData;
 
+import java.io.PrintWriter;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Listen for events from the wpa_supplicant & wificond and broadcast them on
@@ -177,19 +181,59 @@ public class WifiMonitor {
         mVerboseLoggingEnabled = verbose;
     }
 
-    private final Map<String, SparseArray<Set<Handler>>> mHandlerMap = new HashMap<>();
-    public synchronized void registerHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
-            ifaceHandlers = new SparseArray<>();
-            mHandlerMap.put(iface, ifaceHandlers);
-        }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
-        if (ifaceWhatHandlers == null) {
-            ifaceWhatHandlers = new ArraySet<>();
-            ifaceHandlers.put(what, ifaceWhatHandlers);
+    /**
+     * A handler registered for an event, and whether the iface name should be added to the
+     * messages sent to it.
+     */
+    private static final class Registration {
+        public final Handler handler;
+        public final boolean withIfaceName;
+
+        Registration(Handler handler, boolean withIfaceName) {
+            this.handler = handler;
+            this.withIfaceName = withIfaceName;
         }
-        ifaceWhatHandlers.add(handler);
+    }
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    /**
+     * Handlers registered on each iface, keyed by message what. Events are dispatched from the
+     * HAL callback threads without locking, so neither the map nor the tables in it are modified
+     * once published: registration changes, which are rare, publish a new copy under the class
+     * lock.
+     */
+    private volatile Map<String, SparseArray<Registration[]>> mHandlerMap =
+            Collections.emptyMap();
+
+    // Stats of the broadcast events, indexed by (what - BASE). Larger whats share the last slot.
+    private static final int NUM_EVENT_STATS = 128;
+    private final AtomicIntegerArray mEventCounts = new AtomicIntegerArray(NUM_EVENT_STATS);
+    private final AtomicIntegerArray mDeliveryCounts = new AtomicIntegerArray(NUM_EVENT_STATS);
+    private final AtomicLongArray mDispatchNanos = new AtomicLongArray(NUM_EVENT_STATS);
+    private final AtomicLongArray mMaxDispatchNanos = new AtomicLongArray(NUM_EVENT_STATS);
+
+    /**
+     * Register the given |handler| for the event |what| on |iface|.
+     * @param iface
+     * @param what
+     * @param handler
+     */
+    public void registerHandler(String iface, int what, Handler handler) {
+        updateRegistration(iface, what, handler, true, false);
+    }
+
+    /**
+     * Same as {@link #registerHandler(String, int, Handler)}, but also adds the name of the iface
+     * to the data of the messages sent to |handler|, see {@link #KEY_IFACE}. This allocates a
+     * Bundle for every message, so it should only be used by handlers registered on several
+     * ifaces which need to tell them apart.
+     * @param iface
+     * @param what
+     * @param handler
+     */
+    public void registerHandlerWithIfaceName(String iface, int what, Handler handler) {
+        updateRegistration(iface, what, handler, true, true);
     }
 
     /**
@@ -198,20 +242,61 @@ public class WifiMonitor {
      * @param what
      * @param handler
      */
-    public synchronized void deregisterHandler(String iface, int what, Handler handler) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (ifaceHandlers == null) {
+    public void deregisterHandler(String iface, int what, Handler handler) {
+        updateRegistration(iface, what, handler, false, false);
+    }
+
+    private synchronized void updateRegistration(String iface, int what, Handler handler,
+            boolean register, boolean withIfaceName) {
+        SparseArray<Registration[]> ifaceHandlers = mHandlerMap.get(iface);
+        if (ifaceHandlers == null && !register) {
             return;
         }
-        Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(what);
-        if (ifaceWhatHandlers == null) {
-            return;
+        Registration[] registrations = ifaceHandlers == null
+                ? NO_REGISTRATIONS : ifaceHandlers.get(what, NO_REGISTRATIONS);
+        List<Registration> newRegistrations = new ArrayList<>(registrations.length + 1);
+        boolean found = false;
+        for (Registration registration : registrations) {
+            if (registration.handler != handler) {
+                newRegistrations.add(registration);
+                continue;
+            }
+            found = true;
+            if (register) {
+                newRegistrations.add(new Registration(handler,
+                        registration.withIfaceName || withIfaceName));
+            }
         }
-        ifaceWhatHandlers.remove(handler);
+        if (!found) {
+            if (!register) {
+                return;
+            }
+            newRegistrations.add(new Registration(handler, withIfaceName));
+        }
+
+        // Only ever add to the new table so that it has no deleted entries to garbage collect,
+        // which would otherwise happen on the first read from a dispatching thread.
+        SparseArray<Registration[]> newIfaceHandlers = new SparseArray<>();
+        if (ifaceHandlers != null) {
+            for (int i = 0; i < ifaceHandlers.size(); i++) {
+                if (ifaceHandlers.keyAt(i) != what) {
+                    newIfaceHandlers.append(ifaceHandlers.keyAt(i), ifaceHandlers.valueAt(i));
+                }
+            }
+        }
+        if (!newRegistrations.isEmpty()) {
+            newIfaceHandlers.put(what, newRegistrations.toArray(NO_REGISTRATIONS));
+        }
+        Map<String, SparseArray<Registration[]>> newHandlerMap = new HashMap<>(mHandlerMap);
+        newHandlerMap.put(iface, newIfaceHandlers);
+        mHandlerMap = newHandlerMap;
     }
 
-    private final Map<String, Boolean> mMonitoringMap = new HashMap<>();
+    private final Map<String, Boolean> mMonitoringMap = new ConcurrentHashMap<>();
     private boolean isMonitoring(String iface) {
+        if (iface == null) {
+            return false;
+        }
         Boolean val = mMonitoringMap.get(iface);
         if (val == null) {
             return false;
@@ -268,7 +353,7 @@ public class WifiMonitor {
     /**
      * Similar functions to Handler#sendMessage that send the message to the registered handler
      * for the given interface and message what.
-     * All of these should be called with the WifiMonitor class lock
+     * These may be called from any thread, and don't take the WifiMonitor class lock.
      */
     private void sendMessage(String iface, int what) {
         sendMessage(iface, Message.obtain(null, what));
@@ -291,17 +376,13 @@ public class WifiMonitor {
     }
 
     private void sendMessage(String iface, Message message) {
-        SparseArray<Set<Handler>> ifaceHandlers = mHandlerMap.get(iface);
-        if (iface != null && ifaceHandlers != null) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        Map<String, SparseArray<Registration[]>> handlerMap = mHandlerMap;
+        SparseArray<Registration[]> ifaceHandlers = iface != null ? handlerMap.get(iface) : null;
+        int numDelivered = 0;
+        if (ifaceHandlers != null) {
             if (isMonitoring(iface)) {
-                Set<Handler> ifaceWhatHandlers = ifaceHandlers.get(message.what);
-                if (ifaceWhatHandlers != null) {
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(iface, handler, Message.obtain(message));
-                        }
-                    }
-                }
+                numDelivered = sendMessage(iface, ifaceHandlers.get(message.what), message);
             } else {
                 if (mVerboseLoggingEnabled) {
                     Log.d(TAG, "Dropping event because (" + iface + ") is stopped");
@@ -311,29 +392,86 @@ public class WifiMonitor {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Sending to all monitors because there's no matching iface");
             }
-            for (Map.Entry<String, SparseArray<Set<Handler>>> entry : mHandlerMap.entrySet()) {
-                iface = entry.getKey();
-                if (isMonitoring(iface)) {
-                    Set<Handler> ifaceWhatHandlers = entry.getValue().get(message.what);
-                    if (ifaceWhatHandlers == null) continue;
-                    for (Handler handler : ifaceWhatHandlers) {
-                        if (handler != null) {
-                            sendMessage(iface, handler, Message.obtain(message));
-                        }
-                    }
+            for (Map.Entry<String, SparseArray<Registration[]>> entry : handlerMap.entrySet()) {
+                if (isMonitoring(entry.getKey())) {
+                    numDelivered += sendMessage(entry.getKey(),
+                            entry.getValue().get(message.what), message);
                 }
             }
         }
+        recordEvent(message.what, numDelivered, SystemClock.elapsedRealtimeNanos() - startNanos);
 
         message.recycle();
     }
 
-    private void sendMessage(String iface, Handler handler, Message message) {
-        message.setTarget(handler);
-        // getData() will return the existing Bundle if it exists, or create a new one
-        // This prevents clearing the existing data.
-        message.getData().putString(KEY_IFACE, iface);
-        message.sendToTarget();
+    private int sendMessage(String iface, Registration[] registrations, Message message) {
+        if (registrations == null) {
+            return 0;
+        }
+        int numDelivered = 0;
+        for (Registration registration : registrations) {
+            if (registration.handler == null) {
+                continue;
+            }
+            // Message.obtain() reuses a message from the global pool.
+            Message copy = Message.obtain(message);
+            copy.setTarget(registration.handler);
+            if (registration.withIfaceName) {
+                // getData() will return the existing Bundle if it exists, or create a new one
+                // This prevents clearing the existing data.
+                copy.getData().putString(KEY_IFACE, iface);
+            }
+            copy.sendToTarget();
+            numDelivered++;
+        }
+        return numDelivered;
+    }
+
+    private static int getEventIndex(int what) {
+        return Math.max(0, Math.min(what - BASE, NUM_EVENT_STATS - 1));
+    }
+
+    private void recordEvent(int what, int numDelivered, long dispatchNanos) {
+        int index = getEventIndex(what);
+        mEventCounts.incrementAndGet(index);
+        mDeliveryCounts.addAndGet(index, numDelivered);
+        mDispatchNanos.addAndGet(index, dispatchNanos);
+        mMaxDispatchNanos.accumulateAndGet(index, dispatchNanos, Math::max);
+    }
+
+    /**
+     * Returns the number of events of type |what| which were broadcast.
+     */
+    @VisibleForTesting
+    public int getEventCount(int what) {
+        return mEventCounts.get(getEventIndex(what));
+    }
+
+    /**
+     * Returns the number of messages of type |what| which were sent to handlers.
+     */
+    @VisibleForTesting
+    public int getDeliveryCount(int what) {
+        return mDeliveryCounts.get(getEventIndex(what));
+    }
+
+    /**
+     * Dump the number of events broadcast and the time taken to send them to the handlers,
+     * per event type.
+     */
+    public void dump(PrintWriter pw) {
+        pw.println("Dump of WifiMonitor");
+        pw.println("Monitored ifaces: " + getMonitoredIfaceNames());
+        for (int i = 0; i < NUM_EVENT_STATS; i++) {
+            int count = mEventCounts.get(i);
+            if (count == 0) {
+                continue;
+            }
+            pw.println("what=" + (BASE + i) + ": count=" + count
+                    + " deliveries=" + mDeliveryCounts.get(i)
+                    + " avgDispatchMicros=" + mDispatchNanos.get(i) / count / 1000
+                    + " maxDispatchMicros=" + mMaxDispatchNanos.get(i) / 1000);
+        }
     }
 
     /**
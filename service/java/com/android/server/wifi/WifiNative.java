@@ -3757,9 +3757,7 @@ public class WifiNative {
      */
     @Nullable
     public WifiSignalPollResults signalPoll(@NonNull String ifaceName) {
-        if (mMockWifiModem != null
-                && mMockWifiModem.getIsMethodConfigured(
-                    MockWifiServiceUtil.MOCK_NL80211_SERVICE, "signalPoll")) {
+        if (isSignalPollMocked()) {
             Log.i(TAG, "signalPoll was called from mock wificond");
             WifiNl80211Manager.SignalPollResult result =
                     mMockWifiModem.getWifiNl80211Manager().signalPoll(ifaceName);
@@ -3773,19 +3771,54 @@ public class WifiNative {
             }
         }
         // Query supplicant.
-        WifiSignalPollResults results = mSupplicantStaIfaceHal.getSignalPollResults(
-                ifaceName);
+        WifiSignalPollResults results = getSupplicantSignalPollResults(ifaceName);
         if (results == null) {
             // Fallback to WifiCond.
-            WifiNl80211Manager.SignalPollResult result = mWifiCondManager.signalPoll(ifaceName);
-            if (result != null) {
-                // Convert WifiNl80211Manager#SignalPollResult to WifiSignalPollResults.
-                // Assume single link and linkId = 0.
-                results = new WifiSignalPollResults();
-                results.addEntry(0, result.currentRssiDbm, result.txBitrateMbps,
-                        result.rxBitrateMbps, result.associationFrequencyMHz);
-            }
+            results = getWificondSignalPollResults(ifaceName);
+        }
+        return results;
+    }
+
+    /**
+     * Returns whether {@link #signalPoll(String)} is answered by the mock wificond.
+     */
+    public boolean isSignalPollMocked() {
+        return mMockWifiModem != null
+                && mMockWifiModem.getIsMethodConfigured(
+                    MockWifiServiceUtil.MOCK_NL80211_SERVICE, "signalPoll");
+    }
+
+    /**
+     * Request signal polling to supplicant only, without the mock wificond and the wificond
+     * fallback of {@link #signalPoll(String)}. Unlike them, this may be called from another
+     * thread than the wifi thread.
+     *
+     * @param ifaceName Name of the interface.
+     * @return the signal poll results, or null on failure.
+     */
+    @Nullable
+    public WifiSignalPollResults getSupplicantSignalPollResults(@NonNull String ifaceName) {
+        return mSupplicantStaIfaceHal.getSignalPollResults(ifaceName);
+    }
+
+    /**
+     * Request signal polling to wificond, the fallback of {@link #signalPoll(String)} when
+     * supplicant doesn't return the results.
+     *
+     * @param ifaceName Name of the interface.
+     * @return the signal poll results, or null on failure.
+     */
+    @Nullable
+    public WifiSignalPollResults getWificondSignalPollResults(@NonNull String ifaceName) {
+        WifiNl80211Manager.SignalPollResult result = mWifiCondManager.signalPoll(ifaceName);
+        if (result == null) {
+            return null;
         }
+        // Convert WifiNl80211Manager#SignalPollResult to WifiSignalPollResults.
+        // Assume single link and linkId = 0.
+        WifiSignalPollResults results = new WifiSignalPollResults();
+        results.addEntry(0, result.currentRssiDbm, result.txBitrateMbps,
+                result.rxBitrateMbps, result.associationFrequencyMHz);
         return results;
     }
 
@@ -37,6 +37,7 @@ import android.net.wifi.WifiConfiguration;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiNetworkSelectionConfig.AssociatedNetworkSelectionOverride;
 import android.net.wifi.WifiSsid;
+import android.net.wifi.nl80211.DeviceWiphyCapabilities;
 import android.net.wifi.util.ScanResultUtil;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
@@ -58,7 +59,9 @@ import com.android.wifi.resources.R;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -115,6 +118,11 @@ public class WifiNetworkSelector {
     private final List<Pair<ScanDetail, WifiConfiguration>> mConnectableNetworks =
             new ArrayList<>();
     private List<ScanDetail> mFilteredNetworks = new ArrayList<>();
+    // Throughput predicted for each BSSID in the current and the previous scan, so that the
+    // prediction is only recomputed for BSSes whose inputs changed since the previous scan.
+    private Map<String, ThroughputPrediction> mThroughputPredictions = new ArrayMap<>();
+    private Map<String, ThroughputPrediction> mPreviousThroughputPredictions = new ArrayMap<>();
+    private int mThroughputPredictionsReused = 0;
     private final WifiScoreCard mWifiScoreCard;
     private final ScoringParams mScoringParams;
     private final WifiInjector mWifiInjector;
@@ -746,7 +754,9 @@ public class WifiNetworkSelector {
      * c) Log any disabled networks.
      */
     private void updateConfiguredNetworks() {
-        List<WifiConfiguration> configuredNetworks = mWifiConfigManager.getConfiguredNetworks();
+        // Only reads the networks, avoid copying every network on every scan.
+        List<WifiConfiguration> configuredNetworks =
+                mWifiConfigManager.getConfiguredNetworksReadOnly();
         if (configuredNetworks.size() == 0) {
             localLog("No configured networks.");
             return;
@@ -1063,6 +1073,8 @@ public class WifiNetworkSelector {
             localLog("Empty connectivity scan result");
             return null;
         }
+        long startNanos = mClock.getElapsedSinceBootNanos();
+        rotateThroughputPredictions();
 
         // Update the scan detail cache at the start, even if we skip network selection
         updateScanDetailCache(scanDetails);
@@ -1080,11 +1092,13 @@ public class WifiNetworkSelector {
             return null;
         }
 
+        long filterStartNanos = mClock.getElapsedSinceBootNanos();
         // Filter out unwanted networks.
         mFilteredNetworks = filterScanResults(scanDetails, bssidBlocklist, cmmStates);
         if (mFilteredNetworks.size() == 0) {
             return null;
         }
+        long nominateStartNanos = mClock.getElapsedSinceBootNanos();
 
         WifiCandidates wifiCandidates = new WifiCandidates(mWifiScoreCard, mContext);
         for (ClientModeManagerState cmmState : cmmStates) {
@@ -1129,13 +1143,17 @@ public class WifiNetworkSelector {
         // Update all configured networks before initiating network selection.
         updateConfiguredNetworks();
 
+        // A single read-only copy of the filtered networks is shared by all the nominators.
+        List<ScanDetail> filteredNetworks =
+                Collections.unmodifiableList(new ArrayList<>(mFilteredNetworks));
         List<Pair<ScanDetail, WifiConfiguration>> passpointCandidates = mWifiInjector
                 .getPasspointNetworkNominateHelper()
-                .getPasspointNetworkCandidates(new ArrayList<>(mFilteredNetworks));
+                .getPasspointNetworkCandidates(filteredNetworks);
         for (NetworkNominator registeredNominator : mNominators) {
             localLog("About to run " + registeredNominator.getName() + " :");
+            long nominatorStartNanos = mClock.getElapsedSinceBootNanos();
             registeredNominator.nominateNetworks(
-                    new ArrayList<>(mFilteredNetworks), passpointCandidates,
+                    filteredNetworks, passpointCandidates,
                     untrustedNetworkAllowed, oemPaidNetworkAllowed, oemPrivateNetworkAllowed,
                     restrictedNetworkAllowedUids, (scanDetail, config) -> {
                         WifiCandidates.Key key = wifiCandidates.keyFromScanDetailAndConfig(
@@ -1168,6 +1186,10 @@ public class WifiNetworkSelector {
                             }
                         }
                     });
+            if (mVerboseLoggingEnabled) {
+                localLog(registeredNominator.getName() + " took " + TimeUnit.NANOSECONDS.toMicros(
+                        mClock.getElapsedSinceBootNanos() - nominatorStartNanos) + "us");
+            }
         }
         if (mConnectableNetworks.size() != wifiCandidates.size()) {
             localLog("Connectable: " + mConnectableNetworks.size()
@@ -1177,6 +1199,16 @@ public class WifiNetworkSelector {
         // Update multi link candidate throughput before network selection.
         updateMultiLinkCandidatesThroughput(wifiCandidates);
 
+        long endNanos = mClock.getElapsedSinceBootNanos();
+        if (mVerboseLoggingEnabled) {
+            localLog("Reused " + mThroughputPredictionsReused + " of "
+                    + mThroughputPredictions.size() + " throughput predictions");
+        }
+        mWifiMetrics.noteNetworkSelectionLatency(
+                TimeUnit.NANOSECONDS.toMicros(filterStartNanos - startNanos),
+                TimeUnit.NANOSECONDS.toMicros(nominateStartNanos - filterStartNanos),
+                TimeUnit.NANOSECONDS.toMicros(endNanos - nominateStartNanos),
+                TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
         return wifiCandidates.getCandidates();
     }
 
@@ -1647,17 +1679,103 @@ public class WifiNetworkSelector {
         }
         ClientModeManager primaryManager =
                 mWifiInjector.getActiveModeWarden().getPrimaryClientModeManager();
-        return mThroughputPredictor.predictThroughput(
-                primaryManager.getDeviceWiphyCapabilities(),
-                scanDetail.getScanResult().getWifiStandard(),
-                scanDetail.getScanResult().channelWidth,
-                scanDetail.getScanResult().level,
-                scanDetail.getScanResult().frequency,
-                scanDetail.getNetworkDetail().getMaxNumberSpatialStreams(),
-                scanDetail.getNetworkDetail().getChannelUtilization(),
-                channelUtilizationLinkLayerStats,
-                mWifiGlobals.isBluetoothConnected(),
-                scanDetail.getNetworkDetail().getDisabledSubchannelBitmap());
+        ThroughputPrediction prediction = new ThroughputPrediction(
+                primaryManager.getDeviceWiphyCapabilities(), scanDetail,
+                channelUtilizationLinkLayerStats, mWifiGlobals.isBluetoothConnected());
+        String bssid = scanDetail.getScanResult().BSSID;
+        ThroughputPrediction cached = mThroughputPredictions.get(bssid);
+        if (cached == null) {
+            cached = mPreviousThroughputPredictions.get(bssid);
+            if (cached != null && cached.hasSameInputs(prediction)) {
+                mThroughputPredictionsReused++;
+                mThroughputPredictions.put(bssid, cached);
+            }
+        }
+        if (cached != null && cached.hasSameInputs(prediction)) {
+            return cached.throughputMbps;
+        }
+        prediction.throughputMbps = mThroughputPredictor.predictThroughput(
+                prediction.capabilities,
+                prediction.wifiStandard,
+                prediction.channelWidth,
+                prediction.rssi,
+                prediction.frequency,
+                prediction.maxNumberSpatialStreams,
+                prediction.channelUtilizationBssLoad,
+                prediction.channelUtilizationLinkLayerStats,
+                prediction.isBluetoothConnected,
+                prediction.disabledSubchannelBitmap);
+        mThroughputPredictions.put(bssid, prediction);
+        return prediction.throughputMbps;
+    }
+
+    /**
+     * Start a new generation of cached throughput predictions. Predictions from the previous
+     * scan are kept for one more scan so that unchanged BSSes can reuse them.
+     */
+    private void rotateThroughputPredictions() {
+        Map<String, ThroughputPrediction> previous = mPreviousThroughputPredictions;
+        mPreviousThroughputPredictions = mThroughputPredictions;
+        previous.clear();
+        mThroughputPredictions = previous;
+        mThroughputPredictionsReused = 0;
+    }
+
+    /**
+     * Clear the cached throughput predictions, e.g. when the device capabilities they were made
+     * with were updated in place.
+     */
+    public void clearThroughputPredictions() {
+        mThroughputPredictions.clear();
+        mPreviousThroughputPredictions.clear();
+    }
+
+    /**
+     * Inputs and result of a throughput prediction for a single BSS.
+     */
+    private static class ThroughputPrediction {
+        public final DeviceWiphyCapabilities capabilities;
+        public final int wifiStandard;
+        public final int channelWidth;
+        public final int rssi;
+        public final int frequency;
+        public final int maxNumberSpatialStreams;
+        public final int channelUtilizationBssLoad;
+        public final int channelUtilizationLinkLayerStats;
+        public final boolean isBluetoothConnected;
+        public final byte[] disabledSubchannelBitmap;
+        public int throughputMbps;
+
+        ThroughputPrediction(DeviceWiphyCapabilities capabilities, ScanDetail scanDetail,
+                int channelUtilizationLinkLayerStats, boolean isBluetoothConnected) {
+            ScanResult scanResult = scanDetail.getScanResult();
+            NetworkDetail networkDetail = scanDetail.getNetworkDetail();
+            this.capabilities = capabilities;
+            this.wifiStandard = scanResult.getWifiStandard();
+            this.channelWidth = scanResult.channelWidth;
+            this.rssi = scanResult.level;
+            this.frequency = scanResult.frequency;
+            this.maxNumberSpatialStreams = networkDetail.getMaxNumberSpatialStreams();
+            this.channelUtilizationBssLoad = networkDetail.getChannelUtilization();
+            this.channelUtilizationLinkLayerStats = channelUtilizationLinkLayerStats;
+            this.isBluetoothConnected = isBluetoothConnected;
+            this.disabledSubchannelBitmap = networkDetail.getDisabledSubchannelBitmap();
+        }
+
+        boolean hasSameInputs(ThroughputPrediction other) {
+            // Device capabilities can be updated in place, in which case the predictions are
+            // cleared by clearThroughputPredictions(), so comparing identity is enough here.
+            return capabilities == other.capabilities
+                    && wifiStandard == other.wifiStandard
+                    && channelWidth == other.channelWidth
+                    && rssi == other.rssi
+                    && frequency == other.frequency
+                    && maxNumberSpatialStreams == other.maxNumberSpatialStreams
+                    && channelUtilizationBssLoad == other.channelUtilizationBssLoad
+                    && channelUtilizationLinkLayerStats == other.channelUtilizationLinkLayerStats
+                    && isBluetoothConnected == other.isBluetoothConnected
+                    && Arrays.equals(disabledSubchannelBitmap, other.disabledSubchannelBitmap);
+        }
     }
 
     /**
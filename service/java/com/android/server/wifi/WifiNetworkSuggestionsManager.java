@@ -75,6 +75,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -433,6 +434,20 @@ public class WifiNetworkSuggestionsManager {
     private final Map<String, Set<ExtendedWifiNetworkSuggestion>>
             mPasspointInfo = new HashMap<>();
 
+    /**
+     * Incremented on every change of the suggestions or of the app approvals, see
+     * {@link #getSuggestionsGeneration()}.
+     */
+    private long mSuggestionsGeneration = 0;
+    /**
+     * Views of the suggestions across all apps, built on first use after each change since they
+     * are read on every PNO scan and network selection. Null when they need to be rebuilt.
+     */
+    private Set<WifiNetworkSuggestion> mAllNetworkSuggestionsView = null;
+    private Set<WifiNetworkSuggestion> mApprovedNetworkSuggestionsView = null;
+    private List<ExtendedWifiNetworkSuggestion> mApprovedNonPasspointSuggestionsView = null;
+    private List<ExtendedWifiNetworkSuggestion> mApprovedPasspointSuggestionsView = null;
+
     private final HashMap<String, RemoteCallbackList<ISuggestionConnectionStatusListener>>
             mSuggestionStatusListenerPerApp = new HashMap<>();
 
@@ -558,6 +573,7 @@ public class WifiNetworkSuggestionsManager {
                 }
             }
             mUserDataLoaded = true;
+            invalidateSuggestionViews();
         }
 
         @Override
@@ -567,6 +583,7 @@ public class WifiNetworkSuggestionsManager {
             mActiveScanResultMatchInfoWithBssid.clear();
             mActiveScanResultMatchInfoWithNoBssid.clear();
             mPasspointInfo.clear();
+            invalidateSuggestionViews();
         }
 
         @Override
@@ -706,6 +723,8 @@ public class WifiNetworkSuggestionsManager {
     }
 
     private void saveToStore() {
+        // Every change to the suggestions is saved, so this is where the views become stale.
+        invalidateSuggestionViews();
         // Set the flag to let WifiConfigStore that we have new data to write.
         mHasNewDataToSerialize = true;
         if (!mWifiConfigManager.saveToStore(true)) {
@@ -1053,6 +1072,8 @@ public class WifiNetworkSuggestionsManager {
             perAppInfo.extNetworkSuggestions.remove(ewns.hashCode());
             perAppInfo.extNetworkSuggestions.put(ewns.hashCode(), ewns);
         }
+        // Listeners may read the suggestions back synchronously, e.g. to start a scan.
+        invalidateSuggestionViews();
         for (OnSuggestionUpdateListener listener : mListeners) {
             listener.onSuggestionsAddedOrUpdated(networkSuggestions);
         }
@@ -1347,6 +1368,8 @@ public class WifiNetworkSuggestionsManager {
                 mWifiConfigManager.removeSuggestionConfiguredNetwork(removing);
             }
         }
+        // Listeners may read the suggestions back synchronously, e.g. to start a scan.
+        invalidateSuggestionViews();
         for (OnSuggestionUpdateListener listener : mListeners) {
             listener.onSuggestionsRemoved(removingSuggestions);
         }
@@ -1561,51 +1584,93 @@ public class WifiNetworkSuggestionsManager {
         saveToStore();
     }
 
+    private void invalidateSuggestionViews() {
+        mSuggestionsGeneration++;
+        mAllNetworkSuggestionsView = null;
+        mApprovedNetworkSuggestionsView = null;
+        mApprovedNonPasspointSuggestionsView = null;
+        mApprovedPasspointSuggestionsView = null;
+    }
+
+    private void buildApprovedSuggestionViews() {
+        List<ExtendedWifiNetworkSuggestion> nonPasspointSuggestions = new ArrayList<>();
+        List<ExtendedWifiNetworkSuggestion> passpointSuggestions = new ArrayList<>();
+        for (PerAppInfo info : mActiveNetworkSuggestionsPerApp.values()) {
+            if (!info.isApproved()) {
+                continue;
+            }
+            for (ExtendedWifiNetworkSuggestion ewns : info.extNetworkSuggestions.values()) {
+                if (ewns.wns.getPasspointConfig() != null) {
+                    passpointSuggestions.add(ewns);
+                } else {
+                    nonPasspointSuggestions.add(ewns);
+                }
+            }
+        }
+        mApprovedNonPasspointSuggestionsView = nonPasspointSuggestions;
+        mApprovedPasspointSuggestionsView = passpointSuggestions;
+    }
+
+    /**
+     * Returns a number which changes every time a network suggestion is added, removed or
+     * modified, or the approval of an app changes. Callers can compare it with the value they
+     * last saw to tell whether the results of {@link #getAllNetworkSuggestions()},
+     * {@link #getAllApprovedNetworkSuggestions()}, {@link #retrieveHiddenNetworkList(boolean)}
+     * or the scan optimization networks may have changed.
+     */
+    public long getSuggestionsGeneration() {
+        return mSuggestionsGeneration;
+    }
+
     /**
      * Returns a set of all network suggestions across all apps.
      */
     @VisibleForTesting
     public Set<WifiNetworkSuggestion> getAllNetworkSuggestions() {
-        return mActiveNetworkSuggestionsPerApp.values()
-                .stream()
-                .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
-                        .stream())
-                .collect(Collectors.toSet());
+        if (mAllNetworkSuggestionsView == null) {
+            mAllNetworkSuggestionsView = Collections.unmodifiableSet(
+                    mActiveNetworkSuggestionsPerApp.values()
+                            .stream()
+                            .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
+                                    .stream())
+                            .collect(Collectors.toSet()));
+        }
+        return mAllNetworkSuggestionsView;
     }
 
     /**
      * Returns a set of all network suggestions across all apps that have been approved by user.
      */
     public Set<WifiNetworkSuggestion> getAllApprovedNetworkSuggestions() {
-        return mActiveNetworkSuggestionsPerApp.values()
-                .stream()
-                .filter(e -> e.isApproved())
-                .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
-                        .stream())
-                .collect(Collectors.toSet());
+        if (mApprovedNetworkSuggestionsView == null) {
+            mApprovedNetworkSuggestionsView = Collections.unmodifiableSet(
+                    mActiveNetworkSuggestionsPerApp.values()
+                            .stream()
+                            .filter(e -> e.isApproved())
+                            .flatMap(e -> convertToWnsSet(e.extNetworkSuggestions.values())
+                                    .stream())
+                            .collect(Collectors.toSet()));
+        }
+        return mApprovedNetworkSuggestionsView;
     }
 
     /**
      * Get all user approved, non-passpoint networks from suggestion.
      */
     public List<WifiConfiguration> getAllScanOptimizationSuggestionNetworks() {
-        List<WifiConfiguration> networks = new ArrayList<>();
-        for (PerAppInfo info : mActiveNetworkSuggestionsPerApp.values()) {
-            if (!info.isApproved()) {
-                continue;
-            }
-            for (ExtendedWifiNetworkSuggestion ewns : info.extNetworkSuggestions.values()) {
-                if (ewns.wns.getPasspointConfig() != null) {
-                    continue;
-                }
-                WifiConfiguration network = mWifiConfigManager
-                        .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
-                                .getProfileKey());
-                if (network == null) {
-                    network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
-                }
-                networks.add(network);
+        if (mApprovedNonPasspointSuggestionsView == null) {
+            buildApprovedSuggestionViews();
+        }
+        List<WifiConfiguration> networks =
+                new ArrayList<>(mApprovedNonPasspointSuggestionsView.size());
+        for (ExtendedWifiNetworkSuggestion ewns : mApprovedNonPasspointSuggestionsView) {
+            WifiConfiguration network = mWifiConfigManager
+                    .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
+                            .getProfileKey());
+            if (network == null) {
+                network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
             }
+            networks.add(network);
         }
         return networks;
     }
@@ -1621,28 +1686,23 @@ public class WifiNetworkSuggestionsManager {
      */
     public List<WifiConfiguration> getAllPasspointScanOptimizationSuggestionNetworks(
             boolean requireSsid) {
+        if (mApprovedPasspointSuggestionsView == null) {
+            buildApprovedSuggestionViews();
+        }
         List<WifiConfiguration> networks = new ArrayList<>();
-        for (PerAppInfo info : mActiveNetworkSuggestionsPerApp.values()) {
-            if (!info.isApproved()) {
+        for (ExtendedWifiNetworkSuggestion ewns : mApprovedPasspointSuggestionsView) {
+            WifiConfiguration network = mWifiConfigManager
+                    .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
+                            .getProfileKey());
+            if (network == null) {
+                network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
+            }
+            network.SSID = mWifiInjector.getPasspointManager()
+                    .getMostRecentSsidForProfile(network.getPasspointUniqueId());
+            if (requireSsid && network.SSID == null) {
                 continue;
             }
-            for (ExtendedWifiNetworkSuggestion ewns : info.extNetworkSuggestions.values()) {
-                if (ewns.wns.getPasspointConfig() == null) {
-                    continue;
-                }
-                WifiConfiguration network = mWifiConfigManager
-                        .getConfiguredNetwork(ewns.wns.getWifiConfiguration()
-                                .getProfileKey());
-                if (network == null) {
-                    network = ewns.createInternalWifiConfiguration(mWifiCarrierInfoManager);
-                }
-                network.SSID = mWifiInjector.getPasspointManager()
-                        .getMostRecentSsidForProfile(network.getPasspointUniqueId());
-                if (requireSsid && network.SSID == null) {
-                    continue;
-                }
-                networks.add(network);
-            }
+            networks.add(network);
         }
         return networks;
     }
@@ -2538,17 +2598,71 @@ public class WifiNetworkSuggestionsManager {
                 || scanResults == null || scanResults.isEmpty()) {
             return filteredScanResults;
         }
+        // Join the suggestions with the scan results grouped by SSID, so that the match info of
+        // each scan result is only computed once, and each suggestion is only compared with the
+        // scan results of its SSID.
+        Map<String, List<Pair<ScanResult, ScanResultMatchInfo>>> scanResultsBySsid = null;
+        List<WifiNetworkSuggestion> passpointSuggestions = new ArrayList<>();
+        List<PasspointConfiguration> passpointConfigurations = new ArrayList<>();
         for (WifiNetworkSuggestion suggestion : wifiNetworkSuggestions) {
             if (suggestion == null || suggestion.wifiConfiguration == null) {
                 continue;
             }
-            filteredScanResults.put(suggestion,
-                    getMatchingScanResultsForSuggestion(suggestion, scanResults));
+            if (suggestion.passpointConfiguration != null) {
+                passpointSuggestions.add(suggestion);
+                passpointConfigurations.add(suggestion.passpointConfiguration);
+                continue;
+            }
+            ScanResultMatchInfo matchInfoFromConfiguration =
+                    ScanResultMatchInfo.fromWifiConfiguration(suggestion.wifiConfiguration);
+            if (matchInfoFromConfiguration == null) {
+                filteredScanResults.put(suggestion, new ArrayList<>());
+                continue;
+            }
+            if (scanResultsBySsid == null) {
+                scanResultsBySsid = groupScanResultsBySsid(scanResults);
+            }
+            List<ScanResult> filteredScanResult = new ArrayList<>();
+            List<Pair<ScanResult, ScanResultMatchInfo>> candidates =
+                    scanResultsBySsid.get(matchInfoFromConfiguration.networkSsid);
+            if (candidates != null) {
+                for (Pair<ScanResult, ScanResultMatchInfo> candidate : candidates) {
+                    if (matchInfoFromConfiguration.equals(candidate.second)) {
+                        filteredScanResult.add(candidate.first);
+                    }
+                }
+            }
+            filteredScanResults.put(suggestion, filteredScanResult);
         }
 
+        if (!passpointConfigurations.isEmpty()) {
+            List<List<ScanResult>> passpointScanResults = mWifiInjector.getPasspointManager()
+                    .getMatchingScanResultsForConfigs(passpointConfigurations, scanResults);
+            for (int i = 0; i < passpointSuggestions.size(); i++) {
+                filteredScanResults.put(passpointSuggestions.get(i), passpointScanResults.get(i));
+            }
+        }
         return filteredScanResults;
     }
 
+    /**
+     * Group the ScanResults by SSID, along with their {@link ScanResultMatchInfo}. A
+     * ScanResultMatchInfo can only be equal to one with the same SSID.
+     */
+    private static Map<String, List<Pair<ScanResult, ScanResultMatchInfo>>> groupScanResultsBySsid(
+            @NonNull List<ScanResult> scanResults) {
+        Map<String, List<Pair<ScanResult, ScanResultMatchInfo>>> scanResultsBySsid =
+                new HashMap<>();
+        for (ScanResult scanResult : scanResults) {
+            if (scanResult == null) continue;
+            ScanResultMatchInfo matchInfo = ScanResultMatchInfo.fromScanResult(scanResult);
+            if (matchInfo == null) continue;
+            scanResultsBySsid.computeIfAbsent(matchInfo.networkSsid, k -> new ArrayList<>())
+                    .add(Pair.create(scanResult, matchInfo));
+        }
+        return scanResultsBySsid;
+    }
+
     private List<ScanResult> getMatchingScanResultsForSuggestion(WifiNetworkSuggestion suggestion,
             List<ScanResult> scanResults) {
         if (suggestion.passpointConfiguration != null) {
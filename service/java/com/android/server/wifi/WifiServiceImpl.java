@@ -4366,10 +4366,12 @@ public class WifiServiceImpl extends BaseWifiService {
     /**
      * Return the results of the most recent access point scan, in the form of
      * a list of {@link ScanResult} objects.
-     * @return the list of results
+     * @return the list of results, as a {@link ParceledListSlice} so that large lists are sent
+     *         over binder in chunks.
      */
     @Override
-    public List<ScanResult> getScanResults(String callingPackage, String callingFeatureId) {
+    public ParceledListSlice<ScanResult> getScanResults(String callingPackage,
+            String callingFeatureId) {
         enforceAccessPermission();
         int uid = Binder.getCallingUid();
         long ident = Binder.clearCallingIdentity();
@@ -4379,16 +4381,13 @@ public class WifiServiceImpl extends BaseWifiService {
         try {
             mWifiPermissionsUtil.enforceCanAccessScanResults(callingPackage, callingFeatureId,
                     uid, null);
-            List<ScanResult> scanResults = mWifiThreadRunner.call(
-                    mScanRequestProxy::getScanResults, Collections.emptyList());
-            if (scanResults.size() > 200) {
-                Log.i(TAG, "too many scan results, may break binder transaction");
-            }
-            return scanResults;
+            // Served from the results published by ScanRequestProxy, so that this does not wait
+            // behind the wifi thread.
+            return new ParceledListSlice<>(mScanRequestProxy.getScanResults());
         } catch (SecurityException e) {
             Log.w(TAG, "Permission violation - getScanResults not allowed for uid="
                     + uid + ", packageName=" + callingPackage + ", reason=" + e);
-            return new ArrayList<>();
+            return new ParceledListSlice<>(new ArrayList<>());
         } finally {
             Binder.restoreCallingIdentity(ident);
         }
@@ -5371,6 +5370,10 @@ public class WifiServiceImpl extends BaseWifiService {
                 mWifiInjector.getLinkProbeManager().dump(fd, pw, args);
                 pw.println();
                 mWifiNative.dump(pw);
+                pw.println();
+                mWifiInjector.getWifiMonitor().dump(pw);
+                pw.println();
+                mWifiInjector.getSignalPoller().dump(pw);
             }
         });
     }
@@ -6644,6 +6647,39 @@ public class WifiServiceImpl extends BaseWifiService {
         });
     }
 
+    /**
+     * See {@link WifiManager#registerScanResultsChangedCallback(Executor,
+     * WifiManager.ScanResultsCallback)}
+     */
+    @Override
+    public void registerScanResultsChangedCallback(@NonNull IScanResultsCallback callback,
+            @NonNull String packageName, @Nullable String featureId) {
+        if (!mDeviceConfigFacade.getFeatureFlags().scanResultsChangedCallback()) {
+            throw new UnsupportedOperationException();
+        }
+        if (callback == null) {
+            throw new IllegalArgumentException("callback must not be null");
+        }
+        enforceAccessPermission();
+        int uid = Binder.getCallingUid();
+        mWifiPermissionsUtil.checkPackage(uid, packageName);
+        long ident = Binder.clearCallingIdentity();
+        try {
+            mWifiPermissionsUtil.enforceCanAccessScanResults(packageName, featureId, uid, null);
+        } finally {
+            Binder.restoreCallingIdentity(ident);
+        }
+        if (mVerboseLoggingEnabled) {
+            mLog.info("registerScanResultsChangedCallback uid=%").c(uid).flush();
+        }
+        mWifiThreadRunner.post(() -> {
+            if (!mWifiInjector.getScanRequestProxy().registerScanResultsChangedCallback(
+                    callback, uid, packageName, featureId)) {
+                Log.e(TAG, "registerScanResultsChangedCallback: Failed to register callback");
+            }
+        });
+    }
+
     /**
      * See {@link WifiManager#registerScanResultsCallback(WifiManager.ScanResultsCallback)}
      */
@@ -7277,8 +7313,7 @@ public class WifiServiceImpl extends BaseWifiService {
         if (mVerboseLoggingEnabled) {
             mLog.info("isWifiPasspointEnabled uid=%").c(Binder.getCallingUid()).flush();
         }
-        // Post operation to handler thread
-        return mWifiThreadRunner.call(() -> mPasspointManager.isWifiPasspointEnabled(), false);
+        return mPasspointManager.isWifiPasspointEnabled();
     }
 
     /**
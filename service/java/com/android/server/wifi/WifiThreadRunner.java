@@ -79,7 +79,7 @@ public class WifiThreadRunner {
     public <T> T call(@NonNull Supplier<T> supplier, T valueToReturnOnTimeout) {
         Mutable<T> result = new Mutable<>();
         boolean runWithScissorsSuccess = runWithScissors(mHandler,
-                () -> result.value = supplier.get(),
+                () -> result.value = supplier.get(), supplier.getClass(),
                 RUN_WITH_SCISSORS_TIMEOUT_MILLIS, false);
         if (runWithScissorsSuccess) {
             return result.value;
@@ -107,8 +107,8 @@ public class WifiThreadRunner {
      * @return true if the runnable executed successfully, false otherwise
      */
     public boolean run(@NonNull Runnable runnable) {
-        boolean runWithScissorsSuccess =
-                runWithScissors(mHandler, runnable, RUN_WITH_SCISSORS_TIMEOUT_MILLIS, false);
+        boolean runWithScissorsSuccess = runWithScissors(mHandler, runnable,
+                runnable.getClass(), RUN_WITH_SCISSORS_TIMEOUT_MILLIS, false);
         if (runWithScissorsSuccess) {
             return true;
         } else {
@@ -130,8 +130,8 @@ public class WifiThreadRunner {
      * @return true if the runnable executed successfully, false otherwise
      */
     public boolean runAtFront(@NonNull Runnable runnable) {
-        boolean runWithScissorsSuccess =
-                runWithScissors(mHandler, runnable, RUN_WITH_SCISSORS_TIMEOUT_MILLIS, true);
+        boolean runWithScissorsSuccess = runWithScissors(mHandler, runnable,
+                runnable.getClass(), RUN_WITH_SCISSORS_TIMEOUT_MILLIS, true);
         if (runWithScissorsSuccess) {
             return true;
         } else {
@@ -256,6 +256,7 @@ public class WifiThreadRunner {
      * </p>
      *
      * @param r The Runnable that will be executed synchronously.
+     * @param taskClass The class of the task run by the Runnable, to attribute the job to.
      * @param timeout The timeout in milliseconds, or 0 to wait indefinitely.
      * @param atFront Message needs to be posted at the front of the queue or not.
      *
@@ -268,7 +269,7 @@ public class WifiThreadRunner {
      * less funny like runUnsafe().
      */
     private boolean runWithScissors(@NonNull Handler handler, @NonNull Runnable r,
-            long timeout, boolean atFront) {
+            @NonNull Class<?> taskClass, long timeout, boolean atFront) {
         if (r == null) {
             throw new IllegalArgumentException("runnable must not be null");
         }
@@ -286,16 +287,23 @@ public class WifiThreadRunner {
             return true;
         }
 
-        BlockingRunnable br = new BlockingRunnable(r);
+        BlockingRunnable br = new BlockingRunnable(r, taskClass);
         return br.postAndWait(handler, timeout, atFront);
     }
 
-    private static final class BlockingRunnable implements Runnable {
+    private static final class BlockingRunnable implements RunnerHandler.WrappedRunnable {
         private final Runnable mTask;
+        private final Class<?> mTaskClass;
         private boolean mDone;
 
-        BlockingRunnable(Runnable task) {
+        BlockingRunnable(Runnable task, Class<?> taskClass) {
             mTask = task;
+            mTaskClass = taskClass;
+        }
+
+        @Override
+        public Class<?> getWrappedClass() {
+            return mTaskClass;
         }
 
         @Override
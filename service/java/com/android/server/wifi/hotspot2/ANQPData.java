@@ -66,6 +66,21 @@ public class ANQPData {
         mExpiryTime = mClock.getElapsedSinceBootMillis() + dataLifetime;
     }
 
+    /**
+     * Create an entry which expires after the given lifetime, used to restore an entry from the
+     * config store.
+     *
+     * @param clock The clock
+     * @param anqpElements The ANQP elements
+     * @param lifetimeMillis The remaining lifetime of the entry
+     */
+    ANQPData(Clock clock, Map<Constants.ANQPElementType, ANQPElement> anqpElements,
+            long lifetimeMillis) {
+        mClock = clock;
+        mANQPElements = new HashMap<>(anqpElements);
+        mExpiryTime = mClock.getElapsedSinceBootMillis() + lifetimeMillis;
+    }
+
     /**
      * Update an entry with post association ANQP elelemtns
      *
@@ -95,6 +110,27 @@ public class ANQPData {
         return mExpiryTime <= at;
     }
 
+    /**
+     * Return the time this entry expires at, in milliseconds since boot.
+     */
+    public long getExpiryTime() {
+        return mExpiryTime;
+    }
+
+    /**
+     * Return the total size of the payloads of the ANQP elements, see
+     * {@link ANQPElement#getPayload()}.
+     */
+    public int getPayloadSize() {
+        int size = 0;
+        for (ANQPElement element : mANQPElements.values()) {
+            if (element.getPayload() != null) {
+                size += element.getPayload().length;
+            }
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -65,6 +65,22 @@ public class ANQPNetworkKey {
         return new ANQPNetworkKey(ssid, 0, 0, anqpDomainId);
     }
 
+    public String getSsid() {
+        return mSSID;
+    }
+
+    public long getBssid() {
+        return mBSSID;
+    }
+
+    public long getHessid() {
+        return mHESSID;
+    }
+
+    public int getAnqpDomainId() {
+        return mAnqpDomainID;
+    }
+
     @Override
     public int hashCode() {
         if (mHESSID != 0) {
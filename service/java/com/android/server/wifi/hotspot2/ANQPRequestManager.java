@@ -23,22 +23,29 @@ import android.util.Log;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.WifiInjector;
+import com.android.server.wifi.WifiMetrics;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.wifi.flags.FeatureFlags;
 
 import java.io.PrintWriter;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.PriorityQueue;
 
 /**
  * Class for managing sending of ANQP requests.  This manager will ignore ANQP requests for a
  * period of time (hold off time) to a specified AP if the previous request to that AP goes
  * unanswered or failed.  The hold off time will increase exponentially until the max is reached.
+ *
+ * When waiting for responses is enabled, requests are queued and up to a configurable number of
+ * them are waiting for a response at the same time. Queued requests are sent to the strongest APs
+ * first, and a single request is sent for all the APs sharing an {@link ANQPNetworkKey}, since
+ * they advertise the same ANQP elements.
  */
 public class ANQPRequestManager {
     private static final int ANQP_REQUEST_ALARM_INTERVAL_MS = 2_000;
@@ -50,13 +57,32 @@ public class ANQPRequestManager {
     private final AlarmManager mAlarmManager;
     private final Clock mClock;
     private final FeatureFlags mFeatureFlags;
-    private boolean mAnqpRequestPending;
+    private final WifiMetrics mWifiMetrics;
+    private final int mMaxInFlightRequests;
+    private long mNextRequestSequence;
+    private long mNextTimeoutTime;
 
     /**
      * List of pending ANQP request associated with an AP (BSSID).
      */
     private final Map<Long, ANQPNetworkKey> mPendingQueries;
-    private final Queue<AnqpRequest> mPendingRequest = new ArrayDeque<>();
+
+    /**
+     * Requests waiting to be sent, from the strongest AP, then in the order they were made.
+     */
+    private final PriorityQueue<AnqpRequest> mPendingRequest = new PriorityQueue<>(
+            Comparator.comparingInt((AnqpRequest request) -> -request.mRssi)
+                    .thenComparingLong(request -> request.mSequence));
+
+    /**
+     * Requests waiting to be sent, by their network key.
+     */
+    private final Map<ANQPNetworkKey, AnqpRequest> mPendingRequestByKey = new HashMap<>();
+
+    /**
+     * Requests sent and waiting for a response, by the BSSID of their AP.
+     */
+    private final Map<Long, AnqpRequest> mInFlightRequests = new HashMap<>();
 
     /**
      * List of hold off time information associated with APs specified by their BSSID.
@@ -112,23 +138,30 @@ public class ANQPRequestManager {
     private static class AnqpRequest {
 
         AnqpRequest(long bssid, boolean rcOIs, NetworkDetail.HSRelease hsRelease,
-                ANQPNetworkKey anqpNetworkKey) {
+                ANQPNetworkKey anqpNetworkKey, int rssi, long sequence, long enqueueTime) {
             mBssid = bssid;
             mAnqpNetworkKey = anqpNetworkKey;
             mRcOIs = rcOIs;
             mHsRelease = hsRelease;
+            mRssi = rssi;
+            mSequence = sequence;
+            mEnqueueTime = enqueueTime;
         }
         public final long mBssid;
         public final boolean mRcOIs;
         public final NetworkDetail.HSRelease mHsRelease;
         public final ANQPNetworkKey mAnqpNetworkKey;
+        public final int mRssi;
+        public final long mSequence;
+        public long mEnqueueTime;
+        public long mSendTime;
     }
 
     private final AlarmManager.OnAlarmListener mAnqpRequestListener =
             new AlarmManager.OnAlarmListener() {
                 public void onAlarm() {
-                    mAnqpRequestPending = false;
-                    processNextRequest();
+                    expireInFlightRequests();
+                    processNextRequests();
                 }
             };
 
@@ -138,6 +171,9 @@ public class ANQPRequestManager {
         mClock = clock;
         mAlarmManager = wifiInjector.getAlarmManager();
         mFeatureFlags = wifiInjector.getDeviceConfigFacade().getFeatureFlags();
+        mWifiMetrics = wifiInjector.getWifiMetrics();
+        mMaxInFlightRequests = Math.max(1,
+                wifiInjector.getDeviceConfigFacade().getAnqpRequestMaxInFlight());
         mHoldOffInfo = new HashMap<>();
         mPendingQueries = new HashMap<>();
         mHandler = handler;
@@ -155,15 +191,15 @@ public class ANQPRequestManager {
      *              Roaming Consortium ANQP element will be requested
      * @param hsReleaseVer Indicates Hotspot 2.0 Release version. When set to R2 or higher,
      *              the Release 2 ANQP elements {@link #R2_ANQP_BASE_SET} will be requested
-     * @return true if a request was sent successfully
+     * @param rssi The RSSI of the AP, queued requests to stronger APs are sent first
+     * @return true if a request was sent successfully, or queued
      */
     public boolean requestANQPElements(long bssid, ANQPNetworkKey anqpNetworkKey, boolean rcOIs,
-            NetworkDetail.HSRelease hsReleaseVer) {
+            NetworkDetail.HSRelease hsReleaseVer, int rssi) {
         if (mFeatureFlags.anqpRequestWaitForResponse()) {
-            // Put the new request in the queue, process it if possible(no more pending request)
-            mPendingRequest.offer(new AnqpRequest(bssid, rcOIs, hsReleaseVer, anqpNetworkKey));
-            processNextRequest();
-            return true;
+            // Put the new request in the queue, process it if possible(in-flight window not full)
+            return enqueueRequest(new AnqpRequest(bssid, rcOIs, hsReleaseVer, anqpNetworkKey,
+                    rssi, mNextRequestSequence++, mClock.getElapsedSinceBootMillis()));
         }
         // Check if we are allow to send the request now.
         if (!canSendRequestNow(bssid)) {
@@ -183,37 +219,103 @@ public class ANQPRequestManager {
         return true;
     }
 
-    private void processNextRequest() {
-        if (mAnqpRequestPending) {
-            return;
+    private boolean enqueueRequest(AnqpRequest request) {
+        // Check if we are allow to send the request to this AP.
+        if (!canSendRequestNow(request.mBssid)) {
+            return false;
+        }
+        if (isInFlight(request.mAnqpNetworkKey)) {
+            // The response to the request to another AP of the network will be used.
+            return true;
+        }
+        AnqpRequest queuedRequest = mPendingRequestByKey.get(request.mAnqpNetworkKey);
+        if (queuedRequest != null) {
+            if (queuedRequest.mRssi >= request.mRssi) {
+                return true;
+            }
+            // Query the network through its strongest AP instead.
+            mPendingRequest.remove(queuedRequest);
+            request.mEnqueueTime = queuedRequest.mEnqueueTime;
+        }
+        mPendingRequestByKey.put(request.mAnqpNetworkKey, request);
+        mPendingRequest.offer(request);
+        processNextRequests();
+        return true;
+    }
+
+    private boolean isInFlight(ANQPNetworkKey anqpNetworkKey) {
+        for (AnqpRequest request : mInFlightRequests.values()) {
+            if (request.mAnqpNetworkKey.equals(anqpNetworkKey)) {
+                return true;
+            }
         }
+        return false;
+    }
+
+    /**
+     * Send queued requests until the in-flight window is full.
+     */
+    private void processNextRequests() {
         AnqpRequest request;
-        while ((request = mPendingRequest.poll()) != null) {
+        while (mInFlightRequests.size() < mMaxInFlightRequests
+                && (request = mPendingRequest.poll()) != null) {
+            mPendingRequestByKey.remove(request.mAnqpNetworkKey);
             // Check if we are allow to send the request now.
             if (!canSendRequestNow(request.mBssid)) {
                 continue;
             }
-            // No need to hold off future requests and set next alarm for send failures.
-            if (mPasspointHandler.requestANQP(request.mBssid, getRequestElementIDs(request.mRcOIs,
-                    request.mHsRelease))) {
-                break;
+            // No need to hold off future requests for send failures.
+            if (!mPasspointHandler.requestANQP(request.mBssid,
+                    getRequestElementIDs(request.mRcOIs, request.mHsRelease))) {
+                continue;
             }
+            // Update hold off info on when we are allowed to send the next ANQP request to
+            // the given AP.
+            updateHoldOffInfo(request.mBssid);
+            mPendingQueries.put(request.mBssid, request.mAnqpNetworkKey);
+            request.mSendTime = mClock.getElapsedSinceBootMillis();
+            mInFlightRequests.put(request.mBssid, request);
+            mWifiMetrics.logAnqpRequestQueueWait(
+                    (int) (request.mSendTime - request.mEnqueueTime));
         }
-        if (request == null) {
+        scheduleTimeoutAlarm();
+    }
+
+    /**
+     * Schedule the alarm for the earliest time out of the in-flight requests, so that a slot of
+     * the window is freed when a request goes unanswered.
+     */
+    private void scheduleTimeoutAlarm() {
+        if (mInFlightRequests.isEmpty()) {
+            mAlarmManager.cancel(mAnqpRequestListener);
             return;
         }
-        // Update hold off info on when we are allowed to send the next ANQP request to
-        // the given AP.
-        updateHoldOffInfo(request.mBssid);
-        mPendingQueries.put(request.mBssid, request.mAnqpNetworkKey);
-        // Schedule next request in case of time out waiting for response.
+        long nextTimeoutTime = Long.MAX_VALUE;
+        for (AnqpRequest request : mInFlightRequests.values()) {
+            nextTimeoutTime = Math.min(nextTimeoutTime,
+                    request.mSendTime + ANQP_REQUEST_ALARM_INTERVAL_MS);
+        }
+        mNextTimeoutTime = nextTimeoutTime;
         mAlarmManager.set(
                 AlarmManager.ELAPSED_REALTIME,
-                mClock.getElapsedSinceBootMillis() + ANQP_REQUEST_ALARM_INTERVAL_MS,
+                mNextTimeoutTime,
                 ANQP_REQUEST_ALARM_TAG,
                 mAnqpRequestListener,
                 mHandler);
-        mAnqpRequestPending = true;
+    }
+
+    /**
+     * Stop waiting for the requests which timed out. Their responses are still handled if they
+     * arrive later.
+     */
+    private void expireInFlightRequests() {
+        Iterator<AnqpRequest> iterator = mInFlightRequests.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mSendTime + ANQP_REQUEST_ALARM_INTERVAL_MS <= mNextTimeoutTime) {
+                iterator.remove();
+                mWifiMetrics.incrementAnqpRequestTimeouts();
+            }
+        }
     }
 
     /**
@@ -243,10 +345,13 @@ public class ANQPRequestManager {
             // Query succeeded.  No need to hold off request to the given AP.
             mHoldOffInfo.remove(bssid);
         }
-        // Cancel the schedule, and process next request.
-        mAlarmManager.cancel(mAnqpRequestListener);
-        mAnqpRequestPending = false;
-        processNextRequest();
+        AnqpRequest request = mInFlightRequests.remove(bssid);
+        if (request != null) {
+            mWifiMetrics.logAnqpRequestLatency(
+                    (int) (mClock.getElapsedSinceBootMillis() - request.mSendTime));
+            // Free the slot in the window, and process next requests.
+            processNextRequests();
+        }
         return mPendingQueries.remove(bssid);
     }
 
@@ -322,6 +427,13 @@ public class ANQPRequestManager {
      */
     public void dump(PrintWriter pw) {
         pw.println("ANQPRequestManager - Begin ---");
+        pw.println("Requests in flight: " + mInFlightRequests.size() + "/" + mMaxInFlightRequests
+                + ", queued: " + mPendingRequest.size());
+        for (AnqpRequest request : mInFlightRequests.values()) {
+            pw.println("In flight for BSSID: " + Utils.macToString(request.mBssid) + " "
+                    + request.mAnqpNetworkKey + " since "
+                    + (mClock.getElapsedSinceBootMillis() - request.mSendTime) + " ms");
+        }
         for (Map.Entry<Long, HoldOffInfo> holdOffInfo : mHoldOffInfo.entrySet()) {
             long bssid = holdOffInfo.getKey();
             pw.println("For BBSID: " + Utils.macToString(bssid));
@@ -340,7 +452,8 @@ public class ANQPRequestManager {
         mPendingQueries.clear();
         mHoldOffInfo.clear();
         mAlarmManager.cancel(mAnqpRequestListener);
-        mAnqpRequestPending = false;
         mPendingRequest.clear();
+        mPendingRequestByKey.clear();
+        mInFlightRequests.clear();
     }
 }
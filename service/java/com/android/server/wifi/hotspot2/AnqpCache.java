@@ -18,31 +18,58 @@ package com.android.server.wifi.hotspot2;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiMetrics;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Cache for storing ANQP data.  This is simply a data cache, all the logic related to
  * ANQP data query will be handled elsewhere (e.g. the consumer of the cache).
+ *
+ * The cache is bounded both in number of entries and in total size of the ANQP payloads, the
+ * least recently used entries are evicted first. Expired entries are never returned.
+ *
+ * When the persist_anqp_cache_enabled DeviceConfig flag is set, the most recently used entries
+ * are persisted to the config store through {@link AnqpCacheStoreData}, so that the ANQP elements
+ * of the APs in range don't have to be queried again after a reboot. Otherwise the cache starts
+ * empty on every boot.
  */
-public class AnqpCache {
+public class AnqpCache implements AnqpCacheStoreData.DataSource {
     @VisibleForTesting
     public static final long CACHE_SWEEP_INTERVAL_MILLISECONDS = 60000L;
+    @VisibleForTesting
+    public static final int CACHE_MAX_ENTRIES = 256;
+    @VisibleForTesting
+    public static final int CACHE_MAX_PAYLOAD_BYTES = 256 * 1024;
+    @VisibleForTesting
+    public static final int PERSISTED_MAX_PAYLOAD_BYTES = 32 * 1024;
 
     private long mLastSweep;
     private Clock mClock;
+    private final WifiMetrics mWifiMetrics;
 
-    private final Map<ANQPNetworkKey, ANQPData> mANQPCache;
+    // Entries in access order, from the least to the most recently used.
+    private final LinkedHashMap<ANQPNetworkKey, ANQPData> mANQPCache;
+    private int mPayloadBytes;
+    private boolean mHasNewDataToSerialize;
 
-    public AnqpCache(Clock clock) {
+    private int mNumHits;
+    private int mNumMisses;
+    private int mNumEvictions;
+    private int mNumExpirations;
+    private int mNumRestored;
+
+    public AnqpCache(Clock clock, WifiMetrics wifiMetrics) {
         mClock = clock;
-        mANQPCache = new HashMap<>();
+        mWifiMetrics = wifiMetrics;
+        mANQPCache = new LinkedHashMap<>(16, 0.75f, true);
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
 
@@ -54,8 +81,8 @@ public class AnqpCache {
      */
     public void addEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        ANQPData data = new ANQPData(mClock, anqpElements);
-        mANQPCache.put(key, data);
+        putEntry(key, new ANQPData(mClock, anqpElements));
+        mHasNewDataToSerialize = true;
     }
 
     /**
@@ -68,22 +95,40 @@ public class AnqpCache {
      */
     public void addOrUpdateEntry(ANQPNetworkKey key,
             Map<Constants.ANQPElementType, ANQPElement> anqpElements) {
-        if (!mANQPCache.containsKey(key)) {
+        ANQPData data = mANQPCache.get(key);
+        if (data == null) {
             // Create a new entry
             addEntry(key, anqpElements);
             return;
         }
-        mANQPCache.get(key).update(anqpElements);
+        mPayloadBytes -= data.getPayloadSize();
+        data.update(anqpElements);
+        mPayloadBytes += data.getPayloadSize();
+        mHasNewDataToSerialize = true;
+        evictIfNeeded();
     }
 
     /**
      * Get the ANQP data associated with the given AP.
      *
      * @param key The key that's associated with the entry
-     * @return {@link ANQPData}
+     * @return {@link ANQPData}, or null if there is no entry or it has expired
      */
     public ANQPData getEntry(ANQPNetworkKey key) {
-        return mANQPCache.get(key);
+        ANQPData data = mANQPCache.get(key);
+        if (data != null && data.expired(mClock.getElapsedSinceBootMillis())) {
+            removeEntry(key);
+            mNumExpirations++;
+            data = null;
+        }
+        if (data == null) {
+            mNumMisses++;
+            mWifiMetrics.incrementAnqpCacheMisses();
+        } else {
+            mNumHits++;
+            mWifiMetrics.incrementAnqpCacheHits();
+        }
+        return data;
     }
 
     /**
@@ -106,14 +151,19 @@ public class AnqpCache {
 
         // Remove all expired entries.
         for (ANQPNetworkKey key : expiredKeys) {
-            mANQPCache.remove(key);
+            removeEntry(key);
         }
+        mNumExpirations += expiredKeys.size();
         mLastSweep = now;
     }
 
     public void dump(PrintWriter out) {
         out.println("Last sweep " + Utils.toHMS(mClock.getElapsedSinceBootMillis() - mLastSweep)
                 + " ago.");
+        out.println("Entries: " + mANQPCache.size() + ", payload bytes: " + mPayloadBytes);
+        out.println("Hits: " + mNumHits + ", misses: " + mNumMisses + ", evictions: "
+                + mNumEvictions + ", expirations: " + mNumExpirations + ", restored: "
+                + mNumRestored);
         for (Map.Entry<ANQPNetworkKey, ANQPData> entry : mANQPCache.entrySet()) {
             out.println(entry.getKey() + ": " + entry.getValue());
         }
@@ -124,6 +174,98 @@ public class AnqpCache {
      */
     public void flush() {
         mANQPCache.clear();
+        mPayloadBytes = 0;
+        mHasNewDataToSerialize = true;
         mLastSweep = mClock.getElapsedSinceBootMillis();
     }
+
+    /**
+     * Return the most recently used unexpired entries to persist, up to
+     * {@link #PERSISTED_MAX_PAYLOAD_BYTES} of payloads, from the least to the most recently used.
+     * Entries with elements which weren't parsed from a payload can't be persisted.
+     */
+    @Override
+    public Map<ANQPNetworkKey, ANQPData> getEntriesToSerialize() {
+        mHasNewDataToSerialize = false;
+        long now = mClock.getElapsedSinceBootMillis();
+        List<Map.Entry<ANQPNetworkKey, ANQPData>> entries = new ArrayList<>(mANQPCache.entrySet());
+        List<Map.Entry<ANQPNetworkKey, ANQPData>> entriesToSerialize = new ArrayList<>();
+        int payloadBytes = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            ANQPData data = entries.get(i).getValue();
+            if (data.expired(now) || !hasAllPayloads(data)) continue;
+            payloadBytes += data.getPayloadSize();
+            if (payloadBytes > PERSISTED_MAX_PAYLOAD_BYTES) break;
+            entriesToSerialize.add(entries.get(i));
+        }
+        Map<ANQPNetworkKey, ANQPData> result = new LinkedHashMap<>();
+        for (int i = entriesToSerialize.size() - 1; i >= 0; i--) {
+            result.put(entriesToSerialize.get(i).getKey(), entriesToSerialize.get(i).getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Restore the entries read from the config store. Entries fetched since boot are kept over
+     * the restored ones.
+     *
+     * @param entries The restored entries, from the least to the most recently used
+     */
+    @Override
+    public void setDeserializedEntries(Map<ANQPNetworkKey, ANQPData> entries) {
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry : entries.entrySet()) {
+            if (mANQPCache.containsKey(entry.getKey())) continue;
+            putEntry(entry.getKey(), entry.getValue());
+            mNumRestored++;
+        }
+    }
+
+    /**
+     * Return whether the cache changed since the last call to {@link #getEntriesToSerialize()}.
+     */
+    @Override
+    public boolean hasNewDataToSerialize() {
+        return mHasNewDataToSerialize;
+    }
+
+    private static boolean hasAllPayloads(ANQPData data) {
+        if (data.getElements().isEmpty()) return false;
+        for (ANQPElement element : data.getElements().values()) {
+            if (element.getPayload() == null) return false;
+        }
+        return true;
+    }
+
+    private void putEntry(ANQPNetworkKey key, ANQPData data) {
+        ANQPData old = mANQPCache.put(key, data);
+        if (old != null) {
+            mPayloadBytes -= old.getPayloadSize();
+        }
+        mPayloadBytes += data.getPayloadSize();
+        evictIfNeeded();
+    }
+
+    private void removeEntry(ANQPNetworkKey key) {
+        ANQPData data = mANQPCache.remove(key);
+        if (data != null) {
+            mPayloadBytes -= data.getPayloadSize();
+            mHasNewDataToSerialize = true;
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is within its bounds, always keeping
+     * the most recently used entry.
+     */
+    private void evictIfNeeded() {
+        Iterator<ANQPData> iterator = mANQPCache.values().iterator();
+        while (mANQPCache.size() > 1 && (mANQPCache.size() > CACHE_MAX_ENTRIES
+                || mPayloadBytes > CACHE_MAX_PAYLOAD_BYTES)) {
+            ANQPData data = iterator.next();
+            iterator.remove();
+            mPayloadBytes -= data.getPayloadSize();
+            mNumEvictions++;
+            mWifiMetrics.incrementAnqpCacheEvictions();
+        }
+    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.Nullable;
+import android.util.Log;
+
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+import com.android.server.wifi.util.XmlUtil;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Store data for the ANQP cache, see {@link AnqpCache}.
+ *
+ * Each entry is stored with its {@link ANQPNetworkKey}, its expiry time in wall clock time, and
+ * the raw payload of each of its ANQP elements, which is parsed again when the entry is read back.
+ * Entries are stored from the least to the most recently used, and entries which expired while
+ * the device was off are dropped.
+ */
+public class AnqpCacheStoreData implements WifiConfigStore.StoreData {
+    private static final String TAG = "AnqpCacheStoreData";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_CACHE = "AnqpCache";
+    private static final String XML_TAG_SECTION_HEADER_ANQP_CACHE_ENTRY = "AnqpCacheEntry";
+    private static final String XML_TAG_SSID = "SSID";
+    private static final String XML_TAG_BSSID = "BSSID";
+    private static final String XML_TAG_HESSID = "HESSID";
+    private static final String XML_TAG_ANQP_DOMAIN_ID = "AnqpDomainId";
+    private static final String XML_TAG_EXPIRY_TIME = "ExpiryTimeMillis";
+
+    private final DataSource mDataSource;
+    private final Clock mClock;
+
+    /**
+     * Interface define the data source for the ANQP cache store data.
+     */
+    public interface DataSource {
+        /**
+         * Retrieve the entries to persist, from the least to the most recently used.
+         *
+         * @return Map of the ANQP network keys to their entries
+         */
+        Map<ANQPNetworkKey, ANQPData> getEntriesToSerialize();
+
+        /**
+         * Set the entries read from the store, from the least to the most recently used.
+         *
+         * @param entries Map of the ANQP network keys to their entries
+         */
+        void setDeserializedEntries(Map<ANQPNetworkKey, ANQPData> entries);
+
+        /**
+         * Whether the entries changed since they were last retrieved.
+         */
+        boolean hasNewDataToSerialize();
+    }
+
+    AnqpCacheStoreData(DataSource dataSource, Clock clock) {
+        mDataSource = dataSource;
+        mClock = clock;
+    }
+
+    @Override
+    public void serializeData(XmlSerializer out,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        long elapsedNow = mClock.getElapsedSinceBootMillis();
+        long wallNow = mClock.getWallClockMillis();
+        for (Map.Entry<ANQPNetworkKey, ANQPData> entry
+                : mDataSource.getEntriesToSerialize().entrySet()) {
+            ANQPNetworkKey key = entry.getKey();
+            ANQPData data = entry.getValue();
+            XmlUtil.writeNextSectionStart(out, XML_TAG_SECTION_HEADER_ANQP_CACHE_ENTRY);
+            XmlUtil.writeNextValue(out, XML_TAG_SSID, key.getSsid());
+            XmlUtil.writeNextValue(out, XML_TAG_BSSID, key.getBssid());
+            XmlUtil.writeNextValue(out, XML_TAG_HESSID, key.getHessid());
+            XmlUtil.writeNextValue(out, XML_TAG_ANQP_DOMAIN_ID, key.getAnqpDomainId());
+            XmlUtil.writeNextValue(out, XML_TAG_EXPIRY_TIME,
+                    wallNow + data.getExpiryTime() - elapsedNow);
+            for (Map.Entry<Constants.ANQPElementType, ANQPElement> element
+                    : data.getElements().entrySet()) {
+                XmlUtil.writeNextValue(out, element.getKey().name(),
+                        element.getValue().getPayload());
+            }
+            XmlUtil.writeNextSectionEnd(out, XML_TAG_SECTION_HEADER_ANQP_CACHE_ENTRY);
+        }
+    }
+
+    @Override
+    public void deserializeData(XmlPullParser in, int outerTagDepth,
+            @WifiConfigStore.Version int version,
+            @Nullable WifiConfigStoreEncryptionUtil encryptionUtil)
+            throws XmlPullParserException, IOException {
+        // Ignore empty reads.
+        if (in == null) {
+            return;
+        }
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        while (XmlUtil.gotoNextSectionWithNameOrEnd(
+                in, XML_TAG_SECTION_HEADER_ANQP_CACHE_ENTRY, outerTagDepth)) {
+            deserializeEntry(in, outerTagDepth + 1, entries);
+        }
+        mDataSource.setDeserializedEntries(entries);
+    }
+
+    /**
+     * Deserialize an entry of the cache, and add it to the given entries unless it has expired or
+     * one of its elements can't be parsed.
+     */
+    private void deserializeEntry(XmlPullParser in, int entryTagDepth,
+            Map<ANQPNetworkKey, ANQPData> entries) throws XmlPullParserException, IOException {
+        String ssid = null;
+        long bssid = 0;
+        long hessid = 0;
+        int anqpDomainId = 0;
+        long expiryTime = 0;
+        Map<Constants.ANQPElementType, ANQPElement> elements = new HashMap<>();
+        boolean malformed = false;
+        while (!XmlUtil.isNextSectionEnd(in, entryTagDepth)) {
+            String[] valueName = new String[1];
+            Object value = XmlUtil.readCurrentValue(in, valueName);
+            if (valueName[0] == null) {
+                throw new XmlPullParserException("Missing value name");
+            }
+            switch (valueName[0]) {
+                case XML_TAG_SSID:
+                    ssid = (String) value;
+                    break;
+                case XML_TAG_BSSID:
+                    bssid = (long) value;
+                    break;
+                case XML_TAG_HESSID:
+                    hessid = (long) value;
+                    break;
+                case XML_TAG_ANQP_DOMAIN_ID:
+                    anqpDomainId = (int) value;
+                    break;
+                case XML_TAG_EXPIRY_TIME:
+                    expiryTime = (long) value;
+                    break;
+                default:
+                    Constants.ANQPElementType type = parseElementType(valueName[0]);
+                    if (type == null || !(value instanceof byte[])) {
+                        Log.w(TAG, "Ignoring unknown value under ANQP cache entry "
+                                + valueName[0]);
+                        malformed = true;
+                        break;
+                    }
+                    try {
+                        elements.put(type, ANQPParser.parsePayload(type, (byte[]) value));
+                    } catch (ProtocolException | RuntimeException e) {
+                        Log.w(TAG, "Failed to parse " + type + ": " + e);
+                        malformed = true;
+                    }
+                    break;
+            }
+        }
+        long lifetime = Math.min(expiryTime - mClock.getWallClockMillis(),
+                ANQPData.DATA_LIFETIME_MILLISECONDS);
+        if (malformed || elements.isEmpty() || lifetime <= 0) {
+            return;
+        }
+        entries.put(new ANQPNetworkKey(ssid, bssid, hessid, anqpDomainId),
+                new ANQPData(mClock, elements, lifetime));
+    }
+
+    private static @Nullable Constants.ANQPElementType parseElementType(String name) {
+        try {
+            return Constants.ANQPElementType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Nothing to reset, the cache is only restored on top of the entries fetched since boot.
+     */
+    @Override
+    public void resetData() {
+    }
+
+    @Override
+    public boolean hasNewDataToSerialize() {
+        return mDataSource.hasNewDataToSerialize();
+    }
+
+    @Override
+    public String getName() {
+        return XML_TAG_SECTION_HEADER_ANQP_CACHE;
+    }
+
+    @Override
+    public @WifiConfigStore.StoreFileId int getStoreFileId() {
+        // Shared general store.
+        return WifiConfigStore.STORE_FILE_SHARED_GENERAL;
+    }
+}
@@ -227,10 +227,9 @@ public class NetworkDetail {
 
         RuntimeException exception = null;
 
-        ArrayList<Integer> iesFound = new ArrayList<Integer>();
+        boolean foundErp = false;
         try {
             for (ScanResult.InformationElement ie : infoElements) {
-                iesFound.add(ie.id);
                 switch (ie.id) {
                     case ScanResult.InformationElement.EID_SSID:
                         ssidOctets = ie.bytes;
@@ -277,6 +276,9 @@ public class NetworkDetail {
                     case ScanResult.InformationElement.EID_RNR:
                         rnr.from(ie);
                         break;
+                    case ScanResult.InformationElement.EID_ERP:
+                        foundErp = true;
+                        break;
                     case ScanResult.InformationElement.EID_EXTENSION_PRESENT:
                         switch(ie.idExt) {
                             case ScanResult.InformationElement.EID_EXT_HE_OPERATION:
@@ -458,7 +460,7 @@ public class NetworkDetail {
             mWifiMode = InformationElementUtil.WifiMode.determineMode(mPrimaryFreq, mMaxRate,
                     ehtOperation.isPresent(), heOperation.isPresent(), vhtOperation.isPresent(),
                     htOperation.isPresent(),
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP));
+                    foundErp);
         } else {
             mWifiMode = 0;
             mMaxRate = 0;
@@ -503,7 +505,7 @@ public class NetworkDetail {
                     + ", VHT: " + String.valueOf(vhtOperation.isPresent())
                     + ", HT: " + String.valueOf(htOperation.isPresent())
                     + ", ERP: " + String.valueOf(
-                    iesFound.contains(ScanResult.InformationElement.EID_ERP))
+                    foundErp)
                     + ", SupportedRates: " + supportedRates.toString()
                     + " ExtendedSupportedRates: " + extendedSupportedRates.toString());
         }
@@ -125,7 +125,11 @@ public class PasspointManager {
     private final PasspointObjectFactory mObjectFactory;
 
     private final Map<String, PasspointProvider> mProviders;
+    // Index of mProviders for matching scan results, built on demand and dropped whenever
+    // mProviders changes.
+    private PasspointProviderIndex mProviderMatchIndex;
     private final AnqpCache mAnqpCache;
+    private final boolean mPersistAnqpCache;
     private final ANQPRequestManager mAnqpRequestManager;
     private final WifiConfigManager mWifiConfigManager;
     private final WifiMetrics mWifiMetrics;
@@ -148,7 +152,8 @@ public class PasspointManager {
     private long mProviderIndex;
     private boolean mVerboseLoggingEnabled = false;
     // Set default value to false before receiving boot completed event.
-    private boolean mEnabled = false;
+    // Read from binder threads by isWifiPasspointEnabled().
+    private volatile boolean mEnabled = false;
 
     private class CallbackHandler implements PasspointEventHandler.Callbacks {
         private final Context mContext;
@@ -185,6 +190,10 @@ public class PasspointManager {
 
             // Add new entry to the cache.
             mAnqpCache.addOrUpdateEntry(anqpKey, anqpElements);
+            if (mPersistAnqpCache) {
+                // Buffered write, a burst of responses only results in a single write.
+                mWifiConfigManager.saveToStore(false);
+            }
         }
 
         @Override
@@ -215,6 +224,7 @@ public class PasspointManager {
         @Override
         public void setProviders(List<PasspointProvider> providers) {
             mProviders.clear();
+            mProviderMatchIndex = null;
             for (PasspointProvider provider : providers) {
                 provider.enableVerboseLogging(mVerboseLoggingEnabled);
                 mProviders.put(provider.getConfig().getUniqueId(), provider);
@@ -379,7 +389,8 @@ public class PasspointManager {
         mKeyStore = keyStore;
         mObjectFactory = objectFactory;
         mProviders = new HashMap<>();
-        mAnqpCache = objectFactory.makeAnqpCache(clock);
+        mAnqpCache = objectFactory.makeAnqpCache(clock, wifiMetrics);
+        mPersistAnqpCache = wifiInjector.getDeviceConfigFacade().isPersistAnqpCacheEnabled();
         mAnqpRequestManager = objectFactory.makeANQPRequestManager(mPasspointEventHandler, clock,
                 wifiInjector, mHandler);
         mWifiConfigManager = wifiConfigManager;
@@ -390,6 +401,10 @@ public class PasspointManager {
                 mKeyStore, mWifiCarrierInfoManager, new UserDataSourceHandler(), clock));
         wifiConfigStore.registerStoreData(objectFactory.makePasspointConfigSharedStoreData(
                 new SharedDataSourceHandler()));
+        if (mPersistAnqpCache) {
+            wifiConfigStore.registerStoreData(
+                    objectFactory.makeAnqpCacheStoreData(mAnqpCache, clock));
+        }
         mPasspointProvisioner = objectFactory.makePasspointProvisioner(context, wifiNative,
                 this, wifiMetrics);
         ActivityManager activityManager = context.getSystemService(ActivityManager.class);
@@ -564,6 +579,7 @@ public class PasspointManager {
                     + " and unique ID: " + config.getUniqueId());
             old.uninstallCertsAndKeys();
             mProviders.remove(config.getUniqueId());
+            mProviderMatchIndex = null;
             // Keep the user connect choice and AnonymousIdentity
             newProvider.setUserConnectChoice(old.getConnectChoice(), old.getConnectChoiceRssi());
             newProvider.setAnonymousIdentity(old.getAnonymousIdentity());
@@ -579,6 +595,7 @@ public class PasspointManager {
         }
         newProvider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(config.getUniqueId(), newProvider);
+        mProviderMatchIndex = null;
         if (!isFromSuggestion) {
             // Suggestions will be handled by the WifiNetworkSuggestionsManager
             mWifiConfigManager.saveToStore(true /* forceWrite */);
@@ -629,6 +646,7 @@ public class PasspointManager {
         }
         String uniqueId = provider.getConfig().getUniqueId();
         mProviders.remove(uniqueId);
+        mProviderMatchIndex = null;
         mWifiConfigManager.removeConnectChoiceFromAllNetworks(uniqueId);
         if (!provider.isFromSuggestion()) {
             // Suggestions will be handled by the WifiNetworkSuggestionsManager
@@ -929,17 +947,23 @@ public class PasspointManager {
         if (anqpEntry == null) {
             if (anqpRequestAllowed) {
                 mAnqpRequestManager.requestANQPElements(bssid, anqpKey,
-                        roamingConsortium.anqpOICount > 0, vsa.hsRelease);
+                        roamingConsortium.anqpOICount > 0, vsa.hsRelease, scanResult.level);
             }
             Log.d(TAG, "ANQP entry not found for: " + anqpKey);
             return allMatches;
         }
         boolean anyProviderUpdated = false;
-        for (Map.Entry<String, PasspointProvider> entry : mProviders.entrySet()) {
-            PasspointProvider provider = entry.getValue();
+        for (PasspointProvider provider : mProviders.values()) {
             if (provider.tryUpdateCarrierId()) {
                 anyProviderUpdated = true;
             }
+        }
+        if (mProviderMatchIndex == null) {
+            mProviderMatchIndex = new PasspointProviderIndex(mProviders.values());
+        }
+        // Only match the providers which share a domain, realm or OI with the AP.
+        for (PasspointProvider provider : mProviderMatchIndex.getCandidates(
+                anqpEntry.getElements(), roamingConsortium)) {
             if (mVerboseLoggingEnabled) {
                 Log.d(TAG, "Matching provider " + provider.getConfig().getHomeSp().getFqdn()
                         + " with "
@@ -1389,6 +1413,7 @@ public class PasspointManager {
                 enterpriseConfig.getClientCertificateAlias(), null, false, false, mClock);
         provider.enableVerboseLogging(mVerboseLoggingEnabled);
         mProviders.put(passpointConfig.getUniqueId(), provider);
+        mProviderMatchIndex = null;
         return true;
     }
 
@@ -1437,20 +1462,54 @@ public class PasspointManager {
     public List<ScanResult> getMatchingScanResults(
             @NonNull PasspointConfiguration passpointConfiguration,
             @NonNull List<ScanResult> scanResults) {
-        PasspointProvider provider = mObjectFactory.makePasspointProvider(passpointConfiguration,
-                null, mWifiCarrierInfoManager, 0, 0, null, false, mClock);
-        List<ScanResult> filteredScanResults = new ArrayList<>();
+        return getMatchingScanResultsForConfigs(
+                Collections.singletonList(passpointConfiguration), scanResults).get(0);
+    }
+
+    /**
+     * Get the filtered ScanResults which could be served by each of the given
+     * {@link PasspointConfiguration}s. The ANQP elements and roaming consortium IE of each
+     * ScanResult are only looked up once for all the configurations.
+     * @param passpointConfigurations The list of {@link PasspointConfiguration}
+     * @param scanResults The list of {@link ScanResult}
+     * @return The filtered ScanResults of each configuration, in the same order as
+     * passpointConfigurations
+     */
+    @NonNull
+    public List<List<ScanResult>> getMatchingScanResultsForConfigs(
+            @NonNull List<PasspointConfiguration> passpointConfigurations,
+            @NonNull List<ScanResult> scanResults) {
+        List<ScanResult> validScanResults = new ArrayList<>(scanResults.size());
+        List<Map<Constants.ANQPElementType, ANQPElement>> anqpElementsList =
+                new ArrayList<>(scanResults.size());
+        List<InformationElementUtil.RoamingConsortium> roamingConsortiums =
+                new ArrayList<>(scanResults.size());
         for (ScanResult scanResult : scanResults) {
-            PasspointMatch matchInfo = provider.match(getANQPElements(scanResult),
-                    InformationElementUtil.getRoamingConsortiumIE(scanResult.informationElements),
-                    scanResult);
-            if (matchInfo == PasspointMatch.HomeProvider
-                    || matchInfo == PasspointMatch.RoamingProvider) {
-                filteredScanResults.add(scanResult);
+            if (scanResult == null) continue;
+            validScanResults.add(scanResult);
+            anqpElementsList.add(getANQPElements(scanResult));
+            roamingConsortiums.add(InformationElementUtil.getRoamingConsortiumIE(
+                    scanResult.informationElements));
+        }
+
+        List<List<ScanResult>> filteredScanResultsList =
+                new ArrayList<>(passpointConfigurations.size());
+        for (PasspointConfiguration passpointConfiguration : passpointConfigurations) {
+            PasspointProvider provider = mObjectFactory.makePasspointProvider(
+                    passpointConfiguration, null, mWifiCarrierInfoManager, 0, 0, null, false,
+                    mClock);
+            List<ScanResult> filteredScanResults = new ArrayList<>();
+            for (int i = 0; i < validScanResults.size(); i++) {
+                PasspointMatch matchInfo = provider.match(anqpElementsList.get(i),
+                        roamingConsortiums.get(i), validScanResults.get(i));
+                if (matchInfo == PasspointMatch.HomeProvider
+                        || matchInfo == PasspointMatch.RoamingProvider) {
+                    filteredScanResults.add(validScanResults.get(i));
+                }
             }
+            filteredScanResultsList.add(filteredScanResults);
         }
-
-        return filteredScanResults;
+        return filteredScanResultsList;
     }
 
     /**
@@ -1468,6 +1527,9 @@ public class PasspointManager {
     public void clearAnqpRequestsAndFlushCache() {
         mAnqpRequestManager.clear();
         mAnqpCache.flush();
+        if (mPersistAnqpCache) {
+            mWifiConfigManager.saveToStore(false);
+        }
         mProviders.values().forEach(PasspointProvider::clearProviderBlock);
     }
 
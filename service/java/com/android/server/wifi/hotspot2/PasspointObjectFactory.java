@@ -101,10 +101,23 @@ public class PasspointObjectFactory{
      * Create a AnqpCache instance.
      *
      * @param clock Instance of {@link Clock}
+     * @param wifiMetrics Instance of {@link WifiMetrics}
      * @return {@link AnqpCache}
      */
-    public AnqpCache makeAnqpCache(Clock clock) {
-        return new AnqpCache(clock);
+    public AnqpCache makeAnqpCache(Clock clock, WifiMetrics wifiMetrics) {
+        return new AnqpCache(clock, wifiMetrics);
+    }
+
+    /**
+     * Create a {@link AnqpCacheStoreData} instance.
+     *
+     * @param dataSource Data source for the ANQP cache store data
+     * @param clock Instance of {@link Clock}
+     * @return {@link AnqpCacheStoreData}
+     */
+    public AnqpCacheStoreData makeAnqpCacheStoreData(AnqpCacheStoreData.DataSource dataSource,
+            Clock clock) {
+        return new AnqpCacheStoreData(dataSource, clock);
     }
 
     /**
@@ -1280,6 +1280,8 @@ public class PasspointProvider {
      */
     public long getAndRemoveMatchedRcoi(String ssid) {
         if (ssid == null) return 0;
+        // The map is only swept on match, which is skipped for the APs this provider can't serve
+        sweepMatchedRcoiMap();
         if (mRcoiMatchForNetwork.isEmpty()) return 0;
         Pair<Long, Long> rcoiMatchEntry = mRcoiMatchForNetwork.get(ssid);
         if (rcoiMatchEntry == null) return 0;
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+import android.text.TextUtils;
+
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the installed {@link PasspointProvider}s by the keys {@link PasspointProvider#match}
+ * compares with the ANQP elements of an AP, used to only match an AP against the providers which
+ * may serve it.
+ *
+ * Outside of SIM credentials, a provider can only match an AP when:
+ * <li>Its FQDN or one of its other home partners is a parent domain of an ANQP domain name.</li>
+ * <li>One of its home or roaming consortium OIs is advertised by the AP or in the ANQP roaming
+ * consortium element.</li>
+ * <li>Its credential realm is a parent domain of an ANQP NAI realm.</li>
+ * Domains are indexed by their labels, split the same way as {@link DomainMatcher} does, so that
+ * looking up every parent domain of an ANQP domain name is equivalent to walking a label tree.
+ * Providers with a SIM credential also match on the MCC-MNC of the installed SIM cards, which
+ * changes independently of the providers, so they are always candidates.
+ *
+ * The index is immutable, and must be rebuilt when the providers change.
+ */
+public class PasspointProviderIndex {
+    private final List<PasspointProvider> mProviders;
+    private final Map<String, List<Integer>> mProvidersByDomain = new HashMap<>();
+    private final Map<String, List<Integer>> mProvidersByRealm = new HashMap<>();
+    private final Map<Long, List<Integer>> mProvidersByOi = new HashMap<>();
+    private final BitSet mAlwaysCandidates = new BitSet();
+
+    /**
+     * @param providers The providers to index. Candidates are returned in the iteration order of
+     *                  this collection.
+     */
+    public PasspointProviderIndex(@NonNull Collection<PasspointProvider> providers) {
+        mProviders = new ArrayList<>(providers);
+        for (int i = 0; i < mProviders.size(); i++) {
+            addProvider(i, mProviders.get(i).getConfig());
+        }
+    }
+
+    private void addProvider(int index, PasspointConfiguration config) {
+        Credential credential = config.getCredential();
+        if (credential != null && credential.getSimCredential() != null) {
+            mAlwaysCandidates.set(index);
+            return;
+        }
+        HomeSp homeSp = config.getHomeSp();
+        if (homeSp != null) {
+            addDomain(mProvidersByDomain, homeSp.getFqdn(), index);
+            if (homeSp.getOtherHomePartners() != null) {
+                for (String otherHomePartner : homeSp.getOtherHomePartners()) {
+                    addDomain(mProvidersByDomain, otherHomePartner, index);
+                }
+            }
+            addOis(homeSp.getMatchAllOis(), index);
+            addOis(homeSp.getMatchAnyOis(), index);
+            addOis(homeSp.getRoamingConsortiumOis(), index);
+        }
+        if (credential != null) {
+            addDomain(mProvidersByRealm, credential.getRealm(), index);
+        }
+    }
+
+    private static void addDomain(Map<String, List<Integer>> domainIndex, String domain,
+            int index) {
+        // Empty domains never match, see DomainMatcher#arg2SubdomainOfArg1
+        if (TextUtils.isEmpty(domain)) return;
+        domainIndex.computeIfAbsent(String.join(".", Utils.splitDomain(domain)),
+                k -> new ArrayList<>()).add(index);
+    }
+
+    private void addOis(long[] ois, int index) {
+        if (ois == null) return;
+        for (long oi : ois) {
+            mProvidersByOi.computeIfAbsent(oi, k -> new ArrayList<>()).add(index);
+        }
+    }
+
+    /**
+     * Returns the providers which may match an AP with the given ANQP elements and roaming
+     * consortium IE. All the other providers would return {@link PasspointMatch#None} from
+     * {@link PasspointProvider#match}.
+     *
+     * @param anqpElements The ANQP elements of the AP
+     * @param roamingConsortiumFromAp The roaming consortium IE of the AP
+     * @return The candidate providers, in the order they were indexed
+     */
+    public @NonNull List<PasspointProvider> getCandidates(
+            @NonNull Map<ANQPElementType, ANQPElement> anqpElements,
+            @Nullable RoamingConsortium roamingConsortiumFromAp) {
+        BitSet candidates = (BitSet) mAlwaysCandidates.clone();
+
+        DomainNameElement domainNameElement =
+                (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName);
+        if (domainNameElement != null && !mProvidersByDomain.isEmpty()) {
+            for (String domain : domainNameElement.getDomains()) {
+                addParentDomainCandidates(mProvidersByDomain, domain, candidates);
+            }
+        }
+
+        NAIRealmElement naiRealmElement =
+                (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm);
+        if (naiRealmElement != null && !mProvidersByRealm.isEmpty()) {
+            for (NAIRealmData realmData : naiRealmElement.getRealmDataList()) {
+                for (String realm : realmData.getRealms()) {
+                    addParentDomainCandidates(mProvidersByRealm, realm, candidates);
+                }
+            }
+        }
+
+        if (!mProvidersByOi.isEmpty()) {
+            RoamingConsortiumElement roamingConsortiumElement = (RoamingConsortiumElement)
+                    anqpElements.get(ANQPElementType.ANQPRoamingConsortium);
+            if (roamingConsortiumElement != null) {
+                for (long oi : roamingConsortiumElement.getOIs()) {
+                    addCandidates(mProvidersByOi.get(oi), candidates);
+                }
+            }
+            long[] apOis = roamingConsortiumFromAp == null
+                    ? null : roamingConsortiumFromAp.getRoamingConsortiums();
+            if (apOis != null) {
+                for (long oi : apOis) {
+                    addCandidates(mProvidersByOi.get(oi), candidates);
+                }
+            }
+        }
+
+        List<PasspointProvider> providers = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            providers.add(mProviders.get(i));
+        }
+        return providers;
+    }
+
+    /**
+     * Add the providers indexed by the given domain or any of its parent domains.
+     */
+    private static void addParentDomainCandidates(Map<String, List<Integer>> domainIndex,
+            String domain, BitSet candidates) {
+        if (TextUtils.isEmpty(domain)) return;
+        StringBuilder key = new StringBuilder(domain.length());
+        boolean first = true;
+        for (String label : Utils.splitDomain(domain)) {
+            if (!first) key.append('.');
+            first = false;
+            key.append(label);
+            addCandidates(domainIndex.get(key.toString()), candidates);
+        }
+    }
+
+    private static void addCandidates(@Nullable List<Integer> indexes, BitSet candidates) {
+        if (indexes == null) return;
+        for (int index : indexes) {
+            candidates.set(index);
+        }
+    }
+
+    /**
+     * Returns the number of indexed providers.
+     */
+    public int size() {
+        return mProviders.size();
+    }
+}
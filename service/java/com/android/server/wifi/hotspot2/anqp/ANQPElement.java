@@ -1,10 +1,14 @@
 package com.android.server.wifi.hotspot2.anqp;
 
+import android.annotation.Nullable;
+
 /**
  * Base class for an IEEE802.11u ANQP element.
  */
 public abstract class ANQPElement {
     private final Constants.ANQPElementType mID;
+    // Payload the element was parsed from, null if it wasn't received from an AP.
+    private byte[] mPayload;
 
     protected ANQPElement(Constants.ANQPElementType id) {
         mID = id;
@@ -13,4 +17,16 @@ public abstract class ANQPElement {
     public Constants.ANQPElementType getID() {
         return mID;
     }
+
+    /**
+     * Return the payload this element was parsed from by {@link ANQPParser#parsePayload}, or
+     * null if the element was built otherwise. The returned array must not be modified.
+     */
+    public @Nullable byte[] getPayload() {
+        return mPayload;
+    }
+
+    void setPayload(byte[] payload) {
+        mPayload = payload;
+    }
 }
@@ -40,6 +40,26 @@ public class ANQPParser {
     @VisibleForTesting
     public static final int VENDOR_SPECIFIC_HS20_TYPE = 0x11;
 
+    /**
+     * Parse an ANQP or Hotspot 2.0 Release 2 element from its payload. The payload is kept in the
+     * returned element, see {@link ANQPElement#getPayload()}, so that the element can be stored
+     * and parsed again later.
+     *
+     * @param infoID The ANQP element type
+     * @param payload The payload to parse, which must not be modified afterwards
+     * @return {@link com.android.server.wifi.hotspot2.anqp.ANQPElement}
+     * @throws BufferUnderflowException
+     * @throws ProtocolException
+     */
+    public static ANQPElement parsePayload(Constants.ANQPElementType infoID, byte[] payload)
+            throws ProtocolException {
+        ANQPElement element = Constants.getANQPElementID(infoID) != null
+                ? parseElement(infoID, ByteBuffer.wrap(payload))
+                : parseHS20Element(infoID, ByteBuffer.wrap(payload));
+        element.setPayload(payload);
+        return element;
+    }
+
     /**
      * Parse an ANQP element from the pass-in byte buffer.
      *
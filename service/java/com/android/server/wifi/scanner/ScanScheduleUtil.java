@@ -18,6 +18,7 @@ package com.android.server.wifi.scanner;
 
 import android.annotation.Nullable;
 import android.net.wifi.ScanResult;
+import android.net.wifi.WifiScanner;
 import android.net.wifi.WifiScanner.ScanData;
 import android.net.wifi.WifiScanner.ScanSettings;
 
@@ -44,6 +45,29 @@ public class ScanScheduleUtil {
         return channel1.passive == channel2.passive;
     }
 
+    /**
+     * Checks whether {@link #filterResultsForSettings} would filter any scan results in the same
+     * way for both provided settings.
+     */
+    public static boolean hasSameResultFilter(@Nullable ScanSettings settings1,
+            @Nullable ScanSettings settings2) {
+        if (settings1 == null || settings2 == null) return false;
+        if (settings1 == settings2) return true;
+
+        if (settings1.band != settings2.band) return false;
+        if (settings1.numBssidsPerScan != settings2.numBssidsPerScan) return false;
+        // Channels are only considered when no band is specified.
+        if (settings1.band != WifiScanner.WIFI_BAND_UNSPECIFIED) return true;
+        if (settings1.channels == null || settings2.channels == null) {
+            return settings1.channels == settings2.channels;
+        }
+        if (settings1.channels.length != settings2.channels.length) return false;
+        for (int c = 0; c < settings1.channels.length; c++) {
+            if (settings1.channels[c].frequency != settings2.channels[c].frequency) return false;
+        }
+        return true;
+    }
+
     /**
      * Compares two BucketSettings for equality.
      */
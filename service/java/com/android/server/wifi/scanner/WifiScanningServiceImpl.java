@@ -82,7 +82,6 @@ import com.android.wifi.resources.R;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -90,7 +89,6 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 public class WifiScanningServiceImpl extends IWifiScanner.Stub {
 
@@ -909,6 +907,10 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
 
         // Scan results cached from the last full single scan request.
         private final List<ScanResult> mCachedScanResults = new ArrayList<>();
+        // Range of ScanResult.timestamp (in micros) of |mCachedScanResults|, used to avoid
+        // filtering the results one by one when all or none of them are stale.
+        private long mCachedScanResultsOldestTimestampUs = Long.MAX_VALUE;
+        private long mCachedScanResultsNewestTimestampUs = Long.MIN_VALUE;
 
         // Tracks scan requests across multiple scanner impls.
         private final ScannerImplsTracker mScannerImplsTracker;
@@ -1218,7 +1220,7 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             @Override
             public void exit() {
                 // clear scan results when scan mode is not active
-                mCachedScanResults.clear();
+                clearCachedScanResults();
 
                 mWifiMetrics.incrementScanReturnEntry(
                         WifiMetricsProto.WifiLog.SCAN_FAILURE_INTERRUPTED,
@@ -1603,14 +1605,30 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
                 }
             }
             ScanData[] allResults = new ScanData[] {results};
+            // Requests with the same channels share the filtered results instead of each one
+            // filtering the whole scan again.
+            List<Pair<ScanSettings, ScanData[]>> filteredResults = new ArrayList<>();
             for (RequestInfo<ScanSettings> entry : mActiveScans) {
-                ScanData[] resultsToDeliver = ScanScheduleUtil.filterResultsForSettings(
-                        mChannelHelper, allResults, entry.settings, -1);
+                ScanData[] resultsToDeliver = null;
+                boolean found = false;
+                for (Pair<ScanSettings, ScanData[]> filtered : filteredResults) {
+                    if (ScanScheduleUtil.hasSameResultFilter(filtered.first, entry.settings)) {
+                        resultsToDeliver = filtered.second;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    resultsToDeliver = ScanScheduleUtil.filterResultsForSettings(
+                            mChannelHelper, allResults, entry.settings, -1);
+                    filteredResults.add(Pair.create(entry.settings, resultsToDeliver));
+                }
+                final ScanData[] finalResultsToDeliver = resultsToDeliver;
                 logCallback("singleScanResults", entry.clientInfo,
-                        describeForLog(resultsToDeliver));
+                        describeForLog(finalResultsToDeliver));
                 entry.clientInfo.reportEvent((listener) -> {
                     try {
-                        listener.onResults(resultsToDeliver);
+                        listener.onResults(finalResultsToDeliver);
                         // make sure the handler is removed
                         listener.onSingleScanCompleted();
                     } catch (RemoteException e) {
@@ -1640,8 +1658,14 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             reportScanResults(results);
             // Cache full band (with DFS or not) scan results.
             if (WifiScanner.isFullBandScan(results.getScannedBandsInternal(), true)) {
-                mCachedScanResults.clear();
-                mCachedScanResults.addAll(Arrays.asList(results.getResults()));
+                clearCachedScanResults();
+                for (ScanResult result : results.getResults()) {
+                    mCachedScanResults.add(result);
+                    mCachedScanResultsOldestTimestampUs =
+                            Math.min(mCachedScanResultsOldestTimestampUs, result.timestamp);
+                    mCachedScanResultsNewestTimestampUs =
+                            Math.max(mCachedScanResultsNewestTimestampUs, result.timestamp);
+                }
             }
             if (mActiveScans.stream().anyMatch(rI -> rI.settings.ignoreLocationSettings)) {
                 // We were processing an emergency scan, post an alarm to inform WifiManager the
@@ -1665,6 +1689,17 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             return mCachedScanResults;
         }
 
+        private void clearCachedScanResults() {
+            mCachedScanResults.clear();
+            mCachedScanResultsOldestTimestampUs = Long.MAX_VALUE;
+            mCachedScanResultsNewestTimestampUs = Long.MIN_VALUE;
+        }
+
+        private boolean isCachedScanResultFresh(long timestampUs, long currentTimeInMillis) {
+            return (currentTimeInMillis - (timestampUs / 1000))
+                    < CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS;
+        }
+
         /**
          * Filter out  any scan results that are older than
          * {@link #CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS}.
@@ -1675,10 +1710,20 @@ public class WifiScanningServiceImpl extends IWifiScanner.Stub {
             // Using ScanResult.timestamp here to ensure that we use the same fields as
             // WificondScannerImpl for filtering stale results.
             long currentTimeInMillis = mClock.getElapsedSinceBootMillis();
-            return mCachedScanResults.stream()
-                    .filter(scanResult
-                            -> ((currentTimeInMillis - (scanResult.timestamp / 1000))
-                            < CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS)).collect(Collectors.toList());
+            if (mCachedScanResults.isEmpty() || !isCachedScanResultFresh(
+                    mCachedScanResultsNewestTimestampUs, currentTimeInMillis)) {
+                return new ArrayList<>();
+            }
+            if (isCachedScanResultFresh(mCachedScanResultsOldestTimestampUs, currentTimeInMillis)) {
+                return new ArrayList<>(mCachedScanResults);
+            }
+            List<ScanResult> filteredResults = new ArrayList<>();
+            for (ScanResult scanResult : mCachedScanResults) {
+                if (isCachedScanResultFresh(scanResult.timestamp, currentTimeInMillis)) {
+                    filteredResults.add(scanResult);
+                }
+            }
+            return filteredResults;
         }
     }
 
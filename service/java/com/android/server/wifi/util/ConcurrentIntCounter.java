@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counter of occurrences of int keys within a small, fixed range, which can be updated from
+ * any thread without locking.
+ *
+ * Unlike {@link IntCounter}, every key in the range has a preallocated slot, so recording never
+ * allocates or takes a lock. The counts are read out as an {@link IntCounter} when the metrics are
+ * dumped, using {@link #snapshot()} or {@link #drain()}.
+ */
+public class ConcurrentIntCounter {
+    /**
+     * Calls to {@link #add(int, int)}/{@link #increment(int)} for all keys < keyLowerBound are
+     * instead attributed to keyLowerBound.
+     */
+    public final int keyLowerBound;
+    /**
+     * Calls to {@link #add(int, int)}/{@link #increment(int)} for all keys > keyUpperBound are
+     * instead attributed to keyUpperBound.
+     */
+    public final int keyUpperBound;
+
+    private final AtomicIntegerArray mCounts;
+
+    /**
+     * Creates a counter for keys in the range [keyLowerBound, keyUpperBound]. The range should be
+     * small since a slot is allocated for every key in it.
+     */
+    public ConcurrentIntCounter(int keyLowerBound, int keyUpperBound) {
+        if (keyLowerBound > keyUpperBound) {
+            throw new IllegalArgumentException("keyLowerBound must not exceed keyUpperBound!");
+        }
+        this.keyLowerBound = keyLowerBound;
+        this.keyUpperBound = keyUpperBound;
+        mCounts = new AtomicIntegerArray(keyUpperBound - keyLowerBound + 1);
+    }
+
+    /**
+     * Increments the count of a key by 1.
+     */
+    public void increment(int key) {
+        add(key, 1);
+    }
+
+    /**
+     * Increments the count of a key by <code>count</code>.
+     */
+    public void add(int key, int count) {
+        mCounts.getAndAdd(indexOf(key), count);
+    }
+
+    /**
+     * Gets the count of a key, 0 if the key was never incremented.
+     */
+    public int get(int key) {
+        return mCounts.get(indexOf(key));
+    }
+
+    /**
+     * Resets the count of all keys to 0.
+     */
+    public void clear() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns an {@link IntCounter} holding the keys with a non-zero count, leaving this counter
+     * unchanged.
+     */
+    public IntCounter snapshot() {
+        return copyTo(false);
+    }
+
+    /**
+     * Returns an {@link IntCounter} holding the keys with a non-zero count and resets them to 0.
+     * Increments racing with this call are either returned or kept for the next read, never lost.
+     */
+    public IntCounter drain() {
+        return copyTo(true);
+    }
+
+    private IntCounter copyTo(boolean reset) {
+        IntCounter counter = new IntCounter(keyLowerBound, keyUpperBound);
+        for (int i = 0; i < mCounts.length(); i++) {
+            int count = reset ? mCounts.getAndSet(i, 0) : mCounts.get(i);
+            if (count != 0) {
+                // Keys are visited in increasing order, so this appends to the SparseIntArray.
+                counter.append(keyLowerBound + i, count);
+            }
+        }
+        return counter;
+    }
+
+    private int indexOf(int key) {
+        return Math.max(keyLowerBound, Math.min(key, keyUpperBound)) - keyLowerBound;
+    }
+}
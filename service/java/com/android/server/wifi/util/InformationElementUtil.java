@@ -33,8 +33,6 @@ import com.android.server.wifi.MboOceConstants;
 import com.android.server.wifi.hotspot2.NetworkDetail;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -79,47 +77,75 @@ public class InformationElementUtil {
         public static final int FRAGMENT_ELEMENT_EID = 242;
 
         DefragmentElement(byte[] bytes, int start, int eid, int fid) {
-            if (bytes == null) return;
-            ByteArrayOutputStream defrag = new ByteArrayOutputStream();
-            ByteBuffer element = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
-            element.position(start);
-            try {
-                if ((element.get() & Constants.BYTE_MASK) != eid) return;
-                // Add EID, 255 as the parser expects the element header.
-                defrag.write(eid);
-                defrag.write(255);
-                int fragLen, fragId;
-                do {
-                    fragLen = element.get() & Constants.BYTE_MASK;
-                    byte[] b = new byte[fragLen];
-                    element.get(b);
-                    defrag.write(b);
-                    // Mark the position to undo the extra read.
-                    element.mark();
-                    if (element.remaining() <= 0) break;
-                    fragId = element.get() & Constants.BYTE_MASK;
-                } while (fragLen == FRAG_MAX_LEN && fragId == fid);
-                // Reset the extra get.
-                element.reset();
-            } catch (IOException e) {
-                if (DBG) {
-                    Log.w(TAG, "Failed to defragment sub element: " + e.getMessage());
+            this(bytes, start, eid, fid, 0);
+        }
+
+        /**
+         * Defragment the element starting at |start| in |bytes|.
+         *
+         * The fragments are located in a first pass so that the defragmented element can be
+         * copied straight into a buffer of the right size, without intermediate buffers.
+         *
+         * @param skip Number of leading bytes of the defragmented element (including the
+         *             EID, 255 element header) to leave out of {@link #bytes}.
+         */
+        DefragmentElement(byte[] bytes, int start, int eid, int fid, int skip) {
+            if (bytes == null || start < 0 || start >= bytes.length) return;
+            if ((bytes[start] & Constants.BYTE_MASK) != eid) return;
+            // The defragmented element starts with EID, 255 as the parser expects the element
+            // header.
+            int totalLen = 2;
+            int pos = start + 1;
+            while (true) {
+                if (pos >= bytes.length) {
+                    if (DBG) Log.w(TAG, "Failed to defragment sub element: missing length");
+                    return;
                 }
-                return;
-            } catch (IndexOutOfBoundsException e) {
-                if (DBG) {
-                    Log.e(TAG, "Failed to defragment sub element: " + e.getMessage());
+                int fragLen = bytes[pos++] & Constants.BYTE_MASK;
+                if (pos + fragLen > bytes.length) {
+                    if (DBG) Log.w(TAG, "Failed to defragment sub element: truncated fragment");
+                    return;
                 }
-                return;
-            } catch (BufferUnderflowException e) {
-                if (DBG) {
-                    Log.w(TAG, "Failed to defragment sub element: " + e.getMessage());
+                pos += fragLen;
+                totalLen += fragLen;
+                if (pos >= bytes.length || fragLen != FRAG_MAX_LEN
+                        || (bytes[pos] & Constants.BYTE_MASK) != fid) {
+                    break;
                 }
-                return;
+                // Skip the fragment ID.
+                pos++;
+            }
+            if (totalLen < skip) return;
+
+            byte[] defrag = new byte[totalLen - skip];
+            int end = pos;
+            int written = copySkipping(new byte[] {(byte) eid, (byte) FRAG_MAX_LEN}, 0, 2,
+                    defrag, 0, skip);
+            pos = start + 1;
+            while (pos < end) {
+                int fragLen = bytes[pos++] & Constants.BYTE_MASK;
+                written = copySkipping(bytes, pos, fragLen, defrag, written, skip);
+                // Skip the fragment data and the fragment ID of the next fragment, if any.
+                pos += fragLen + 1;
             }
+            this.bytes = defrag;
+            bytesRead = end - start;
+        }
 
-            this.bytes = defrag.toByteArray();
-            bytesRead = element.position() - start;
+        /**
+         * Copy |len| bytes from |src| to |dst| at the logical position |written| of the
+         * defragmented element, dropping anything before the logical position |skip|.
+         *
+         * @return the logical position after the copied bytes.
+         */
+        private static int copySkipping(byte[] src, int srcPos, int len, byte[] dst,
+                int written, int skip) {
+            int dropped = Math.max(0, Math.min(len, skip - written));
+            if (len > dropped) {
+                System.arraycopy(src, srcPos + dropped, dst, written + dropped - skip,
+                        len - dropped);
+            }
+            return written + len;
         }
     }
 
@@ -184,12 +210,14 @@ public class InformationElementUtil {
                         && elementLength == DefragmentElement.FRAG_MAX_LEN) {
                     // Fragmented IE. Reset the position to head to defragment.
                     data.reset();
+                    // Skip first three bytes: eid, len, eidExt as they are already processed.
                     defrag =
                             new DefragmentElement(
                                     bytes,
                                     data.position(),
                                     eid,
-                                    DefragmentElement.FRAGMENT_ELEMENT_EID);
+                                    DefragmentElement.FRAGMENT_ELEMENT_EID,
+                                    3);
                 }
                 elementLength--;
             }
@@ -202,8 +230,7 @@ public class InformationElementUtil {
                     // Malformed IE skipping
                     break;
                 }
-                // Skip first three bytes: eid, len, eidExt as it is already processed.
-                ie.bytes = Arrays.copyOfRange(defrag.bytes, 3, defrag.bytes.length);
+                ie.bytes = defrag.bytes;
                 int newPosition = data.position() + defrag.bytesRead;
                 data.position(newPosition);
             } else {
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+/**
+ * Kalman filter tracking a signal and its rate of change, specialized from {@link KalmanFilter}
+ * for the constant velocity model used to follow the RSSI.
+ * <p>
+ * The state is [value, rate], the observation is the value alone, and the process noise comes
+ * from a random acceleration. Since all the matrices are 2x2 or smaller, they are kept in fields
+ * and the filter steps are expanded by hand, so that {@link #predict(double)} and
+ * {@link #update(double, double)} don't allocate. The arithmetic is done in the same order as
+ * the equivalent {@link KalmanFilter} steps.
+ */
+public class RssiKalmanFilter {
+    private final double mAccelerationVariance;
+
+    private boolean mInitialized;
+    // State estimate
+    private double mX0;
+    private double mX1;
+    // A posteriori error covariance
+    private double mP00;
+    private double mP01;
+    private double mP10;
+    private double mP11;
+
+    /**
+     * @param accelerationStandardDeviation standard deviation of the modelled acceleration, in
+     *                                      units per second squared.
+     */
+    public RssiKalmanFilter(double accelerationStandardDeviation) {
+        mAccelerationVariance = accelerationStandardDeviation * accelerationStandardDeviation;
+    }
+
+    /**
+     * Starts over from the given value, with a rate of change of 0.
+     *
+     * @param value    initial value.
+     * @param variance initial variance of the value.
+     */
+    public void initialize(double value, double variance) {
+        mX0 = value;
+        mX1 = 0.0;
+        mP00 = variance;
+        mP01 = 0.0;
+        mP10 = 0.0;
+        mP11 = 0.0;
+        mInitialized = true;
+    }
+
+    /**
+     * Forgets the state, until the next call to {@link #initialize(double, double)}.
+     */
+    public void clear() {
+        mInitialized = false;
+    }
+
+    /**
+     * Returns whether the filter has a state.
+     */
+    public boolean isInitialized() {
+        return mInitialized;
+    }
+
+    /**
+     * Performs the prediction phase of the filter, advancing the state by the given time step.
+     *
+     * @param dt time step, in seconds.
+     */
+    public void predict(double dt) {
+        // x = F x, with F = [1, dt; 0, 1]
+        mX0 = mX0 + dt * mX1;
+        // P = F P F' + Q, with Q = G G' sigma^2 and G = [dt^2 / 2; dt]
+        double fp00 = mP00 + dt * mP10;
+        double fp01 = mP01 + dt * mP11;
+        double g0 = 0.5 * dt * dt;
+        double g1 = dt;
+        double p00 = fp00 + fp01 * dt + g0 * g0 * mAccelerationVariance;
+        double p01 = fp01 + g0 * g1 * mAccelerationVariance;
+        double p10 = mP10 + mP11 * dt + g1 * g0 * mAccelerationVariance;
+        double p11 = mP11 + g1 * g1 * mAccelerationVariance;
+        mP00 = p00;
+        mP01 = p01;
+        mP10 = p10;
+        mP11 = p11;
+    }
+
+    /**
+     * Updates the state estimate to incorporate a new observation of the value.
+     *
+     * @param z        observed value.
+     * @param variance variance of the observation noise.
+     * @throws ArithmeticException if the innovation covariance is 0.
+     */
+    public void update(double z, double variance) {
+        // y = z - H x, with H = [1, 0]
+        double y = z - mX0;
+        // S = H P H' + R
+        double s = mP00 + variance;
+        if (s == 0.0) throw new ArithmeticException("Singular matrix");
+        // K = P H' S^-1
+        double sInverse = 1.0 / s;
+        double k0 = mP00 * sInverse;
+        double k1 = mP10 * sInverse;
+        mX0 = mX0 + k0 * y;
+        mX1 = mX1 + k1 * y;
+        // P = P - K H P
+        double p00 = mP00 - k0 * mP00;
+        double p01 = mP01 - k0 * mP01;
+        double p10 = mP10 - k1 * mP00;
+        double p11 = mP11 - k1 * mP01;
+        mP00 = p00;
+        mP01 = p01;
+        mP10 = p10;
+        mP11 = p11;
+    }
+
+    /**
+     * Returns the estimated value.
+     */
+    public double getValue() {
+        return mX0;
+    }
+
+    /**
+     * Returns the estimated rate of change of the value, in units per second.
+     */
+    public double getRate() {
+        return mX1;
+    }
+
+    /**
+     * Returns the value forecast after the given time, assuming a constant rate of change.
+     *
+     * @param seconds time from now, in seconds.
+     */
+    public double forecast(double seconds) {
+        return mX0 + seconds * mX1;
+    }
+
+    @Override
+    public String toString() {
+        if (!mInitialized) return "{}";
+        return "{P: [" + mP00 + ", " + mP01 + "; " + mP10 + ", " + mP11 + "]"
+                + " x: [" + mX0 + "; " + mX1 + "]}";
+    }
+}
@@ -1423,19 +1423,28 @@ import java.util.Set;
         if (tagName.equals("null")) {
             res = null;
         } else if (tagName.equals("string")) {
+            // The text is almost always reported as a single event, only fall back to a builder
+            // when it is split.
             String value = "";
+            StringBuilder builder = null;
             int eventType;
             while ((eventType = parser.next()) != parser.END_DOCUMENT) {
                 if (eventType == parser.END_TAG) {
                     if (parser.getName().equals("string")) {
                         name[0] = valueName;
                         //System.out.println("Returning value for " + valueName + ": " + value);
-                        return value;
+                        return builder == null ? value : builder.toString();
                     }
                     throw new XmlPullParserException(
                         "Unexpected end tag in <string>: " + parser.getName());
                 } else if (eventType == parser.TEXT) {
-                    value += parser.getText();
+                    if (builder != null) {
+                        builder.append(parser.getText());
+                    } else if (value.isEmpty()) {
+                        value = parser.getText();
+                    } else {
+                        builder = new StringBuilder(value).append(parser.getText());
+                    }
                 } else if (eventType == parser.START_TAG) {
                     throw new XmlPullParserException(
                         "Unexpected start tag in <string>: " + parser.getName());
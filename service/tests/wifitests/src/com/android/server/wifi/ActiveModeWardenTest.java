@@ -158,6 +158,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
     @Mock Context mContext;
     @Mock Resources mResources;
     @Mock WifiNative mWifiNative;
+    @Mock RunnerHandler mRunnerHandler;
     @Mock WifiApConfigStore mWifiApConfigStore;
     @Mock ConcreteClientModeManager mClientModeManager;
     @Mock SoftApManager mSoftApManager;
@@ -217,6 +218,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
         when(mWifiInjector.getHalDeviceManager()).thenReturn(mHalDeviceManager);
         when(mWifiInjector.getUserManager()).thenReturn(mUserManager);
         when(mWifiInjector.getWifiHandlerLocalLog()).thenReturn(mLocalLog);
+        when(mWifiInjector.getWifiHandler()).thenReturn(mRunnerHandler);
         when(mClientModeManager.getRole()).thenReturn(ROLE_CLIENT_PRIMARY);
         when(mClientModeManager.getInterfaceName()).thenReturn(WIFI_IFACE_NAME);
         when(mContext.getResources()).thenReturn(mResources);
@@ -1276,6 +1278,7 @@ public class ActiveModeWardenTest extends WifiBaseTest {
 
         verify(mSoftApManager).dump(null, writer, null);
         verify(mClientModeManager).dump(null, writer, null);
+        verify(mRunnerHandler).dump(writer);
     }
 
     /**
@@ -93,6 +93,7 @@ import android.hardware.wifi.supplicant.V1_0.ISupplicantStaIfaceCallback;
 import android.hardware.wifi.supplicant.V1_4.ISupplicantStaIfaceCallback.AssociationRejectionData;
 import android.hardware.wifi.supplicant.V1_4.ISupplicantStaIfaceCallback.MboAssocDisallowedReasonCode;
 import android.net.CaptivePortalData;
+import android.net.ConnectivityManager;
 import android.net.DhcpResultsParcelable;
 import android.net.InetAddresses;
 import android.net.IpConfiguration;
@@ -529,6 +530,7 @@ public class ClientModeImplTest extends WifiBaseTest {
     @Mock WifiScoreCard.NetworkConnectionStats mPerNetworkRecentStats;
     @Mock WifiHealthMonitor mWifiHealthMonitor;
     @Mock WifiTrafficPoller mWifiTrafficPoller;
+    @Mock ConnectivityManager mConnectivityManager;
     @Mock WifiConnectivityManager mWifiConnectivityManager;
     @Mock WifiStateTracker mWifiStateTracker;
     @Mock PasspointManager mPasspointManager;
@@ -628,6 +630,9 @@ public class ClientModeImplTest extends WifiBaseTest {
         when(mWifiNative.connectToNetwork(any(), any())).thenReturn(true);
         when(mWifiNative.getApfCapabilities(anyString())).thenReturn(APF_CAP);
         when(mWifiNative.isQosPolicyFeatureEnabled()).thenReturn(true);
+        // The periodic polls query supplicant directly, answer them as the tests stub signalPoll.
+        when(mWifiNative.getSupplicantSignalPollResults(any())).thenAnswer(
+                invocation -> mWifiNative.signalPoll(invocation.getArgument(0)));
     }
 
     /** Reset verify() counters on WifiNative, and restore when() mocks on mWifiNative */
@@ -795,6 +800,8 @@ public class ClientModeImplTest extends WifiBaseTest {
     }
 
     private void initializeCmi() throws Exception {
+        when(mWifiInjector.getSignalPoller()).thenReturn(new SignalPoller(mWifiNative,
+                mFrameworkFacade, mClock, new Handler(mLooper.getLooper())));
         mCmi = new ClientModeImpl(mContext, mWifiMetrics, mClock, mWifiScoreCard, mWifiStateTracker,
                 mWifiPermissionsUtil, mWifiConfigManager, mPasspointManager,
                 mWifiMonitor, mWifiDiagnostics, mWifiDataStall,
@@ -1066,7 +1073,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         ScanResult.InformationElement ie = createIE(ScanResult.InformationElement.EID_SSID,
                 ssid.getBytes(StandardCharsets.UTF_8));
         scanResult.informationElements = new ScanResult.InformationElement[]{ie};
-        when(mScanRequestProxy.getScanResults()).thenReturn(Arrays.asList(scanResult));
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(Arrays.asList(scanResult));
 
         config.networkId = FRAMEWORK_NETWORK_ID;
         config.setRandomizedMacAddress(TEST_LOCAL_MAC_ADDRESS);
@@ -1089,7 +1096,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         String ssid = "TestOpenOweSsid";
         WifiConfiguration config = spy(WifiConfigurationTestUtil.createOpenOweNetwork(
                 ScanResultUtil.createQuotedSsid(ssid)));
-        when(mScanRequestProxy.getScanResults()).thenReturn(new ArrayList<>());
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(new ArrayList<>());
 
         config.networkId = FRAMEWORK_NETWORK_ID;
         config.setRandomizedMacAddress(TEST_LOCAL_MAC_ADDRESS);
@@ -5952,6 +5959,69 @@ public class ClientModeImplTest extends WifiBaseTest {
         verify(mWifiMetrics).incrementWifiLinkLayerUsageStats(WIFI_IFACE_NAME, newLLStats);
     }
 
+    /**
+     * Verify the signal poll results are ignored if polling was restarted while they were
+     * fetched.
+     */
+    @Test
+    public void verifyStaleSignalPollResultIgnored() throws Exception {
+        mCmi.enableRssiPolling(true);
+        connect();
+        reset(mWifiScoreCard, mWifiDataStall);
+
+        SignalPoller.Sample sample = new SignalPoller.Sample(WIFI_IFACE_NAME, 0,
+                new WifiLinkLayerStats(), null, true, 0, 0, TEST_TX_BYTES, TEST_RX_BYTES);
+        mCmi.sendMessage(ClientModeImpl.CMD_SIGNAL_POLL_RESULT, -1, 0, sample);
+        mLooper.dispatchAll();
+
+        verify(mWifiScoreCard, never()).noteSignalPoll(any());
+        verify(mWifiDataStall, never()).checkDataStallAndThroughputSufficiency(any(), any(),
+                any(), any(), any(), anyLong(), anyLong());
+    }
+
+    /**
+     * Verify that a poll runs right away when data activity begins while polling at a longer
+     * interval than the adaptive minimum, rather than at the next scheduled poll.
+     */
+    @Test
+    public void verifyDataActivityTriggersRssiPollWithAdaptiveInterval() throws Exception {
+        when(mContext.getSystemService(ConnectivityManager.class))
+                .thenReturn(mConnectivityManager);
+        when(mWifiGlobals.isAdjustPollRssiIntervalEnabled()).thenReturn(true);
+        when(mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled()).thenReturn(true);
+        when(mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs()).thenReturn(1000);
+        when(mDeviceConfigFacade.getAdaptivePollRssiMaxIntervalMs()).thenReturn(30000);
+        mCmi.enableRssiPolling(true);
+        connect();
+        ArgumentCaptor<ConnectivityManager.OnNetworkActiveListener> listenerCaptor =
+                ArgumentCaptor.forClass(ConnectivityManager.OnNetworkActiveListener.class);
+        verify(mConnectivityManager).addDefaultNetworkActiveListener(listenerCaptor.capture());
+        reset(mWifiScoreCard);
+
+        // Polling at a longer interval than the minimum when traffic begins.
+        when(mWifiGlobals.getPollRssiIntervalMillis()).thenReturn(8000);
+        listenerCaptor.getValue().onNetworkActive();
+        mLooper.dispatchAll();
+        verify(mWifiScoreCard).noteSignalPoll(any());
+
+        // Already polling at the minimum interval.
+        when(mWifiGlobals.getPollRssiIntervalMillis()).thenReturn(1000);
+        listenerCaptor.getValue().onNetworkActive();
+        mLooper.dispatchAll();
+        verify(mWifiScoreCard).noteSignalPoll(any());
+
+        DisconnectEventInfo disconnectEventInfo =
+                new DisconnectEventInfo(mConnectedNetwork.SSID, TEST_BSSID_STR, 0, false);
+        mCmi.sendMessage(WifiMonitor.NETWORK_DISCONNECTION_EVENT, disconnectEventInfo);
+        mCmi.sendMessage(WifiMonitor.SUPPLICANT_STATE_CHANGE_EVENT, 0, 0,
+                new StateChangeResult(0, WifiSsid.fromUtf8Text(mConnectedNetwork.SSID),
+                        TEST_BSSID_STR, sFreq, SupplicantState.DISCONNECTED));
+        mLooper.dispatchAll();
+        assertEquals("DisconnectedState", getCurrentState().getName());
+        verify(mConnectivityManager).removeDefaultNetworkActiveListener(
+                listenerCaptor.getValue());
+    }
+
     /**
      * Verify that we update wifi usability stats entries during rssi poll and that when we get
      * a data stall we label and save the current list of usability stats entries.
@@ -6843,7 +6913,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         ScanResult.InformationElement ie = createIE(ScanResult.InformationElement.EID_SSID,
                 sFilsSsid.getBytes(StandardCharsets.UTF_8));
         scanResult.informationElements = new ScanResult.InformationElement[]{ie};
-        when(mScanRequestProxy.getScanResults()).thenReturn(Arrays.asList(scanResult));
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(Arrays.asList(scanResult));
         when(mScanRequestProxy.getScanResult(eq(TEST_BSSID_STR))).thenReturn(scanResult);
     }
 
@@ -8255,7 +8325,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         ScanResult.InformationElement ie = createIE(ScanResult.InformationElement.EID_SSID,
                 sFilsSsid.getBytes(StandardCharsets.UTF_8));
         scanResult.informationElements = new ScanResult.InformationElement[]{ie};
-        when(mScanRequestProxy.getScanResults()).thenReturn(Arrays.asList(scanResult));
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(Arrays.asList(scanResult));
         when(mScanRequestProxy.getScanResult(eq(TEST_BSSID_STR))).thenReturn(scanResult);
 
         initializeAndAddNetworkAndVerifySuccess();
@@ -9903,7 +9973,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         when(mScanResult.getApMloLinkId()).thenReturn(MloLink.INVALID_MLO_LINK_ID);
         when(mScanResult.getAffiliatedMloLinks()).thenReturn(Collections.emptyList());
 
-        when(mScanRequestProxy.getScanResults()).thenReturn(Arrays.asList(mScanResult));
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(Arrays.asList(mScanResult));
         when(mScanRequestProxy.getScanResult(any())).thenReturn(mScanResult);
     }
 
@@ -10252,7 +10322,7 @@ public class ClientModeImplTest extends WifiBaseTest {
         results.add(makeScanResult(irrelevantSsid, "[RSN][EAP/SHA1][MFPC]"));
         results.add(makeScanResult(irrelevantSsid, "[RSN][EAP/SHA1][EAP/SHA256][MFPC]"));
         results.add(makeScanResult(irrelevantSsid, "[RSN][EAP/SHA256][MFPC][MFPR]"));
-        when(mScanRequestProxy.getScanResults()).thenReturn(results);
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(results);
 
         initializeAndAddNetworkAndVerifySuccess();
 
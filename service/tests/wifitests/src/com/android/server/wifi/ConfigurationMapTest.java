@@ -49,6 +49,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -427,4 +428,79 @@ public class ConfigurationMapTest extends WifiBaseTest {
         mConfigs.put(config);
         assertNull(mConfigs.getByScanResultForCurrentUser(scanResult));
     }
+
+    /**
+     * Verifies that the indexed lookups stay consistent with a linear walk of the networks over a
+     * random sequence of adds, updates and removals.
+     */
+    @Test
+    public void testIndexesConsistentWithLinearLookups() {
+        Random random = new Random(0x5eed);
+        int[] uids = {1000000, 1000001, 1100000, 1200000};
+        for (int i = 0; i < 1000; i++) {
+            int networkId = random.nextInt(50);
+            if (random.nextInt(4) == 0) {
+                mConfigs.remove(networkId);
+            } else {
+                mConfigs.put(WifiConfigurationTestUtil.generateWifiConfig(
+                        networkId, uids[random.nextInt(uids.length)],
+                        "\"ssid" + random.nextInt(60) + "\"", random.nextBoolean(), true, null,
+                        null, random.nextBoolean() ? WifiConfigurationTestUtil.SECURITY_NONE
+                                : WifiConfigurationTestUtil.SECURITY_PSK));
+            }
+            if (i % 50 == 0) {
+                verifyIndexes(uids);
+            }
+        }
+        verifyIndexes(uids);
+    }
+
+    private void verifyIndexes(int[] uids) {
+        for (WifiConfiguration config : mConfigs.valuesForCurrentUser()) {
+            WifiConfiguration indexed =
+                    mConfigs.getByConfigKeyForCurrentUser(config.getProfileKey());
+            assertNotNull(indexed);
+            assertEquals(config.getProfileKey(), indexed.getProfileKey());
+        }
+        for (int uid : uids) {
+            Set<WifiConfiguration> expected = new HashSet<>();
+            for (WifiConfiguration config : mConfigs.valuesForAllUsers()) {
+                if (config.creatorUid == uid) expected.add(config);
+            }
+            assertEquals(expected, new HashSet<>(mConfigs.getByCreatorUidForAllUsers(uid)));
+        }
+        assertNull(mConfigs.getByConfigKeyForCurrentUser("\"unknown\"NONE"));
+    }
+
+    /**
+     * Verifies that a lookup by profile key finds a network whose key changed in place after it
+     * was added to the map, once it is put again as WifiConfigManager does.
+     */
+    @Test
+    public void testGetByConfigKeyAfterInPlaceModification() {
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createOpenNetwork();
+        config1.networkId = 1;
+        WifiConfiguration config2 = WifiConfigurationTestUtil.createOpenNetwork();
+        config2.networkId = 2;
+        mConfigs.put(config1);
+        mConfigs.put(config2);
+
+        // Swap the keys of the 2 networks in place.
+        String ssid1 = config1.SSID;
+        config1.SSID = config2.SSID;
+        config2.SSID = ssid1;
+        mConfigs.put(config1);
+        mConfigs.put(config2);
+
+        assertEquals(config2, mConfigs.getByConfigKeyForCurrentUser(config2.getProfileKey()));
+        assertEquals(config1, mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+
+        // Change the key of a network in place to a key which was never indexed.
+        String oldKey = config1.getProfileKey();
+        config1.SSID = "\"neverIndexed\"";
+        mConfigs.put(config1);
+        assertEquals(config1, mConfigs.getByConfigKeyForCurrentUser(config1.getProfileKey()));
+        // No network has the previous key anymore.
+        assertNull(mConfigs.getByConfigKeyForCurrentUser(oldKey));
+    }
 }
@@ -232,8 +232,16 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
         verify(mOobPseudonymFeatureFlagChangedListener, never()).accept(anyBoolean());
         assertEquals(true, mDeviceConfigFacade.isApplicationQosPolicyApiEnabled());
         assertEquals(false, mDeviceConfigFacade.isAdjustPollRssiIntervalEnabled());
+        assertEquals(false, mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled());
+        assertEquals(DeviceConfigFacade.DEFAULT_ADAPTIVE_POLL_RSSI_MIN_INTERVAL_MS,
+                mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs());
+        assertEquals(DeviceConfigFacade.DEFAULT_ADAPTIVE_POLL_RSSI_MAX_INTERVAL_MS,
+                mDeviceConfigFacade.getAdaptivePollRssiMaxIntervalMs());
         assertEquals(true, mDeviceConfigFacade.includePasspointSsidsInPnoScans());
         assertEquals(true, mDeviceConfigFacade.isHandleRssiOrganicKernelFailuresEnabled());
+        assertEquals(false, mDeviceConfigFacade.isPersistAnqpCacheEnabled());
+        assertEquals(DeviceConfigFacade.DEFAULT_ANQP_REQUEST_MAX_IN_FLIGHT,
+                mDeviceConfigFacade.getAnqpRequestMaxInFlight());
     }
 
     /**
@@ -372,10 +380,20 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
                 anyBoolean())).thenReturn(true);
         when(DeviceConfig.getBoolean(anyString(), eq("adjust_poll_rssi_interval_enabled"),
                 anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("adaptive_poll_rssi_interval_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getInt(anyString(), eq("adaptive_poll_rssi_min_interval_ms"),
+                anyInt())).thenReturn(5000);
+        when(DeviceConfig.getInt(anyString(), eq("adaptive_poll_rssi_max_interval_ms"),
+                anyInt())).thenReturn(60000);
         when(DeviceConfig.getBoolean(anyString(), eq("include_passpoint_ssids_in_pno_scans"),
                 anyBoolean())).thenReturn(true);
         when(DeviceConfig.getBoolean(anyString(), eq("handle_rssi_organic_kernel_failures_enabled"),
                 anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getBoolean(anyString(), eq("persist_anqp_cache_enabled"),
+                anyBoolean())).thenReturn(true);
+        when(DeviceConfig.getInt(anyString(), eq("anqp_request_max_in_flight"),
+                anyInt())).thenReturn(5);
         mOnPropertiesChangedListenerCaptor.getValue().onPropertiesChanged(null);
 
         // Verifying fields are updated to the new values
@@ -447,8 +465,13 @@ public class DeviceConfigFacadeTest extends WifiBaseTest {
         assertEquals(true, mDeviceConfigFacade.isOobPseudonymEnabled());
         assertEquals(true, mDeviceConfigFacade.isApplicationQosPolicyApiEnabled());
         assertEquals(true, mDeviceConfigFacade.isAdjustPollRssiIntervalEnabled());
+        assertEquals(true, mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled());
+        assertEquals(5000, mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs());
+        assertEquals(60000, mDeviceConfigFacade.getAdaptivePollRssiMaxIntervalMs());
         assertEquals(true, mDeviceConfigFacade.includePasspointSsidsInPnoScans());
         assertEquals(true, mDeviceConfigFacade.isHandleRssiOrganicKernelFailuresEnabled());
+        assertEquals(true, mDeviceConfigFacade.isPersistAnqpCacheEnabled());
+        assertEquals(5, mDeviceConfigFacade.getAnqpRequestMaxInFlight());
 
         when(DeviceConfig.getBoolean(anyString(), eq("oob_pseudonym_enabled"),
                 anyBoolean())).thenReturn(false);
@@ -860,7 +860,7 @@ public class DppManagerTest extends WifiBaseTest {
                 1025, 22, 33, 20, 0, 0, true);
         List<ScanResult> scanResults = new ArrayList<>();
         scanResults.add(scanResult);
-        when(mScanRequestProxy.getScanResults()).thenReturn(scanResults);
+        when(mScanRequestProxy.getScanResultsSnapshot()).thenReturn(scanResults);
     }
 
     @Test
@@ -17,6 +17,8 @@
 package com.android.server.wifi;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -56,6 +58,9 @@ public class RssiMonitorTest extends WifiBaseTest {
     private static final int TEST_POLL_INTERVAL_LONG = 9000;
     private static final int TEST_POLL_INTERVAL_FIXED = 1000;
     private static final int[] TEST_APP_RSSI_THRESHOLDS = new int[] {-75};
+    private static final int TEST_ADAPTIVE_POLL_INTERVAL_MIN = 3000;
+    private static final int TEST_ADAPTIVE_POLL_INTERVAL_MAX = 12000;
+    private static final int TEST_LINK_SPEED_MBPS = 400;
     private static final String TEST_INTERFACE_NAME = "wlan0";
 
     private RssiMonitor mRssiMonitor;
@@ -67,6 +72,7 @@ public class RssiMonitorTest extends WifiBaseTest {
     @Mock WifiNative mWifiNative;
     @Mock Runnable mUpdateCapabilityRunnable;
     @Mock DeviceConfigFacade mDeviceConfigFacade;
+    @Mock Clock mClock;
     @Captor ArgumentCaptor<WifiNative.WifiRssiEventHandler> mRssiEventHandlerCaptor;
 
     /**
@@ -94,7 +100,7 @@ public class RssiMonitorTest extends WifiBaseTest {
         WifiThreadRunner wifiThreadRunner = new WifiThreadRunner(new Handler(mLooper.getLooper()));
 
         mRssiMonitor = new RssiMonitor(mWifiGlobals, wifiThreadRunner, mWifiInfo, mWifiNative,
-                TEST_INTERFACE_NAME, mUpdateCapabilityRunnable, mDeviceConfigFacade);
+                TEST_INTERFACE_NAME, mUpdateCapabilityRunnable, mDeviceConfigFacade, mClock);
         mRssiMonitor.enableVerboseLogging(true);
 
         mWifiInfo.setRssi(TEST_RSSI_HIGH);
@@ -333,4 +339,123 @@ public class RssiMonitorTest extends WifiBaseTest {
                 eq(TEST_INTERFACE_NAME), eq(Byte.MAX_VALUE), eq((byte) TEST_CLIENT_RSSI_THRESHOLD),
                 mRssiEventHandlerCaptor.capture());
     }
+
+    private void setupAdaptivePollRssiInterval() {
+        when(mDeviceConfigFacade.isAdaptivePollRssiIntervalEnabled()).thenReturn(true);
+        when(mDeviceConfigFacade.getAdaptivePollRssiMinIntervalMs())
+                .thenReturn(TEST_ADAPTIVE_POLL_INTERVAL_MIN);
+        when(mDeviceConfigFacade.getAdaptivePollRssiMaxIntervalMs())
+                .thenReturn(TEST_ADAPTIVE_POLL_INTERVAL_MAX);
+        mWifiInfo.setRssi(TEST_RSSI_HIGH);
+        mWifiInfo.setTxLinkSpeedMbps(TEST_LINK_SPEED_MBPS);
+        mWifiInfo.setRxLinkSpeedMbps(TEST_LINK_SPEED_MBPS);
+        mWifiInfo.setSuccessfulTxPacketsPerSecond(0);
+        mWifiInfo.setSuccessfulRxPacketsPerSecond(0);
+    }
+
+    /**
+     * Runs a poll at the current polling interval after the previous one.
+     */
+    private void pollAfterCurrentInterval(long[] nowMillis) {
+        nowMillis[0] += mWifiGlobals.getPollRssiIntervalMillis();
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(nowMillis[0]);
+        mRssiMonitor.updatePollRssiInterval(WifiManager.DEVICE_MOBILITY_STATE_HIGH_MVMT);
+    }
+
+    /**
+     * Verify that the adaptive polling mode doubles the polling interval up to the maximum while
+     * the link is stable, regardless of the device mobility state, and enables the client mode
+     * RSSI monitor once polling less often than the regular interval.
+     */
+    @Test
+    public void testAdaptivePollRssiIntervalLengthensWhileLinkStable() throws Exception {
+        setupAdaptivePollRssiInterval();
+        long[] nowMillis = {1000};
+        // No prediction for the first poll
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MIN, mWifiGlobals.getPollRssiIntervalMillis());
+
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(2 * TEST_ADAPTIVE_POLL_INTERVAL_MIN,
+                mWifiGlobals.getPollRssiIntervalMillis());
+        verify(mWifiNative).startRssiMonitoring(eq(TEST_INTERFACE_NAME), eq(Byte.MAX_VALUE),
+                eq((byte) TEST_CLIENT_RSSI_THRESHOLD), mRssiEventHandlerCaptor.capture());
+
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MAX, mWifiGlobals.getPollRssiIntervalMillis());
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MAX, mWifiGlobals.getPollRssiIntervalMillis());
+    }
+
+    /**
+     * Verify that the adaptive polling mode goes back to the minimum interval and disables the
+     * client mode RSSI monitor when traffic begins.
+     */
+    @Test
+    public void testAdaptivePollRssiIntervalShortensWhenTrafficBegins() throws Exception {
+        setupAdaptivePollRssiInterval();
+        long[] nowMillis = {1000};
+        pollAfterCurrentInterval(nowMillis);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(2 * TEST_ADAPTIVE_POLL_INTERVAL_MIN,
+                mWifiGlobals.getPollRssiIntervalMillis());
+
+        mWifiInfo.setSuccessfulRxPacketsPerSecond(100);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MIN, mWifiGlobals.getPollRssiIntervalMillis());
+        verify(mWifiNative, times(2)).startRssiMonitoring(eq(TEST_INTERFACE_NAME),
+                eq(Byte.MAX_VALUE), eq((byte) TEST_APP_RSSI_THRESHOLDS[0]),
+                mRssiEventHandlerCaptor.capture());
+    }
+
+    /**
+     * Verify that the adaptive polling mode goes back to the minimum interval when the RSSI
+     * isn't the predicted one, or the link speed changes.
+     */
+    @Test
+    public void testAdaptivePollRssiIntervalShortensWhenLinkUnstable() throws Exception {
+        setupAdaptivePollRssiInterval();
+        long[] nowMillis = {1000};
+        pollAfterCurrentInterval(nowMillis);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(2 * TEST_ADAPTIVE_POLL_INTERVAL_MIN,
+                mWifiGlobals.getPollRssiIntervalMillis());
+
+        mWifiInfo.setRssi(TEST_RSSI_HIGH - 10);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MIN, mWifiGlobals.getPollRssiIntervalMillis());
+
+        mRssiMonitor.reset();
+        mWifiInfo.setRssi(TEST_RSSI_HIGH);
+        pollAfterCurrentInterval(nowMillis);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(2 * TEST_ADAPTIVE_POLL_INTERVAL_MIN,
+                mWifiGlobals.getPollRssiIntervalMillis());
+        mWifiInfo.setTxLinkSpeedMbps(TEST_LINK_SPEED_MBPS / 2);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MIN, mWifiGlobals.getPollRssiIntervalMillis());
+    }
+
+    /**
+     * Verify that the adaptive polling mode goes back to the minimum interval and disables the
+     * client mode RSSI monitor as soon as data activity begins, without waiting for a poll.
+     */
+    @Test
+    public void testAdaptivePollRssiIntervalShortensOnDataActivity() throws Exception {
+        setupAdaptivePollRssiInterval();
+        long[] nowMillis = {1000};
+        pollAfterCurrentInterval(nowMillis);
+        pollAfterCurrentInterval(nowMillis);
+        assertEquals(2 * TEST_ADAPTIVE_POLL_INTERVAL_MIN,
+                mWifiGlobals.getPollRssiIntervalMillis());
+
+        assertTrue(mRssiMonitor.onDataActivity());
+        assertEquals(TEST_ADAPTIVE_POLL_INTERVAL_MIN, mWifiGlobals.getPollRssiIntervalMillis());
+        verify(mWifiNative, times(2)).startRssiMonitoring(eq(TEST_INTERFACE_NAME),
+                eq(Byte.MAX_VALUE), eq((byte) TEST_APP_RSSI_THRESHOLDS[0]),
+                mRssiEventHandlerCaptor.capture());
+
+        // Already polling at the minimum interval.
+        assertFalse(mRssiMonitor.onDataActivity());
+    }
 }
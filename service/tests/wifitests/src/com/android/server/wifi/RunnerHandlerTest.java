@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Message;
+import android.os.SystemClock;
+import android.os.test.TestLooper;
+import android.util.LocalLog;
+
+import androidx.test.filters.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for {@link RunnerHandler}.
+ */
+@SmallTest
+public class RunnerHandlerTest extends WifiBaseTest {
+    private static final int RUNNING_TIME_THRESHOLD_MS = 1;
+    private static final long SLOW_JOB_DURATION_MS = 10;
+
+    private TestLooper mLooper;
+    private LocalLog mLocalLog;
+    private RunnerHandler mRunnerHandler;
+    private int mNumJobsRun;
+
+    @Before
+    public void setUp() {
+        mLooper = new TestLooper();
+        mLocalLog = new LocalLog(128);
+        mRunnerHandler = new RunnerHandler(mLooper.getLooper(), RUNNING_TIME_THRESHOLD_MS,
+                mLocalLog);
+    }
+
+    private void postFastJob() {
+        mRunnerHandler.post(() -> mNumJobsRun++);
+    }
+
+    private void postSlowJob() {
+        mRunnerHandler.post(() -> {
+            mNumJobsRun++;
+            SystemClock.sleep(SLOW_JOB_DURATION_MS);
+        });
+    }
+
+    private void postJob(boolean slow) {
+        mRunnerHandler.post(() -> {
+            mNumJobsRun++;
+            if (slow) {
+                SystemClock.sleep(SLOW_JOB_DURATION_MS);
+            }
+        });
+    }
+
+    private String dumpOverrunSignatures() {
+        for (String line : dumpRunnerHandler().split("\n")) {
+            if (line.startsWith("Jobs with caller capture after overrun: ")) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private String dumpRunnerHandler() {
+        StringWriter sw = new StringWriter();
+        mRunnerHandler.dump(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    private String dumpLocalLog() {
+        StringWriter sw = new StringWriter();
+        mLocalLog.dump(null, new PrintWriter(sw), null);
+        return sw.toString();
+    }
+
+    /**
+     * Verify that jobs posted from the same place are aggregated under one signature.
+     */
+    @Test
+    public void testJobsAggregatedPerSignature() {
+        postFastJob();
+        postFastJob();
+        postFastJob();
+        mLooper.dispatchAll();
+
+        assertEquals(3, mNumJobsRun);
+        String dump = dumpRunnerHandler();
+        assertTrue(dump.contains("count=3"));
+        assertTrue(dump.contains(RunnerHandlerTest.class.getSimpleName()));
+    }
+
+    /**
+     * Verify that the caller of a job is only captured after the job overran the threshold.
+     */
+    @Test
+    public void testCallerCapturedAfterOverrun() {
+        postSlowJob();
+        mLooper.dispatchAll();
+        assertFalse(dumpLocalLog().contains("#postSlowJob"));
+
+        postSlowJob();
+        mLooper.dispatchAll();
+        assertEquals(2, mNumJobsRun);
+        assertTrue(dumpLocalLog().contains(
+                RunnerHandlerTest.class.getSimpleName() + "#postSlowJob was running for"));
+    }
+
+    /**
+     * Verify that the caller is captured for a sample of the posted jobs.
+     */
+    @Test
+    public void testCallerCapturedForSampledJobs() {
+        for (int i = 0; i < RunnerHandler.CALLER_SAMPLING_INTERVAL; i++) {
+            postFastJob();
+        }
+        postSlowJob();
+        mLooper.dispatchAll();
+        // Only the last fast job was sampled, the slow job is logged with the job signature.
+        assertFalse(dumpLocalLog().contains("#postSlowJob"));
+        assertTrue(dumpRunnerHandler().contains("count=" + RunnerHandler.CALLER_SAMPLING_INTERVAL));
+    }
+
+    /**
+     * Verify that the number of job signatures captured after an overrun is bounded.
+     */
+    @Test
+    public void testOverrunSignaturesBounded() {
+        mRunnerHandler = new RunnerHandler(mLooper.getLooper(), RUNNING_TIME_THRESHOLD_MS,
+                mLocalLog) {
+            @Override
+            public void handleMessage(Message msg) {
+                SystemClock.sleep(SLOW_JOB_DURATION_MS);
+            }
+        };
+        for (int what = 0; what <= RunnerHandler.MAX_OVERRUN_SIGNATURES; what++) {
+            mRunnerHandler.sendEmptyMessage(what);
+        }
+        mLooper.dispatchAll();
+
+        String overrunSignatures = dumpOverrunSignatures();
+        assertTrue(overrunSignatures.contains("what=0"));
+        assertFalse(overrunSignatures.contains(
+                "what=" + RunnerHandler.MAX_OVERRUN_SIGNATURES));
+    }
+
+    /**
+     * Verify that the caller of a job is only captured for a few posts after it overran.
+     */
+    @Test
+    public void testCallerCaptureAfterOverrunDecays() {
+        postJob(true);
+        mLooper.dispatchAll();
+        assertFalse(dumpOverrunSignatures().endsWith("{}"));
+
+        for (int i = 0; i < RunnerHandler.CALLER_CAPTURES_AFTER_OVERRUN; i++) {
+            postJob(false);
+        }
+        mLooper.dispatchAll();
+        assertEquals(RunnerHandler.CALLER_CAPTURES_AFTER_OVERRUN + 1, mNumJobsRun);
+        assertTrue(dumpOverrunSignatures().endsWith("{}"));
+    }
+
+    /**
+     * Verify that the jobs run through {@link WifiThreadRunner#call} are attributed to the
+     * calling code rather than to the blocking wrapper of WifiThreadRunner.
+     */
+    @Test
+    public void testWifiThreadRunnerJobsHaveDistinctSignatures() {
+        WifiThreadRunner wifiThreadRunner = new WifiThreadRunner(mRunnerHandler);
+        wifiThreadRunner.prepareForAutoDispatch();
+        mLooper.startAutoDispatch();
+        assertEquals(Integer.valueOf(1), wifiThreadRunner.call(() -> 1, null));
+        assertEquals("2", wifiThreadRunner.call(() -> "2", null));
+        mLooper.stopAutoDispatch();
+
+        int numCallSignatures = 0;
+        for (String line : dumpRunnerHandler().split("\n")) {
+            if (line.startsWith(RunnerHandlerTest.class.getSimpleName())
+                    && line.contains(": count=")) {
+                assertTrue(line.contains(": count=1 "));
+                numCallSignatures++;
+            }
+        }
+        assertEquals(2, numCallSignatures);
+        assertFalse(dumpRunnerHandler().contains("BlockingRunnable"));
+    }
+}
@@ -93,6 +93,69 @@ public class ScanDetailCacheTest extends WifiBaseTest {
         assertEquals(s4, mScanDetailCache.getScanDetail(TEST_BSSID_4));
     }
 
+    /**
+     * Verify that trimming the cache removes the oldest entries first.
+     */
+    @Test
+    public void testTrimRemovesOldestEntries() {
+        ScanDetail[] scanDetails = new ScanDetail[TEST_MAX_SIZE];
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            // Insert out of timestamp order to make sure the order of insertion is not used.
+            setClockTime(1000 * (TEST_MAX_SIZE - i));
+            scanDetails[i] = createScanDetailForNetwork(mWifiConfiguration,
+                    String.format("0a:08:5c:67:89:%02x", i), TEST_RSSI, TEST_FREQUENCY);
+            mScanDetailCache.put(scanDetails[i]);
+        }
+        assertEquals(TEST_MAX_SIZE, mScanDetailCache.size());
+
+        setClockTime(10000);
+        ScanDetail newest = createScanDetailForNetwork(mWifiConfiguration, "0a:08:5c:67:89:ff",
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(newest);
+
+        // The cache is trimmed down to |TEST_TRIM_SIZE| before the new entry is added, keeping
+        // only the most recent entries, which are the first ones inserted.
+        assertEquals(TEST_TRIM_SIZE + 1, mScanDetailCache.size());
+        for (int i = 0; i < TEST_MAX_SIZE; i++) {
+            if (i < TEST_TRIM_SIZE) {
+                assertEquals(scanDetails[i],
+                        mScanDetailCache.getScanDetail(scanDetails[i].getBSSIDString()));
+            } else {
+                assertNull(mScanDetailCache.getScanDetail(scanDetails[i].getBSSIDString()));
+            }
+        }
+        assertEquals(newest.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+    }
+
+    /**
+     * Verify that the most recent scan result is updated on removal and in place updates.
+     */
+    @Test
+    public void testGetMostRecentScanResultAfterRemoveAndUpdate() {
+        setClockTime(1000);
+        ScanDetail s1 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_1,
+                TEST_RSSI, TEST_FREQUENCY);
+        setClockTime(2000);
+        ScanDetail s2 = createScanDetailForNetwork(mWifiConfiguration, TEST_BSSID_2,
+                TEST_RSSI, TEST_FREQUENCY);
+        mScanDetailCache.put(s1);
+        mScanDetailCache.put(s2);
+        assertEquals(s2.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        mScanDetailCache.remove(TEST_BSSID_2);
+        assertEquals(s1.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        mScanDetailCache.put(s2);
+        s1.getScanResult().seen = 3000;
+        mScanDetailCache.onScanDetailUpdated(TEST_BSSID_1);
+        assertEquals(s1.getScanResult(), mScanDetailCache.getMostRecentScanResult());
+
+        mScanDetailCache.remove(TEST_BSSID_1);
+        mScanDetailCache.remove(TEST_BSSID_2);
+        assertNull(mScanDetailCache.getMostRecentScanResult());
+        assertTrue(mScanDetailCache.isEmpty());
+    }
+
     private void setClockTime(long millis) {
         when(mClock.getUptimeSinceBootMillis()).thenReturn(millis);
         when(mClock.getWallClockMillis()).thenReturn(millis);
@@ -40,6 +40,7 @@ import android.net.wifi.WifiScanner.ScanSettings.HiddenNetwork;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.test.TestLooper;
 import android.text.TextUtils;
@@ -47,6 +48,7 @@ import android.util.ArrayMap;
 
 import androidx.test.filters.SmallTest;
 
+import com.android.modules.utils.ParceledListSlice;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.server.wifi.scanner.WifiScannerInternal;
 import com.android.server.wifi.util.WifiPermissionsUtil;
@@ -337,6 +339,33 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         assertEquals(3, mScanRequestProxy.getScanResults().size());
     }
 
+    /**
+     * Verify that the published scan results can be read from another thread, and that they are
+     * replaced as a whole when new results arrive.
+     */
+    @Test
+    public void testScanResultsReadableFromOtherThread() throws Exception {
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+
+        List<ScanResult> results = new ArrayList<>();
+        Thread reader = new Thread(() -> results.addAll(mScanRequestProxy.getScanResults()));
+        reader.start();
+        reader.join();
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas1[0].getResults(), results.toArray(new ScanResult[0]));
+
+        // The returned list is a copy, which is not updated by the next scan results.
+        List<ScanResult> firstResults = mScanRequestProxy.getScanResults();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        assertEquals(mTestScanDatas1[0].getResults().length, firstResults.size());
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas2[0].getResults(),
+                mScanRequestProxy.getScanResults().stream().toArray(ScanResult[]::new));
+    }
+
     /**
      * Verify a successful scan request and processing of scan results.
      */
@@ -1183,6 +1212,100 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         verify(mAnotherScanResultsCallback, times(2)).onScanResultsAvailable();
     }
 
+    /**
+     * Verify that a callback registered for scan result changes is sent all the results first,
+     * then only the changed and removed BSSes.
+     */
+    @Test
+    public void testScanResultsChangedCallback() throws Exception {
+        mScanRequestProxy.registerScanResultsChangedCallback(mScanResultsCallback, TEST_UID,
+                TEST_PACKAGE_NAME_1, null);
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+
+        ArgumentCaptor<ParceledListSlice<ScanResult>> changedCaptor =
+                ArgumentCaptor.forClass(ParceledListSlice.class);
+        verify(mScanResultsCallback).onScanResultsChanged(changedCaptor.capture(),
+                eq(Collections.emptyList()), eq(true));
+        ScanResult[] firstResults = mTestScanDatas1[0].getResults();
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(firstResults,
+                changedCaptor.getValue().getList().toArray(new ScanResult[0]));
+
+        // Keep the first BSS as is, change the level of the second, drop the others and add a
+        // new BSS.
+        ScanResult unchanged = new ScanResult(firstResults[0]);
+        ScanResult changed = new ScanResult(firstResults[1]);
+        changed.level -= 10;
+        ScanResult added = ScanTestUtil.createScanResult(2412);
+        WifiScanner.ScanData[] secondScanData = new WifiScanner.ScanData[] {
+                new WifiScanner.ScanData(0, 0, 0, WifiScanner.WIFI_BAND_ALL,
+                        new ScanResult[] {unchanged, changed, added})};
+        List<String> removedBssids = new ArrayList<>();
+        for (int i = 2; i < firstResults.length; i++) {
+            removedBssids.add(firstResults[i].BSSID);
+        }
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(secondScanData);
+        mLooper.dispatchAll();
+
+        ArgumentCaptor<List<String>> removedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mScanResultsCallback).onScanResultsChanged(changedCaptor.capture(),
+                removedCaptor.capture(), eq(false));
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(new ScanResult[] {changed, added},
+                changedCaptor.getValue().getList().toArray(new ScanResult[0]));
+        assertThat(removedCaptor.getValue()).containsExactlyElementsIn(removedBssids);
+        verify(mScanResultsCallback, never()).onScanResultsAvailable();
+    }
+
+    /**
+     * Verify that a callback registered for scan result changes is sent all the results again
+     * after it missed a change because it could not access scan results.
+     */
+    @Test
+    public void testScanResultsChangedCallbackResyncAfterMissedChange() throws Exception {
+        mScanRequestProxy.registerScanResultsChangedCallback(mScanResultsCallback, TEST_UID,
+                TEST_PACKAGE_NAME_1, null);
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+        verify(mScanResultsCallback).onScanResultsChanged(any(), any(), eq(true));
+
+        doThrow(new SecurityException()).when(mWifiPermissionsUtil).enforceCanAccessScanResults(
+                TEST_PACKAGE_NAME_1, null, TEST_UID, null);
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        verify(mScanResultsCallback, times(1)).onScanResultsChanged(any(), any(), anyBoolean());
+
+        doNothing().when(mWifiPermissionsUtil).enforceCanAccessScanResults(
+                TEST_PACKAGE_NAME_1, null, TEST_UID, null);
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        verify(mScanResultsCallback, times(2)).onScanResultsChanged(any(), any(), eq(true));
+        verify(mScanResultsCallback, never()).onScanResultsChanged(any(), any(), eq(false));
+    }
+
+    /**
+     * Verify that a callback registered for scan result changes is sent all the results again
+     * after the delivery of a change failed.
+     */
+    @Test
+    public void testScanResultsChangedCallbackResyncAfterFailedDelivery() throws Exception {
+        mScanRequestProxy.registerScanResultsChangedCallback(mScanResultsCallback, TEST_UID,
+                TEST_PACKAGE_NAME_1, null);
+        testStartScanSuccess();
+        doThrow(new RemoteException()).when(mScanResultsCallback).onScanResultsChanged(any(),
+                any(), anyBoolean());
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+        verify(mScanResultsCallback).onScanResultsChanged(any(), any(), eq(true));
+
+        doNothing().when(mScanResultsCallback).onScanResultsChanged(any(), any(), anyBoolean());
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        verify(mScanResultsCallback, times(2)).onScanResultsChanged(any(), any(), eq(true));
+        verify(mScanResultsCallback, never()).onScanResultsChanged(any(), any(), eq(false));
+    }
+
     /**
      * Verify that registering twice with same Callback will replace the first Callback.
      */
@@ -1274,4 +1397,67 @@ public class ScanRequestProxyTest extends WifiBaseTest {
         assertTrue(TextUtils.equals(TEST_HIDDEN_NETWORK_SSID, scanResultsList.get(0).SSID));
 
     }
+
+    /**
+     * Verify that the security type queries are updated when cached scan results are replaced.
+     */
+    @Test
+    public void testNetworkInRangeQueriesTrackCachedResults() {
+        final String quotedSsid = "\"AN SSID\"";
+        testStartScanSuccess();
+        for (ScanResult scanResult : mTestScanDatas1[0].getResults()) {
+            scanResult.capabilities = "[ESS]";
+        }
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+
+        assertTrue(mScanRequestProxy.isOpenOnlyNetworkInRange(quotedSsid));
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(quotedSsid));
+        assertFalse(mScanRequestProxy.isOpenOnlyNetworkInRange("\"other\""));
+
+        // A new full scan replaces all the previous results.
+        for (ScanResult scanResult : mTestScanDatas2[0].getResults()) {
+            scanResult.capabilities = "[WPA2-PSK-CCMP][ESS]";
+        }
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+
+        assertFalse(mScanRequestProxy.isOpenOnlyNetworkInRange(quotedSsid));
+        assertTrue(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(quotedSsid));
+        assertFalse(mScanRequestProxy.isWpa3PersonalOnlyNetworkInRange(quotedSsid));
+
+        // Disabling scanning clears the cache.
+        mScanRequestProxy.enableScanning(false, false);
+        mInOrder.verify(mWifiScanner).setScanningEnabled(false);
+        validateScanAvailableBroadcastSent(false);
+        assertFalse(mScanRequestProxy.isWpa2PersonalOnlyNetworkInRange(quotedSsid));
+    }
+
+    /**
+     * Verify that the scan results snapshot is shared until new scan results arrive.
+     */
+    @Test
+    public void testGetScanResultsSnapshotReusedUntilNewResults() {
+        testStartScanSuccess();
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas1);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+
+        List<ScanResult> snapshot = mScanRequestProxy.getScanResultsSnapshot();
+        assertEquals(mTestScanDatas1[0].getResults().length, snapshot.size());
+        assertSame(snapshot, mScanRequestProxy.getScanResultsSnapshot());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(new ScanResult()));
+
+        mGlobalScanListenerArgumentCaptor.getValue().onResults(mTestScanDatas2);
+        mLooper.dispatchAll();
+        validateScanResultsAvailableBroadcastSent(true);
+
+        List<ScanResult> newSnapshot = mScanRequestProxy.getScanResultsSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        ScanTestUtil.assertScanResultsEqualsAnyOrder(
+                mTestScanDatas2[0].getResults(),
+                newSnapshot.toArray(new ScanResult[newSnapshot.size()]));
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import android.os.test.TestLooper;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.modules.utils.build.SdkLevel;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link SignalPoller}.
+ */
+@SmallTest
+public class SignalPollerTest extends WifiBaseTest {
+    private static final String TEST_IFACE_NAME = "wlan0";
+    private static final long TEST_WALL_CLOCK_MILLIS = 1_500_000_000_000L;
+    private static final long TEST_TX_PACKETS = 10;
+    private static final long TEST_RX_PACKETS = 20;
+    private static final long TEST_TX_BYTES = 1000;
+    private static final long TEST_RX_BYTES = 2000;
+
+    @Mock private WifiNative mWifiNative;
+    @Mock private FrameworkFacade mFrameworkFacade;
+    @Mock private Clock mClock;
+
+    private final TestLooper mLooper = new TestLooper();
+    private final List<SignalPoller.Sample> mSamples = new ArrayList<>();
+    private SignalPoller mSignalPoller;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS);
+        when(mFrameworkFacade.getTxPackets(TEST_IFACE_NAME)).thenReturn(TEST_TX_PACKETS);
+        when(mFrameworkFacade.getRxPackets(TEST_IFACE_NAME)).thenReturn(TEST_RX_PACKETS);
+        when(mFrameworkFacade.getTxBytes(TEST_IFACE_NAME)).thenReturn(TEST_TX_BYTES);
+        when(mFrameworkFacade.getRxBytes(TEST_IFACE_NAME)).thenReturn(TEST_RX_BYTES);
+        mSignalPoller = new SignalPoller(mWifiNative, mFrameworkFacade, mClock,
+                new Handler(mLooper.getLooper()));
+    }
+
+    /**
+     * Verify the link layer stats and signal poll results are fetched on the poll thread, and
+     * delivered together in one sample.
+     */
+    @Test
+    public void testPollFetchesStatsOnPollThread() {
+        WifiLinkLayerStats stats = new WifiLinkLayerStats();
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, 2412);
+        when(mWifiNative.getWifiLinkLayerStats(TEST_IFACE_NAME)).thenReturn(stats);
+        when(mWifiNative.getSupplicantSignalPollResults(TEST_IFACE_NAME))
+                .thenReturn(signalPollResults);
+
+        mSignalPoller.poll(TEST_IFACE_NAME, true, mSamples::add);
+        verify(mWifiNative, never()).getSupplicantSignalPollResults(any());
+        assertEquals(0, mSamples.size());
+
+        mLooper.dispatchAll();
+        assertEquals(1, mSamples.size());
+        SignalPoller.Sample sample = mSamples.get(0);
+        assertEquals(TEST_IFACE_NAME, sample.ifaceName);
+        assertEquals(TEST_WALL_CLOCK_MILLIS, sample.timestampMillis);
+        assertSame(stats, sample.linkLayerStats);
+        assertSame(signalPollResults, sample.signalPollResults);
+        assertSame(signalPollResults, mSignalPoller.getSignalPollResults(sample));
+        verify(mWifiNative, never()).getWificondSignalPollResults(any());
+        // Packet counters are only needed without link layer stats.
+        assertEquals(0, sample.txPackets);
+        assertEquals(0, sample.rxPackets);
+        verify(mFrameworkFacade, never()).getTxPackets(any());
+    }
+
+    /**
+     * Verify the link layer stats aren't fetched when not requested, and the packet counters are
+     * used instead.
+     */
+    @Test
+    public void testPollWithoutLinkLayerStats() {
+        mSignalPoller.poll(TEST_IFACE_NAME, false, mSamples::add);
+        mLooper.dispatchAll();
+
+        verify(mWifiNative, never()).getWifiLinkLayerStats(any());
+        verify(mWifiNative).getSupplicantSignalPollResults(TEST_IFACE_NAME);
+        assertEquals(1, mSamples.size());
+        SignalPoller.Sample sample = mSamples.get(0);
+        assertNull(sample.linkLayerStats);
+        assertNull(sample.signalPollResults);
+        assertEquals(TEST_TX_PACKETS, sample.txPackets);
+        assertEquals(TEST_RX_PACKETS, sample.rxPackets);
+    }
+
+    /**
+     * Verify wificond is only queried when the results are read on the wifi thread, if
+     * supplicant returned no results.
+     */
+    @Test
+    public void testWificondFallbackNotOnPollThread() {
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, 2412);
+        when(mWifiNative.getWificondSignalPollResults(TEST_IFACE_NAME))
+                .thenReturn(signalPollResults);
+
+        mSignalPoller.poll(TEST_IFACE_NAME, false, mSamples::add);
+        mLooper.dispatchAll();
+        SignalPoller.Sample sample = mSamples.get(0);
+        assertTrue(sample.isSupplicantPolled);
+        assertNull(sample.signalPollResults);
+        verify(mWifiNative, never()).getWificondSignalPollResults(any());
+
+        assertSame(signalPollResults, mSignalPoller.getSignalPollResults(sample));
+        verify(mWifiNative, never()).signalPoll(any());
+    }
+
+    /**
+     * Verify neither supplicant nor wificond are queried on the poll thread when the signal poll
+     * is mocked, and the mocked signal poll is run when the results are read on the wifi thread.
+     */
+    @Test
+    public void testMockedSignalPollNotOnPollThread() {
+        WifiSignalPollResults signalPollResults = new WifiSignalPollResults();
+        signalPollResults.addEntry(0, -42, 65, 54, 2412);
+        when(mWifiNative.isSignalPollMocked()).thenReturn(true);
+        when(mWifiNative.signalPoll(TEST_IFACE_NAME)).thenReturn(signalPollResults);
+
+        mSignalPoller.poll(TEST_IFACE_NAME, false, mSamples::add);
+        mLooper.dispatchAll();
+        SignalPoller.Sample sample = mSamples.get(0);
+        assertFalse(sample.isSupplicantPolled);
+        assertNull(sample.signalPollResults);
+        verify(mWifiNative, never()).getSupplicantSignalPollResults(any());
+        verify(mWifiNative, never()).signalPoll(any());
+
+        assertSame(signalPollResults, mSignalPoller.getSignalPollResults(sample));
+        verify(mWifiNative, never()).getWificondSignalPollResults(any());
+    }
+
+    /**
+     * Verify the per iface byte counters are used from Android S.
+     */
+    @Test
+    public void testPollGetsIfaceByteCounters() {
+        assumeTrue(SdkLevel.isAtLeastS());
+        mSignalPoller.poll(TEST_IFACE_NAME, false, mSamples::add);
+        mLooper.dispatchAll();
+
+        assertEquals(TEST_TX_BYTES, mSamples.get(0).txBytes);
+        assertEquals(TEST_RX_BYTES, mSamples.get(0).rxBytes);
+    }
+
+    /**
+     * Verify the HAL call latency is dumped.
+     */
+    @Test
+    public void testDumpLatency() {
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L, 30L, 35L);
+        mSignalPoller.poll(TEST_IFACE_NAME, true, mSamples::add);
+        mLooper.dispatchAll();
+
+        StringWriter sw = new StringWriter();
+        mSignalPoller.dump(new PrintWriter(sw));
+        String dump = sw.toString();
+        assertTrue(dump.contains("numPolls=1"));
+        assertTrue(dump.contains("linkLayerStatsLatencyMillis={[20,50)=1}"));
+        assertTrue(dump.contains("signalPollLatencyMillis={[5,10)=1}"));
+    }
+}
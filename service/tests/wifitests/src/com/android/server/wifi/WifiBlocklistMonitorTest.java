@@ -18,6 +18,7 @@ package com.android.server.wifi;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
@@ -957,6 +958,153 @@ public class WifiBlocklistMonitorTest extends WifiBaseTest {
         verify(mWifiScoreCard, never()).resetBssidBlocklistStreakForSsid(TEST_SSID_1);
     }
 
+    /**
+     * Verify that BSSIDs blocked for different durations are removed from the blocklist in
+     * order of expiry, and that re-blocking a BSSID extends its blocklist end time.
+     */
+    @Test
+    public void testBssidsExpireInOrderOfBlocklistEndTime() {
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_1);
+        WifiConfiguration config2 = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_2);
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config1, 3000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, config1, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_3, config2, 2000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(2, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+        assertEquals(3, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+
+        // Block TEST_BSSID_2 again for longer so that the first expiry is ignored.
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, config1, 4000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+
+        when(mClock.getWallClockMillis()).thenReturn(2001L);
+        Set<String> blocklist = mWifiBlocklistMonitor.updateAndGetBssidBlocklist();
+        assertEquals(2, blocklist.size());
+        assertTrue(blocklist.contains(TEST_BSSID_1));
+        assertTrue(blocklist.contains(TEST_BSSID_2));
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+
+        when(mClock.getWallClockMillis()).thenReturn(3001L);
+        blocklist = mWifiBlocklistMonitor.updateAndGetBssidBlocklist();
+        assertEquals(1, blocklist.size());
+        assertTrue(blocklist.contains(TEST_BSSID_2));
+
+        when(mClock.getWallClockMillis()).thenReturn(4001L);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+    }
+
+    /**
+     * Verify that the per-SSID blocklist is updated when a blocked BSSID is reused by a
+     * different SSID.
+     */
+    @Test
+    public void testBlockedBssidMovedToDifferentSsid() {
+        WifiConfiguration config1 = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_1);
+        WifiConfiguration config2 = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_2);
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config1, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config2, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_2));
+        assertTrue(mWifiBlocklistMonitor.getFailureReasonsForSsid(TEST_SSID_1).isEmpty());
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetBssidBlocklist().size());
+    }
+
+    /**
+     * Verify that unblocking a BSSID with affiliated BSSIDs removes all of them from the per-SSID
+     * blocklist and the cached blocklist, and that their stale expiries don't unblock an
+     * affiliated BSSID which is blocked again.
+     */
+    @Test
+    public void testUnblockAffiliatedBssidsThenBlockAgain() {
+        // Affiliated BSSID mapping: TEST_BSSID_1 -> {TEST_BSSID_2, TEST_BSSID_3}
+        mWifiBlocklistMonitor.setAffiliatedBssids(TEST_BSSID_1,
+                Arrays.asList(TEST_BSSID_2, TEST_BSSID_3));
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_1);
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(3, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        Set<String> blocklist = mWifiBlocklistMonitor.updateAndGetBssidBlocklist();
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2, TEST_BSSID_3), blocklist);
+        assertSame(blocklist, mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+
+        mWifiBlocklistMonitor.handleNetworkValidationSuccess(TEST_BSSID_1, TEST_SSID_1);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertTrue(mWifiBlocklistMonitor.getFailureReasonsForSsid(TEST_SSID_1).isEmpty());
+        assertTrue(mWifiBlocklistMonitor.updateAndGetBssidBlocklist().isEmpty());
+
+        // Block one of the affiliated BSSIDs alone, for longer than the first block.
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_2, config, 3000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(Set.of(TEST_BSSID_2), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+
+        // The expiries of the first block are stale and must be ignored.
+        when(mClock.getWallClockMillis()).thenReturn(1001L);
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertEquals(Set.of(TEST_BSSID_2), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(Set.of(TEST_FRAMEWORK_BLOCK_REASON),
+                mWifiBlocklistMonitor.getFailureReasonsForSsid(TEST_SSID_1));
+
+        when(mClock.getWallClockMillis()).thenReturn(3001L);
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertTrue(mWifiBlocklistMonitor.updateAndGetBssidBlocklist().isEmpty());
+    }
+
+    /**
+     * Verify that a BSSID and its affiliated BSSIDs expire together, except for an affiliated
+     * BSSID whose block was extended on its own, and that the per-SSID blocklist and the cached
+     * blocklist follow each expiry.
+     */
+    @Test
+    public void testAffiliatedBssidsExpireWithBlockedBssid() {
+        // Affiliated BSSID mapping: TEST_BSSID_1 -> {TEST_BSSID_2, TEST_BSSID_3}
+        mWifiBlocklistMonitor.setAffiliatedBssids(TEST_BSSID_1,
+                Arrays.asList(TEST_BSSID_2, TEST_BSSID_3));
+        WifiConfiguration config = WifiConfigurationTestUtil.createPskNetwork(TEST_SSID_1);
+        when(mClock.getWallClockMillis()).thenReturn(0L);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_3, config, 5000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        Set<String> blocklist = mWifiBlocklistMonitor.updateAndGetBssidBlocklist();
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2, TEST_BSSID_3), blocklist);
+        assertEquals(3, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+
+        when(mClock.getWallClockMillis()).thenReturn(1001L);
+        assertEquals(Set.of(TEST_BSSID_3), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2, TEST_BSSID_3), blocklist);
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+
+        // Blocking TEST_BSSID_1 again blocks its affiliated BSSIDs for the same duration, which
+        // replaces the longer block of TEST_BSSID_3.
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_1, config, 1000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        assertEquals(Set.of(TEST_BSSID_1, TEST_BSSID_2, TEST_BSSID_3),
+                mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(3, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+
+        when(mClock.getWallClockMillis()).thenReturn(2002L);
+        assertTrue(mWifiBlocklistMonitor.updateAndGetBssidBlocklist().isEmpty());
+        assertEquals(0, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+        assertTrue(mWifiBlocklistMonitor.getFailureReasonsForSsid(TEST_SSID_1).isEmpty());
+
+        // The stale expiry of the longer block has no effect on a new block.
+        mWifiBlocklistMonitor.blockBssidForDurationMs(TEST_BSSID_3, config, 5000L,
+                TEST_FRAMEWORK_BLOCK_REASON, TEST_GOOD_RSSI);
+        when(mClock.getWallClockMillis()).thenReturn(5001L);
+        assertEquals(Set.of(TEST_BSSID_3), mWifiBlocklistMonitor.updateAndGetBssidBlocklist());
+        assertEquals(1, mWifiBlocklistMonitor.updateAndGetNumBlockedBssidsForSsid(TEST_SSID_1));
+    }
+
     /**
      * Verify that handleNetworkRemoved removes all BSSIDs for that network from the blocklist
      * and also reset the blocklist streak count from WifiScoreCard.
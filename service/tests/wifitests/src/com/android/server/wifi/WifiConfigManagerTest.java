@@ -428,6 +428,39 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(mWifiConfigManager.getConfiguredNetworksWithPasswords().isEmpty());
     }
 
+    /**
+     * Verifies that {@link WifiConfigManager#getConfiguredNetworksReadOnly()} returns the
+     * internal networks without copying them, in an unmodifiable list.
+     */
+    @Test
+    public void testGetConfiguredNetworksReadOnly() {
+        assertTrue(mWifiConfigManager.getConfiguredNetworksReadOnly().isEmpty());
+
+        WifiConfiguration openNetwork = WifiConfigurationTestUtil.createOpenNetwork();
+        WifiConfiguration pskNetwork = WifiConfigurationTestUtil.createPskNetwork();
+        verifyAddNetworkToWifiConfigManager(openNetwork);
+        verifyAddNetworkToWifiConfigManager(pskNetwork);
+
+        List<WifiConfiguration> networks = mWifiConfigManager.getConfiguredNetworksReadOnly();
+        assertEquals(2, networks.size());
+        // Same internal objects are returned on every call.
+        List<WifiConfiguration> networksAgain =
+                mWifiConfigManager.getConfiguredNetworksReadOnly();
+        for (WifiConfiguration network : networks) {
+            assertTrue(networksAgain.stream().anyMatch(n -> n == network));
+        }
+        try {
+            networks.remove(0);
+            fail("Expected the list to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        // The masked copies are still distinct objects.
+        for (WifiConfiguration network : mWifiConfigManager.getConfiguredNetworks()) {
+            assertFalse(networks.stream().anyMatch(n -> n == network));
+        }
+    }
+
     /**
      * Verifies that network addition via
      * {@link WifiConfigManager#addOrUpdateNetwork(WifiConfiguration, int)} fails if we have not
@@ -7155,6 +7188,11 @@ public class WifiConfigManagerTest extends WifiBaseTest {
         assertTrue(mergedNetwork.isSecurityType(upgradableSecurityType));
         assertFalse(mergedNetwork.getSecurityParams(upgradableSecurityType)
                 .isAddedByAutoUpgrade());
+        // The merged network is found by its profile key after the merge.
+        WifiConfiguration networkByKey =
+                mWifiConfigManager.getConfiguredNetwork(mergedNetwork.getProfileKey());
+        assertNotNull(networkByKey);
+        assertEquals(mergedNetwork.networkId, networkByKey.networkId);
     }
 
     /**
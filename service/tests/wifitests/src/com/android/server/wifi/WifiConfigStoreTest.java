@@ -811,6 +811,63 @@ public class WifiConfigStoreTest extends WifiBaseTest {
         verify(userStoreNetworkSuggestionsData, never()).serializeData(any(), any());
     }
 
+    /**
+     * Verify that multiple buffered writes within the buffer interval serialize the data only
+     * once, when the buffered write is performed.
+     */
+    @Test
+    public void testBufferedWritesCoalesceSerialization() throws Exception {
+        StoreData sharedStoreData = mock(StoreData.class);
+        when(sharedStoreData.getStoreFileId())
+                .thenReturn(WifiConfigStore.STORE_FILE_SHARED_GENERAL);
+        when(sharedStoreData.hasNewDataToSerialize()).thenReturn(true);
+        when(sharedStoreData.getName()).thenReturn("sharedStoreData");
+        assertTrue(mWifiConfigStore.registerStoreData(sharedStoreData));
+        mWifiConfigStore.setUserStores(mUserStores);
+
+        mWifiConfigStore.write(false);
+        mWifiConfigStore.write(false);
+        mWifiConfigStore.write(false);
+        verify(sharedStoreData, never()).serializeData(any(), any());
+        assertTrue(mAlarmManager.isPending(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG));
+
+        mAlarmManager.dispatch(WifiConfigStore.BUFFERED_WRITE_ALARM_TAG);
+        mLooper.dispatchAll();
+        verify(sharedStoreData).serializeData(any(), any());
+        assertTrue(mSharedStore.isStoreWritten());
+    }
+
+    /**
+     * Verify that the store file is not rewritten when the data to write is identical to the data
+     * last written to it.
+     */
+    @Test
+    public void testStoreFileSkipsWriteOfUnchangedData() throws Exception {
+        File file = File.createTempFile("WifiConfigStoreTest", null);
+        try {
+            StoreFile storeFile = new StoreFile(file, WifiConfigStore.STORE_FILE_SHARED_GENERAL,
+                    UserHandle.ALL, null);
+            byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+            storeFile.storeRawDataToWrite(data);
+            storeFile.writeBufferedRawData();
+            assertTrue(file.setLastModified(0));
+
+            // Same data, file should be left untouched.
+            storeFile.storeRawDataToWrite(Arrays.copyOf(data, data.length));
+            storeFile.writeBufferedRawData();
+            assertEquals(0, file.lastModified());
+
+            // New data, file should be rewritten.
+            storeFile.storeRawDataToWrite("newData".getBytes(StandardCharsets.UTF_8));
+            storeFile.writeBufferedRawData();
+            assertNotEquals(0, file.lastModified());
+            assertArrayEquals("newData".getBytes(StandardCharsets.UTF_8),
+                    storeFile.readRawData());
+        } finally {
+            file.delete();
+        }
+    }
+
     /**
      * Verify that we gracefully skip unknown section when reading an user store file.
      */
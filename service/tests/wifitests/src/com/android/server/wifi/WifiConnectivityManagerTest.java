@@ -5750,6 +5750,61 @@ public class WifiConnectivityManagerTest extends WifiBaseTest {
         assertEquals(0, pnoNetworks.size());
     }
 
+    /**
+     * Verify the suggestion networks of the PNO list are only retrieved again when the
+     * suggestions or the configured networks change.
+     */
+    @Test
+    public void testRetrievePnoListReusesSuggestionNetworks() {
+        WifiConfiguration network = WifiConfigurationTestUtil.createPskNetwork();
+        network.ephemeral = true;
+        network.fromWifiNetworkSuggestion = true;
+        when(mWifiConfigManager.getSavedNetworks(anyInt())).thenAnswer(
+                invocation -> new ArrayList<>());
+        when(mWifiNetworkSuggestionsManager.getSuggestionsGeneration()).thenReturn(1L);
+        when(mWifiNetworkSuggestionsManager.getAllScanOptimizationSuggestionNetworks())
+                .thenReturn(List.of(network));
+
+        assertEquals(network.SSID,
+                mWifiConnectivityManager.retrievePnoNetworkList().get(0).ssid);
+        assertEquals(network.SSID,
+                mWifiConnectivityManager.retrievePnoNetworkList().get(0).ssid);
+        verify(mWifiNetworkSuggestionsManager).getAllScanOptimizationSuggestionNetworks();
+
+        // The suggestions changed.
+        when(mWifiNetworkSuggestionsManager.getSuggestionsGeneration()).thenReturn(2L);
+        when(mWifiNetworkSuggestionsManager.getAllScanOptimizationSuggestionNetworks())
+                .thenReturn(new ArrayList<>());
+        assertTrue(mWifiConnectivityManager.retrievePnoNetworkList().isEmpty());
+        verify(mWifiNetworkSuggestionsManager, times(2))
+                .getAllScanOptimizationSuggestionNetworks();
+
+        // A configured network changed.
+        mNetworkUpdateListenerCaptor.getValue().onNetworkTemporarilyDisabled(network,
+                WifiConfiguration.NetworkSelectionStatus.DISABLED_AUTHENTICATION_FAILURE);
+        mWifiConnectivityManager.retrievePnoNetworkList();
+        verify(mWifiNetworkSuggestionsManager, times(3))
+                .getAllScanOptimizationSuggestionNetworks();
+    }
+
+    /**
+     * Verify the hidden networks of the suggestions are only retrieved again for a single scan
+     * when the suggestions change.
+     */
+    @Test
+    public void testHiddenSuggestionNetworksReusedUntilSuggestionsChange() {
+        setWifiEnabled(true);
+        clearInvocations(mWifiNetworkSuggestionsManager);
+        when(mWifiNetworkSuggestionsManager.getSuggestionsGeneration()).thenReturn(1L);
+        mWifiConnectivityManager.forceConnectivityScan(WIFI_WORK_SOURCE);
+        mWifiConnectivityManager.forceConnectivityScan(WIFI_WORK_SOURCE);
+        verify(mWifiNetworkSuggestionsManager).retrieveHiddenNetworkList(true);
+
+        when(mWifiNetworkSuggestionsManager.getSuggestionsGeneration()).thenReturn(2L);
+        mWifiConnectivityManager.forceConnectivityScan(WIFI_WORK_SOURCE);
+        verify(mWifiNetworkSuggestionsManager, times(2)).retrieveHiddenNetworkList(true);
+    }
+
     /**
      * Verifies frequencies are populated correctly for pno networks.
      * {@link WifiConnectivityManager#retrievePnoNetworkList()}.
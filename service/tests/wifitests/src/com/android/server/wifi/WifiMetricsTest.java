@@ -259,7 +259,7 @@ public class WifiMetricsTest extends WifiBaseTest {
 
         mWifiMetrics.registerForWifiMonitorEvents("wlan0");
         verify(mWifiMonitor, atLeastOnce())
-                .registerHandler(eq("wlan0"), anyInt(), mHandlerCaptor.capture());
+                .registerHandlerWithIfaceName(eq("wlan0"), anyInt(), mHandlerCaptor.capture());
 
         mWifiMetrics.setActiveModeWarden(mActiveModeWarden);
         verify(mActiveModeWarden).registerModeChangeCallback(
@@ -6993,6 +6993,59 @@ public class WifiMetricsTest extends WifiBaseTest {
                 mDecodedProto.wifiToWifiSwitchStats.makeBeforeBreakLingerDurationSeconds.length);
     }
 
+    @Test
+    public void testAnqpCacheMetrics() throws Exception {
+        mWifiMetrics.incrementAnqpCacheHits();
+        mWifiMetrics.incrementAnqpCacheHits();
+        mWifiMetrics.incrementAnqpCacheMisses();
+        mWifiMetrics.incrementAnqpCacheEvictions();
+
+        dumpProtoAndDeserialize();
+        assertEquals(2, mDecodedProto.numAnqpCacheHits);
+        assertEquals(1, mDecodedProto.numAnqpCacheMisses);
+        assertEquals(1, mDecodedProto.numAnqpCacheEvictions);
+
+        // Verify the counters are reset by the dump
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.numAnqpCacheHits);
+        assertEquals(0, mDecodedProto.numAnqpCacheMisses);
+        assertEquals(0, mDecodedProto.numAnqpCacheEvictions);
+    }
+
+    /**
+     * Test the ANQP request queue wait and latency histograms, and the timeout counter.
+     */
+    @Test
+    public void testAnqpRequestMetrics() throws Exception {
+        mWifiMetrics.logAnqpRequestQueueWait(0);
+        mWifiMetrics.logAnqpRequestQueueWait(120);
+        mWifiMetrics.logAnqpRequestLatency(300);
+        mWifiMetrics.logAnqpRequestLatency(450);
+        mWifiMetrics.logAnqpRequestLatency(25000);
+        mWifiMetrics.incrementAnqpRequestTimeouts();
+
+        dumpProtoAndDeserialize();
+        HistogramBucketInt32[] expectedQueueWaitHistogram = {
+                buildHistogramBucketInt32(Integer.MIN_VALUE, 50, 1),
+                buildHistogramBucketInt32(100, 200, 1),
+        };
+        assertHistogramBucketsEqual(expectedQueueWaitHistogram,
+                mDecodedProto.anqpRequestQueueWaitMsHistogram);
+        HistogramBucketInt32[] expectedLatencyHistogram = {
+                buildHistogramBucketInt32(200, 500, 2),
+                buildHistogramBucketInt32(20000, Integer.MAX_VALUE, 1),
+        };
+        assertHistogramBucketsEqual(expectedLatencyHistogram,
+                mDecodedProto.anqpRequestLatencyMsHistogram);
+        assertEquals(1, mDecodedProto.numAnqpRequestTimeouts);
+
+        // Verify the metrics are reset by the dump
+        dumpProtoAndDeserialize();
+        assertEquals(0, mDecodedProto.anqpRequestQueueWaitMsHistogram.length);
+        assertEquals(0, mDecodedProto.anqpRequestLatencyMsHistogram.length);
+        assertEquals(0, mDecodedProto.numAnqpRequestTimeouts);
+    }
+
     @Test
     public void testPasspointConnectionMetrics() throws Exception {
         // initially all 0
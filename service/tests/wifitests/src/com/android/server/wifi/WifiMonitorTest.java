@@ -22,6 +22,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -90,7 +92,7 @@ public class WifiMonitorTest extends WifiBaseTest {
      */
     @Test
     public void testBroadcastWpsEventFailDueToErrorTkipOnlyProhibhited() {
-        mWifiMonitor.registerHandler(
+        mWifiMonitor.registerHandlerWithIfaceName(
                 WLAN_IFACE_NAME, WifiMonitor.WPS_FAIL_EVENT, mHandlerSpy);
         mWifiMonitor.broadcastWpsFailEvent(
                 WLAN_IFACE_NAME, WpsConfigError.NO_ERROR,
@@ -877,4 +879,73 @@ public class WifiMonitorTest extends WifiBaseTest {
         int frequency = (int) messageCaptor.getValue().arg1;
         assertEquals(2412, frequency);
     }
+
+    /**
+     * Verify the iface name is only added to the messages sent to the handlers registered with
+     * {@link WifiMonitor#registerHandlerWithIfaceName(String, int, Handler)}.
+     */
+    @Test
+    public void testIfaceNameOnlySentToHandlersRegisteredWithIt() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandlerWithIfaceName(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mSecondHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(mHandlerSpy).handleMessage(messageCaptor.capture());
+        assertEquals(WifiMonitor.SCAN_RESULTS_EVENT, messageCaptor.getValue().what);
+        assertNull(messageCaptor.getValue().peekData());
+
+        verify(mSecondHandlerSpy).handleMessage(messageCaptor.capture());
+        assertEquals(WifiMonitor.SCAN_RESULTS_EVENT, messageCaptor.getValue().what);
+        assertEquals(WLAN_IFACE_NAME,
+                messageCaptor.getValue().getData().getString(WifiMonitor.KEY_IFACE));
+    }
+
+    /**
+     * Verify a deregistered handler no longer receives the event, while the other handlers
+     * registered for it still do, and the events and deliveries are counted.
+     */
+    @Test
+    public void testDeregisterHandler() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mSecondHandlerSpy);
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_FAILED_EVENT, mHandlerSpy);
+        mWifiMonitor.deregisterHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        verify(mHandlerSpy, never()).handleMessage(any());
+        verify(mSecondHandlerSpy).handleMessage(any());
+        assertEquals(1, mWifiMonitor.getEventCount(WifiMonitor.SCAN_RESULTS_EVENT));
+        assertEquals(1, mWifiMonitor.getDeliveryCount(WifiMonitor.SCAN_RESULTS_EVENT));
+
+        // The other events registered by the handler are still delivered.
+        mWifiMonitor.broadcastScanFailedEvent(WLAN_IFACE_NAME, 0);
+        mLooper.dispatchAll();
+        verify(mHandlerSpy).handleMessage(any());
+        assertEquals(1, mWifiMonitor.getDeliveryCount(WifiMonitor.SCAN_FAILED_EVENT));
+    }
+
+    /**
+     * Verify the events are counted, but not delivered, while the iface isn't monitored.
+     */
+    @Test
+    public void testEventDroppedWhenNotMonitoring() {
+        mWifiMonitor.registerHandler(
+                WLAN_IFACE_NAME, WifiMonitor.SCAN_RESULTS_EVENT, mHandlerSpy);
+        mWifiMonitor.setMonitoring(WLAN_IFACE_NAME, false);
+        mWifiMonitor.broadcastScanResultEvent(WLAN_IFACE_NAME);
+        mLooper.dispatchAll();
+
+        verify(mHandlerSpy, never()).handleMessage(any());
+        assertEquals(1, mWifiMonitor.getEventCount(WifiMonitor.SCAN_RESULTS_EVENT));
+        assertEquals(0, mWifiMonitor.getDeliveryCount(WifiMonitor.SCAN_RESULTS_EVENT));
+    }
 }
@@ -855,7 +855,7 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         WifiConfiguration candidate = mWifiNetworkSelector.selectNetwork(candidates);
         verify(mWifiMetrics).incrementNetworkSelectionFilteredBssidCount(0);
 
-        verify(mWifiConfigManager).getConfiguredNetworks();
+        verify(mWifiConfigManager).getConfiguredNetworksReadOnly();
         verify(mWifiConfigManager, times(savedConfigs.length)).tryEnableNetwork(anyInt());
         verify(mWifiConfigManager, times(savedConfigs.length))
                 .clearNetworkCandidateScanResult(anyInt());
@@ -1300,6 +1300,9 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
                         freqs, caps, levels, securities, mWifiConfigManager, mClock, iesByteStream);
         List<ScanDetail> scanDetails = scanDetailsAndConfigs.getScanDetails();
         assertEquals(2, scanDetails.size());
+        // Throughput predictions are reused across scans for unchanged BSSes.
+        when(mThroughputPredictor.predictThroughput(any(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any())).thenReturn(100);
         HashSet<String> blocklist = new HashSet<String>();
         List<WifiCandidates.Candidate> candidates = mWifiNetworkSelector.getCandidatesFromScan(
                 scanDetails, blocklist,
@@ -1327,8 +1330,6 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         when(mClock.getElapsedSinceBootMillis()).thenReturn(SystemClock.elapsedRealtime()
                 + WifiNetworkSelector.MINIMUM_NETWORK_SELECTION_INTERVAL_MS + 2000);
 
-        when(mThroughputPredictor.predictThroughput(any(), anyInt(), anyInt(), anyInt(),
-                anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any())).thenReturn(100);
         // Force to return 2nd network in the network nominator
         mPlaceholderNominator.setNetworkIndexToReturn(1);
 
@@ -2509,6 +2510,57 @@ public class WifiNetworkSelectorTest extends WifiBaseTest {
         assertTrue(foundNotCarrierOrPrivilegedAppCandidate);
     }
 
+    /**
+     * Verify that throughput predictions are reused across scans for BSSes that did not change,
+     * and that the network selection latency is recorded.
+     */
+    @Test
+    public void testThroughputPredictionReusedForUnchangedBss() {
+        String[] ssids = {"\"test1\"", "\"test2\""};
+        String[] bssids = {"6c:f3:7f:ae:8c:f3", "6c:f3:7f:ae:8c:f4"};
+        int[] freqs = {2437, 5180};
+        String[] caps = {"[WPA2-EAP/SHA1-CCMP][ESS]", "[WPA2-EAP/SHA1-CCMP][ESS]"};
+        int[] levels = {mThresholdMinimumRssi2G + 1, mThresholdMinimumRssi5G + 1};
+        int[] securities = {SECURITY_EAP, SECURITY_EAP};
+        HashSet<String> blocklist = new HashSet<>();
+        ScanDetailsAndWifiConfigs scanDetailsAndConfigs =
+                WifiNetworkSelectorTestUtil.setupScanDetailsAndConfigStore(ssids, bssids,
+                        freqs, caps, levels, securities, mWifiConfigManager, mClock);
+        List<ScanDetail> scanDetails = scanDetailsAndConfigs.getScanDetails();
+        mWifiNetworkSelector.registerNetworkNominator(
+                new AllNetworkNominator(scanDetailsAndConfigs));
+        List<ClientModeManagerState> cmmStates = Arrays.asList(
+                new ClientModeManagerState(TEST_IFACE_NAME, false, true, mWifiInfo, false));
+
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, blocklist, cmmStates,
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(2)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+
+        // Nothing changed, the previous predictions are reused.
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, blocklist, cmmStates,
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(2)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+
+        // Only the BSS with a new RSSI is predicted again.
+        scanDetails.get(0).getScanResult().level += 5;
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, blocklist, cmmStates,
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(3)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+        verify(mWifiMetrics, times(3)).noteNetworkSelectionLatency(
+                anyLong(), anyLong(), anyLong(), anyLong());
+
+        // All the BSSes are predicted again once the predictions are cleared, e.g. after the
+        // device capabilities were updated in place.
+        mWifiNetworkSelector.clearThroughputPredictions();
+        mWifiNetworkSelector.getCandidatesFromScan(scanDetails, blocklist, cmmStates,
+                false, true, true, Collections.emptySet(), false);
+        verify(mThroughputPredictor, times(5)).predictThroughput(any(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyBoolean(), any());
+    }
+
     /**
      * Test that network which are not accepting new connections(MBO
      * association disallowed attribute in beacons/probe responses)
@@ -355,7 +355,7 @@ public class WifiNetworkSelectorTestUtil {
                         return null;
                     }
                 });
-        when(wifiConfigManager.getConfiguredNetworks())
+        when(wifiConfigManager.getConfiguredNetworksReadOnly())
                 .then(new AnswerWithArguments() {
                     public List<WifiConfiguration> answer() {
                         List<WifiConfiguration> savedNetworks = new ArrayList<>();
@@ -33,7 +33,9 @@ import static com.android.server.wifi.WifiNetworkSuggestionsManager.NOTIFICATION
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
@@ -4024,8 +4026,9 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
                 add(nonPasspointScanResult);
                 add(null);
                 }};
-        when(mPasspointManager.getMatchingScanResults(eq(mockPasspoint), eq(allSrList)))
-                .thenReturn(ppSrList);
+        when(mPasspointManager.getMatchingScanResultsForConfigs(
+                eq(Collections.singletonList(mockPasspoint)), eq(allSrList)))
+                .thenReturn(Collections.singletonList(ppSrList));
         ScanResultMatchInfo mockMatchInfo = mock(ScanResultMatchInfo.class);
         ScanResultMatchInfo nonPasspointMi = new ScanResultMatchInfo();
         nonPasspointMi.networkSsid = nonPasspointSuggestion.wifiConfiguration.SSID;
@@ -4117,6 +4120,61 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
         }
     }
 
+    /**
+     * Verify that each suggestion is only matched with the ScanResults of the same SSID and a
+     * matching security type, when there are many suggestions and ScanResults.
+     */
+    @Test
+    public void getMatchingScanResultsTestWithManySuggestionsAndScanResults() {
+        List<WifiNetworkSuggestion> suggestions = new ArrayList<>();
+        List<ScanResult> scanResults = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            suggestions.add(createWifiNetworkSuggestion(
+                    WifiConfigurationTestUtil.createOpenNetwork("\"open" + i + "\""),
+                    null, false, false, true, true, DEFAULT_PRIORITY_GROUP));
+            suggestions.add(createWifiNetworkSuggestion(
+                    WifiConfigurationTestUtil.createPskNetwork("\"open" + i + "\""),
+                    null, false, false, true, true, DEFAULT_PRIORITY_GROUP));
+            // Open ScanResults for even SSIDs only, one more per SSID each time.
+            if (i % 2 == 0) {
+                for (int j = 0; j <= i; j++) {
+                    scanResults.add(createScanResult("open" + i, "[ESS]"));
+                }
+            }
+        }
+        ScanResult pskScanResult = createScanResult("open3", "[WPA2-PSK-CCMP][ESS]");
+        scanResults.add(pskScanResult);
+        scanResults.add(null);
+
+        Map<WifiNetworkSuggestion, List<ScanResult>> result =
+                mWifiNetworkSuggestionsManager.getMatchingScanResults(suggestions, scanResults);
+
+        assertEquals(suggestions.size(), result.size());
+        for (int i = 0; i < 20; i++) {
+            List<ScanResult> openMatches = result.get(suggestions.get(2 * i));
+            assertEquals(i % 2 == 0 ? i + 1 : 0, openMatches.size());
+            for (ScanResult scanResult : openMatches) {
+                assertEquals("open" + i, scanResult.SSID);
+            }
+            List<ScanResult> pskMatches = result.get(suggestions.get(2 * i + 1));
+            if (i == 3) {
+                assertEquals(Collections.singletonList(pskScanResult), pskMatches);
+            } else {
+                assertTrue(pskMatches.isEmpty());
+            }
+        }
+        verify(mPasspointManager, never()).getMatchingScanResultsForConfigs(any(), any());
+    }
+
+    private ScanResult createScanResult(String ssid, String capabilities) {
+        ScanResult scanResult = new ScanResult();
+        scanResult.SSID = ssid;
+        scanResult.wifiSsid = WifiSsid.fromUtf8Text(ssid);
+        scanResult.BSSID = TEST_BSSID;
+        scanResult.capabilities = capabilities;
+        return scanResult;
+    }
+
     @Test
     public void testUpdateAutoJoinIfImsiProtectionIsEnabledAndDisabled() {
         when(mWifiCarrierInfoManager.getCarrierIdForPackageWithCarrierPrivileges(TEST_PACKAGE_1))
@@ -4396,6 +4454,52 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
         assertEquals(network1.SSID, pnoNetwork.get(0).SSID);
     }
 
+    /**
+     * Verify the suggestion views are reused until the suggestions or the approval of the app
+     * change, and that the generation changes along with them.
+     */
+    @Test
+    public void testSuggestionViewsRebuiltOnlyOnChange() {
+        long generation = mWifiNetworkSuggestionsManager.getSuggestionsGeneration();
+        List<WifiNetworkSuggestion> suggestions = setupAndGetPnoAvailableSuggestions();
+        assertNotEquals(generation, mWifiNetworkSuggestionsManager.getSuggestionsGeneration());
+        generation = mWifiNetworkSuggestionsManager.getSuggestionsGeneration();
+
+        Set<WifiNetworkSuggestion> allSuggestions =
+                mWifiNetworkSuggestionsManager.getAllNetworkSuggestions();
+        Set<WifiNetworkSuggestion> approvedSuggestions =
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions();
+        assertEquals(new HashSet<>(suggestions), allSuggestions);
+        assertTrue(approvedSuggestions.isEmpty());
+        assertSame(allSuggestions, mWifiNetworkSuggestionsManager.getAllNetworkSuggestions());
+        assertSame(approvedSuggestions,
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+        assertEquals(generation, mWifiNetworkSuggestionsManager.getSuggestionsGeneration());
+
+        // Approval change
+        mWifiNetworkSuggestionsManager.setHasUserApprovedForApp(true, TEST_UID_1, TEST_PACKAGE_1);
+        assertNotEquals(generation, mWifiNetworkSuggestionsManager.getSuggestionsGeneration());
+        generation = mWifiNetworkSuggestionsManager.getSuggestionsGeneration();
+        assertEquals(new HashSet<>(suggestions),
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+        assertEquals(1,
+                mWifiNetworkSuggestionsManager.getAllScanOptimizationSuggestionNetworks().size());
+        assertEquals(1, mWifiNetworkSuggestionsManager
+                .getAllPasspointScanOptimizationSuggestionNetworks(false).size());
+
+        // Removal
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.remove(List.of(suggestions.get(0)), TEST_UID_1,
+                        TEST_PACKAGE_1, WifiManager.ACTION_REMOVE_SUGGESTION_DISCONNECT));
+        assertNotEquals(generation, mWifiNetworkSuggestionsManager.getSuggestionsGeneration());
+        assertEquals(Set.of(suggestions.get(1)),
+                mWifiNetworkSuggestionsManager.getAllNetworkSuggestions());
+        assertEquals(Set.of(suggestions.get(1)),
+                mWifiNetworkSuggestionsManager.getAllApprovedNetworkSuggestions());
+        assertTrue(mWifiNetworkSuggestionsManager
+                .getAllScanOptimizationSuggestionNetworks().isEmpty());
+    }
+
     /**
      * Verifies that getAllPasspointScanOptimizationSuggestionNetworks will return the expected
      * user-approved Passpoint networks.
@@ -4485,6 +4589,46 @@ public class WifiNetworkSuggestionsManagerTest extends WifiBaseTest {
         verify(listener).onSuggestionsRemoved(networkSuggestionList1);
     }
 
+    /**
+     * Verify the suggestion update listeners read the updated suggestions when they query them
+     * while being notified.
+     */
+    @Test
+    public void testOnSuggestionUpdateListenerSeesUpdatedSuggestions() {
+        WifiNetworkSuggestion networkSuggestion = createWifiNetworkSuggestion(
+                WifiConfigurationTestUtil.createOpenNetwork(), null, false, false, true, true,
+                DEFAULT_PRIORITY_GROUP);
+        List<WifiNetworkSuggestion> networkSuggestionList = List.of(networkSuggestion);
+        // Build the views before the change.
+        assertTrue(mWifiNetworkSuggestionsManager.getAllNetworkSuggestions().isEmpty());
+
+        List<Set<WifiNetworkSuggestion>> seenSuggestions = new ArrayList<>();
+        mWifiNetworkSuggestionsManager.addOnSuggestionUpdateListener(
+                new WifiNetworkSuggestionsManager.OnSuggestionUpdateListener() {
+                    @Override
+                    public void onSuggestionsAddedOrUpdated(
+                            List<WifiNetworkSuggestion> addedSuggestions) {
+                        seenSuggestions.add(
+                                mWifiNetworkSuggestionsManager.getAllNetworkSuggestions());
+                    }
+
+                    @Override
+                    public void onSuggestionsRemoved(
+                            List<WifiNetworkSuggestion> removedSuggestions) {
+                        seenSuggestions.add(
+                                mWifiNetworkSuggestionsManager.getAllNetworkSuggestions());
+                    }
+                });
+
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.add(networkSuggestionList, TEST_UID_1,
+                        TEST_PACKAGE_1, TEST_FEATURE));
+        assertEquals(WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS,
+                mWifiNetworkSuggestionsManager.remove(networkSuggestionList, TEST_UID_1,
+                        TEST_PACKAGE_1, WifiManager.ACTION_REMOVE_SUGGESTION_DISCONNECT));
+        assertEquals(List.of(Set.of(networkSuggestion), Set.of()), seenSuggestions);
+    }
+
     @Test
     public void testShouldNotBeIgnoredBySecureSuggestionFromSameCarrierWithoutSameOpenSuggestion() {
         when(mResources.getBoolean(
@@ -459,6 +459,8 @@ public class WifiServiceImplTest extends WifiBaseTest {
     @Mock LastCallerInfoManager mLastCallerInfoManager;
     @Mock BuildProperties mBuildProperties;
     @Mock LinkProbeManager mLinkProbeManager;
+    @Mock WifiMonitor mWifiMonitor;
+    @Mock SignalPoller mSignalPoller;
     @Mock IOnWifiDriverCountryCodeChangedListener mIOnWifiDriverCountryCodeChangedListener;
     @Mock WifiShellCommand mWifiShellCommand;
     @Mock AfcManager mAfcManager;
@@ -524,6 +526,8 @@ public class WifiServiceImplTest extends WifiBaseTest {
         when(mWifiInjector.getWifiNotificationManager()).thenReturn(mWifiNotificationManager);
         when(mWifiInjector.getBuildProperties()).thenReturn(mBuildProperties);
         when(mWifiInjector.getLinkProbeManager()).thenReturn(mLinkProbeManager);
+        when(mWifiInjector.getWifiMonitor()).thenReturn(mWifiMonitor);
+        when(mWifiInjector.getSignalPoller()).thenReturn(mSignalPoller);
         when(mWifiInjector.makeWifiShellCommand(any())).thenReturn(mWifiShellCommand);
         when(mWifiInjector.getAfcManager()).thenReturn(mAfcManager);
         when(mWifiInjector.getPasspointNetworkNominateHelper())
@@ -3205,7 +3209,7 @@ public class WifiServiceImplTest extends WifiBaseTest {
         String featureId = "test.com.featureId";
         mLooper.startAutoDispatch();
         List<ScanResult> retrievedScanResultList = mWifiServiceImpl.getScanResults(packageName,
-                featureId);
+                featureId).getList();
         mLooper.stopAutoDispatchAndIgnoreExceptions();
         verify(mScanRequestProxy).getScanResults();
 
@@ -3214,10 +3218,11 @@ public class WifiServiceImplTest extends WifiBaseTest {
     }
 
     /**
-     * Ensure that we handle scan results failure when posting the runnable to handler fails.
+     * Ensure that scan results are returned without waiting for the wifi thread, even when
+     * posting the runnable to handler would time out.
      */
     @Test
-    public void testGetScanResultsFailureInRunWithScissors() {
+    public void testGetScanResultsDoesNotWaitForWifiThread() {
         mWifiServiceImpl = makeWifiServiceImplWithMockRunnerWhichTimesOut();
 
         ScanResult[] scanResults =
@@ -3231,11 +3236,12 @@ public class WifiServiceImplTest extends WifiBaseTest {
         String featureId = "test.com.featureId";
         mLooper.startAutoDispatch();
         List<ScanResult> retrievedScanResultList = mWifiServiceImpl.getScanResults(packageName,
-                featureId);
+                featureId).getList();
         mLooper.stopAutoDispatchAndIgnoreExceptions();
-        verify(mScanRequestProxy, never()).getScanResults();
+        verify(mScanRequestProxy).getScanResults();
 
-        assertTrue(retrievedScanResultList.isEmpty());
+        ScanTestUtil.assertScanResultsEquals(scanResults,
+                retrievedScanResultList.toArray(new ScanResult[retrievedScanResultList.size()]));
     }
 
     /**
@@ -8533,6 +8539,48 @@ public class WifiServiceImplTest extends WifiBaseTest {
         verify(mScanRequestProxy).unregisterScanResultsCallback(mScanResultsCallback);
     }
 
+    /**
+     * Test register scan results changed callback goes to ScanRequestProxy with the caller.
+     */
+    @Test
+    public void testRegisterScanResultsChangedCallback() throws Exception {
+        when(mFeatureFlags.scanResultsChangedCallback()).thenReturn(true);
+        mWifiServiceImpl.registerScanResultsChangedCallback(mScanResultsCallback,
+                TEST_PACKAGE_NAME, TEST_FEATURE_ID);
+        mLooper.dispatchAll();
+        verify(mWifiPermissionsUtil).enforceCanAccessScanResults(TEST_PACKAGE_NAME,
+                TEST_FEATURE_ID, Binder.getCallingUid(), null);
+        verify(mScanRequestProxy).registerScanResultsChangedCallback(mScanResultsCallback,
+                Binder.getCallingUid(), TEST_PACKAGE_NAME, TEST_FEATURE_ID);
+    }
+
+    /**
+     * Test register scan results changed callback without location permission.
+     */
+    @Test(expected = SecurityException.class)
+    public void testRegisterScanResultsChangedCallbackWithoutLocationPermission()
+            throws Exception {
+        when(mFeatureFlags.scanResultsChangedCallback()).thenReturn(true);
+        doThrow(new SecurityException()).when(mWifiPermissionsUtil).enforceCanAccessScanResults(
+                TEST_PACKAGE_NAME, TEST_FEATURE_ID, Binder.getCallingUid(), null);
+        mWifiServiceImpl.registerScanResultsChangedCallback(mScanResultsCallback,
+                TEST_PACKAGE_NAME, TEST_FEATURE_ID);
+    }
+
+    /**
+     * Test register scan results changed callback is rejected when the feature flag is disabled.
+     */
+    @Test
+    public void testRegisterScanResultsChangedCallbackWithFlagDisabled() throws Exception {
+        when(mFeatureFlags.scanResultsChangedCallback()).thenReturn(false);
+        assertThrows(UnsupportedOperationException.class,
+                () -> mWifiServiceImpl.registerScanResultsChangedCallback(mScanResultsCallback,
+                        TEST_PACKAGE_NAME, TEST_FEATURE_ID));
+        mLooper.dispatchAll();
+        verify(mScanRequestProxy, never()).registerScanResultsChangedCallback(any(), anyInt(),
+                any(), any());
+    }
+
     /**
      * Test register callback without ACCESS_WIFI_STATE permission.
      */
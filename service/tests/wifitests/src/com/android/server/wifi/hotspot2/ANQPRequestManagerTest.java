@@ -41,6 +41,7 @@ import com.android.server.wifi.Clock;
 import com.android.server.wifi.DeviceConfigFacade;
 import com.android.server.wifi.WifiBaseTest;
 import com.android.server.wifi.WifiInjector;
+import com.android.server.wifi.WifiMetrics;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.wifi.flags.FeatureFlags;
 
@@ -59,6 +60,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     private static final long TEST_BSSID = 0x123456L;
     private static final ANQPNetworkKey TEST_ANQP_KEY =
             new ANQPNetworkKey("TestSSID", TEST_BSSID, 0, 0);
+    private static final int TEST_RSSI = -60;
 
     private static final List<Constants.ANQPElementType> R1_ANQP_WITHOUT_RC = Arrays.asList(
             Constants.ANQPElementType.ANQPVenueName,
@@ -117,7 +119,8 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     FeatureFlags mFeatureFlags;
     @Mock
     DeviceConfigFacade mDeviceConfigFacade;
-
+    @Mock
+    WifiMetrics mWifiMetrics;
 
     /**
      * Test setup.
@@ -128,12 +131,22 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         mAlarmManager = new TestAlarmManager();
         when(mWifiInjector.getDeviceConfigFacade()).thenReturn(mDeviceConfigFacade);
         when(mWifiInjector.getAlarmManager()).thenReturn(mAlarmManager.getAlarmManager());
+        when(mWifiInjector.getWifiMetrics()).thenReturn(mWifiMetrics);
         when(mDeviceConfigFacade.getFeatureFlags()).thenReturn(mFeatureFlags);
         when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(false);
+        createManager(1);
+    }
+
+    private void createManager(int maxInFlightRequests) {
+        when(mDeviceConfigFacade.getAnqpRequestMaxInFlight()).thenReturn(maxInFlightRequests);
         mManager = new ANQPRequestManager(mHandler, mClock, mWifiInjector,
                 new Handler(mLooper.getLooper()));
     }
 
+    private static ANQPNetworkKey createKey(long bssid) {
+        return ANQPNetworkKey.buildKey("TestSSID", bssid, 0, 0);
+    }
+
     /**
      * Verify that the expected set of ANQP elements are being requested when the targeted AP
      * doesn't provide roaming consortium OIs and doesn't support Hotspot 2.0 Release 2 ANQP
@@ -145,7 +158,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1ANQPElementsWithoutRC() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
     }
 
     /**
@@ -159,7 +172,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1ANQPElementsWithRC() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITH_RC)).thenReturn(true);
         mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R1);
+                NetworkDetail.HSRelease.R1, TEST_RSSI);
     }
 
     /**
@@ -173,7 +186,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1R2ANQPElementsWithoutRC() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1R2_ANQP_WITHOUT_RC)).thenReturn(true);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R2));
+                NetworkDetail.HSRelease.R2, TEST_RSSI));
     }
 
     /**
@@ -187,7 +200,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1R2ANQPElementsWithRC() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC)).thenReturn(true);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R2));
+                NetworkDetail.HSRelease.R2, TEST_RSSI));
     }
 
     /**
@@ -203,14 +216,14 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
 
         // Attempt another request will fail while one is still pending and hold off time is not up
         // yet.
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime + 1);
         assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         verify(mHandler, never()).requestANQP(anyLong(), anyObject());
         reset(mHandler);
 
@@ -219,7 +232,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mClock.getElapsedSinceBootMillis())
                 .thenReturn(startTime + ANQPRequestManager.BASE_HOLDOFF_TIME_MILLISECONDS);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
     }
 
     /**
@@ -235,14 +248,14 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(false);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime);
         assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
 
         // Verify that new request is not being held off after previous send failure.
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
     }
 
     /**
@@ -258,7 +271,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
 
         // Request completed with success. Verify that the key associated with the request
@@ -268,7 +281,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime + 1);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
     }
 
     /**
@@ -285,7 +298,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
 
         // Request completed with failure.  Verify that the key associated with the request
@@ -295,7 +308,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         // Attempt another request will fail since the hold off time is not up yet.
         when(mClock.getElapsedSinceBootMillis()).thenReturn(startTime + 1);
         assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         verify(mHandler, never()).requestANQP(anyLong(), anyObject());
 
         // Attempt another request will succeed after the hold off time is up.
@@ -303,7 +316,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mClock.getElapsedSinceBootMillis())
                 .thenReturn(startTime + ANQPRequestManager.BASE_HOLDOFF_TIME_MILLISECONDS);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
     }
 
     /**
@@ -320,7 +333,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
 
         // Sending the request with the hold off time based on the current hold off count.
@@ -331,7 +344,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
             // Request will fail before the hold off time is up.
             when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTime);
             assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                    NetworkDetail.HSRelease.R1));
+                    NetworkDetail.HSRelease.R1, TEST_RSSI));
             verify(mHandler, never()).requestANQP(anyLong(), anyObject());
 
             // Request will succeed when the hold off time is up.
@@ -339,7 +352,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
             when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
             when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTime);
             assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                    NetworkDetail.HSRelease.R1));
+                    NetworkDetail.HSRelease.R1, TEST_RSSI));
             reset(mHandler);
         }
 
@@ -349,14 +362,14 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
 
         when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTime);
         assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         verify(mHandler, never()).requestANQP(anyLong(), anyObject());
 
         currentTime += 1;
         when(mHandler.requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC)).thenReturn(true);
         when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTime);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R1));
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
         reset(mHandler);
     }
 
@@ -371,7 +384,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1R2ANQPElementsWithoutRCForR3() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1R2_ANQP_WITHOUT_RC)).thenReturn(true);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
-                NetworkDetail.HSRelease.R3));
+                NetworkDetail.HSRelease.R3, TEST_RSSI));
     }
 
     /**
@@ -385,7 +398,7 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
     public void requestR1R2ANQPElementsWithRCForR3() throws Exception {
         when(mHandler.requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC)).thenReturn(true);
         assertTrue(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R3));
+                NetworkDetail.HSRelease.R3, TEST_RSSI));
     }
 
     /**
@@ -404,11 +417,11 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
         when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
         mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R3);
-        mManager.requestANQPElements(TEST_BSSID + 1, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R3);
-        mManager.requestANQPElements(TEST_BSSID + 2, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R3);
+                NetworkDetail.HSRelease.R3, TEST_RSSI);
+        mManager.requestANQPElements(TEST_BSSID + 1, createKey(TEST_BSSID + 1), true,
+                NetworkDetail.HSRelease.R3, TEST_RSSI);
+        mManager.requestANQPElements(TEST_BSSID + 2, createKey(TEST_BSSID + 2), true,
+                NetworkDetail.HSRelease.R3, TEST_RSSI);
         verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
         verify(mHandler).requestANQP(anyLong(), any());
         // Request completed, should process next one
@@ -423,8 +436,99 @@ public class ANQPRequestManagerTest extends WifiBaseTest {
         verify(mHandler, times(3)).requestANQP(anyLong(), any());
         mManager.onRequestCompleted(TEST_BSSID + 2, true);
         // No more request in the queue, should process new request immediately
-        mManager.requestANQPElements(TEST_BSSID + 3, TEST_ANQP_KEY, true,
-                NetworkDetail.HSRelease.R3);
+        mManager.requestANQPElements(TEST_BSSID + 3, createKey(TEST_BSSID + 3), true,
+                NetworkDetail.HSRelease.R3, TEST_RSSI);
         verify(mHandler).requestANQP(TEST_BSSID + 3, R1R2_ANQP_WITH_RC);
     }
+
+    /**
+     * Verify that up to the configured number of requests wait for a response at the same time,
+     * and that the queued requests to the strongest APs are sent first.
+     */
+    @Test
+    public void testWaitResponseWindowSendsStrongestFirst() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        createManager(2);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mManager.requestANQPElements(TEST_BSSID + i, createKey(TEST_BSSID + i),
+                    true, NetworkDetail.HSRelease.R3, -80 + 10 * i));
+        }
+        verify(mHandler).requestANQP(TEST_BSSID, R1R2_ANQP_WITH_RC);
+        verify(mHandler).requestANQP(TEST_BSSID + 1, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(2)).requestANQP(anyLong(), any());
+
+        // A completed request frees a slot for the strongest queued AP
+        assertEquals(createKey(TEST_BSSID + 1), mManager.onRequestCompleted(TEST_BSSID + 1, true));
+        verify(mHandler).requestANQP(TEST_BSSID + 3, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(3)).requestANQP(anyLong(), any());
+
+        // Responses to requests which weren't sent by the manager don't free a slot
+        mManager.onRequestCompleted(TEST_BSSID + 10, true);
+        verify(mHandler, times(3)).requestANQP(anyLong(), any());
+        mManager.onRequestCompleted(TEST_BSSID, false);
+        verify(mHandler).requestANQP(TEST_BSSID + 2, R1R2_ANQP_WITH_RC);
+        verify(mHandler, times(4)).requestANQP(anyLong(), any());
+    }
+
+    /**
+     * Verify that a single request is sent for the APs sharing a network key, through the
+     * strongest AP.
+     */
+    @Test
+    public void testWaitResponseDeduplicatesByNetworkKey() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        ANQPNetworkKey essKey = ANQPNetworkKey.buildKey("TestSSID", 0, 0, 1);
+        mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
+                NetworkDetail.HSRelease.R1, TEST_RSSI);
+        // Queued behind the first request
+        mManager.requestANQPElements(TEST_BSSID + 1, essKey, false,
+                NetworkDetail.HSRelease.R1, -70);
+        mManager.requestANQPElements(TEST_BSSID + 2, essKey, false,
+                NetworkDetail.HSRelease.R1, -50);
+        mManager.requestANQPElements(TEST_BSSID + 3, essKey, false,
+                NetworkDetail.HSRelease.R1, -65);
+
+        mManager.onRequestCompleted(TEST_BSSID, true);
+        verify(mHandler).requestANQP(TEST_BSSID + 2, R1_ANQP_WITHOUT_RC);
+        // The network is being queried through another AP
+        assertTrue(mManager.requestANQPElements(TEST_BSSID + 4, essKey, false,
+                NetworkDetail.HSRelease.R1, -40));
+        assertEquals(essKey, mManager.onRequestCompleted(TEST_BSSID + 2, true));
+        verify(mHandler, times(2)).requestANQP(anyLong(), any());
+    }
+
+    /**
+     * Verify that the requests which time out free their slot, keep holding off the AP, and that
+     * the queue wait, latency and time outs are logged.
+     */
+    @Test
+    public void testWaitResponseTimeoutAndMetrics() {
+        when(mFeatureFlags.anqpRequestWaitForResponse()).thenReturn(true);
+        when(mHandler.requestANQP(anyLong(), any())).thenReturn(true);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
+                NetworkDetail.HSRelease.R1, TEST_RSSI);
+        mManager.requestANQPElements(TEST_BSSID + 1, createKey(TEST_BSSID + 1), false,
+                NetworkDetail.HSRelease.R1, TEST_RSSI);
+        verify(mWifiMetrics).logAnqpRequestQueueWait(0);
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(2000L);
+        mAlarmManager.dispatch(ANQP_REQUEST_ALARM_TAG);
+        mLooper.dispatchAll();
+        verify(mWifiMetrics).incrementAnqpRequestTimeouts();
+        verify(mWifiMetrics).logAnqpRequestQueueWait(2000);
+        verify(mHandler).requestANQP(TEST_BSSID + 1, R1_ANQP_WITHOUT_RC);
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(2500L);
+        mManager.onRequestCompleted(TEST_BSSID + 1, true);
+        verify(mWifiMetrics).logAnqpRequestLatency(500);
+        assertFalse(mAlarmManager.isPending(ANQP_REQUEST_ALARM_TAG));
+
+        // The AP which didn't answer is still held off
+        assertFalse(mManager.requestANQPElements(TEST_BSSID, TEST_ANQP_KEY, false,
+                NetworkDetail.HSRelease.R1, TEST_RSSI));
+        verify(mHandler).requestANQP(TEST_BSSID, R1_ANQP_WITHOUT_RC);
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.util.Xml;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.wifi.Clock;
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiConfigStore;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
+import com.android.server.wifi.hotspot2.anqp.Constants;
+import com.android.server.wifi.util.WifiConfigStoreEncryptionUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.hotspot2.AnqpCacheStoreData}.
+ */
+@SmallTest
+public class AnqpCacheStoreDataTest extends WifiBaseTest {
+    private static final ANQPNetworkKey TEST_KEY1 =
+            ANQPNetworkKey.buildKey("test1", 0x123456789abcL, 0, 0);
+    private static final ANQPNetworkKey TEST_KEY2 =
+            ANQPNetworkKey.buildKey("test2", 0x123456789abcL, 0x1234L, 7);
+    // Domain Name element payload for "test.com".
+    private static final byte[] TEST_DOMAIN_NAME_PAYLOAD =
+            {8, 't', 'e', 's', 't', '.', 'c', 'o', 'm'};
+    // Roaming Consortium element payload for the OI 0x112233.
+    private static final byte[] TEST_ROAMING_CONSORTIUM_PAYLOAD = {3, 0x11, 0x22, 0x33};
+    private static final long TEST_WALL_CLOCK_MILLIS = 1_700_000_000_000L;
+
+    @Mock AnqpCacheStoreData.DataSource mDataSource;
+    @Mock Clock mClock;
+    AnqpCacheStoreData mStoreData;
+
+    /** Sets up test. */
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS);
+        mStoreData = new AnqpCacheStoreData(mDataSource, mClock);
+    }
+
+    private byte[] serializeData() throws Exception {
+        final XmlSerializer out = new FastXmlSerializer();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        out.setOutput(outputStream, StandardCharsets.UTF_8.name());
+        mStoreData.serializeData(out, mock(WifiConfigStoreEncryptionUtil.class));
+        out.flush();
+        return outputStream.toByteArray();
+    }
+
+    private void deserializeData(byte[] data) throws Exception {
+        final XmlPullParser in = Xml.newPullParser();
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+        in.setInput(inputStream, StandardCharsets.UTF_8.name());
+        mStoreData.deserializeData(in, in.getDepth(),
+                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION,
+                mock(WifiConfigStoreEncryptionUtil.class));
+    }
+
+    private Map<ANQPNetworkKey, ANQPData> createEntries() throws Exception {
+        Map<Constants.ANQPElementType, ANQPElement> elements1 = new HashMap<>();
+        elements1.put(Constants.ANQPElementType.ANQPDomName, ANQPParser.parsePayload(
+                Constants.ANQPElementType.ANQPDomName, TEST_DOMAIN_NAME_PAYLOAD));
+        Map<Constants.ANQPElementType, ANQPElement> elements2 = new HashMap<>(elements1);
+        elements2.put(Constants.ANQPElementType.ANQPRoamingConsortium, ANQPParser.parsePayload(
+                Constants.ANQPElementType.ANQPRoamingConsortium,
+                TEST_ROAMING_CONSORTIUM_PAYLOAD));
+        Map<ANQPNetworkKey, ANQPData> entries = new LinkedHashMap<>();
+        entries.put(TEST_KEY1, new ANQPData(mClock, elements1));
+        entries.put(TEST_KEY2, new ANQPData(mClock, elements2, 60_000L));
+        return entries;
+    }
+
+    /**
+     * Verify that the entries read back have the same keys, elements and remaining lifetimes, in
+     * the same order, even though the time since boot changed across the reboot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void serializeAndDeserializeEntries() throws Exception {
+        Map<ANQPNetworkKey, ANQPData> entries = createEntries();
+        when(mDataSource.getEntriesToSerialize()).thenReturn(entries);
+        byte[] data = serializeData();
+
+        // Reboot ten seconds later.
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(5_000L);
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS + 10_000L);
+        deserializeData(data);
+
+        ArgumentCaptor<Map<ANQPNetworkKey, ANQPData>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(mDataSource).setDeserializedEntries(captor.capture());
+        Map<ANQPNetworkKey, ANQPData> restored = captor.getValue();
+        assertEquals(Arrays.asList(TEST_KEY1, TEST_KEY2), new ArrayList<>(restored.keySet()));
+        for (ANQPNetworkKey key : entries.keySet()) {
+            assertEquals(entries.get(key).getElements(), restored.get(key).getElements());
+        }
+        assertEquals(5_000L + ANQPData.DATA_LIFETIME_MILLISECONDS - 10_000L,
+                restored.get(TEST_KEY1).getExpiryTime());
+        assertEquals(5_000L + 60_000L - 10_000L, restored.get(TEST_KEY2).getExpiryTime());
+        assertArrayEquals(TEST_DOMAIN_NAME_PAYLOAD, restored.get(TEST_KEY1).getElements()
+                .get(Constants.ANQPElementType.ANQPDomName).getPayload());
+    }
+
+    /**
+     * Verify that the entries which expired while the device was off are dropped, and that the
+     * lifetime of the entries is capped in case the wall clock was set back.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deserializeDropsExpiredEntries() throws Exception {
+        when(mDataSource.getEntriesToSerialize()).thenReturn(createEntries());
+        byte[] data = serializeData();
+
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS + 60_000L);
+        deserializeData(data);
+        ArgumentCaptor<Map<ANQPNetworkKey, ANQPData>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(mDataSource).setDeserializedEntries(captor.capture());
+        assertEquals(Arrays.asList(TEST_KEY1), new ArrayList<>(captor.getValue().keySet()));
+
+        when(mClock.getWallClockMillis()).thenReturn(TEST_WALL_CLOCK_MILLIS - 60_000L);
+        deserializeData(data);
+        verify(mDataSource, times(2))
+                .setDeserializedEntries(captor.capture());
+        assertEquals(ANQPData.DATA_LIFETIME_MILLISECONDS,
+                captor.getValue().get(TEST_KEY1).getExpiryTime());
+    }
+
+    /**
+     * Verify that deserialization of an empty store data doesn't cause any exception and doesn't
+     * restore any entry.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void deserializeEmptyStoreData() throws Exception {
+        deserializeData(new byte[0]);
+        ArgumentCaptor<Map<ANQPNetworkKey, ANQPData>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(mDataSource).setDeserializedEntries(captor.capture());
+        assertTrue(captor.getValue().isEmpty());
+
+        // Missing section in the store file.
+        mStoreData.deserializeData(null, 0,
+                WifiConfigStore.ENCRYPT_CREDENTIALS_CONFIG_STORE_DATA_VERSION, null);
+        verify(mDataSource, times(1)).setDeserializedEntries(any());
+    }
+
+    /**
+     * Verify that the ANQP cache is written to the shared general store file.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getStoreFileId() throws Exception {
+        assertEquals(WifiConfigStore.STORE_FILE_SHARED_GENERAL, mStoreData.getStoreFileId());
+    }
+}
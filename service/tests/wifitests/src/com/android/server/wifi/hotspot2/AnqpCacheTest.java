@@ -16,10 +16,13 @@
 
 package com.android.server.wifi.hotspot2;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -27,7 +30,9 @@ import androidx.test.filters.SmallTest;
 
 import com.android.server.wifi.Clock;
 import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.WifiMetrics;
 import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.ANQPParser;
 import com.android.server.wifi.hotspot2.anqp.Constants;
 import com.android.server.wifi.hotspot2.anqp.I18Name;
 import com.android.server.wifi.hotspot2.anqp.VenueNameElement;
@@ -39,6 +44,7 @@ import org.mockito.Mock;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -62,6 +68,7 @@ public class AnqpCacheTest extends WifiBaseTest {
     private static final String TEST_VENUE_URL3 = "https://support.google.com/";
 
     @Mock Clock mClock;
+    @Mock WifiMetrics mWifiMetrics;
     AnqpCache mCache;
 
     /**
@@ -72,7 +79,7 @@ public class AnqpCacheTest extends WifiBaseTest {
         initMocks(this);
         // Returning the initial timestamp.
         when(mClock.getElapsedSinceBootMillis()).thenReturn(0L);
-        mCache = new AnqpCache(mClock);
+        mCache = new AnqpCache(mClock, mWifiMetrics);
     }
 
     /**
@@ -178,4 +185,132 @@ public class AnqpCacheTest extends WifiBaseTest {
         assertTrue(data.getElements().get(Constants.ANQPElementType.ANQPVenueUrl)
                 .equals(venueUrlElement));
     }
+
+    /**
+     * Create ANQP elements with a Domain Name element parsed from a payload of the given number
+     * of domains, each taking 100 bytes.
+     */
+    private static Map<Constants.ANQPElementType, ANQPElement> createAnqpElementsWithPayload(
+            int numDomains) throws Exception {
+        byte[] payload = new byte[numDomains * 100];
+        for (int i = 0; i < numDomains; i++) {
+            payload[i * 100] = 99;
+            Arrays.fill(payload, i * 100 + 1, (i + 1) * 100, (byte) 'a');
+        }
+        Map<Constants.ANQPElementType, ANQPElement> anqpElements = new HashMap<>();
+        anqpElements.put(Constants.ANQPElementType.ANQPDomName,
+                ANQPParser.parsePayload(Constants.ANQPElementType.ANQPDomName, payload));
+        return anqpElements;
+    }
+
+    private static ANQPNetworkKey createKey(int index) {
+        return new ANQPNetworkKey("test" + index, 0L, 0L, 1);
+    }
+
+    /**
+     * Verify that the least recently used entry is evicted when the cache is full.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntryWhenFull() throws Exception {
+        for (int i = 0; i < AnqpCache.CACHE_MAX_ENTRIES; i++) {
+            mCache.addEntry(createKey(i), null);
+        }
+        // Use the oldest entry, so that the second oldest is evicted instead.
+        assertNotNull(mCache.getEntry(createKey(0)));
+
+        mCache.addEntry(createKey(AnqpCache.CACHE_MAX_ENTRIES), null);
+        assertNull(mCache.getEntry(createKey(1)));
+        assertNotNull(mCache.getEntry(createKey(0)));
+        assertNotNull(mCache.getEntry(createKey(2)));
+        assertNotNull(mCache.getEntry(createKey(AnqpCache.CACHE_MAX_ENTRIES)));
+        verify(mWifiMetrics).incrementAnqpCacheEvictions();
+    }
+
+    /**
+     * Verify that the least recently used entries are evicted when the payloads of the cached
+     * elements exceed the byte bound.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void evictLeastRecentlyUsedEntryWhenPayloadsTooLarge() throws Exception {
+        int numDomains = AnqpCache.CACHE_MAX_PAYLOAD_BYTES / 100 / 2 + 1;
+        mCache.addEntry(createKey(0), createAnqpElementsWithPayload(numDomains));
+        mCache.addEntry(createKey(1), null);
+        mCache.addEntry(createKey(2), createAnqpElementsWithPayload(numDomains));
+
+        assertNull(mCache.getEntry(createKey(0)));
+        assertNotNull(mCache.getEntry(createKey(1)));
+        assertNotNull(mCache.getEntry(createKey(2)));
+        verify(mWifiMetrics).incrementAnqpCacheEvictions();
+    }
+
+    /**
+     * Verify that an expired entry is not returned even before the cache is swept, and that the
+     * hits and misses are counted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getEntryDropsExpiredEntryAndCountsHitsAndMisses() throws Exception {
+        mCache.addEntry(ENTRY_KEY, null);
+        assertNotNull(mCache.getEntry(ENTRY_KEY));
+
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(ANQPData.DATA_LIFETIME_MILLISECONDS);
+        assertNull(mCache.getEntry(ENTRY_KEY));
+        assertNull(mCache.getEntry(ENTRY_KEY));
+        verify(mWifiMetrics).incrementAnqpCacheHits();
+        verify(mWifiMetrics, times(2)).incrementAnqpCacheMisses();
+    }
+
+    /**
+     * Verify that only the most recently used entries parsed from payloads are persisted, from
+     * the least to the most recently used, up to the persisted byte bound.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void getEntriesToSerialize() throws Exception {
+        int numDomains = AnqpCache.PERSISTED_MAX_PAYLOAD_BYTES / 100 / 2;
+        mCache.addEntry(createKey(0), createAnqpElementsWithPayload(numDomains));
+        mCache.addEntry(createKey(1), createAnqpElementsWithPayload(numDomains));
+        mCache.addEntry(createKey(2), createAnqpElementsWithPayload(numDomains));
+        // Entry without payloads, which can't be persisted.
+        mCache.addEntry(createKey(3), null);
+        mCache.getEntry(createKey(1));
+        assertTrue(mCache.hasNewDataToSerialize());
+
+        Map<ANQPNetworkKey, ANQPData> entries = mCache.getEntriesToSerialize();
+        assertEquals(Arrays.asList(createKey(2), createKey(1)),
+                new ArrayList<>(entries.keySet()));
+        assertFalse(mCache.hasNewDataToSerialize());
+
+        mCache.flush();
+        assertTrue(mCache.hasNewDataToSerialize());
+        assertTrue(mCache.getEntriesToSerialize().isEmpty());
+    }
+
+    /**
+     * Verify that the restored entries don't replace the entries fetched since boot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void setDeserializedEntriesKeepsNewerEntries() throws Exception {
+        Map<Constants.ANQPElementType, ANQPElement> anqpElements =
+                createAnqpElementsWithPayload(1);
+        mCache.addEntry(createKey(0), anqpElements);
+        mCache.getEntriesToSerialize();
+
+        Map<ANQPNetworkKey, ANQPData> entries = new HashMap<>();
+        entries.put(createKey(0), new ANQPData(mClock, null));
+        entries.put(createKey(1), new ANQPData(mClock, anqpElements));
+        mCache.setDeserializedEntries(entries);
+
+        assertEquals(anqpElements, mCache.getEntry(createKey(0)).getElements());
+        assertEquals(anqpElements, mCache.getEntry(createKey(1)).getElements());
+        assertFalse(mCache.hasNewDataToSerialize());
+    }
 }
@@ -105,6 +105,8 @@ import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
 import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
 import com.android.server.wifi.hotspot2.anqp.HSOsuProvidersElement;
 import com.android.server.wifi.hotspot2.anqp.I18Name;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
 import com.android.server.wifi.hotspot2.anqp.OsuProviderInfo;
 import com.android.server.wifi.hotspot2.anqp.VenueNameElement;
 import com.android.server.wifi.hotspot2.anqp.VenueUrlElement;
@@ -251,7 +253,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     public void setUp() throws Exception {
         initMocks(this);
         when(mWifiInjector.getDeviceConfigFacade()).thenReturn(mDeviceConfigFacade);
-        when(mObjectFactory.makeAnqpCache(mClock)).thenReturn(mAnqpCache);
+        when(mObjectFactory.makeAnqpCache(mClock, mWifiMetrics)).thenReturn(mAnqpCache);
         when(mObjectFactory.makeANQPRequestManager(any(), eq(mClock), any(), any()))
                 .thenReturn(mAnqpRequestManager);
         when(mObjectFactory.makeOsuNetworkConnection(any(Context.class)))
@@ -459,6 +461,20 @@ public class PasspointManagerTest extends WifiBaseTest {
         return provider;
     }
 
+    /**
+     * Helper function for creating the ANQP data of an AP serving the realms of the test
+     * providers, so that they are all matched against it.
+     *
+     * @return {@link ANQPData}
+     */
+    private ANQPData createTestAnqpData() {
+        Map<ANQPElementType, ANQPElement> anqpElementMap = new HashMap<>();
+        anqpElementMap.put(ANQPElementType.ANQPNAIRealm, new NAIRealmElement(Arrays.asList(
+                new NAIRealmData(Arrays.asList(TEST_REALM, TEST_REALM2, TEST_REALM3),
+                        new ArrayList<>()))));
+        return new ANQPData(mClock, anqpElementMap);
+    }
+
     /**
      * Helper function for creating a ScanResult for testing.
      *
@@ -471,6 +487,7 @@ public class PasspointManagerTest extends WifiBaseTest {
         scanResult.hessid = TEST_HESSID;
         scanResult.anqpDomainId = TEST_ANQP_DOMAIN_ID;
         scanResult.flags = ScanResult.FLAG_PASSPOINT_NETWORK;
+        scanResult.level = TEST_RSSI;
         return scanResult;
     }
 
@@ -1078,7 +1095,7 @@ public class PasspointManagerTest extends WifiBaseTest {
             // Verify that a request for ANQP elements is initiated.
             verify(mAnqpRequestManager).requestANQPElements(eq(TEST_BSSID),
                     any(ANQPNetworkKey.class),
-                    anyBoolean(), any(NetworkDetail.HSRelease.class));
+                    anyBoolean(), any(NetworkDetail.HSRelease.class), eq(TEST_RSSI));
         } finally {
             session.finishMocking();
         }
@@ -1093,7 +1110,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     public void matchProviderAsHomeProvider() throws Exception {
         PasspointProvider provider =
                 addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
-        ANQPData entry = new ANQPData(mClock, null);
+        ANQPData entry = createTestAnqpData();
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
         when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
@@ -1114,7 +1131,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     public void matchProviderAsRoamingProvider() throws Exception {
         PasspointProvider provider =
                 addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
-        ANQPData entry = new ANQPData(mClock, null);
+        ANQPData entry = createTestAnqpData();
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
         when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
@@ -1135,7 +1152,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     public void matchProviderWithNoMatch() throws Exception {
         PasspointProvider provider =
                 addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
-        ANQPData entry = new ANQPData(mClock, null);
+        ANQPData entry = createTestAnqpData();
 
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
         when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
@@ -1197,7 +1214,7 @@ public class PasspointManagerTest extends WifiBaseTest {
             when(provider.tryUpdateCarrierId()).thenReturn(true);
             reset(mWifiConfigManager);
 
-            ANQPData entry = new ANQPData(mClock, null);
+            ANQPData entry = createTestAnqpData();
             InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
             vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID2;
 
@@ -1236,7 +1253,7 @@ public class PasspointManagerTest extends WifiBaseTest {
                     TEST_FQDN + 2, TEST_FRIENDLY_NAME, SECURITY_EAP);
             PasspointProvider providerNone = addTestProvider(TEST_FQDN + 2, TEST_FRIENDLY_NAME,
                     TEST_PACKAGE, wifiConfiguration, false, null, false);
-            ANQPData entry = new ANQPData(mClock, null);
+            ANQPData entry = createTestAnqpData();
             InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
             vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID2;
 
@@ -2366,7 +2383,7 @@ public class PasspointManagerTest extends WifiBaseTest {
                     TEST_FQDN + 2, TEST_FRIENDLY_NAME, SECURITY_EAP);
             PasspointProvider providerNone = addTestProvider(TEST_FQDN + 2, TEST_FRIENDLY_NAME,
                     TEST_PACKAGE, wifiConfiguration, false, null, false);
-            ANQPData entry = new ANQPData(mClock, null);
+            ANQPData entry = createTestAnqpData();
             InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
             vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID;
 
@@ -2416,7 +2433,7 @@ public class PasspointManagerTest extends WifiBaseTest {
                     TEST_FQDN + 2, TEST_FRIENDLY_NAME, SECURITY_EAP);
             PasspointProvider providerNone = addTestProvider(TEST_FQDN + 2, TEST_FRIENDLY_NAME,
                     TEST_PACKAGE, wifiConfiguration, false, null, false);
-            ANQPData entry = new ANQPData(mClock, null);
+            ANQPData entry = createTestAnqpData();
             InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
             vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID;
 
@@ -2468,7 +2485,7 @@ public class PasspointManagerTest extends WifiBaseTest {
                     TEST_FQDN + 2, TEST_FRIENDLY_NAME, SECURITY_EAP);
             PasspointProvider providerNone = addTestProvider(TEST_FQDN + 2, TEST_FRIENDLY_NAME,
                     TEST_PACKAGE, wifiConfiguration, false, null, false);
-            ANQPData entry = new ANQPData(mClock, null);
+            ANQPData entry = createTestAnqpData();
             InformationElementUtil.Vsa vsa = new InformationElementUtil.Vsa();
             vsa.anqpDomainID = TEST_ANQP_DOMAIN_ID;
 
@@ -2638,6 +2655,42 @@ public class PasspointManagerTest extends WifiBaseTest {
         assertEquals(0, testResults.size());
     }
 
+    /**
+     * Verify that the ScanResults(Access Points) matching each of several passpoint
+     * configurations are returned in the order of the configurations, and that the ANQP cache
+     * is only looked up once per ScanResult.
+     */
+    @Test
+    public void getMatchingScanResultsForConfigsTest() {
+        PasspointConfiguration homeConfig = mock(PasspointConfiguration.class);
+        PasspointConfiguration noneConfig = mock(PasspointConfiguration.class);
+        PasspointProvider homeProvider = mock(PasspointProvider.class);
+        PasspointProvider noneProvider = mock(PasspointProvider.class);
+        when(mObjectFactory.makePasspointProvider(homeConfig, null,
+                mWifiCarrierInfoManager, 0, 0, null, false, mClock))
+                .thenReturn(homeProvider);
+        when(mObjectFactory.makePasspointProvider(noneConfig, null,
+                mWifiCarrierInfoManager, 0, 0, null, false, mClock))
+                .thenReturn(noneProvider);
+        ScanResult scanResult1 = createTestScanResult();
+        ScanResult scanResult2 = createTestScanResult();
+        List<ScanResult> scanResults = Arrays.asList(scanResult1, null, scanResult2);
+        when(homeProvider.match(anyMap(), any(), eq(scanResult1)))
+                .thenReturn(PasspointMatch.HomeProvider);
+        when(homeProvider.match(anyMap(), any(), eq(scanResult2)))
+                .thenReturn(PasspointMatch.None);
+        when(noneProvider.match(anyMap(), any(), any(ScanResult.class)))
+                .thenReturn(PasspointMatch.None);
+
+        List<List<ScanResult>> testResults = mManager.getMatchingScanResultsForConfigs(
+                Arrays.asList(noneConfig, homeConfig), scanResults);
+
+        assertEquals(2, testResults.size());
+        assertTrue(testResults.get(0).isEmpty());
+        assertEquals(Collections.singletonList(scanResult1), testResults.get(1));
+        verify(mAnqpCache, times(2)).getEntry(any(ANQPNetworkKey.class));
+    }
+
     /**
      * Verify that no ANQP queries are requested when not allowed (i.e. by WifiMetrics) when
      * there is a cache miss.
@@ -2647,7 +2700,8 @@ public class PasspointManagerTest extends WifiBaseTest {
         reset(mWifiConfigManager);
         when(mAnqpCache.getEntry(TEST_ANQP_KEY2)).thenReturn(null);
         verify(mAnqpRequestManager, never()).requestANQPElements(any(long.class),
-                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class));
+                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class),
+                anyInt());
     }
 
     /**
@@ -3141,7 +3195,7 @@ public class PasspointManagerTest extends WifiBaseTest {
     public void testPasspointEnableDisable() throws Exception {
         PasspointProvider provider =
                 addTestProvider(TEST_FQDN, TEST_FRIENDLY_NAME, TEST_PACKAGE, false, null, false);
-        ANQPData entry = new ANQPData(mClock, null);
+        ANQPData entry = createTestAnqpData();
 
         when(provider.match(anyMap(), any(RoamingConsortium.class), any(ScanResult.class)))
                 .thenReturn(PasspointMatch.HomeProvider);
@@ -3156,7 +3210,8 @@ public class PasspointManagerTest extends WifiBaseTest {
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(null);
         assertTrue(mManager.getAllMatchedProviders(createTestScanResult()).isEmpty());
         verify(mAnqpRequestManager, never()).requestANQPElements(any(long.class),
-                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class));
+                any(ANQPNetworkKey.class), any(boolean.class), any(NetworkDetail.HSRelease.class),
+                anyInt());
 
         // Enable the Wifi Passpoint and expect the matchProvider to return matched result.
         when(mAnqpCache.getEntry(TEST_ANQP_KEY)).thenReturn(entry);
@@ -3173,7 +3228,7 @@ public class PasspointManagerTest extends WifiBaseTest {
         // ANQP cache misses, still no result.
         assertTrue(mManager.getAllMatchedProviders(createTestScanResult()).isEmpty());
         verify(mAnqpRequestManager).requestANQPElements(eq(TEST_BSSID),
-                any(ANQPNetworkKey.class), anyBoolean(), any());
+                any(ANQPNetworkKey.class), anyBoolean(), any(), anyInt());
     }
 }
 
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.hotspot2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.net.wifi.hotspot2.PasspointConfiguration;
+import android.net.wifi.hotspot2.pps.Credential;
+import android.net.wifi.hotspot2.pps.HomeSp;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.hotspot2.anqp.ANQPElement;
+import com.android.server.wifi.hotspot2.anqp.Constants.ANQPElementType;
+import com.android.server.wifi.hotspot2.anqp.DomainNameElement;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmData;
+import com.android.server.wifi.hotspot2.anqp.NAIRealmElement;
+import com.android.server.wifi.hotspot2.anqp.RoamingConsortiumElement;
+import com.android.server.wifi.util.InformationElementUtil.RoamingConsortium;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link PasspointProviderIndex}.
+ */
+@SmallTest
+public class PasspointProviderIndexTest extends WifiBaseTest {
+    private static final String TEST_FQDN = "test.com";
+    private static final String TEST_FQDN2 = "other.test2.com";
+    private static final String TEST_OTHER_HOME_PARTNER = "partner.com";
+    private static final String TEST_REALM = "realm.test.com";
+    private static final long TEST_RCOI = 0x1234L;
+    private static final long TEST_MATCH_ANY_OI = 0x5678L;
+
+    private static PasspointProvider createProvider(String fqdn, String realm,
+            String[] otherHomePartners, long[] rcois, long[] matchAnyOis, boolean simCredential) {
+        PasspointConfiguration config = new PasspointConfiguration();
+        HomeSp homeSp = new HomeSp();
+        homeSp.setFqdn(fqdn);
+        homeSp.setOtherHomePartners(otherHomePartners);
+        homeSp.setRoamingConsortiumOis(rcois);
+        homeSp.setMatchAnyOis(matchAnyOis);
+        config.setHomeSp(homeSp);
+        Credential credential = new Credential();
+        credential.setRealm(realm);
+        if (simCredential) {
+            credential.setSimCredential(new Credential.SimCredential());
+        } else {
+            credential.setUserCredential(new Credential.UserCredential());
+        }
+        config.setCredential(credential);
+        PasspointProvider provider = mock(PasspointProvider.class);
+        when(provider.getConfig()).thenReturn(config);
+        return provider;
+    }
+
+    private static PasspointProvider createProvider(String fqdn, String realm) {
+        return createProvider(fqdn, realm, null, null, null, false);
+    }
+
+    private static Map<ANQPElementType, ANQPElement> createAnqpElements(List<String> domains,
+            List<String> realms, List<Long> ois) {
+        Map<ANQPElementType, ANQPElement> anqpElements = new HashMap<>();
+        if (domains != null) {
+            anqpElements.put(ANQPElementType.ANQPDomName, new DomainNameElement(domains));
+        }
+        if (realms != null) {
+            anqpElements.put(ANQPElementType.ANQPNAIRealm, new NAIRealmElement(
+                    Collections.singletonList(new NAIRealmData(realms, new ArrayList<>()))));
+        }
+        if (ois != null) {
+            anqpElements.put(ANQPElementType.ANQPRoamingConsortium,
+                    new RoamingConsortiumElement(ois));
+        }
+        return anqpElements;
+    }
+
+    /**
+     * Verify the providers whose FQDN or other home partner is a parent domain of an ANQP domain
+     * name are candidates, ignoring the case and the trailing dot.
+     */
+    @Test
+    public void testCandidatesByDomainName() throws Exception {
+        PasspointProvider provider1 = createProvider(TEST_FQDN, null);
+        PasspointProvider provider2 = createProvider(TEST_FQDN2, null);
+        PasspointProvider provider3 = createProvider("unrelated.com", null,
+                new String[] {TEST_OTHER_HOME_PARTNER}, null, null, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(
+                Arrays.asList(provider1, provider2, provider3));
+
+        assertEquals(Arrays.asList(provider1), index.getCandidates(
+                createAnqpElements(Arrays.asList("Hotspot.TEST.com."), null, null), null));
+        assertEquals(Arrays.asList(provider2), index.getCandidates(
+                createAnqpElements(Arrays.asList("other.test2.com"), null, null), null));
+        assertEquals(Arrays.asList(provider3), index.getCandidates(
+                createAnqpElements(Arrays.asList("a.b.partner.com"), null, null), null));
+        assertTrue(index.getCandidates(
+                createAnqpElements(Arrays.asList("test2.com", "com", "mytest.com"), null, null),
+                null).isEmpty());
+    }
+
+    /**
+     * Verify the providers whose realm is a parent domain of an ANQP NAI realm are candidates.
+     */
+    @Test
+    public void testCandidatesByNaiRealm() throws Exception {
+        PasspointProvider provider1 = createProvider(TEST_FQDN, TEST_REALM);
+        PasspointProvider provider2 = createProvider(TEST_FQDN2, "realm.test2.com");
+        PasspointProviderIndex index = new PasspointProviderIndex(
+                Arrays.asList(provider1, provider2));
+
+        // The FQDN of a provider is not matched against the NAI realms
+        assertEquals(Arrays.asList(provider1), index.getCandidates(createAnqpElements(
+                null, Arrays.asList("test.com", "eap.realm.test.com"), null), null));
+    }
+
+    /**
+     * Verify the providers sharing an OI with the ANQP roaming consortium element or the roaming
+     * consortium IE of the AP are candidates.
+     */
+    @Test
+    public void testCandidatesByOi() throws Exception {
+        PasspointProvider provider1 = createProvider(TEST_FQDN, null, null,
+                new long[] {TEST_RCOI}, null, false);
+        PasspointProvider provider2 = createProvider(TEST_FQDN2, null, null, null,
+                new long[] {TEST_MATCH_ANY_OI}, false);
+        PasspointProviderIndex index = new PasspointProviderIndex(
+                Arrays.asList(provider1, provider2));
+
+        assertEquals(Arrays.asList(provider2), index.getCandidates(
+                createAnqpElements(null, null, Arrays.asList(TEST_MATCH_ANY_OI)), null));
+
+        RoamingConsortium roamingConsortium = mock(RoamingConsortium.class);
+        when(roamingConsortium.getRoamingConsortiums()).thenReturn(new long[] {TEST_RCOI});
+        assertEquals(Arrays.asList(provider1), index.getCandidates(
+                createAnqpElements(null, null, null), roamingConsortium));
+
+        when(roamingConsortium.getRoamingConsortiums()).thenReturn(null);
+        assertTrue(index.getCandidates(
+                createAnqpElements(null, null, Arrays.asList(0x9999L)), roamingConsortium)
+                .isEmpty());
+    }
+
+    /**
+     * Verify the providers with a SIM credential are always candidates, and that the candidates
+     * keep the order of the indexed providers.
+     */
+    @Test
+    public void testSimProvidersAlwaysCandidatesInOrder() throws Exception {
+        PasspointProvider simProvider = createProvider("wlan.mnc456.mcc123.3gppnetwork.org",
+                TEST_REALM, null, null, null, true);
+        PasspointProvider provider1 = createProvider(TEST_FQDN, TEST_REALM);
+        PasspointProvider provider2 = createProvider(TEST_FQDN2, null);
+        PasspointProviderIndex index = new PasspointProviderIndex(
+                Arrays.asList(provider2, simProvider, provider1));
+        assertEquals(3, index.size());
+
+        assertEquals(Arrays.asList(simProvider), index.getCandidates(new HashMap<>(), null));
+        assertEquals(Arrays.asList(provider2, simProvider, provider1), index.getCandidates(
+                createAnqpElements(Arrays.asList(TEST_FQDN2, TEST_FQDN), null, null), null));
+    }
+
+    /**
+     * Verify the index returns the same providers as matching the domain names and NAI realms of
+     * every provider, over random domains.
+     */
+    @Test
+    public void testCandidatesSameAsMatchingAllProviders() throws Exception {
+        String[] labels = {"a", "B", "com", "net", "test", ""};
+        Random random = new Random(8128);
+        List<PasspointProvider> providers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            providers.add(createProvider(createRandomDomain(random, labels),
+                    createRandomDomain(random, labels)));
+        }
+        PasspointProviderIndex index = new PasspointProviderIndex(providers);
+
+        for (int i = 0; i < 500; i++) {
+            Map<ANQPElementType, ANQPElement> anqpElements = createAnqpElements(
+                    Arrays.asList(createRandomDomain(random, labels)),
+                    Arrays.asList(createRandomDomain(random, labels)), null);
+            List<PasspointProvider> expected = new ArrayList<>();
+            for (PasspointProvider provider : providers) {
+                PasspointConfiguration config = provider.getConfig();
+                if (ANQPMatcher.matchDomainName(
+                        (DomainNameElement) anqpElements.get(ANQPElementType.ANQPDomName),
+                        config.getHomeSp().getFqdn(), null, null)
+                        || ANQPMatcher.matchNAIRealm(
+                        (NAIRealmElement) anqpElements.get(ANQPElementType.ANQPNAIRealm),
+                        config.getCredential().getRealm())) {
+                    expected.add(provider);
+                }
+            }
+            assertEquals(expected, index.getCandidates(anqpElements, null));
+        }
+    }
+
+    private static String createRandomDomain(Random random, String[] labels) {
+        StringBuilder domain = new StringBuilder();
+        int numLabels = 1 + random.nextInt(4);
+        for (int i = 0; i < numLabels; i++) {
+            if (i > 0) domain.append('.');
+            domain.append(labels[random.nextInt(labels.length)]);
+        }
+        if (random.nextInt(5) == 0) domain.append('.');
+        return domain.toString();
+    }
+}
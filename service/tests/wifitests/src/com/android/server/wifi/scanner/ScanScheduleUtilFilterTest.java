@@ -312,6 +312,46 @@ public class ScanScheduleUtilFilterTest extends WifiBaseTest {
     }
 
 
+    @Test
+    public void sameResultFilterForSameBand() {
+        ScanSettings settings1 = createRequest(WifiScanner.WIFI_BAND_24_GHZ, 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanSettings settings2 = createRequest(WifiScanner.WIFI_BAND_24_GHZ, 10000, 0, 20,
+                WifiScanner.REPORT_EVENT_FULL_SCAN_RESULT);
+        ScanSettings otherBand = createRequest(WifiScanner.WIFI_BAND_BOTH, 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanSettings otherMaxBssids = createRequest(WifiScanner.WIFI_BAND_24_GHZ, 30000, 0, 3,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+
+        assertTrue(ScanScheduleUtil.hasSameResultFilter(settings1, settings2));
+        assertFalse(ScanScheduleUtil.hasSameResultFilter(settings1, otherBand));
+        assertFalse(ScanScheduleUtil.hasSameResultFilter(settings1, otherMaxBssids));
+        assertFalse(ScanScheduleUtil.hasSameResultFilter(settings1, null));
+    }
+
+    @Test
+    public void sameResultFilterForSameChannels() {
+        ScanSettings settings1 = createRequest(channelsToSpec(2412, 5160), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanSettings settings2 = createRequest(channelsToSpec(2412, 5160), 10000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanSettings otherChannels = createRequest(channelsToSpec(2412, 5175), 30000, 0, 20,
+                WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+
+        assertTrue(ScanScheduleUtil.hasSameResultFilter(settings1, settings2));
+        assertFalse(ScanScheduleUtil.hasSameResultFilter(settings1, otherChannels));
+
+        // Requests with the same filter get the same results.
+        ScanData[] scanDatas = createScanDatas(new int[][]{{2412, 2450, 5160, 5175}});
+        assertScanDataFreqsEquals(new int[][]{{2412, 5160}},
+                ScanScheduleUtil.filterResultsForSettings(mChannelHelper, scanDatas, settings1,
+                        -1));
+        assertScanDataFreqsEquals(new int[][]{{2412, 5160}},
+                ScanScheduleUtil.filterResultsForSettings(mChannelHelper, scanDatas, settings2,
+                        -1));
+    }
+
+
     private static void assertScanDataFreqsEquals(int[][] expected, ScanData[] results) {
         if (expected == null) {
             assertNull("Expected no results", results);
@@ -2103,6 +2103,40 @@ public class WifiScanningServiceTest extends WifiBaseTest {
                 results.toArray(new ScanResult[results.size()]));
     }
 
+    /**
+     * Verify that no scan results are returned by WifiService.getSingleScanResults once all the
+     * cached results from the last full single scan are stale.
+     */
+    @Test
+    public void doesNotRetrieveScanResultsFromLastFullSingleScanWhenAllStale() throws Exception {
+        WifiScanner.ScanSettings requestSettings = createRequest(WifiScanner.WIFI_BAND_ALL, 0,
+                0, 20, WifiScanner.REPORT_EVENT_AFTER_EACH_SCAN);
+        ScanResults scanResults =
+                ScanResults.create(0, WifiScanner.WIFI_BAND_ALL, 2412, 5160, 5175);
+        long currentTimeInMillis = CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS * 2;
+        when(mClock.getElapsedSinceBootMillis()).thenReturn(currentTimeInMillis);
+        for (ScanResult result : scanResults.getRawScanResults()) {
+            result.timestamp = (currentTimeInMillis - 1) * 1000;
+        }
+
+        doSuccessfulSingleScan(requestSettings,
+                computeSingleScanNativeSettings(requestSettings), scanResults);
+
+        mLooper.startAutoDispatch();
+        List<ScanResult> results = mWifiScanningServiceImpl.getSingleScanResults(TEST_PACKAGE_NAME,
+                null);
+        mLooper.stopAutoDispatchAndIgnoreExceptions();
+        assertEquals(3, results.size());
+
+        // Move the clock past the max age of all the cached results.
+        when(mClock.getElapsedSinceBootMillis())
+                .thenReturn(currentTimeInMillis + CACHED_SCAN_RESULTS_MAX_AGE_IN_MILLIS);
+        mLooper.startAutoDispatch();
+        results = mWifiScanningServiceImpl.getSingleScanResults(TEST_PACKAGE_NAME, null);
+        mLooper.stopAutoDispatchAndIgnoreExceptions();
+        assertTrue(results.isEmpty());
+    }
+
     /**
      * Cached scan results should be cleared after the driver is unloaded.
      */
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static com.android.server.wifi.WifiMetricsTestUtil.assertKeyCountsEqual;
+import static com.android.server.wifi.WifiMetricsTestUtil.buildInt32Count;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+import com.android.server.wifi.proto.nano.WifiMetricsProto.Int32Count;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for ConcurrentIntCounter.
+ */
+@SmallTest
+public class ConcurrentIntCounterTest extends WifiBaseTest {
+
+    private static final int NUM_THREADS = 4;
+    private static final int NUM_INCREMENTS_PER_THREAD = 10000;
+
+    /**
+     * Tests when the counter is empty.
+     */
+    @Test
+    public void testEmpty() {
+        ConcurrentIntCounter counter = new ConcurrentIntCounter(-10, 10);
+        assertKeyCountsEqual(new Int32Count[0], counter.snapshot().toProto());
+        assertKeyCountsEqual(new Int32Count[0], counter.drain().toProto());
+    }
+
+    /**
+     * Tests that keys outside the range are clamped, and that snapshot() returns the keys in
+     * increasing order.
+     */
+    @Test
+    public void testAddWithClamping() {
+        ConcurrentIntCounter counter = new ConcurrentIntCounter(-10, 10);
+        counter.increment(5);
+        counter.add(-3, 4);
+        counter.increment(-100);
+        counter.increment(100);
+        counter.increment(10);
+        counter.increment(5);
+
+        Int32Count[] expected = {
+                buildInt32Count(-10, 1),
+                buildInt32Count(-3, 4),
+                buildInt32Count(5, 2),
+                buildInt32Count(10, 2),
+        };
+        assertKeyCountsEqual(expected, counter.snapshot().toProto());
+        assertEquals(2, counter.get(5));
+        assertEquals(0, counter.get(0));
+    }
+
+    /**
+     * Tests that drain() resets the counts while snapshot() does not.
+     */
+    @Test
+    public void testDrainResetsCounts() {
+        ConcurrentIntCounter counter = new ConcurrentIntCounter(0, 4);
+        counter.increment(1);
+        counter.increment(3);
+
+        assertEquals(2, counter.snapshot().size());
+        assertEquals(2, counter.drain().size());
+        assertEquals(0, counter.get(1));
+        assertKeyCountsEqual(new Int32Count[0], counter.snapshot().toProto());
+
+        counter.increment(3);
+        counter.clear();
+        assertEquals(0, counter.get(3));
+    }
+
+    /**
+     * Tests that increments from multiple threads are not lost, including increments racing with
+     * drain().
+     */
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        ConcurrentIntCounter counter = new ConcurrentIntCounter(0, 3);
+        Thread[] threads = new Thread[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int key = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < NUM_INCREMENTS_PER_THREAD; i++) {
+                    counter.increment(key);
+                }
+            });
+            threads[t].start();
+        }
+        long total = 0;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                total += sumCounts(counter.drain());
+                Thread.yield();
+            }
+            thread.join();
+        }
+        total += sumCounts(counter.drain());
+        assertEquals(NUM_THREADS * NUM_INCREMENTS_PER_THREAD, total);
+    }
+
+    private static long sumCounts(IntCounter counter) {
+        long sum = 0;
+        for (IntCounter.KeyCount kc : counter) {
+            sum += kc.count;
+        }
+        return sum;
+    }
+}
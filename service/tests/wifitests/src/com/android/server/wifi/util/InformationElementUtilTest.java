@@ -298,6 +298,53 @@ public class InformationElementUtilTest extends WifiBaseTest {
                 testByteArray[3], results[0].bytes[0]);
     }
 
+    /**
+     * Test parseInformationElement with a fragmented element followed by another element.
+     */
+    @Test
+    public void parseInformationElementWithFragmentedElement() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Multi-Link element, first fragment: EID, length 255, EID extension + 254 bytes.
+        out.write(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0x6B});
+        byte[] firstFragment = new byte[254];
+        Arrays.fill(firstFragment, (byte) 0x11);
+        out.write(firstFragment);
+        // Fragment element with 3 bytes.
+        out.write(new byte[] {(byte) 0xF2, (byte) 0x03, (byte) 0x22, (byte) 0x22, (byte) 0x22});
+        out.write(TEST_BSS_LOAD_BYTES_IE);
+
+        InformationElement[] results =
+                InformationElementUtil.parseInformationElements(out.toByteArray());
+        assertEquals("Parsed results should have 2 elements", 2, results.length);
+        assertEquals(InformationElement.EID_EXTENSION_PRESENT, results[0].id);
+        assertEquals(InformationElement.EID_EXT_MULTI_LINK, results[0].idExt);
+        assertEquals(254 + 3, results[0].bytes.length);
+        assertEquals((byte) 0x11, results[0].bytes[0]);
+        assertEquals((byte) 0x11, results[0].bytes[253]);
+        assertEquals((byte) 0x22, results[0].bytes[254]);
+        assertEquals((byte) 0x22, results[0].bytes[256]);
+        assertEquals(InformationElement.EID_BSS_LOAD, results[1].id);
+    }
+
+    /**
+     * Test parseInformationElement stops parsing at a fragmented element with a truncated
+     * fragment.
+     */
+    @Test
+    public void parseInformationElementWithTruncatedFragment() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(getTestSsidIEBytes());
+        out.write(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0x6B});
+        out.write(new byte[254]);
+        // Fragment element claiming 5 bytes, only 2 present.
+        out.write(new byte[] {(byte) 0xF2, (byte) 0x05, (byte) 0x22, (byte) 0x22});
+
+        InformationElement[] results =
+                InformationElementUtil.parseInformationElements(out.toByteArray());
+        assertEquals("Parsed results should only have the SSID", 1, results.length);
+        assertEquals(InformationElement.EID_SSID, results[0].id);
+    }
+
     /** Verify subelement fragmentation within a fragmented element. */
     @Test
     public void parseInformationElementWithTwoLevelFragmentation() throws IOException {
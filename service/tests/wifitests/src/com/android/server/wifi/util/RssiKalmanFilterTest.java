@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.wifi.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.wifi.WifiBaseTest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Unit tests for {@link com.android.server.wifi.util.RssiKalmanFilter}.
+ */
+@SmallTest
+public class RssiKalmanFilterTest extends WifiBaseTest {
+    private static final double TOLERANCE = 1e-9;
+    private static final double STDA = 0.02;
+
+    // RSSI polled every 3 seconds while walking away from an AP, then standing still, then
+    // roaming back, with a few gaps in the polls.
+    private static final int[] RSSI_TRACE = {
+            -45, -46, -45, -47, -48, -48, -50, -51, -53, -52, -55, -56, -58, -57, -60, -61,
+            -63, -62, -64, -66, -67, -66, -68, -69, -70, -70, -71, -70, -70, -69, -70, -71,
+            -70, -70, -70, -72, -70, -69, -70, -68, -65, -63, -60, -58, -55, -54, -52, -50};
+    private static final int[] MILLIS_TRACE = {
+            3001, 3000, 3002, 2999, 3000, 3001, 6003, 3000, 3000, 2998, 3001, 3000, 3000, 3002,
+            3000, 9004, 3000, 3001, 3000, 3000, 2999, 3000, 3000, 3001, 3000, 3000, 3000, 12000,
+            3000, 3001, 3000, 3000, 3000, 2999, 3000, 3000, 3001, 3000, 3000, 3000, 3000, 3000,
+            3002, 3000, 3000, 3000, 3001, 3000};
+
+    /**
+     * Reference implementation, using the generic filter as the connected scorer used to.
+     */
+    private static class ReferenceFilter {
+        final KalmanFilter mKf = new KalmanFilter();
+
+        ReferenceFilter(double rssi, double initialVariance) {
+            mKf.mH = new Matrix(2, new double[]{1.0, 0.0});
+            mKf.mR = new Matrix(1, new double[]{1.0});
+            mKf.mx = new Matrix(1, new double[]{rssi, 0.0});
+            mKf.mP = new Matrix(2, new double[]{initialVariance, 0.0, 0.0, 0.0});
+        }
+
+        void step(double rssi, double dt, double variance) {
+            mKf.mR.put(0, 0, variance);
+            mKf.mF = new Matrix(2, new double[]{1.0, dt, 0.0, 1.0});
+            Matrix tG = new Matrix(1, new double[]{0.5 * dt * dt, dt});
+            mKf.mQ = tG.dotTranspose(tG).dot(new Matrix(2, new double[]{
+                    STDA * STDA, 0.0,
+                    0.0, STDA * STDA}));
+            mKf.predict();
+            mKf.update(new Matrix(1, new double[]{rssi}));
+        }
+    }
+
+    private void assertEquivalent(int[] rssis, int[] millis, double[] standardDeviations) {
+        double variance = standardDeviations[0] * standardDeviations[0];
+        ReferenceFilter reference = new ReferenceFilter(rssis[0], 9.0 * variance);
+        RssiKalmanFilter filter = new RssiKalmanFilter(STDA);
+        filter.initialize(rssis[0], 9.0 * variance);
+        for (int i = 1; i < rssis.length; i++) {
+            double dt = millis[i] * 0.001;
+            variance = standardDeviations[i] * standardDeviations[i];
+            reference.step(rssis[i], dt, variance);
+            filter.predict(dt);
+            filter.update(rssis[i], variance);
+            assertEquals("step " + i, reference.mKf.mx.get(0, 0), filter.getValue(), TOLERANCE);
+            assertEquals("step " + i, reference.mKf.mx.get(1, 0), filter.getRate(), TOLERANCE);
+            Matrix x = new Matrix(2, new double[]{1.0, 5.0, 0.0, 1.0}).dot(reference.mKf.mx);
+            assertEquals("step " + i, x.get(0, 0), filter.forecast(5.0), TOLERANCE);
+        }
+    }
+
+    /**
+     * Verify the filter matches the generic Kalman filter over an RSSI trace.
+     */
+    @Test
+    public void testEquivalentToGenericFilterOverRssiTrace() throws Exception {
+        double[] standardDeviations = new double[RSSI_TRACE.length];
+        for (int i = 0; i < standardDeviations.length; i++) {
+            // Alternate between the poll and scan result noise estimates
+            standardDeviations[i] = i % 5 == 0 ? 4.0 : 2.0;
+        }
+        assertEquivalent(RSSI_TRACE, MILLIS_TRACE, standardDeviations);
+    }
+
+    /**
+     * Verify the filter matches the generic Kalman filter over long random walks of the RSSI.
+     */
+    @Test
+    public void testEquivalentToGenericFilterOverRandomWalk() throws Exception {
+        Random random = new Random(271828);
+        for (int trace = 0; trace < 10; trace++) {
+            int[] rssis = new int[1000];
+            int[] millis = new int[rssis.length];
+            double[] standardDeviations = new double[rssis.length];
+            double rssi = -40.0 - random.nextInt(40);
+            for (int i = 0; i < rssis.length; i++) {
+                rssi = Math.max(-100.0, Math.min(-20.0, rssi + random.nextGaussian()));
+                rssis[i] = (int) Math.round(rssi + 2.0 * random.nextGaussian());
+                millis[i] = 1000 + random.nextInt(30000);
+                standardDeviations[i] = 1.0 + 3.0 * random.nextDouble();
+            }
+            assertEquivalent(rssis, millis, standardDeviations);
+        }
+    }
+
+    /**
+     * Verify the filter converges to the rate of change of a steadily dropping RSSI.
+     */
+    @Test
+    public void testTracksRateOfChange() throws Exception {
+        RssiKalmanFilter filter = new RssiKalmanFilter(STDA);
+        filter.initialize(-50, 4.0);
+        for (int i = 1; i <= 100; i++) {
+            filter.predict(3.0);
+            filter.update(-50 - 0.3 * i, 4.0);
+        }
+        assertEquals(-80.0, filter.getValue(), 0.5);
+        assertEquals(-0.1, filter.getRate(), 0.01);
+    }
+
+    /**
+     * Verify clear() forgets the state until the filter is initialized again.
+     */
+    @Test
+    public void testClear() throws Exception {
+        RssiKalmanFilter filter = new RssiKalmanFilter(STDA);
+        assertFalse(filter.isInitialized());
+        filter.initialize(-60, 4.0);
+        assertTrue(filter.isInitialized());
+        filter.clear();
+        assertFalse(filter.isInitialized());
+        assertEquals("{}", filter.toString());
+    }
+}
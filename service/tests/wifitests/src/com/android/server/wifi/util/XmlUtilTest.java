@@ -892,4 +892,25 @@ public class XmlUtilTest extends WifiBaseTest {
             throws IOException, XmlPullParserException {
         testConfigStoreWithEncryptedPreSharedKey(true, true);
     }
+
+    /**
+     * Verify that string values are read correctly, including empty strings and text interleaved
+     * with comments.
+     */
+    @Test
+    public void testReadStringValues() throws IOException, XmlPullParserException {
+        String xml = "<" + mXmlDocHeader + ">\n"
+                + "<string name=\"Empty\"></string>\n"
+                + "<string name=\"Simple\">value &amp; more</string>\n"
+                + "<string name=\"Split\">first<!-- comment -->second</string>\n"
+                + "</" + mXmlDocHeader + ">\n";
+        final XmlPullParser in = Xml.newPullParser();
+        in.setInput(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8.name());
+        XmlUtil.gotoDocumentStart(in, mXmlDocHeader);
+
+        assertEquals("", XmlUtil.readNextValueWithName(in, "Empty"));
+        assertEquals("value & more", XmlUtil.readNextValueWithName(in, "Simple"));
+        assertEquals("firstsecond", XmlUtil.readNextValueWithName(in, "Split"));
+    }
 }